@@ -0,0 +1,52 @@
+package nl.inl.blacklab.contentstore;
+
+import java.util.function.IntFunction;
+
+/**
+ * Cache for decompressed content store blocks.
+ *
+ * Decompressing blocks is expensive, and when making concordances we often need
+ * the same blocks for several snippets from the same document. Implementations
+ * decide how many blocks to keep and which ones to evict.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface BlockCache {
+
+    /** A cache that doesn't cache anything. */
+    BlockCache NONE = new BlockCache() {
+        @Override
+        public String get(int blockNumber, IntFunction<String> decoder) {
+            return decoder.apply(blockNumber);
+        }
+
+        @Override
+        public void clear() {
+            // NOP
+        }
+    };
+
+    /**
+     * Get a decompressed block, decoding it if it's not in the cache.
+     *
+     * @param blockNumber block to get
+     * @param decoder how to read and decode the block if it's not cached
+     * @return the decoded block contents
+     */
+    String get(int blockNumber, IntFunction<String> decoder);
+
+    /**
+     * Remove all blocks from the cache.
+     */
+    void clear();
+
+    /**
+     * Remove all blocks and release any other resources (e.g. metrics).
+     *
+     * Called when the content store is closed.
+     */
+    default void close() {
+        clear();
+    }
+
+}
@@ -0,0 +1,90 @@
+package nl.inl.blacklab.contentstore;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Block cache using Caffeine, bounded by the total number of characters cached.
+ *
+ * Hit/miss statistics are reported to the global Micrometer registry. Only one
+ * cache per content store is monitored at a time (Micrometer would keep
+ * returning the meters of the first cache registered with the same tags);
+ * its meters are removed when it is closed, so the cache of a reopened store
+ * is monitored instead.
+ */
+public class BlockCacheCaffeine implements BlockCache {
+
+    /** Name of the cache in the metrics */
+    private static final String CACHE_NAME_FOR_METRICS = "blacklab-content-store-blocks";
+
+    /** Monitored cache per content store name (guarded by itself) */
+    private static final Map<String, BlockCacheCaffeine> monitoredCaches = new HashMap<>();
+
+    private final Cache<Integer, String> cache;
+
+    /** Name of the content store, used to tag the metrics */
+    private final String storeName;
+
+    /** Our meters, if we're the monitored cache for this store; otherwise null */
+    private List<Meter> meters;
+
+    /**
+     * Create the cache.
+     *
+     * @param maxSizeChars maximum total length of the cached blocks, in characters
+     * @param storeName name of the content store, used to tag the metrics
+     */
+    public BlockCacheCaffeine(long maxSizeChars, String storeName) {
+        this.storeName = storeName;
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeChars)
+                .weigher((Integer blockNumber, String block) -> block.length())
+                .recordStats()
+                .build();
+        synchronized (monitoredCaches) {
+            if (!monitoredCaches.containsKey(storeName)) {
+                CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache, CACHE_NAME_FOR_METRICS,
+                        Tags.of("store", storeName));
+                meters = Metrics.globalRegistry.getMeters().stream()
+                        .filter(m -> CACHE_NAME_FOR_METRICS.equals(m.getId().getTag("cache"))
+                                && storeName.equals(m.getId().getTag("store")))
+                        .collect(Collectors.toList());
+                monitoredCaches.put(storeName, this);
+            }
+        }
+    }
+
+    @Override
+    public String get(int blockNumber, IntFunction<String> decoder) {
+        return cache.get(blockNumber, decoder::apply);
+    }
+
+    @Override
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void close() {
+        clear();
+        synchronized (monitoredCaches) {
+            if (meters != null) {
+                meters.forEach(Metrics.globalRegistry::remove);
+                meters = null;
+                monitoredCaches.remove(storeName);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package nl.inl.blacklab.contentstore;
+
+import java.io.IOException;
+
+/**
+ * Compresses and decompresses the blocks of a fixed-block content store.
+ *
+ * The codec used is recorded in the content store's version file when the
+ * store is created, so the reader and writer always use the same codec for a
+ * store. Codecs are looked up by name using
+ * {@link ContentStoreFixedBlock#codec(String)}; register your own using
+ * {@link ContentStoreFixedBlock#registerCodec(BlockCodec)}.
+ *
+ * A codec itself must be thread-safe; the encoders and decoders it creates
+ * need not be (the content store pools them and uses each from one thread at a
+ * time).
+ */
+public interface BlockCodec {
+
+    /** Encodes (compresses) blocks. */
+    interface Encoder {
+        /**
+         * Encode a block.
+         *
+         * @param input bytes to encode
+         * @param offset first byte to encode
+         * @param length number of bytes to encode
+         * @param output where to write the encoded bytes
+         * @return number of encoded bytes, or -1 if they didn't fit in the output buffer
+         */
+        int encode(byte[] input, int offset, int length, byte[] output);
+
+        /** Free any resources held by the encoder. */
+        default void close() {
+            // (subclass may override this)
+        }
+    }
+
+    /** Decodes (decompresses) blocks. */
+    interface Decoder {
+        /**
+         * Decode a block.
+         *
+         * @param input encoded block (may be followed by padding)
+         * @param offset first byte of the block
+         * @param length length of the block, including any padding
+         * @param output where to write the decoded bytes
+         * @return number of decoded bytes
+         * @throws IOException if the block couldn't be decoded, or didn't fit in the output buffer
+         */
+        int decode(byte[] input, int offset, int length, byte[] output) throws IOException;
+
+        /** Free any resources held by the decoder. */
+        default void close() {
+            // (subclass may override this)
+        }
+    }
+
+    /**
+     * Name of the codec, as recorded in the version file.
+     *
+     * @return codec name
+     */
+    String name();
+
+    /**
+     * Can blocks written by this codec be read with a plain Inflater?
+     *
+     * Content store readers from before codecs were configurable always inflate.
+     * Stores with a codec that isn't deflate-compatible get a newer version
+     * number, so those readers refuse them instead of returning garbage.
+     *
+     * @return true if the blocks are zlib-compressed
+     */
+    default boolean isDeflateCompatible() {
+        return false;
+    }
+
+    /**
+     * Create an encoder.
+     *
+     * @return the encoder
+     */
+    Encoder createEncoder();
+
+    /**
+     * Create a decoder.
+     *
+     * @return the decoder
+     */
+    Decoder createDecoder();
+}
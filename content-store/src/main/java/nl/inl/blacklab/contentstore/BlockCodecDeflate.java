@@ -0,0 +1,95 @@
+package nl.inl.blacklab.contentstore;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses blocks using Deflate (zlib) at a given compression level.
+ *
+ * All levels produce the same format, so they only differ in compression speed
+ * and ratio; decoding is the same.
+ */
+class BlockCodecDeflate implements BlockCodec {
+
+    private final String name;
+
+    private final int level;
+
+    /**
+     * @param name name of the codec
+     * @param level Deflater compression level
+     */
+    BlockCodecDeflate(String name, int level) {
+        this.name = name;
+        this.level = level;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public boolean isDeflateCompatible() {
+        return true;
+    }
+
+    @Override
+    public Encoder createEncoder() {
+        Deflater compresser = new Deflater(level);
+        return new Encoder() {
+            @Override
+            public int encode(byte[] input, int offset, int length, byte[] output) {
+                compresser.reset();
+                compresser.setInput(input, offset, length);
+                compresser.finish();
+                int compressedDataLength = compresser.deflate(output, 0, output.length, Deflater.FULL_FLUSH);
+                if (compressedDataLength <= 0)
+                    throw new IllegalStateException("Error, deflate returned " + compressedDataLength);
+                return compressedDataLength == output.length ? -1 : compressedDataLength;
+            }
+
+            @Override
+            public void close() {
+                compresser.end();
+            }
+        };
+    }
+
+    @Override
+    public Decoder createDecoder() {
+        Inflater decompresser = new Inflater();
+        return new Decoder() {
+            @Override
+            public int decode(byte[] input, int offset, int length, byte[] output) throws IOException {
+                try {
+                    decompresser.reset();
+                    decompresser.setInput(input, offset, length);
+                    int resultLength = decompresser.inflate(output);
+                    if (resultLength <= 0) {
+                        throw new IOException("Error, inflate returned " + resultLength);
+                    }
+                    if (!decompresser.finished()) {
+                        // This shouldn't happen because our max block size prevents it
+                        throw new IOException("Unzip buffer size insufficient");
+                    }
+                    return resultLength;
+                } catch (DataFormatException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                decompresser.end();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -32,6 +32,21 @@ public abstract class ContentStore {
     static final Charset DEFAULT_CHARSET = Charset.forName("utf-8");
 
     public static ContentStore open(File indexXmlDir, boolean indexMode, boolean create) throws ErrorOpeningIndex {
+        return open(indexXmlDir, indexMode, create, null);
+    }
+
+    /**
+     * Open a content store.
+     *
+     * @param indexXmlDir content store directory
+     * @param indexMode if true, open for writing
+     * @param create if true, create a new content store
+     * @param codecName if creating, name of the codec to compress with (null for the
+     *            default); an existing content store uses the codec it was created with
+     * @return the content store
+     * @throws ErrorOpeningIndex if the store couldn't be opened, or the codec is unknown
+     */
+    public static ContentStore open(File indexXmlDir, boolean indexMode, boolean create, String codecName) throws ErrorOpeningIndex {
         String type;
         if (create)
             type = "fixedblock";
@@ -40,8 +55,15 @@ public abstract class ContentStore {
             type = vf.getType();
         }
         if (type.equals("fixedblock")) {
-            if (indexMode)
-                return new ContentStoreFixedBlockWriter(indexXmlDir, create);
+            if (indexMode) {
+                BlockCodec codec = ContentStoreFixedBlock.DEFLATE;
+                if (create && codecName != null) {
+                    codec = ContentStoreFixedBlock.codec(codecName);
+                    if (codec == null)
+                        throw new ErrorOpeningIndex("Unknown content store codec: " + codecName);
+                }
+                return new ContentStoreFixedBlockWriter(indexXmlDir, create, codec);
+            }
             if (create)
                 throw new UnsupportedOperationException("create == true, but not in index mode");
             return new ContentStoreFixedBlockReader(indexXmlDir);
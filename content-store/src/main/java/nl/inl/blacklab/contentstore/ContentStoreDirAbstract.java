@@ -38,6 +38,10 @@ public abstract class ContentStoreDirAbstract extends ContentStore {
         VersionFile.write(dir, type, version);
     }
 
+    protected void setStoreType(String type, String version, String codec) {
+        VersionFile.write(dir, type, version, codec);
+    }
+
     /**
      * Get the type and version of the content store
      * 
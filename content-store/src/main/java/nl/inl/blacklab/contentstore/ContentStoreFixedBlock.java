@@ -7,15 +7,20 @@ import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
 
 import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
 import org.eclipse.collections.impl.factory.primitive.IntObjectMaps;
 import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
 import nl.inl.util.CollUtil;
 import nl.inl.util.SimpleResourcePool;
+import nl.inl.util.VersionFile;
 
 public abstract class ContentStoreFixedBlock extends ContentStoreDirAbstract {
 
@@ -27,8 +32,17 @@ public abstract class ContentStoreFixedBlock extends ContentStoreDirAbstract {
     /**
      * Version of this type of content store. Written to version file and detected
      * when opening.
+     *
+     * Stores compressed with a codec that isn't deflate-compatible get this
+     * version; older readers don't know it and refuse to open the store.
+     */
+    protected static final String CURRENT_VERSION = "2";
+
+    /**
+     * Version for stores that any reader can decompress (no codec, or a
+     * deflate-compatible one).
      */
-    protected static final String CURRENT_VERSION = "1";
+    protected static final String DEFLATE_COMPATIBLE_VERSION = "1";
 
     /** Name of the table of contents file */
     protected static final String TOC_FILE_NAME = "toc.dat";
@@ -80,6 +94,69 @@ public abstract class ContentStoreFixedBlock extends ContentStoreDirAbstract {
     /** Size of the (de)compressor and zipbuf pools */
     protected static final int POOL_SIZE = 10;
 
+    /**
+     * Deflate at the default level. Used for stores whose version file doesn't
+     * record a codec (all stores created before codecs were configurable).
+     */
+    public static final BlockCodec DEFLATE = new BlockCodecDeflate("deflate", Deflater.DEFAULT_COMPRESSION);
+
+    /** Deflate at the fastest level: faster indexing, but a larger contents file */
+    public static final BlockCodec DEFLATE_FAST = new BlockCodecDeflate("deflate-fast", Deflater.BEST_SPEED);
+
+    /** Available codecs by name */
+    private static final Map<String, BlockCodec> codecs = new ConcurrentHashMap<>();
+
+    static {
+        registerCodec(DEFLATE);
+        registerCodec(DEFLATE_FAST);
+    }
+
+    /**
+     * Make a codec available for creating and opening content stores.
+     *
+     * @param codec the codec
+     */
+    public static void registerCodec(BlockCodec codec) {
+        codecs.put(codec.name(), codec);
+    }
+
+    /**
+     * Find a codec by name.
+     *
+     * @param name codec name
+     * @return the codec, or null if there's no codec with that name
+     */
+    public static BlockCodec codec(String name) {
+        return codecs.get(name);
+    }
+
+    /**
+     * Determine the codec for an existing content store from its version file.
+     *
+     * @param dir content store dir
+     * @return the codec
+     * @throws ErrorOpeningIndex if the store has an unknown version or uses a codec we don't know
+     */
+    protected static BlockCodec codecFromVersionFile(File dir) throws ErrorOpeningIndex {
+        VersionFile vf = new VersionFile(dir);
+        if (!vf.exists())
+            return DEFLATE;
+        vf.read();
+        String version = vf.getVersion();
+        if (!version.equals(DEFLATE_COMPATIBLE_VERSION) && !version.equals(CURRENT_VERSION))
+            throw new ErrorOpeningIndex("Content store " + dir + " has unknown version " + version + " (" + CURRENT_VERSION
+                    + " or lower expected). Please upgrade BlackLab or re-index your data.");
+        if (vf.getCodec() == null)
+            return DEFLATE;
+        BlockCodec codec = codec(vf.getCodec());
+        if (codec == null)
+            throw new ErrorOpeningIndex("Content store " + dir + " uses unknown codec '" + vf.getCodec() + "'");
+        if (version.equals(DEFLATE_COMPATIBLE_VERSION) && !codec.isDeflateCompatible())
+            throw new ErrorOpeningIndex("Content store " + dir + " has version " + version + ", but codec '"
+                    + vf.getCodec() + "' requires version " + CURRENT_VERSION);
+        return codec;
+    }
+
     /** Table of contents entry */
     static class TocEntry {
 
@@ -210,6 +287,9 @@ public abstract class ContentStoreFixedBlock extends ContentStoreDirAbstract {
 
     protected SimpleResourcePool<byte[]> zipbufPool;
 
+    /** How our blocks are compressed */
+    protected BlockCodec codec = DEFLATE;
+
     protected boolean initialized = false;
 
     protected ContentStoreFixedBlock(File dir) {
@@ -334,7 +414,17 @@ public abstract class ContentStoreFixedBlock extends ContentStoreDirAbstract {
     }
 
     protected void setStoreType() {
-        setStoreType(CONTENT_STORE_TYPE_NAME, CURRENT_VERSION);
+        String version = codec.isDeflateCompatible() ? DEFLATE_COMPATIBLE_VERSION : CURRENT_VERSION;
+        setStoreType(CONTENT_STORE_TYPE_NAME, version, codec.name());
+    }
+
+    /**
+     * Get the codec used to compress this store's blocks.
+     *
+     * @return the codec
+     */
+    public BlockCodec codec() {
+        return codec;
     }
 
 
@@ -16,15 +16,14 @@
 package nl.inl.blacklab.contentstore;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
+import java.util.function.Function;
 
 import net.jcip.annotations.NotThreadSafe;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
@@ -40,13 +39,46 @@ import nl.inl.util.SimpleResourcePool;
  * character offset associated with each block so we can quickly access the
  * data. Free blocks will be re-used to save space.
  * 
- * Thread-safety: not thread-safe in index mode, but thread-safe while searching
+ * Thread-safety: not thread-safe in index mode, but thread-safe while searching.
+ * While searching, the contents file is memory-mapped and no locking is needed
+ * to read blocks. Decompressed blocks are kept in a {@link BlockCache}.
  */
 @NotThreadSafe // in index mode
 public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
     //private static final Logger logger = LogManager.getLogger(ContentStoreDirFixedBlock.class);
 
-    SimpleResourcePool<Inflater> decompresserPool;
+    /** How many blocks we map into memory at once (1GB) */
+    private static final int BLOCKS_PER_MAPPING = (1 << 30) / BLOCK_SIZE_BYTES;
+
+    /** Default maximum size of the block cache, in characters (per content store) */
+    private static final long DEFAULT_BLOCK_CACHE_SIZE_CHARS = 32_000_000;
+
+    /** How to create the block cache for a content store */
+    private static Function<File, BlockCache> blockCacheFactory =
+            dir -> new BlockCacheCaffeine(DEFAULT_BLOCK_CACHE_SIZE_CHARS, dir.getPath());
+
+    /**
+     * Set how to create the block cache for content stores opened after this.
+     *
+     * Use this to change the size or eviction policy of the cache, or to disable
+     * caching by returning {@link BlockCache#NONE}.
+     *
+     * @param factory function that creates a block cache for the content store dir
+     */
+    public static void setBlockCacheFactory(Function<File, BlockCache> factory) {
+        blockCacheFactory = factory;
+    }
+
+    SimpleResourcePool<BlockCodec.Decoder> decompresserPool;
+
+    /** Buffers to read a compressed block into */
+    SimpleResourcePool<byte[]> blockbufPool;
+
+    /** Decompressed blocks we've recently used */
+    private BlockCache blockCache;
+
+    /** Memory mappings of the contents file, each containing BLOCKS_PER_MAPPING blocks (except the last) */
+    private ByteBuffer[] contentsFileMappings;
 
     /**
      * @param dir content store dir
@@ -58,23 +90,55 @@ public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
             throw new ErrorOpeningIndex("Dir doesn't exist: " + dir);
         if (!tocFile.exists())
             throw new ErrorOpeningIndex("Toc file doesn't exist: " + tocFile);
+        codec = codecFromVersionFile(dir);
 
-        decompresserPool = new SimpleResourcePool<Inflater>(POOL_SIZE) {
+        decompresserPool = new SimpleResourcePool<BlockCodec.Decoder>(POOL_SIZE) {
             @Override
-            public Inflater createResource() {
-                return new Inflater();
+            public BlockCodec.Decoder createResource() {
+                return codec.createDecoder();
             }
 
             @Override
-            public void destroyResource(Inflater resource) {
-                resource.end();
+            public void destroyResource(BlockCodec.Decoder resource) {
+                resource.close();
             }
         };
+        blockbufPool = new SimpleResourcePool<byte[]>(POOL_SIZE) {
+            @Override
+            public byte[] createResource() {
+                return new byte[BLOCK_SIZE_BYTES];
+            }
+        };
+        blockCache = blockCacheFactory.apply(dir);
     }
     
     @Override
     protected void performInitialization() {
         readToc();
+        mapContentsFile();
+    }
+
+    /**
+     * Map the contents file into memory, so we can read blocks without locking
+     * and without the overhead of opening the file for each request.
+     */
+    private void mapContentsFile() {
+        long fileLength = contentsFile.exists() ? contentsFile.length() : 0;
+        int numberOfMappings = (int) ((fileLength + (long) BLOCKS_PER_MAPPING * BLOCK_SIZE_BYTES - 1)
+                / ((long) BLOCKS_PER_MAPPING * BLOCK_SIZE_BYTES));
+        contentsFileMappings = new ByteBuffer[numberOfMappings];
+        if (numberOfMappings == 0)
+            return;
+        try (RandomAccessFile raf = new RandomAccessFile(contentsFile, "r");
+                FileChannel fileChannel = raf.getChannel()) {
+            for (int i = 0; i < numberOfMappings; i++) {
+                long start = (long) i * BLOCKS_PER_MAPPING * BLOCK_SIZE_BYTES;
+                long size = Math.min(fileLength - start, (long) BLOCKS_PER_MAPPING * BLOCK_SIZE_BYTES);
+                contentsFileMappings[i] = fileChannel.map(MapMode.READ_ONLY, start, size);
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
     }
 
     @Override
@@ -95,6 +159,9 @@ public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
         if (!initialized)
             initialize();
         decompresserPool.close();
+        blockbufPool.close();
+        blockCache.close();
+        contentsFileMappings = null;
         closeMappedToc();
         super.close();
     }
@@ -114,122 +181,117 @@ public class ContentStoreFixedBlockReader extends ContentStoreFixedBlock {
     }
 
     @Override
-    public synchronized String[] retrieveParts(int contentId, int[] start, int[] end) {
+    public String[] retrieveParts(int contentId, int[] start, int[] end) {
         if (!initialized)
             initialize();
-        try {
-            // Find the correct TOC entry
-            TocEntry e = toc.get(contentId);
-            if (e == null || e.deleted)
-                return null;
-
-            // Sanity-check parameters
-            int n = start.length;
-            if (n != end.length)
-                throw new IllegalArgumentException("start and end must be of equal length");
-
-            // Create array for results
-            String[] result = new String[n];
-
-            // Open the file
-            try (FileInputStream fileInputStream = new FileInputStream(contentsFile)) {
-                try (FileChannel fileChannel = fileInputStream.getChannel()) {
-                    // Retrieve the strings requested
-                    for (int i = 0; i < n; i++) {
-                        int a = start[i];
-                        int b = end[i];
-
-                        if (a == -1)
-                            a = 0;
-                        if (b == -1)
-                            b = e.entryLengthCharacters;
-
-                        // Check values
-                        if (a < 0 || b < 0) {
-                            throw new IllegalArgumentException("Illegal values, start = " + a + ", end = " + b);
-                        }
-                        if (a > e.entryLengthCharacters || b > e.entryLengthCharacters) {
-                            throw new IllegalArgumentException("Value(s) out of range, start = " + a
-                                    + ", end = " + b + ", content length = " + e.entryLengthCharacters);
-                        }
-                        if (b <= a) {
-                            throw new IllegalArgumentException(
-                                    "Tried to read empty or negative length snippet (from " + a
-                                            + " to " + b + ")");
-                        }
-
-                        // 1 - determine what blocks to read
-                        int firstBlock = -1, lastBlock = -1;
-                        int bl = 0;
-                        int charOffset = -1;
-                        for (int offs : e.blockCharOffsets) {
-                            if (offs <= a) {
-                                firstBlock = bl; // last block that starts before a
-                                charOffset = offs;
-                            }
-                            if (offs > b && lastBlock == -1) {
-                                lastBlock = bl - 1; // first block that ends after b
-                                break;
-                            }
-                            bl++;
-                        }
-                        if (lastBlock == -1)
-                            lastBlock = bl - 1; // last available block
-
-                        // 2 - read and decode blocks
-                        StringBuilder decoded = new StringBuilder();
-                        for (int j = firstBlock; j <= lastBlock; j++) {
-                            long blockNum = e.getBlockNumber(j);
-                            long readStartOffset = blockNum * BLOCK_SIZE_BYTES;
-                            int bytesToRead = BLOCK_SIZE_BYTES;
-                            ByteBuffer buffer = ByteBuffer.allocate(bytesToRead);
-                            int bytesRead = fileChannel.read(buffer, readStartOffset);
-                            if (bytesRead < bytesToRead) {
-                                // Apparently, something went wrong.
-                                throw new BlackLabRuntimeException("Not enough bytes read, " + bytesRead
-                                        + " < " + bytesToRead);
-                            }
-                            String decodedBlock = decodeBlock(buffer.array(), 0, bytesRead);
-                            decoded.append(decodedBlock);
-                        }
-
-                        // 3 - take just what we need
-                        int firstChar = a - charOffset;
-                        result[i] = decoded.substring(firstChar, firstChar + b - a);
-                    }
+        // Find the correct TOC entry
+        TocEntry e = toc.get(contentId);
+        if (e == null || e.deleted)
+            return null;
+
+        // Sanity-check parameters
+        int n = start.length;
+        if (n != end.length)
+            throw new IllegalArgumentException("start and end must be of equal length");
+
+        // Create array for results
+        String[] result = new String[n];
+
+        // Retrieve the strings requested
+        for (int i = 0; i < n; i++) {
+            int a = start[i];
+            int b = end[i];
+
+            if (a == -1)
+                a = 0;
+            if (b == -1)
+                b = e.entryLengthCharacters;
+
+            // Check values
+            if (a < 0 || b < 0) {
+                throw new IllegalArgumentException("Illegal values, start = " + a + ", end = " + b);
+            }
+            if (a > e.entryLengthCharacters || b > e.entryLengthCharacters) {
+                throw new IllegalArgumentException("Value(s) out of range, start = " + a
+                        + ", end = " + b + ", content length = " + e.entryLengthCharacters);
+            }
+            if (b <= a) {
+                throw new IllegalArgumentException(
+                        "Tried to read empty or negative length snippet (from " + a
+                                + " to " + b + ")");
+            }
+
+            // 1 - determine what blocks to read
+            int firstBlock = -1, lastBlock = -1;
+            int bl = 0;
+            int charOffset = -1;
+            for (int offs : e.blockCharOffsets) {
+                if (offs <= a) {
+                    firstBlock = bl; // last block that starts before a
+                    charOffset = offs;
                 }
+                if (offs > b && lastBlock == -1) {
+                    lastBlock = bl - 1; // first block that ends after b
+                    break;
+                }
+                bl++;
+            }
+            if (lastBlock == -1)
+                lastBlock = bl - 1; // last available block
+
+            // 2 - get decoded blocks (from the cache if possible)
+            StringBuilder decoded = new StringBuilder();
+            for (int j = firstBlock; j <= lastBlock; j++) {
+                decoded.append(blockCache.get(e.getBlockNumber(j), this::readAndDecodeBlock));
             }
-            return result;
+
+            // 3 - take just what we need
+            int firstChar = a - charOffset;
+            result[i] = decoded.substring(firstChar, firstChar + b - a);
+        }
+        return result;
+    }
+
+    /**
+     * Read a block from the contents file and decode it.
+     *
+     * @param blockNum the block to read
+     * @return the decoded block
+     */
+    private String readAndDecodeBlock(int blockNum) {
+        ByteBuffer mapping = contentsFileMappings[blockNum / BLOCKS_PER_MAPPING];
+        int offsetInMapping = (blockNum % BLOCKS_PER_MAPPING) * BLOCK_SIZE_BYTES;
+        if (offsetInMapping + BLOCK_SIZE_BYTES > mapping.capacity()) {
+            // Apparently, something went wrong.
+            throw new BlackLabRuntimeException("Not enough bytes to read block " + blockNum + ", "
+                    + (mapping.capacity() - offsetInMapping) + " < " + BLOCK_SIZE_BYTES);
+        }
+        byte[] blockbuf = blockbufPool.acquire();
+        try {
+            // Use a duplicate so we don't change the shared mapping's position
+            ByteBuffer buffer = mapping.duplicate();
+            ((Buffer) buffer).position(offsetInMapping);
+            buffer.get(blockbuf);
+            return decodeBlock(blockbuf, 0, BLOCK_SIZE_BYTES);
         } catch (IOException e) {
             throw BlackLabRuntimeException.wrap(e);
+        } finally {
+            blockbufPool.release(blockbuf);
         }
     }
 
     protected String decodeBlock(byte[] buf, int offset, int length) throws IOException {
         if (!initialized)
             initialize();
+        // unzip block
+        BlockCodec.Decoder decompresser = decompresserPool.acquire();
+        byte[] zipbuf = zipbufPool.acquire();
         try {
-            // unzip block
-            Inflater decompresser = decompresserPool.acquire();
-            byte[] zipbuf = zipbufPool.acquire();
-            try {
-                decompresser.reset();
-                decompresser.setInput(buf, offset, length);
-                int resultLength = decompresser.inflate(zipbuf);
-                if (resultLength <= 0) {
-                    throw new IOException("Error, inflate returned " + resultLength);
-                }
-                if (!decompresser.finished()) {
-                    // This shouldn't happen because our max block size prevents it
-                    throw new IOException("Unzip buffer size insufficient");
-                }
-                return new String(zipbuf, 0, resultLength, DEFAULT_CHARSET);
-            } finally {
-                decompresserPool.release(decompresser);
-                zipbufPool.release(zipbuf);
-            }
-        } catch (DataFormatException e) {
-            throw new IOException(e);
+            int resultLength = decompresser.decode(buf, offset, length, zipbuf);
+            return new String(zipbuf, 0, resultLength, DEFAULT_CHARSET);
+        } finally {
+            decompresserPool.release(decompresser);
+            zipbufPool.release(zipbuf);
         }
     }
 
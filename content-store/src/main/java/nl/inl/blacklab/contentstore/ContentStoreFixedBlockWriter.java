@@ -27,15 +27,16 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.zip.Deflater;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.collections.api.iterator.IntIterator;
 import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 
-import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
 import nl.inl.util.SimpleResourcePool;
@@ -49,9 +50,12 @@ import nl.inl.util.SimpleResourcePool;
  * character offset associated with each block so we can quickly access the
  * data. Free blocks will be re-used to save space.
  *
- * Thread-safety: not thread-safe in index mode, but thread-safe while searching
+ * Thread-safety: whole documents may be stored from several threads at once;
+ * their blocks are compressed in the calling thread, outside our lock.
+ * Storing a document in parts (storePart() followed by store()) is serialized
+ * and must only be done by one thread at a time.
  */
-@NotThreadSafe // in index mode
+@ThreadSafe
 public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
     private static final Logger logger = LogManager.getLogger(ContentStoreFixedBlockWriter.class);
 
@@ -121,7 +125,7 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
     /** Used to pad blocks that are less than BLOCK_SIZE long */
     private byte[] blockPadding = new byte[BLOCK_SIZE_BYTES];
 
-    SimpleResourcePool<Deflater> compresserPool;
+    SimpleResourcePool<BlockCodec.Encoder> compresserPool;
 
     /**
      * @param dir content store dir
@@ -129,6 +133,17 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
      * @throws ErrorOpeningIndex
      */
     public ContentStoreFixedBlockWriter(File dir, boolean create) throws ErrorOpeningIndex {
+        this(dir, create, DEFLATE);
+    }
+
+    /**
+     * @param dir content store dir
+     * @param create if true, create a new content store
+     * @param codec codec to compress blocks with if we create a new content store
+     *            (an existing content store keeps the codec it was created with)
+     * @throws ErrorOpeningIndex
+     */
+    public ContentStoreFixedBlockWriter(File dir, boolean create, BlockCodec codec) throws ErrorOpeningIndex {
         super(dir);
         if (!dir.exists() && !dir.mkdir())
             throw new ErrorOpeningIndex("Could not create dir: " + dir);
@@ -156,6 +171,7 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
                     throw new ErrorOpeningIndex("Could not delete data file: " + f);
             }
         }
+        this.codec = create ? codec : codecFromVersionFile(dir);
         if (tocFile.exists())
             readToc();
         tocModified = false;
@@ -172,15 +188,15 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
         blockIndicesWhileStoring = new IntArrayList();
         blockCharOffsetsWhileStoring = new IntArrayList();
 
-        compresserPool = new SimpleResourcePool<Deflater>(POOL_SIZE) {
+        compresserPool = new SimpleResourcePool<BlockCodec.Encoder>(POOL_SIZE) {
             @Override
-            public Deflater createResource() {
-                return new Deflater();
+            public BlockCodec.Encoder createResource() {
+                return ContentStoreFixedBlockWriter.this.codec.createEncoder();
             }
 
             @Override
-            public void destroyResource(Deflater resource) {
-                resource.end();
+            public void destroyResource(BlockCodec.Encoder resource) {
+                resource.close();
             }
         };
     }
@@ -308,26 +324,48 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
      * @return the block number
      */
     private int writeToFreeBlock(byte[] encoded) {
-        int freeBlock;
+        int freeBlock = allocateBlock();
+        writeBlock(fchContentsFile, freeBlock, encoded);
+        return freeBlock;
+    }
+
+    /**
+     * Choose a free block to write to.
+     *
+     * Caller must hold our lock.
+     *
+     * @return the block number
+     */
+    private int allocateBlock() {
         if (freeBlocks.size() == 0) {
             // Add a new one at the end
             totalBlocks++;
-            freeBlock = totalBlocks - 1;
-        } else {
-            // Take the first from the list
-            freeBlock = freeBlocks.removeAtIndex(0);
+            return totalBlocks - 1;
         }
-        long offset = (long) freeBlock * BLOCK_SIZE_BYTES;
+        // Take the first from the list
+        return freeBlocks.removeAtIndex(0);
+    }
 
-        // Write data to the block
+    /**
+     * Write the block data to the specified block.
+     *
+     * Uses positional writes, so several threads can write (different) blocks
+     * at the same time.
+     *
+     * @param channel the contents file
+     * @param blockNumber block to write
+     * @param encoded the block data
+     */
+    private void writeBlock(FileChannel channel, int blockNumber, byte[] encoded) {
+        long offset = (long) blockNumber * BLOCK_SIZE_BYTES;
         try {
-            fchContentsFile.position(offset);
             ByteBuffer buf = ByteBuffer.wrap(encoded);
-            fchContentsFile.write(buf);
+            while (buf.hasRemaining())
+                offset += channel.write(buf, offset);
             // pad block with garbage
             buf = ByteBuffer.wrap(blockPadding, 0, BLOCK_SIZE_BYTES - encoded.length);
-            fchContentsFile.write(buf);
-            return freeBlock;
+            while (buf.hasRemaining())
+                offset += channel.write(buf, offset);
         } catch (IOException e) {
             throw BlackLabRuntimeException.wrap(e);
         }
@@ -390,9 +428,14 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
      * @return the id assigned to the content
      */
     @Override
-    public synchronized int store(String content) {
-        storePart(content);
-        return store();
+    public int store(String content) {
+        synchronized (this) {
+            if (isStoringInParts()) {
+                storePart(content);
+                return store();
+            }
+        }
+        return storeWholeDocument(content);
     }
 
     /**
@@ -408,9 +451,65 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
      * @return the id assigned to the document
      */
     @Override
-    public synchronized int store(byte[] content, int offset, int length, Charset cs) {
-        storePart(content, offset, length, cs);
-        return store();
+    public int store(byte[] content, int offset, int length, Charset cs) {
+        synchronized (this) {
+            if (isStoringInParts()) {
+                storePart(content, offset, length, cs);
+                return store();
+            }
+        }
+        return storeWholeDocument(new String(content, offset, length, cs));
+    }
+
+    /**
+     * Have parts of the current document been stored using storePart()?
+     *
+     * Caller must hold our lock.
+     *
+     * @return true if the next store() call should finish that document
+     */
+    private boolean isStoringInParts() {
+        return getUnwrittenCharCount() > 0 || !blockIndicesWhileStoring.isEmpty();
+    }
+
+    /**
+     * Store a complete document.
+     *
+     * The blocks are compressed in the calling thread without holding our lock,
+     * so several indexing threads can do this at the same time. Only choosing the
+     * blocks to write to and adding the TOC entry is serialized.
+     *
+     * @param content the document
+     * @return the id assigned to the document
+     */
+    private int storeWholeDocument(String content) {
+        List<byte[]> blocks = new ArrayList<>();
+        IntArrayList blockCharOffsets = new IntArrayList();
+        int bytes = 0;
+        int[] charsEncoded = new int[1];
+        for (int offset = 0; offset < content.length(); offset += charsEncoded[0]) {
+            byte[] encoded = encodeBlock(content, offset, content.length() - offset, charsEncoded);
+            blocks.add(encoded);
+            blockCharOffsets.add(offset);
+            bytes += encoded.length;
+        }
+
+        int[] blockIndices = new int[blocks.size()];
+        FileChannel channel;
+        TocEntry e;
+        synchronized (this) {
+            ensureContentsFileOpen();
+            channel = fchContentsFile;
+            for (int i = 0; i < blockIndices.length; i++)
+                blockIndices[i] = allocateBlock();
+            e = new TocEntry(nextId, bytes, content.length(), false, blockIndices, blockCharOffsets.toArray());
+            nextId++;
+            toc.put(e.id, e);
+            tocModified = true;
+        }
+        for (int i = 0; i < blockIndices.length; i++)
+            writeBlock(channel, blockIndices[i], blocks.get(i));
+        return e.id;
     }
 
     /** The store routine (after appending to unwrittenContents) */
@@ -504,14 +603,39 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
         tocModified = true;
     }
 
+    /**
+     * Encode a block from unwrittenContents and advance unwrittenIndex.
+     *
+     * @return the encoded block
+     */
     protected byte[] encodeBlock() {
+        int[] charsEncoded = new int[1];
+        byte[] encoded = encodeBlock(unwrittenContents, unwrittenIndex, getUnwrittenCharCount(), charsEncoded);
+        // NOTE: do not delete from unwrittenContents here,
+        // call site needs to know how much we advanced in the buffer to calculate how much uncompressed data was used
+        this.unwrittenIndex += charsEncoded[0];
+        return encoded;
+    }
+
+    /**
+     * Encode a number of characters to produce a block of (almost) BLOCK_SIZE_BYTES.
+     *
+     * Doesn't use the state of the document being stored, so several threads may
+     * call this at the same time.
+     *
+     * @param contents characters to encode
+     * @param start first character to encode
+     * @param available number of characters available from start
+     * @param charsEncoded (out) element 0 is set to the number of characters encoded
+     * @return the encoded block
+     */
+    private byte[] encodeBlock(CharSequence contents, int start, int available, int[] charsEncoded) {
 
         int length = TYPICAL_BLOCK_SIZE_CHARACTERS;
-        int available = getUnwrittenCharCount();
         if (length > available)
             length = available;
 
-        Deflater compresser = compresserPool.acquire();
+        BlockCodec.Encoder compresser = compresserPool.acquire();
         byte[] zipbuf = zipbufPool.acquire();
         boolean doMinCheck = true;
         try {
@@ -520,7 +644,7 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
                 // Serialize to bytes
                 byte[] encoded;
                 while (true) {
-                    encoded = unwrittenContents.substring(this.unwrittenIndex, this.unwrittenIndex + length).getBytes(DEFAULT_CHARSET);
+                    encoded = contents.subSequence(start, start + length).toString().getBytes(DEFAULT_CHARSET);
 
                     // Make sure the block fits in our zip buffer
                     if (encoded.length <= MAX_BLOCK_SIZE_BYTES)
@@ -535,16 +659,10 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
                 }
 
                 // Compress
-                compresser.reset();
-                compresser.setInput(encoded);
-                compresser.finish();
-                int compressedDataLength = compresser.deflate(zipbuf, 0, zipbuf.length, Deflater.FULL_FLUSH);
-                if (compressedDataLength <= 0) {
-                    throw new BlackLabRuntimeException("Error, deflate returned " + compressedDataLength);
-                }
-                if (compressedDataLength == zipbuf.length) {
+                int compressedDataLength = compresser.encode(encoded, 0, encoded.length, zipbuf);
+                if (compressedDataLength < 0) {
                     throw new BlackLabRuntimeException(
-                            "Error, deflate returned size of zipbuf, this indicates insufficient space");
+                            "Error, encoded block didn't fit in zipbuf, this indicates insufficient space");
                 }
 
                 // Check the size
@@ -575,9 +693,7 @@ public class ContentStoreFixedBlockWriter extends ContentStoreFixedBlock {
                     //logger.debug("Block ok. Char length: " + length + ", encoded length: " + compressedDataLength +
                     //", waste%: " + waste + ", ratio: " + ratio);
 
-                    // NOTE: do not delete from unwrittenContents here,
-                    // call site needs to know how much we advanced in the buffer to calculate how much uncompressed data was used
-                    this.unwrittenIndex += length;
+                    charsEncoded[0] = length;
                     return Arrays.copyOfRange(zipbuf, 0, compressedDataLength);
                 }
             }
@@ -0,0 +1,126 @@
+package nl.inl.blacklab.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import nl.inl.blacklab.forwardindex.FiidLookup;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.results.Contexts;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+import nl.inl.blacklab.testutil.TestIndex;
+
+/**
+ * Measures how long it takes to sort a large number of hits by each of the
+ * built-in hit properties.
+ *
+ * The hits are randomly chosen tokens from the small test index, so the
+ * contexts are realistic but short. Contexts are determined during setup, so
+ * only the sort itself is measured.
+ *
+ * Not run as part of the unit tests. Run it using the main method, e.g. from
+ * your IDE or with exec:java on the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class HitPropertySortBenchmark {
+
+    @Param({ "2000000" })
+    int numberOfHits;
+
+    @Param({
+        "hit:word:s",
+        "left:word:i",
+        "right:word:i",
+        "wordleft:word:s",
+        "wordright:word:s",
+        "context:word:s:L1-2;H1;R1",
+        "docid",
+        "doc",
+        "hitposition",
+        "field:fromInputFile",
+        "decade:fromInputFile",
+        "hit:word:i,hitposition"
+    })
+    String property;
+
+    private TestIndex testIndex;
+
+    private Hits hits;
+
+    private HitProperty sortProp;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        testIndex = new TestIndex();
+        BlackLabIndex index = testIndex.index();
+
+        // Pick random single-token hits from the test index
+        Hits allTokens = testIndex.find("[]");
+        allTokens.size(); // make sure all hits have been read
+        HitsArrays tokens = allTokens.hitsArrays();
+        Random random = new Random(12345);
+        int[] docs = new int[numberOfHits];
+        int[] starts = new int[numberOfHits];
+        int[] ends = new int[numberOfHits];
+        for (int i = 0; i < numberOfHits; i++) {
+            int j = random.nextInt(tokens.size());
+            docs[i] = tokens.doc(j);
+            starts[i] = tokens.start(j);
+            ends[i] = tokens.end(j);
+        }
+        hits = Hits.fromArrays(allTokens.queryInfo(), docs, starts, ends);
+
+        // Prepare the sort property, just like Hits.sort() does
+        HitProperty prop = HitProperty.deserialize(hits, property);
+        List<Annotation> requiredContext = prop.needsContext();
+        Contexts contexts = null;
+        if (requiredContext != null) {
+            List<FiidLookup> fiidLookups = FiidLookup.getList(requiredContext, index.reader());
+            contexts = new Contexts(hits, requiredContext, prop.needsContextSize(index), fiidLookups);
+        }
+        sortProp = prop.copyWith(hits, contexts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        testIndex.close();
+    }
+
+    @Benchmark
+    public HitsArrays sort() {
+        return hits.hitsArrays().sort(sortProp);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(HitPropertySortBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
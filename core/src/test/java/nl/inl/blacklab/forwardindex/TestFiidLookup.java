@@ -0,0 +1,47 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.testutil.TestIndex;
+
+public class TestFiidLookup {
+
+    static TestIndex testIndex;
+
+    @BeforeClass
+    public static void setUp() {
+        testIndex = new TestIndex();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (testIndex != null)
+            testIndex.close();
+    }
+
+    @Test
+    public void testLookupIsShared() {
+        IndexReader reader = testIndex.index().reader();
+        Annotation word = testIndex.index().mainAnnotatedField().annotation("word");
+        Assert.assertSame(FiidLookup.forReader(reader, word), FiidLookup.forReader(reader, word));
+    }
+
+    @Test
+    public void testLookupMatchesStoredField() throws IOException {
+        IndexReader reader = testIndex.index().reader();
+        Annotation word = testIndex.index().mainAnnotatedField().annotation("word");
+        FiidLookup fiidLookup = FiidLookup.forReader(reader, word);
+        for (int docId = 0; docId < reader.maxDoc(); docId++) {
+            String storedFiid = reader.document(docId).get(word.forwardIndexIdField());
+            if (storedFiid != null)
+                Assert.assertEquals(Integer.parseInt(storedFiid), fiidLookup.get(docId));
+        }
+    }
+}
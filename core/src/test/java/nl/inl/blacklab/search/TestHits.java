@@ -16,6 +16,7 @@
 package nl.inl.blacklab.search;
 
 import java.io.IOException;
+import java.util.Random;
 
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.spans.Spans;
@@ -24,8 +25,13 @@ import org.junit.Test;
 
 import nl.inl.blacklab.mocks.MockBlackLabIndex;
 import nl.inl.blacklab.mocks.MockSpans;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+import nl.inl.blacklab.resultproperty.HitPropertyHitPosition;
+import nl.inl.blacklab.resultproperty.HitPropertyMultiple;
 import nl.inl.blacklab.search.results.Hit;
 import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.HitsSorted;
 
 public class TestHits {
 
@@ -65,4 +71,44 @@ public class TestHits {
         Assert.assertEquals(Spans.NO_MORE_POSITIONS, spans.nextStartPosition());
     }
 
+    @Test
+    public void testHitsSortLazily() {
+        int n = 20_000;
+        Random random = new Random(1234);
+        int[] aDoc = new int[n];
+        int[] aStart = new int[n];
+        int[] aEnd = new int[n];
+        for (int i = 0; i < n; i++) {
+            aDoc[i] = random.nextInt(100);
+            aStart[i] = random.nextInt(1000);
+            aEnd[i] = aStart[i] + 1 + random.nextInt(3);
+        }
+        try (MockBlackLabIndex index = new MockBlackLabIndex()) {
+            Hits hits = Hits.fromArrays(index.createDefaultQueryInfo(), aDoc, aStart, aEnd);
+            HitProperty sortBy = new HitPropertyMultiple(new HitPropertyDocumentId(), new HitPropertyHitPosition());
+            Hits expected = hits.sort(sortBy);
+            Hits lazy = hits.sortLazily(sortBy);
+
+            // Request a few windows, then all hits, and compare with the regular sort
+            assertSameHits(expected.window(0, 50), lazy.window(0, 50));
+            assertSameHits(expected.window(1500, 50), lazy.window(1500, 50));
+            Assert.assertFalse(lazy.doneProcessingAndCounting());
+            Assert.assertTrue(((HitsSorted) lazy).numberOfIntsRetainedForSorting() > 0);
+            assertSameHits(expected.window(5000, 50), lazy.window(5000, 50));
+            assertSameHits(expected, lazy);
+            Assert.assertTrue(lazy.doneProcessingAndCounting());
+            // Source hits etc. should have been released
+            Assert.assertEquals(0, ((HitsSorted) lazy).numberOfIntsRetainedForSorting());
+        }
+    }
+
+    private static void assertSameHits(Hits expected, Hits actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).doc(), actual.get(i).doc());
+            Assert.assertEquals(expected.get(i).start(), actual.get(i).start());
+            Assert.assertEquals(expected.get(i).end(), actual.get(i).end());
+        }
+    }
+
 }
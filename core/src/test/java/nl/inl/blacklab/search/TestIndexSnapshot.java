@@ -0,0 +1,59 @@
+package nl.inl.blacklab.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.exceptions.DocumentFormatNotFound;
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.index.Indexer;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.testutil.TestIndex;
+
+public class TestIndexSnapshot {
+
+    static TestIndex testIndex;
+
+    @BeforeClass
+    public static void setUp() {
+        testIndex = new TestIndex();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (testIndex != null)
+            testIndex.close();
+    }
+
+    @Test
+    public void testSearchWhileIndexing() throws DocumentFormatNotFound, ErrorOpeningIndex, InvalidQuery {
+        List<String> expected = Arrays.asList("brown [fox] jumps");
+        testIndex.index().initializeSnapshot();
+        Assert.assertEquals(expected, testIndex.findConc(" 'fox' "));
+
+        // Add a document while the index is open for searching
+        Indexer indexer = Indexer.openIndex(testIndex.indexDir());
+        try {
+            indexer.index("test5", "<doc><w l='a' p='art'>a</w> <w l='fox' p='nou'>fox</w></doc>".getBytes());
+        } finally {
+            indexer.close();
+        }
+
+        // The snapshot we had open doesn't see the new document, but is still intact
+        Assert.assertEquals(expected, testIndex.findConc(" 'fox' "));
+        Assert.assertEquals(Arrays.asList("May [the Force] be"), testIndex.findConc(" 'the' 'force' "));
+
+        // Reopening the index publishes the new document
+        try (BlackLabIndex reopened = BlackLab.open(testIndex.indexDir())) {
+            BLSpanQuery query = CorpusQueryLanguageParser.parse(" 'fox' ").toQuery(QueryInfo.create(reopened), null);
+            Assert.assertEquals(2, reopened.find(query, null).size());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package nl.inl.blacklab.search;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.document.Document;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import nl.inl.blacklab.exceptions.BlackLabException;
+import nl.inl.blacklab.index.DocumentFormats;
+import nl.inl.blacklab.index.Indexer;
+import nl.inl.blacklab.indexers.config.ConfigInputFormat;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.results.Concordances;
+import nl.inl.blacklab.search.results.ContextSize;
+import nl.inl.blacklab.search.results.Hit;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.Kwics;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.util.UtilsForTesting;
+
+/**
+ * Check that splitting a multi-document XML file while reading it gives the
+ * same index as parsing the whole file.
+ */
+@RunWith(Parameterized.class)
+public class TestIndexSplitFiles {
+
+    private static final String FORMAT = "TestIndexSplitFiles";
+
+    private static final String FORMAT_CONFIG = "fileType: xml\n"
+            + "fileTypeOptions:\n"
+            + "  splitFilesLargerThanMB: 0\n"
+            + "documentPath: //doc\n"
+            + "annotatedFields:\n"
+            + "  contents:\n"
+            + "    containerPath: .\n"
+            + "    wordPath: .//w\n"
+            + "    annotations:\n"
+            + "    - name: word\n"
+            + "      valuePath: .\n"
+            + "    - name: lemma\n"
+            + "      valuePath: \"@l\"\n"
+            + "metadata:\n"
+            + "  containerPath: .\n"
+            + "  fields:\n"
+            + "  - name: title\n"
+            + "    valuePath: \"@title\"\n";
+
+    private static final String[] DOCUMENTS = {
+            "<doc title='one'><w l='the'>The</w> <w l='quick'>quïck</w> <w l='fox'>fox</w></doc>",
+            "<doc title='two'><w l='a'>A</w> <w l='lazy'>låzy</w> <w l='dog'>dog</w></doc>",
+            "<doc title='three'><w l='the'>the</w> <w l='end'>end</w></doc>",
+    };
+
+    private static final String INPUT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<corpus>\n"
+            + "  " + DOCUMENTS[0] + "\n"
+            + "  <!-- <doc title='commented'><w>no</w></doc> -->\n"
+            + "  " + DOCUMENTS[1] + "\n"
+            + "  <group>" + DOCUMENTS[2] + "</group>\n"
+            + "</corpus>\n";
+
+    @Parameters(name = "threads: {0}, stream: {1}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] { { 1, false }, { 2, false }, { 2, true } });
+    }
+
+    @Parameter
+    public int numberOfThreads;
+
+    /** Index from a stream of unknown size (which is parsed as a whole) instead of a file? */
+    @Parameter(1)
+    public boolean fromStream;
+
+    private File indexDir;
+
+    private BlackLabIndex index;
+
+    @BeforeClass
+    public static void registerFormat() throws IOException {
+        DocumentFormats.registerFormat(new ConfigInputFormat(FORMAT, new StringReader(FORMAT_CONFIG), false, null));
+    }
+
+    @Before
+    public void setUp() throws BlackLabException, IOException {
+        indexDir = UtilsForTesting.createBlackLabTestDir("TestIndexSplitFiles");
+        File inputFile = new File(indexDir.getParentFile(), "TestIndexSplitFiles.xml");
+        FileUtils.writeStringToFile(inputFile, INPUT, StandardCharsets.UTF_8);
+        Indexer indexer = Indexer.createNewIndex(indexDir, FORMAT);
+        try {
+            indexer.setNumberOfThreadsToUse(numberOfThreads);
+            if (fromStream) {
+                try (InputStream is = new FileInputStream(inputFile)) {
+                    indexer.index(inputFile.getName(), is);
+                }
+            } else {
+                indexer.index(inputFile);
+            }
+        } finally {
+            indexer.close();
+            inputFile.delete();
+        }
+        index = BlackLab.open(indexDir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (index != null)
+            index.close();
+        FileUtils.deleteDirectory(indexDir);
+    }
+
+    /** Get the stored document contents per title */
+    private Map<String, String> storedDocuments() {
+        Map<String, String> result = new TreeMap<>();
+        ContentAccessor contentAccessor = index.contentAccessor(index.mainAnnotatedField());
+        for (int docId = 0; docId < index.reader().maxDoc(); docId++) {
+            Document doc = index.doc(docId).luceneDoc();
+            if (doc.get("title") == null)
+                continue; // (index metadata document)
+            String[] contents = contentAccessor.getSubstringsFromDocument(doc, new int[] { -1 }, new int[] { -1 });
+            result.put(doc.get("title"), contents[0]);
+        }
+        return result;
+    }
+
+    private List<String> findConc(String query) throws BlackLabException {
+        Hits hits = index.find(CorpusQueryLanguageParser.parse(query).toQuery(QueryInfo.create(index)), null);
+        Annotation word = index.mainAnnotatedField().mainAnnotation();
+        Kwics kwics = hits.kwics(ContextSize.get(1));
+        List<String> results = new ArrayList<>();
+        for (Hit hit : hits) {
+            Kwic kwic = kwics.get(hit);
+            results.add((StringUtils.join(kwic.left(word), " ") + " [" + StringUtils.join(kwic.match(word), " ")
+                    + "] " + StringUtils.join(kwic.right(word), " ")).trim());
+        }
+        // Documents may have been indexed in any order
+        Collections.sort(results);
+        return results;
+    }
+
+    @Test
+    public void testDocuments() {
+        Map<String, String> expected = new TreeMap<>();
+        expected.put("one", DOCUMENTS[0]);
+        expected.put("two", DOCUMENTS[1]);
+        expected.put("three", DOCUMENTS[2]);
+        Assert.assertEquals(expected, storedDocuments());
+    }
+
+    @Test
+    public void testSearch() throws BlackLabException {
+        Assert.assertEquals(Arrays.asList("[The] quïck", "[the] end"), findConc("[lemma='the']"));
+        Assert.assertEquals(Arrays.asList("A [låzy] dog", "The [quïck] fox"), findConc("[lemma='quick|lazy']"));
+    }
+
+    @Test
+    public void testHighlightOffsets() throws BlackLabException {
+        // Character offsets are determined from byte offsets within each document; check them using the content store
+        Hits hits = index.find(CorpusQueryLanguageParser.parse("[lemma='lazy']").toQuery(QueryInfo.create(index)), null);
+        Assert.assertEquals(1, hits.size());
+        Concordances concordances = hits.concordances(ContextSize.get(0), ConcordanceType.CONTENT_STORE);
+        Assert.assertEquals("<w l='lazy'>låzy</w>", concordances.get(hits.get(0)).match().trim());
+    }
+}
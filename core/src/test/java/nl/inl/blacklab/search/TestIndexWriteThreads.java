@@ -0,0 +1,65 @@
+package nl.inl.blacklab.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyHitText;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.testutil.TestIndex;
+
+/**
+ * Check that an index written using separate writer threads is the same as one
+ * written by the parsing thread.
+ */
+public class TestIndexWriteThreads {
+
+    static TestIndex testIndex;
+
+    @BeforeClass
+    public static void setUp() {
+        testIndex = new TestIndex(false, 2);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (testIndex != null)
+            testIndex.close();
+    }
+
+    @Test
+    public void testSimple() {
+        List<String> expected = Arrays.asList(
+                "[The] quick",
+                "over [the] lazy",
+                "May [the] Force",
+                "is [the] question");
+        Assert.assertEquals(expected, testIndex.findConc(" 'the' "));
+
+        expected = Arrays.asList(
+                "brown [fox] jumps",
+                "lazy [dog]",
+                "the [Force] be",
+                "the [question]");
+        Assert.assertEquals(expected, testIndex.findConc(" [pos='nou'] "));
+    }
+
+    @Test
+    public void testSortUsesForwardIndex() {
+        List<String> expected = Arrays.asList(
+                "quick [brown fox] jumps",
+                "the [lazy dog]");
+        HitProperty sortBy = new HitPropertyHitText(testIndex.index(), MatchSensitivity.INSENSITIVE);
+        Assert.assertEquals(expected, testIndex.findConc(" [pos='adj'] [pos='nou'] ", sortBy));
+    }
+
+    @Test
+    public void testDocumentCount() {
+        Assert.assertEquals(4, testIndex.index().reader().numDocs());
+    }
+}
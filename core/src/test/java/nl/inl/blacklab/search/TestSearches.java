@@ -1,7 +1,10 @@
 package nl.inl.blacklab.search;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import nl.inl.blacklab.search.results.Concordances;
 import nl.inl.blacklab.search.results.ContextSize;
@@ -9,6 +12,7 @@ import nl.inl.blacklab.search.results.Hit;
 import nl.inl.blacklab.search.results.Kwics;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -16,7 +20,11 @@ import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import nl.inl.blacklab.exceptions.InvalidQuery;
 import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.resultproperty.DocProperty;
+import nl.inl.blacklab.resultproperty.DocPropertyStoredField;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.HitPropertyHitText;
 import nl.inl.blacklab.resultproperty.HitPropertyLeftContext;
@@ -24,11 +32,23 @@ import nl.inl.blacklab.resultproperty.HitPropertyMultiple;
 import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.resultproperty.PropertyValueContextWords;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.indexmetadata.AnnotationSensitivity;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.BLSpanTermQuery;
 import nl.inl.blacklab.search.lucene.SpanQueryFiltered;
+import nl.inl.blacklab.search.results.DocGroup;
+import nl.inl.blacklab.search.results.DocGroups;
+import nl.inl.blacklab.search.results.DocResults;
+import nl.inl.blacklab.search.results.Facets;
 import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.Results;
+import nl.inl.blacklab.search.results.SampleParameters;
+import nl.inl.blacklab.search.results.SearchSettings;
 import nl.inl.blacklab.testutil.TestIndex;
+import nl.inl.util.LuceneUtil;
+import nl.inl.util.TermPrefixIndex;
 
 
 public class TestSearches {
@@ -458,4 +478,112 @@ public class TestSearches {
         }
     }
 
+
+    @Test
+    public void testCollocations() {
+        Hits hits = testIndex.find(" 'the' ");
+        Annotation word = testIndex.index().mainAnnotatedField().annotation("word");
+        TermFrequencyList collocations = hits.collocations(word, ContextSize.get(1, 1, true),
+                MatchSensitivity.INSENSITIVE, true);
+        Assert.assertEquals(7, collocations.size());
+        Assert.assertEquals(1, collocations.frequency("may"));
+        Assert.assertEquals(1, collocations.frequency("force"));
+        Assert.assertEquals(0, collocations.frequency("the"));
+
+        collocations = hits.collocations(word, ContextSize.get(1, 1, true), MatchSensitivity.INSENSITIVE, true,
+                AssociationMeasure.MI);
+        Assert.assertEquals(7, collocations.size());
+        for (TermFrequency tf: collocations) {
+            Assert.assertFalse(Double.isNaN(tf.score));
+        }
+    }
+
+    @Test
+    public void testTermFrequenciesFiltered() {
+        BlackLabIndex index = testIndex.index();
+        Annotation word = index.mainAnnotatedField().annotation("word");
+        for (MatchSensitivity sensitivity: Arrays.asList(MatchSensitivity.SENSITIVE, MatchSensitivity.INSENSITIVE)) {
+            AnnotationSensitivity annotSensitivity = word.sensitivity(sensitivity);
+            // Only the document containing 'find'
+            Query filter = new TermQuery(new Term(word.sensitivity(MatchSensitivity.SENSITIVE).luceneField(), "find"));
+            Map<String, Integer> expectedFreq = LuceneUtil.termFrequencies(index.searcher(), filter, annotSensitivity, null);
+            TermFrequencyList tfl = index.termFrequencies(annotSensitivity, filter, null);
+            Map<String, Integer> actualFreq = new HashMap<>();
+            for (TermFrequency tf: tfl) {
+                actualFreq.put(tf.term, (int) tf.frequency);
+            }
+            Assert.assertEquals(expectedFreq, actualFreq);
+            Assert.assertEquals(2, tfl.frequency("find"));
+        }
+    }
+
+    @Test
+    public void testTermPrefixIndex() {
+        BlackLabIndex index = testIndex.index();
+        Annotation word = index.mainAnnotatedField().annotation("word");
+        String field = word.sensitivity(MatchSensitivity.INSENSITIVE).luceneField();
+        TermPrefixIndex prefixIndex = TermPrefixIndex.forField(index.reader(), field, false);
+        Assert.assertSame(prefixIndex, TermPrefixIndex.forField(index.reader(), field, false));
+        Assert.assertEquals(Arrays.asList("be", "brown"), prefixIndex.find("B", -1, false));
+        Assert.assertEquals(Arrays.asList("mier", "may"), prefixIndex.find("m", 2, true));
+        Assert.assertEquals(Arrays.asList("aap"), prefixIndex.find("a", 1, true));
+        Assert.assertEquals(4, prefixIndex.frequency("The"));
+
+        field = word.sensitivity(MatchSensitivity.SENSITIVE).luceneField();
+        prefixIndex = TermPrefixIndex.forField(index.reader(), field, true);
+        Assert.assertEquals(Arrays.asList("That", "The"), prefixIndex.find("Th", -1, false));
+        Assert.assertTrue(prefixIndex.find("tha", -1, false).isEmpty());
+    }
+
+    @Test
+    public void testSampleWhileSearching() throws InvalidQuery {
+        BlackLabIndex index = testIndex.index();
+        BLSpanQuery query = CorpusQueryLanguageParser.parse(" 'the' ").toQuery(QueryInfo.create(index), null);
+        QueryInfo queryInfo = QueryInfo.create(index, index.mainAnnotatedField());
+        Hits all = testIndex.find(" 'the' ");
+        List<Hit> allHits = new ArrayList<>();
+        all.forEach(allHits::add);
+
+        SampleParameters sampleParameters = SampleParameters.fixedNumber(2, 42);
+        Hits sample = Hits.sampleFromSpanQuery(queryInfo, query, index.searchSettings(), sampleParameters);
+        Assert.assertEquals(2, sample.size());
+        Hits again = index.search().find(query).sample(sampleParameters).execute();
+        Assert.assertEquals(2, again.size());
+        for (int i = 0; i < sample.size(); i++) {
+            Assert.assertEquals(sample.get(i), again.get(i));
+            Assert.assertTrue(allHits.contains(sample.get(i)));
+        }
+
+        // Asking for more hits than there are gives us all of them
+        sample = Hits.sampleFromSpanQuery(queryInfo, query, index.searchSettings(), SampleParameters.fixedNumber(100, 42));
+        Assert.assertEquals(all.size(), sample.size());
+
+        // With maxHitsToProcess, we only sample from the first hits (in index order)
+        int maxHitsToProcess = all.size() - 1;
+        SearchSettings searchSettings = SearchSettings.get(maxHitsToProcess, Results.NO_LIMIT);
+        for (int attempt = 0; attempt < 10; attempt++) {
+            sample = Hits.sampleFromSpanQuery(queryInfo, query, searchSettings, SampleParameters.fixedNumber(100, 42));
+            Assert.assertEquals(maxHitsToProcess, sample.size());
+            for (int i = 0; i < sample.size(); i++)
+                Assert.assertEquals(all.get(i), sample.get(i));
+        }
+    }
+
+    @Test
+    public void testFacets() {
+        DocResults docs = testIndex.find(" 'the' ").perDocResults(Results.NO_LIMIT);
+        DocProperty inputFile = new DocPropertyStoredField(testIndex.index(), "fromInputFile");
+        Facets facets = new Facets(docs, Arrays.asList(inputFile));
+        DocGroups counts = facets.countsPerFacet().get(inputFile);
+        DocGroups expected = docs.group(inputFile, 0);
+        Assert.assertEquals(3, counts.size());
+        Assert.assertEquals(expected.size(), counts.size());
+        for (DocGroup group: expected) {
+            DocGroup count = counts.get(group.identity());
+            Assert.assertNotNull(count);
+            Assert.assertEquals(group.size(), count.size());
+            Assert.assertEquals(group.totalTokens(), count.totalTokens());
+        }
+    }
+
 }
@@ -1,10 +1,13 @@
 package nl.inl.blacklab.search.grouping;
 
+import java.util.List;
+
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import nl.inl.blacklab.forwardindex.FiidLookup;
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.mocks.MockTerms;
 import nl.inl.blacklab.resultproperty.HitProperty;
@@ -14,6 +17,7 @@ import nl.inl.blacklab.resultproperty.PropertyValueContextWords;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.results.Contexts;
 import nl.inl.blacklab.search.results.HitGroup;
 import nl.inl.blacklab.search.results.HitGroups;
 import nl.inl.blacklab.search.results.Hits;
@@ -94,6 +98,64 @@ public class TestHitProperties {
         Assert.assertEquals(1, group.size());
     }
 
+    /**
+     * Check that the direct compare() gives the same result as comparing the values.
+     */
+    private static void assertCompareConsistentWithGet(Hits hits, HitProperty prop) {
+        List<Annotation> requiredContext = prop.needsContext();
+        Contexts contexts = requiredContext == null ? null : new Contexts(hits, requiredContext,
+                prop.needsContextSize(index), FiidLookup.getList(requiredContext, index.reader()));
+        HitProperty p = prop.copyWith(hits, contexts);
+        HitProperty reversed = p.reverse();
+        for (int i = 0; i < hits.size(); i++) {
+            for (int j = 0; j < hits.size(); j++) {
+                int expected = Integer.signum(p.get(i).compareTo(p.get(j)));
+                Assert.assertEquals(prop + " " + i + "," + j, expected, Integer.signum(p.compare(i, j)));
+                Assert.assertEquals("-" + prop + " " + i + "," + j, -expected, Integer.signum(reversed.compare(i, j)));
+            }
+        }
+    }
+
+    @Test
+    public void testCompareConsistentWithGet() {
+        Hits hits = testIndex.find(" 'the'|'be'|'find' ");
+        String[] props = { "hit:word:s", "left:word:i", "right:word:s", "wordleft:word:s", "wordright:word:i",
+                "context:word:s:L1-2;H1;R1", "context:word:i:E1-2;R2-1", "docid", "doc", "hitposition",
+                "field:fromInputFile", "decade:fromInputFile", "wordleft:word:i,docid" };
+        for (String prop: props) {
+            assertCompareConsistentWithGet(hits, HitProperty.deserialize(hits, prop));
+        }
+    }
+
+    /**
+     * Check that hits get the same group key if and only if they have equal values.
+     */
+    private static void assertGroupKeyConsistentWithGet(Hits hits, HitProperty prop) {
+        List<Annotation> requiredContext = prop.needsContext();
+        Contexts contexts = requiredContext == null ? null : new Contexts(hits, requiredContext,
+                prop.needsContextSize(index), FiidLookup.getList(requiredContext, index.reader()));
+        HitProperty p = prop.copyWith(hits, contexts);
+        for (int i = 0; i < hits.size(); i++) {
+            for (int j = 0; j < hits.size(); j++) {
+                long a = p.groupKey(i), b = p.groupKey(j);
+                if (a == HitProperty.NO_GROUP_KEY || b == HitProperty.NO_GROUP_KEY)
+                    continue;
+                Assert.assertEquals(prop + " " + i + "," + j, p.get(i).equals(p.get(j)), a == b);
+            }
+        }
+    }
+
+    @Test
+    public void testGroupKeyConsistentWithGet() {
+        Hits hits = testIndex.find(" 'the'|'be'|'find' ");
+        String[] props = { "hit:word:s", "hit:word:i", "left:word:i", "right:word:s", "wordleft:word:s",
+                "wordright:word:i", "docid", "doc", "hitposition", "field:fromInputFile", "decade:fromInputFile",
+                "wordleft:word:i,docid" };
+        for (String prop: props) {
+            assertGroupKeyConsistentWithGet(hits, HitProperty.deserialize(hits, prop));
+        }
+    }
+
     @Test
     public void testTermSerialization() {
         String[] words = { "aap", "~", "~~", "" };
@@ -0,0 +1,135 @@
+package nl.inl.blacklab.search.results;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.testutil.TestIndex;
+
+/**
+ * Check that reading hits from document ranges gives the same results as
+ * reading each segment as a whole.
+ */
+public class TestHitsFromQueryParallelRanges {
+
+    private static final String QUERY = " 'the|aap|noot|mier|find' ";
+
+    private static TestIndex testIndex;
+
+    private static TestIndex testIndexWithDeletions;
+
+    @BeforeClass
+    public static void setUp() {
+        testIndex = new TestIndex();
+        testIndexWithDeletions = new TestIndex(true);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        testIndex.close();
+        testIndexWithDeletions.close();
+    }
+
+    private static Hits find(BlackLabIndex index, SearchSettings searchSettings, int minDocsPerRange) throws InvalidQuery {
+        QueryInfo queryInfo = QueryInfo.create(index);
+        BLSpanQuery query = CorpusQueryLanguageParser.parse(QUERY).toQuery(queryInfo, null);
+        return new HitsFromQueryParallel(queryInfo, query, searchSettings, minDocsPerRange);
+    }
+
+    /** Every document in its own range */
+    private static Hits findSplit(BlackLabIndex index, SearchSettings searchSettings) throws InvalidQuery {
+        Hits hits = find(index, searchSettings, 1);
+        Assert.assertTrue(((HitsFromQueryParallel) hits).spansReaders.size() > 1);
+        return hits;
+    }
+
+    /** Each segment read as a whole */
+    private static Hits findUnsplit(BlackLabIndex index, SearchSettings searchSettings) throws InvalidQuery {
+        return find(index, searchSettings, Integer.MAX_VALUE);
+    }
+
+    private static void assertSameHit(Hit expected, Hit actual) {
+        Assert.assertEquals(expected.doc(), actual.doc());
+        Assert.assertEquals(expected.start(), actual.start());
+        Assert.assertEquals(expected.end(), actual.end());
+    }
+
+    private static void assertSameHits(Hits expected, Hits actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertSameHit(expected.get(i), actual.get(i));
+        Assert.assertEquals(expected.hitsStats().countedTotal(), actual.hitsStats().countedTotal());
+        Assert.assertEquals(expected.hitsStats().processedTotal(), actual.hitsStats().processedTotal());
+        Assert.assertEquals(expected.docsStats().countedTotal(), actual.docsStats().countedTotal());
+        Assert.assertEquals(expected.docsStats().processedTotal(), actual.docsStats().processedTotal());
+    }
+
+    private static int countDocs(Hits hits) {
+        int docs = 0, prevDoc = -1;
+        for (Hit hit: hits) {
+            if (hit.doc() != prevDoc)
+                docs++;
+            prevDoc = hit.doc();
+        }
+        return docs;
+    }
+
+    @Test
+    public void testSameAsUnsplit() throws InvalidQuery {
+        for (TestIndex index: new TestIndex[] { testIndex, testIndexWithDeletions }) {
+            SearchSettings searchSettings = index.index().searchSettings();
+            Hits expected = findUnsplit(index.index(), searchSettings);
+            Assert.assertTrue(expected.size() > 10);
+            assertSameHits(expected, findSplit(index.index(), searchSettings));
+            Assert.assertEquals(countDocs(expected), expected.docsStats().countedTotal());
+        }
+    }
+
+    @Test
+    public void testReadLazily() throws InvalidQuery {
+        // Asking for one hit at a time makes the readers stop and resume all the time
+        SearchSettings searchSettings = testIndex.index().searchSettings();
+        Hits expected = findUnsplit(testIndex.index(), searchSettings);
+        Hits actual = findSplit(testIndex.index(), searchSettings);
+        for (int i = 0; i < expected.size(); i++) {
+            Hit hit = actual.get(i);
+            Assert.assertTrue(actual.hitsStats().processedSoFar() >= i + 1);
+            assertSameHit(expected.get(i), hit);
+        }
+        assertSameHits(expected, actual);
+    }
+
+    @Test
+    public void testMaxHitsToProcess() throws InvalidQuery {
+        Hits all = findUnsplit(testIndex.index(), testIndex.index().searchSettings());
+        for (int maxHitsToProcess = 1; maxHitsToProcess < all.size(); maxHitsToProcess += 3) {
+            SearchSettings searchSettings = SearchSettings.get(maxHitsToProcess, Results.NO_LIMIT);
+            Hits actual = findSplit(testIndex.index(), searchSettings);
+            // We process the first hits (in index order), but count all of them
+            Assert.assertEquals(maxHitsToProcess, actual.size());
+            for (int i = 0; i < maxHitsToProcess; i++)
+                assertSameHit(all.get(i), actual.get(i));
+            Assert.assertEquals(all.size(), actual.hitsStats().countedTotal());
+            Assert.assertEquals(all.docsStats().countedTotal(), actual.docsStats().countedTotal());
+            Assert.assertEquals(countDocs(actual), actual.docsStats().processedTotal());
+            Assert.assertTrue(actual.maxStats().hitsProcessedExceededMaximum());
+        }
+    }
+
+    @Test
+    public void testMaxHitsToCount() throws InvalidQuery {
+        Hits all = findUnsplit(testIndex.index(), testIndex.index().searchSettings());
+        int max = all.size() / 2;
+        Hits actual = findSplit(testIndex.index(), SearchSettings.get(max, max));
+        Assert.assertEquals(max, actual.size());
+        for (int i = 0; i < max; i++)
+            assertSameHit(all.get(i), actual.get(i));
+        Assert.assertEquals(max, actual.hitsStats().countedTotal());
+        Assert.assertTrue(actual.maxStats().hitsCountedExceededMaximum());
+    }
+}
@@ -111,6 +111,16 @@ public class TestIndex {
     }
     
     public TestIndex(boolean testDelete) {
+        this(testDelete, 0);
+    }
+
+    /**
+     * Create the test index.
+     *
+     * @param testDelete if true, delete the first document after indexing
+     * @param numberOfWriteThreads number of separate threads writing documents (0 for none)
+     */
+    public TestIndex(boolean testDelete, int numberOfWriteThreads) {
 
         // Get a temporary directory for our test index
         indexDir = UtilsForTesting.createBlackLabTestDir("TestIndex");
@@ -126,6 +136,7 @@ public class TestIndex {
         try {
             Indexer indexer = Indexer.createNewIndex(indexDir, testFormat);
             indexer.setListener(new IndexListenerAbortOnError()); // throw on error
+            indexer.setNumberOfWriteThreads(numberOfWriteThreads);
             try {
                 // Index each of our test "documents".
                 for (int i = 0; i < testData.length; i++) {
@@ -156,6 +167,10 @@ public class TestIndex {
         return index;
     }
 
+    public File indexDir() {
+        return indexDir;
+    }
+
     public void close() {
         if (index != null)
             index.close();
@@ -21,6 +21,10 @@ public class BLConfigIndexing {
     
     int numberOfThreads = 2;
 
+    int numberOfWriteThreads = 0;
+
+    String contentStoreCodec = "deflate";
+
     int maxNumberOfIndicesPerUser = 10;
 
     public boolean isDownloadAllowed() {
@@ -76,6 +80,22 @@ public class BLConfigIndexing {
         return numberOfThreads;
     }
 
+    public int getNumberOfWriteThreads() {
+        return numberOfWriteThreads;
+    }
+
+    public void setNumberOfWriteThreads(int numberOfWriteThreads) {
+        this.numberOfWriteThreads = numberOfWriteThreads;
+    }
+
+    public String getContentStoreCodec() {
+        return contentStoreCodec;
+    }
+
+    public void setContentStoreCodec(String contentStoreCodec) {
+        this.contentStoreCodec = contentStoreCodec;
+    }
+
     public int getMaxNumberOfIndicesPerUser() {
         return maxNumberOfIndicesPerUser;
     }
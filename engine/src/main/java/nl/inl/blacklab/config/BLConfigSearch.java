@@ -3,6 +3,7 @@ package nl.inl.blacklab.config;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
 import nl.inl.blacklab.search.results.ContextSize;
+import nl.inl.blacklab.search.results.ParallelSort;
 import nl.inl.blacklab.search.results.SearchSettings;
 
 public class BLConfigSearch {
@@ -16,6 +17,8 @@ public class BLConfigSearch {
     
     long fiMatchFactor = ClauseCombinerNfa.defaultForwardIndexMatchingThreshold;
 
+    int parallelSortThreshold = ParallelSort.DEFAULT_THRESHOLD;
+
     public BLConfigCollator getCollator() {
         return collator;
     }
@@ -56,6 +59,14 @@ public class BLConfigSearch {
         this.fiMatchFactor = fiMatchFactor;
     }
 
+    public int getParallelSortThreshold() {
+        return parallelSortThreshold;
+    }
+
+    public void setParallelSortThreshold(int parallelSortThreshold) {
+        this.parallelSortThreshold = parallelSortThreshold;
+    }
+
     /**
      * Apply the search configuration settings to an opened index.
      *
@@ -69,6 +80,7 @@ public class BLConfigSearch {
         long fiMatchFactor = getFiMatchFactor();
         SearchSettings sett = SearchSettings.get(maxHitsToProcess, maxHitsToCount, fiMatchFactor);
         ClauseCombinerNfa.setNfaThreshold(fiMatchFactor);
+        index.setParallelSortThreshold(getParallelSortThreshold());
         index.setSearchSettings(sett);
     }
 }
@@ -33,6 +33,15 @@ public class ContentStoresManager {
 
     }
 
+    /**
+     * Make sure all content stores have read their tables of contents.
+     */
+    public void initialize() {
+        for (ContentAccessor ca : contentAccessors.values()) {
+            ca.getContentStore().initialize();
+        }
+    }
+
     public void put(Field field, ContentStore store) {
         contentAccessors.put(field, new ContentAccessor(field, store));
     }
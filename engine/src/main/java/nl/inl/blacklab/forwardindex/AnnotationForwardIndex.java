@@ -2,6 +2,7 @@ package nl.inl.blacklab.forwardindex;
 
 import java.io.File;
 import java.text.Collator;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -21,6 +22,7 @@ public abstract class AnnotationForwardIndex {
      * Supported versions:
      * 4. Large terms file support
      * 5. New collators
+     * 6. Bit-packed tokens file (number of bits per token stored in TOC)
      *
      * Older versions, no longer supported:
      * 1. Initial version.
@@ -31,7 +33,7 @@ public abstract class AnnotationForwardIndex {
     /**
      * Current forward index format version
      */
-    private static final String CURRENT_VERSION = "5";
+    private static final String CURRENT_VERSION = "6";
 
     /** The number of cached fiids we check to see if this field is set anywhere. */
     static final int NUMBER_OF_CACHE_ENTRIES_TO_CHECK = 1000;
@@ -103,7 +105,9 @@ public abstract class AnnotationForwardIndex {
         if (!indexMode || !create) {
             // We're opening an existing forward index. Check version.
             if (!VersionFile.isTypeVersion(dir, "fi", CURRENT_VERSION)) {
-                if (VersionFile.isTypeVersion(dir, "fi", "4")) {
+                if (VersionFile.isTypeVersion(dir, "fi", "5")) {
+                    version = "5";
+                } else if (VersionFile.isTypeVersion(dir, "fi", "4")) {
                     version = "4";
                 } else {
                     throw new IllegalArgumentException("Not a forward index or unsupported version: "
@@ -117,6 +121,7 @@ public abstract class AnnotationForwardIndex {
     
         AnnotationForwardIndex fi;
         CollatorVersion collVersion = CollatorVersion.V2;
+        boolean packedTokens = false;
         switch (version) {
         case "4":
             // Large terms file, old collators
@@ -125,14 +130,18 @@ public abstract class AnnotationForwardIndex {
         case "5":
             // Large terms file, new collators
             break;
+        case "6":
+            // Bit-packed tokens file
+            packedTokens = true;
+            break;
         }
         Collators collators = new Collators(collator, collVersion);
         if (indexMode)
-            fi = new AnnotationForwardIndexWriter(annotation, dir, collators, create);
+            fi = new AnnotationForwardIndexWriter(annotation, dir, collators, create, packedTokens);
         else {
             if (create)
                 throw new UnsupportedOperationException("create == true, but not in index mode!");
-            fi = new AnnotationForwardIndexReader(annotation, dir, collators, buildTermIndexesOnInit);
+            fi = new AnnotationForwardIndexReader(annotation, dir, collators, buildTermIndexesOnInit, packedTokens);
         }
         return fi;
     }
@@ -145,9 +154,12 @@ public abstract class AnnotationForwardIndex {
     /** The table of contents (TOC) file, docs.dat */
     File tocFile;
 
-    /** The tokens file (stores indexes into terms.dat) */
+    /** The tokens file (stores indexes into terms.dat, bit-packed per document if packedTokens is set) */
     File tokensFile;
 
+    /** Are the tokens in the tokens file bit-packed (version 6 and up)? If not, all tokens take 32 bits. */
+    boolean packedTokens;
+
     /** The terms file (stores unique terms) */
     File termsFile;
 
@@ -155,7 +167,7 @@ public abstract class AnnotationForwardIndex {
     Terms terms = null;
 
     /**
-     * The position (in ints) in the tokens file after the last token written. Note
+     * The position (in words) in the tokens file after the last token written. Note
      * that the actual file may be larger because we reserve space at the end.
      */
     long tokenFileEndPosition = 0;
@@ -251,6 +263,31 @@ public abstract class AnnotationForwardIndex {
      */
     public abstract List<int[]> retrievePartsInt(int fiid, int[] start, int[] end);
 
+    /**
+     * Retrieve parts from (possibly) different documents, in the form of token ids.
+     *
+     * Useful to retrieve the contexts for a whole window of hits in one call.
+     * Subclasses may override this with a more efficient implementation.
+     *
+     * @param fiids forward index document id for each part
+     * @param start the starting points of the parts to retrieve (in words) (-1 for
+     *            start of document)
+     * @param end the end points (i.e. first token beyond) of the parts to retrieve
+     *            (in words) (-1 for end of document)
+     * @return the parts (null entries for deleted documents)
+     */
+    public List<int[]> retrievePartsInt(int[] fiids, int[] start, int[] end) {
+        int n = fiids.length;
+        if (n != start.length || n != end.length)
+            throw new IllegalArgumentException("fiids, start and end must be of equal length");
+        List<int[]> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            List<int[]> part = retrievePartsInt(fiids[i], new int[] { start[i] }, new int[] { end[i] });
+            result.add(part == null ? null : part.get(0));
+        }
+        return result;
+    }
+
     /**
      * Retrieve token ids for the entire document.
      * @param fiid forward index id
@@ -28,6 +28,7 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -49,11 +50,14 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
 
     protected static final Logger logger = LogManager.getLogger(AnnotationForwardIndexReader.class);
 
-    /** Mapping into the tokens file */
-    private List<ByteBuffer> tokensFileChunks = null;
+    /** Mapping into the tokens file (read using absolute gets only, so can be shared between threads) */
+    private IntBuffer[] tokensFileChunksInt = null;
 
-    /** Offsets of the mappings into the token file */
-    private List<Long> tokensFileChunkOffsetBytes = null;
+    /** Offsets of the mappings into the token file (in ints) */
+    private long[] tokensFileChunkOffset = null;
+
+    /** Index of the chunk that contains each document entirely, or -1 if there is none */
+    private int[] chunkOfDoc = null;
 
     /** Collators to use for terms file */
     private Collators collators;
@@ -64,6 +68,9 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
     /** Length of each document (INCLUDING the extra closing token at the end) */
     int[] length;
 
+    /** Number of bits per token for each document */
+    byte[] bitsPerToken;
+
     /** Deleted status of each document */
     byte[] deleted;
 
@@ -73,8 +80,9 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
     /** Build term indexes right away or lazily? */
     private boolean buildTermIndexesOnInit;
 
-    AnnotationForwardIndexReader(Annotation annotation, File dir, Collators collators, boolean buildTermIndexesOnInit) {
+    AnnotationForwardIndexReader(Annotation annotation, File dir, Collators collators, boolean buildTermIndexesOnInit, boolean packedTokens) {
         super(annotation, dir, collators);
+        this.packedTokens = packedTokens;
 
         if (!dir.exists()) {
             throw new IllegalArgumentException("ForwardIndex doesn't exist: " + dir);
@@ -113,8 +121,8 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
             // document start, documents of up to 2G tokens can be processed. We could get around
             // this limitation by reading from multiple chunks, but this would make the code
             // more complex.
-            tokensFileChunks = new ArrayList<>();
-            tokensFileChunkOffsetBytes = new ArrayList<>();
+            List<ByteBuffer> tokensFileChunks = new ArrayList<>();
+            List<Long> tokensFileChunkOffsetBytes = new ArrayList<>();
             long mappedBytes = 0;
             long tokenFileEndBytes = tokenFileEndPosition * SIZEOF_INT;
             while (mappedBytes < tokenFileEndBytes) {
@@ -152,6 +160,14 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
                 tokensFileChunkOffsetBytes.add(startOfNextMappingBytes);
                 mappedBytes = startOfNextMappingBytes + sizeBytes;
             }
+            int numberOfChunks = tokensFileChunks.size();
+            tokensFileChunksInt = new IntBuffer[numberOfChunks];
+            tokensFileChunkOffset = new long[numberOfChunks];
+            for (int j = 0; j < numberOfChunks; j++) {
+                tokensFileChunksInt[j] = tokensFileChunks.get(j).asIntBuffer();
+                tokensFileChunkOffset[j] = tokensFileChunkOffsetBytes.get(j) / SIZEOF_INT;
+            }
+            determineChunkOfDocs();
         } catch (FileNotFoundException e1) {
             throw BlackLabRuntimeException.wrap(e1);
         } catch (IOException e1) {
@@ -163,6 +179,27 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
         initialized = true;
     }
 
+    /**
+     * Determine for each document which chunk contains it entirely.
+     *
+     * This way we don't have to search the chunks each time we retrieve a snippet.
+     */
+    private void determineChunkOfDocs() {
+        chunkOfDoc = new int[offset.length];
+        for (int i = 0; i < offset.length; i++) {
+            chunkOfDoc[i] = -1;
+            long docStart = offset[i];
+            long docEnd = docStart + storageLength(i);
+            for (int j = 0; j < tokensFileChunkOffset.length; j++) {
+                long chunkStart = tokensFileChunkOffset[j];
+                if (chunkStart <= docStart && chunkStart + tokensFileChunksInt[j].capacity() >= docEnd) {
+                    chunkOfDoc[i] = j;
+                    break;
+                }
+            }
+        }
+    }
+
     @Override
     public void close() {
         // NOP
@@ -187,12 +224,17 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
             ib.get(length);
             ((Buffer)buf).position(buf.position() + SIZEOF_INT * n);
             buf.get(deleted);
+            bitsPerToken = new byte[n];
+            if (packedTokens)
+                buf.get(bitsPerToken);
+            else
+                Arrays.fill(bitsPerToken, (byte) PackedTokens.UNPACKED_BITS);
             deletedTocEntries = new ArrayList<>();
             for (int i = 0; i < n; i++) {
                 if (deleted[i] != 0) {
                     deletedTocEntries.add(i);
                 }
-                long end = offset[i] + length[i];
+                long end = offset[i] + storageLength(i);
                 if (end > tokenFileEndPosition)
                     tokenFileEndPosition = end;
             }
@@ -202,6 +244,16 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
         }
     }
 
+    /**
+     * How many words does a document take up in the tokens file?
+     *
+     * @param fiid forward index id of the document
+     * @return number of words
+     */
+    private int storageLength(int fiid) {
+        return PackedTokens.numberOfWords(length[fiid], bitsPerToken[fiid]);
+    }
+
     protected void sortDeletedTocEntries() {
         deletedTocEntries.sort( (o1, o2) -> length[o1] - length[o2] );
     }
@@ -224,155 +276,109 @@ class AnnotationForwardIndexReader extends AnnotationForwardIndex {
         if (n != ends.length)
             throw new IllegalArgumentException("start and end must be of equal length");
         List<int[]> result = new ArrayList<>(n);
-
         for (int i = 0; i < n; i++) {
-            int start = starts[i]; // don't modify the start/end array contents!
-            int end = ends[i];
-            
-            if (start == -1)
-                start = 0;
-            if (end == -1)
-                end = length[fiid];
-            if (start < 0 || end < 0) {
-                throw new IllegalArgumentException("Illegal values, start = " + start + ", end = "
-                        + end);
-            }
-            if (end > length[fiid]) // Can happen while making KWICs because we don't know the
-                                   // doc length until here
-                end = length[fiid];
-            if (start > length[fiid] || end > length[fiid]) {
-                throw new IllegalArgumentException("Value(s) out of range, start = " + start
-                        + ", end = " + end + ", content length = " + length[fiid]);
-            }
-            if (end <= start) {
-                throw new IllegalArgumentException(
-                        "Tried to read empty or negative length snippet (from " + start
-                                + " to " + end + ")");
-            }
-
-            // Get an IntBuffer to read the desired content
-            IntBuffer ib = null;
-
-            // The tokens file has has been mapped to memory.
-            // Get an int buffer into the file.
-
-            // Figure out which chunk to access.
-            ByteBuffer whichChunk = null;
-            long chunkOffsetBytes = -1;
-            long entryOffsetBytes = offset[fiid] * SIZEOF_INT;
-            for (int j = 0; j < tokensFileChunkOffsetBytes.size(); j++) {
-                long offsetBytes = tokensFileChunkOffsetBytes.get(j);
-                ByteBuffer buffer = tokensFileChunks.get(j);
-                if (offsetBytes <= entryOffsetBytes + start * SIZEOF_INT
-                        && offsetBytes + buffer.capacity() >= entryOffsetBytes + end
-                                * SIZEOF_INT) {
-                    // This one!
-                    whichChunk = buffer;
-                    chunkOffsetBytes = offsetBytes;
-                    break;
-                }
-            }
-
-            if (whichChunk == null) {
-                throw new BlackLabRuntimeException("Tokens file chunk containing document not found. fiid = " + fiid);
-            }
-            int snippetLength = end - start;
-            int[] snippet = new int[snippetLength];
-            synchronized (whichChunk) {
-                ((Buffer) whichChunk).position((int) (offset[fiid] * SIZEOF_INT - chunkOffsetBytes));
-                ib = whichChunk.asIntBuffer();
-
-                // The file is mem-mapped (search mode).
-                // Position us at the correct place in the file.
-                if (start > ib.limit()) {
-                    logger.debug("  start=" + start + ", ib.limit()=" + ib.limit());
-                }
-                ib.position(start);
-                ib.get(snippet);
-            }
-            result.add(snippet);
+            result.add(retrieveSnippet(fiid, starts[i], ends[i]));
         }
-
         return result;
     }
-    
-    public List<int[]> retrievePartsIntAllocationless(int fiid, int[] starts, int[] ends, List<int[]> ret) {
+
+    @Override
+    public List<int[]> retrievePartsInt(int[] fiids, int[] starts, int[] ends) {
         if (!initialized)
             initialize();
 
-        if (deleted[fiid] != 0)
-            return null;
-
-        int n = starts.length;
-        if (n != ends.length)
-            throw new IllegalArgumentException("start and end must be of equal length");
+        int n = fiids.length;
+        if (n != starts.length || n != ends.length)
+            throw new IllegalArgumentException("fiids, start and end must be of equal length");
         List<int[]> result = new ArrayList<>(n);
-
         for (int i = 0; i < n; i++) {
-            int start = starts[i]; // don't modify the start/end array contents!
-            int end = ends[i];
-            
-            if (start == -1)
-                start = 0;
-            if (end == -1)
-                end = length[fiid];
-            if (start < 0 || end < 0) {
-                throw new IllegalArgumentException("Illegal values, start = " + start + ", end = "
-                        + end);
-            }
-            if (end > length[fiid]) // Can happen while making KWICs because we don't know the
-                                   // doc length until here
-                end = length[fiid];
-            if (start > length[fiid] || end > length[fiid]) {
-                throw new IllegalArgumentException("Value(s) out of range, start = " + start
-                        + ", end = " + end + ", content length = " + length[fiid]);
-            }
-            if (end <= start) {
-                throw new IllegalArgumentException(
-                        "Tried to read empty or negative length snippet (from " + start
-                                + " to " + end + ")");
-            }
+            int fiid = fiids[i];
+            result.add(deleted[fiid] != 0 ? null : retrieveSnippet(fiid, starts[i], ends[i]));
+        }
+        return result;
+    }
 
-            // Get an IntBuffer to read the desired content
-            IntBuffer ib = null;
-
-            // The tokens file has has been mapped to memory.
-            // Get an int buffer into the file.
-
-            // Figure out which chunk to access.
-            ByteBuffer whichChunk = null;
-            long chunkOffsetBytes = -1;
-            long entryOffsetBytes = offset[fiid] * SIZEOF_INT;
-            for (int j = 0; j < tokensFileChunkOffsetBytes.size(); j++) {
-                long offsetBytes = tokensFileChunkOffsetBytes.get(j);
-                ByteBuffer buffer = tokensFileChunks.get(j);
-                if (offsetBytes <= entryOffsetBytes + start * SIZEOF_INT
-                        && offsetBytes + buffer.capacity() >= entryOffsetBytes + end
-                                * SIZEOF_INT) {
-                    // This one!
-                    whichChunk = buffer;
-                    chunkOffsetBytes = offsetBytes;
-                    break;
-                }
-            }
+    /**
+     * Read a single snippet from a document.
+     *
+     * Uses absolute reads on the mapped chunk, so no shared buffer state is
+     * modified and no locking is needed. Tokens are unpacked according to the
+     * document's number of bits per token.
+     *
+     * @param fiid forward index id of the document
+     * @param start first token to read (-1 for start of document)
+     * @param end first token not to read (-1 for end of document)
+     * @return the token ids
+     */
+    private int[] retrieveSnippet(int fiid, int start, int end) {
+        int docLength = length[fiid];
+        if (start == -1)
+            start = 0;
+        if (end == -1)
+            end = docLength;
+        if (start < 0 || end < 0) {
+            throw new IllegalArgumentException("Illegal values, start = " + start + ", end = "
+                    + end);
+        }
+        if (end > docLength) // Can happen while making KWICs because we don't know the
+                             // doc length until here
+            end = docLength;
+        if (start > docLength) {
+            throw new IllegalArgumentException("Value(s) out of range, start = " + start
+                    + ", end = " + end + ", content length = " + docLength);
+        }
+        if (end <= start) {
+            throw new IllegalArgumentException(
+                    "Tried to read empty or negative length snippet (from " + start
+                            + " to " + end + ")");
+        }
 
-            if (whichChunk == null) {
-                throw new BlackLabRuntimeException("Tokens file chunk containing document not found. fiid = " + fiid);
-            }
-            ((Buffer)whichChunk).position((int) (offset[fiid] * SIZEOF_INT - chunkOffsetBytes));
-            ib = whichChunk.asIntBuffer();
+        // Figure out which chunk to access.
+        int chunk = chunkOfDoc[fiid];
+        if (chunk < 0)
+            chunk = findChunk(fiid, start, end);
+        int bits = bitsPerToken[fiid];
+        long firstBit = ((offset[fiid] - tokensFileChunkOffset[chunk]) << 5) + (long) start * bits;
 
-            int snippetLength = end - start;
-            int[] snippet = new int[snippetLength];
+        int[] snippet = new int[end - start];
+        PackedTokens.unpack(tokensFileChunksInt[chunk], firstBit, bits, snippet);
+        return snippet;
+    }
 
-            // The file is mem-mapped (search mode).
-            // Position us at the correct place in the file.
-            ib.position(start);
-            ib.get(snippet);
-            result.add(snippet);
+    /**
+     * Find a chunk containing the specified part of a document.
+     *
+     * Only used for documents that don't fit entirely in one chunk (which
+     * shouldn't normally happen); all others are looked up in chunkOfDoc.
+     *
+     * @param fiid forward index id of the document
+     * @param start first token we need
+     * @param end first token we don't need
+     * @return chunk index
+     */
+    private int findChunk(int fiid, int start, int end) {
+        long startOffset = offset[fiid] + (((long) start * bitsPerToken[fiid]) >>> 5);
+        long endOffset = offset[fiid] + PackedTokens.numberOfWords(end, bitsPerToken[fiid]);
+        for (int j = 0; j < tokensFileChunkOffset.length; j++) {
+            long chunkStart = tokensFileChunkOffset[j];
+            if (chunkStart <= startOffset && chunkStart + tokensFileChunksInt[j].capacity() >= endOffset)
+                return j;
         }
+        throw new BlackLabRuntimeException("Tokens file chunk containing document not found. fiid = " + fiid);
+    }
 
-        return result;
+    @Override
+    public int getToken(int fiid, int pos) {
+        if (!initialized)
+            initialize();
+        if (pos < 0 || pos >= length[fiid])
+            throw new IllegalArgumentException("Position out of range: " + pos + " (content length = " + length[fiid] + ")");
+        int chunk = chunkOfDoc[fiid];
+        if (chunk < 0)
+            chunk = findChunk(fiid, pos, pos + 1);
+        int bits = bitsPerToken[fiid];
+        long bitPos = ((offset[fiid] - tokensFileChunkOffset[chunk]) << 5) + (long) pos * bits;
+        return PackedTokens.get(tokensFileChunksInt[chunk], bitPos, bits);
     }
 
     @Override
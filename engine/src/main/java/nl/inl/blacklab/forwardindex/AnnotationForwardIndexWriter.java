@@ -79,8 +79,9 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
     /** Deleted TOC entries. Always sorted by size. */
     List<TocEntry> deletedTocEntries = new ArrayList<>();
 
-    AnnotationForwardIndexWriter(Annotation annotation, File dir, Collators collators, boolean create) {
+    AnnotationForwardIndexWriter(Annotation annotation, File dir, Collators collators, boolean create, boolean packedTokens) {
         super(annotation, dir, collators);
+        this.packedTokens = packedTokens;
 
         if (!dir.exists()) {
             if (!create)
@@ -149,15 +150,21 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
             ib.get(length);
             ((Buffer)buf).position(buf.position() + SIZEOF_INT * n);
             buf.get(deleted);
+            byte[] bitsPerToken = null;
+            if (packedTokens) {
+                bitsPerToken = new byte[n];
+                buf.get(bitsPerToken);
+            }
             toc = new ArrayList<>(n);
             deletedTocEntries = new ArrayList<>();
             for (int i = 0; i < n; i++) {
-                TocEntry e = new TocEntry(offset[i], length[i], deleted[i] != 0);
+                int bits = packedTokens ? bitsPerToken[i] : PackedTokens.UNPACKED_BITS;
+                TocEntry e = new TocEntry(offset[i], length[i], deleted[i] != 0, bits);
                 toc.add(e);
                 if (e.deleted) {
                     deletedTocEntries.add(e);
                 }
-                long end = e.offset + e.length;
+                long end = e.offset + e.storageLength();
                 if (end > tokenFileEndPosition)
                     tokenFileEndPosition = end;
             }
@@ -210,16 +217,18 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
             long[] offset = new long[n];
             int[] length = new int[n];
             byte[] deleted = new byte[n];
+            byte[] bitsPerToken = new byte[n];
             int i = 0;
             for (TocEntry e : toc) {
                 offset[i] = e.offset;
                 length[i] = e.length;
                 deleted[i] = (byte) (e.deleted ? 1 : 0);
+                bitsPerToken[i] = (byte) e.bitsPerToken;
                 i++;
             }
             try (RandomAccessFile raf = new RandomAccessFile(tocFile, "rw");
                     FileChannel fc = raf.getChannel()) {
-                long fileSize = SIZEOF_INT + (SIZEOF_LONG + SIZEOF_INT + 1) * n;
+                long fileSize = SIZEOF_INT + (SIZEOF_LONG + SIZEOF_INT + 1 + (packedTokens ? 1 : 0)) * n;
                 fc.truncate(fileSize);
                 MappedByteBuffer buf = fc.map(MapMode.READ_WRITE, 0, fileSize);
                 buf.putInt(n);
@@ -230,6 +239,8 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
                 ib.put(length);
                 ((Buffer)buf).position(buf.position() + SIZEOF_INT * n);
                 buf.put(deleted);
+                if (packedTokens)
+                    buf.put(bitsPerToken);
             }
         } catch (IOException e) {
             throw BlackLabRuntimeException.wrap(e);
@@ -263,7 +274,7 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
     /**
      * Find the best-fitting deleted entry for the specified length
      *
-     * @param length length the entry should at least be
+     * @param length length (in words) the entry should at least be
      * @return the best-fitting entry
      */
     TocEntry findBestFittingGap(int length) {
@@ -293,9 +304,44 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
             }
         }
 
+        // Determine the token ids
+        int[] tokenIds = new int[numberOfTokens];
+        int tokenIdsIndex = 0;
+        int maxTokenId = 0;
+        Iterator<String> contentIt = content.iterator();
+        Iterator<Integer> posIncrIt = posIncr == null ? null : posIncr.iterator();
+        int emptyStringTokenId = posIncrIt != null ? terms.indexOf("") : -1;
+        while (contentIt.hasNext()) {
+            String token = contentIt.next();
+            int pi = posIncrIt == null ? 1 : posIncrIt.next();
+            if (pi == 0)
+                continue; // we only store the first token at any position
+            if (pi > 1) {
+                // Skipped a few tokens; add empty tokens for these positions
+                for (int i = 0; i < pi - 1; i++) {
+                    tokenIds[tokenIdsIndex] = emptyStringTokenId;
+                    tokenIdsIndex++;
+                }
+                maxTokenId = Math.max(maxTokenId, emptyStringTokenId);
+            }
+
+            int tokenId = terms.indexOf(token);
+            tokenIds[tokenIdsIndex] = tokenId;
+            tokenIdsIndex++;
+            maxTokenId = Math.max(maxTokenId, tokenId);
+        }
+        if (tokenIdsIndex != numberOfTokens)
+            throw new BlackLabRuntimeException(
+                    "tokenIdsIndex != numberOfTokens (" + tokenIdsIndex + " != " + numberOfTokens + ")");
+
+        // Pack the token ids using as few bits as we can (if supported)
+        int bitsPerToken = packedTokens ? PackedTokens.bitsNeeded(maxTokenId) : PackedTokens.UNPACKED_BITS;
+        int[] words = PackedTokens.pack(tokenIds, bitsPerToken);
+        int numberOfWords = words.length;
+
         // Decide where we're going to store this document,
         // and update ToC
-        TocEntry gap = findBestFittingGap(numberOfTokens);
+        TocEntry gap = findBestFittingGap(numberOfWords);
         long newDocumentOffset;
         int mapReserve;
         tocModified = true;
@@ -309,16 +355,18 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
             // Found a fitting gap; write it there
             newDocumentOffset = gap.offset;
             mapReserve = 0; // don't reserve extra write space, not needed
-            if (gap.length == numberOfTokens) {
+            if (gap.length == numberOfWords) {
                 // Exact fit; delete from free list and re-use entry
                 deletedTocEntries.remove(gap);
                 gap.deleted = false;
+                gap.length = numberOfTokens;
+                gap.bitsPerToken = bitsPerToken;
                 addNewEntry = false;
                 newDocumentFiid = toc.indexOf(gap);
             } else {
                 // Not an exact fit; calculate remaining gap and re-sort free list
-                gap.offset += numberOfTokens;
-                gap.length -= numberOfTokens;
+                gap.offset += numberOfWords;
+                gap.length -= numberOfWords;
                 sortDeletedTocEntries();
             }
         }
@@ -332,11 +380,12 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
                 deletedTocEntries.remove(0);
                 smallestFreeEntry.offset = newDocumentOffset;
                 smallestFreeEntry.length = numberOfTokens;
+                smallestFreeEntry.bitsPerToken = bitsPerToken;
                 smallestFreeEntry.deleted = false;
                 newDocumentFiid = toc.indexOf(smallestFreeEntry);
             } else {
                 // No; make new entry
-                toc.add(new TocEntry(newDocumentOffset, numberOfTokens, false));
+                toc.add(new TocEntry(newDocumentOffset, numberOfTokens, false, bitsPerToken));
                 newDocumentFiid = toc.size() - 1;
             }
         }
@@ -345,11 +394,11 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
             // Can we use the current write buffer for this write?
             long writeBufEnd = writeBuffer == null ? 0 : writeBufOffset + writeBuffer.limit();
             if (writeBuffer == null || writeBufOffset > newDocumentOffset
-                    || writeBufEnd < newDocumentOffset + numberOfTokens) {
+                    || writeBufEnd < newDocumentOffset + numberOfWords) {
                 // No, remap it
                 writeBufOffset = newDocumentOffset;
                 ByteBuffer byteBuffer = writeTokensFileChannel.map(FileChannel.MapMode.READ_WRITE,
-                        writeBufOffset * SIZEOF_INT, (numberOfTokens + mapReserve)
+                        writeBufOffset * SIZEOF_INT, (numberOfWords + mapReserve)
                                 * SIZEOF_INT);
                 writeBuffer = byteBuffer.asIntBuffer();
             }
@@ -358,37 +407,12 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
             ((Buffer)writeBuffer).position((int) (newDocumentOffset - writeBufOffset));
 
             // Did we increase the length of the tokens file?
-            long end = newDocumentOffset + numberOfTokens;
+            long end = newDocumentOffset + numberOfWords;
             if (end > tokenFileEndPosition)
                 tokenFileEndPosition = end;
 
-            // Write the token ids
-            // (first fill the buffer, then write the buffer in 1 call)
-            int[] tokenIds = new int[numberOfTokens];
-            int tokenIdsIndex = 0;
-            Iterator<String> contentIt = content.iterator();
-            Iterator<Integer> posIncrIt = posIncr == null ? null : posIncr.iterator();
-            int emptyStringTokenId = posIncrIt != null ? terms.indexOf("") : -1;
-            while (contentIt.hasNext()) {
-                String token = contentIt.next();
-                int pi = posIncrIt == null ? 1 : posIncrIt.next();
-                if (pi == 0)
-                    continue; // we only store the first token at any position
-                if (pi > 1) {
-                    // Skipped a few tokens; add empty tokens for these positions
-                    for (int i = 0; i < pi - 1; i++) {
-                        tokenIds[tokenIdsIndex] = emptyStringTokenId;
-                        tokenIdsIndex++;
-                    }
-                }
-
-                tokenIds[tokenIdsIndex] = terms.indexOf(token);
-                tokenIdsIndex++;
-            }
-            if (tokenIdsIndex != numberOfTokens)
-                throw new BlackLabRuntimeException(
-                        "tokenIdsIndex != numberOfTokens (" + tokenIdsIndex + " != " + numberOfTokens + ")");
-            writeBuffer.put(tokenIds);
+            // Write the (packed) token ids in 1 call
+            writeBuffer.put(words);
 
             return newDocumentFiid;
         } catch (IOException e1) {
@@ -430,25 +454,23 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
                                     + " to " + end[i] + ")");
                 }
 
-                // Get an IntBuffer to read the desired content
-                IntBuffer ib = null;
-
                 int snippetLength = end[i] - start[i];
                 int[] snippet = new int[snippetLength];
                 // Chunks are not mapped (index mode).
-                // Explicitly read the part we require from disk into an int buffer.
-                long offset = e.offset + start[i];
+                // Explicitly read the words we require from disk into an int buffer.
+                long firstBit = (long) start[i] * e.bitsPerToken;
+                long firstWord = firstBit >>> 5;
+                int wordsToRead = PackedTokens.numberOfWords(end[i], e.bitsPerToken) - (int) firstWord;
 
-                int bytesToRead = snippetLength * SIZEOF_INT;
+                int bytesToRead = wordsToRead * SIZEOF_INT;
                 ByteBuffer buffer = ByteBuffer.allocate(bytesToRead);
-                int bytesRead = writeTokensFileChannel.read(buffer, offset * SIZEOF_INT);
+                int bytesRead = writeTokensFileChannel.read(buffer, (e.offset + firstWord) * SIZEOF_INT);
                 if (bytesRead < bytesToRead) {
                     throw new BlackLabRuntimeException("Not enough bytes read: " + bytesRead
                             + " < " + bytesToRead);
                 }
                 ((Buffer)buffer).position(0);
-                ib = buffer.asIntBuffer();
-                ib.get(snippet);
+                PackedTokens.unpack(buffer.asIntBuffer(), firstBit & 31, e.bitsPerToken, snippet);
                 result.add(snippet);
             }
 
@@ -461,6 +483,9 @@ class AnnotationForwardIndexWriter extends AnnotationForwardIndex {
     @Override
     public void deleteDocument(int fiid) {
         TocEntry tocEntry = toc.get(fiid);
+        // Deleted entries describe a gap, so their length is in words
+        tocEntry.length = tocEntry.storageLength();
+        tocEntry.bitsPerToken = PackedTokens.UNPACKED_BITS;
         tocEntry.deleted = true;
         deletedTocEntries.add(tocEntry); // NOTE: mergeAdjacentDeletedEntries takes care of re-sorting
         mergeAdjacentDeletedEntries();
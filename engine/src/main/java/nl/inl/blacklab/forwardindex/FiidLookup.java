@@ -2,10 +2,13 @@ package nl.inl.blacklab.forwardindex;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
@@ -19,31 +22,83 @@ import nl.inl.blacklab.search.indexmetadata.Annotation;
 /**
  * Class for looking up forward index id, using DocValues or stored fields.
  *
+ * The fiids are read from the DocValues once and kept in an array indexed by
+ * Lucene doc id, so looking one up is a single array access. Lookups are cached
+ * per IndexReader and fiid field, so all searches on the same reader share them;
+ * when the reader is closed, its lookups are discarded.
+ *
  * This class is thread-safe.
- * (using synchronization on DocValues instance; DocValues are stored for each LeafReader,
- *  and each of those should only be used from one thread at a time)
  */
 public class FiidLookup {
 
+    /** Value in the fiids array meaning "not looked up yet" (only used if we don't have DocValues) */
+    private static final int UNKNOWN = -1;
+
+    /** Cached lookups per IndexReader, keyed by fiid field name */
+    private static final Map<IndexReader, Map<String, FiidLookup>> cachePerReader =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Get the fiid lookup for an annotation.
+     *
+     * The lookup is created the first time it is requested for a reader, then
+     * shared by all callers using that reader.
+     *
+     * @param reader index reader
+     * @param annotation annotation to look up fiids for
+     * @return fiid lookup
+     */
+    public static FiidLookup forReader(IndexReader reader, Annotation annotation) {
+        Map<String, FiidLookup> lookups;
+        synchronized (cachePerReader) {
+            lookups = cachePerReader.get(reader);
+            if (lookups == null) {
+                lookups = new ConcurrentHashMap<>();
+                cachePerReader.put(reader, lookups);
+                reader.addReaderClosedListener(cachePerReader::remove);
+            }
+        }
+        return lookups.computeIfAbsent(annotation.forwardIndexIdField(), field -> new FiidLookup(reader, field));
+    }
+
     /**
      * Index reader, for getting documents (for translating from Lucene doc id to
      * fiid)
      */
-    private IndexReader reader;
+    private final IndexReader reader;
 
     /**
      * fiid field name in the Lucene index (for translating from Lucene doc id to
      * fiid)
      */
-    private String fiidFieldName;
+    private final String fiidFieldName;
+
+    /**
+     * fiid per Lucene doc id. If we don't have DocValues, values are read from the
+     * stored fields on demand and are UNKNOWN until then.
+     */
+    private final int[] fiids;
 
-    /** The DocValues per segment (keyed by docBase) */
-    private Map<Integer, NumericDocValues> cachedFiids;
+    /** Did we read the fiids from DocValues? If not, we look them up from the stored fields when needed. */
+    private final boolean fromDocValues;
 
+    /**
+     * Construct a fiid lookup.
+     *
+     * @param reader index reader
+     * @param annotation annotation to look up fiids for
+     * @deprecated use {@link #forReader(IndexReader, Annotation)}, which caches the lookup
+     */
+    @Deprecated
     public FiidLookup(IndexReader reader, Annotation annotation) {
-        this.fiidFieldName = annotation.forwardIndexIdField();
+        this(reader, annotation.forwardIndexIdField());
+    }
+
+    private FiidLookup(IndexReader reader, String fiidFieldName) {
+        this.fiidFieldName = fiidFieldName;
         this.reader = reader;
-        cachedFiids = new TreeMap<>();
+        fiids = new int[reader.maxDoc()];
+        boolean foundDocValues = false;
         try {
             for (LeafReaderContext rc : reader.leaves()) {
                 LeafReader r = rc.reader();
@@ -57,55 +112,40 @@ public class FiidLookup {
                     numericDocValues = uninv.getNumericDocValues(fiidFieldName);
                 }
                 if (numericDocValues != null) {
-                    cachedFiids.put(rc.docBase, numericDocValues);
+                    foundDocValues = true;
+                    for (int i = 0; i < r.maxDoc(); i++) {
+                        fiids[rc.docBase + i] = (int) numericDocValues.get(i);
+                    }
                 }
             }
-            if (cachedFiids.isEmpty()) {
-                // We don't actually have DocValues.
-                cachedFiids = null;
-            } else {
+            if (foundDocValues) {
                 // See if there are actual values stored
                 // [this check was introduced when we used the old FieldCache, no longer necessary?]
                 int numToCheck = Math.min(AnnotationForwardIndex.NUMBER_OF_CACHE_ENTRIES_TO_CHECK, reader.maxDoc());
                 if (!hasFiids(numToCheck))
-                    cachedFiids = null;
+                    foundDocValues = false;
             }
         } catch (IOException e) {
             BlackLabRuntimeException.wrap(e);
         }
+        fromDocValues = foundDocValues;
+        if (!fromDocValues)
+            Arrays.fill(fiids, UNKNOWN);
     }
 
     public int get(int docId) {
-        if (cachedFiids != null) {
-            // Find the fiid in the correct segment
-            Entry<Integer, NumericDocValues> prev = null;
-            for (Entry<Integer, NumericDocValues> e : cachedFiids.entrySet()) {
-                Integer docBase = e.getKey();
-                if (docBase > docId) {
-                    // Previous segment (the highest docBase lower than docId) is the right one
-                    Integer prevDocBase = prev.getKey();
-                    NumericDocValues prevDocValues = prev.getValue();
-                    synchronized (prevDocValues) {
-                        return (int) prevDocValues.get(docId - prevDocBase);
-                    }
-                }
-                prev = e;
-            }
-            // Last segment is the right one
-            Integer prevDocBase = prev.getKey();
-            NumericDocValues prevDocValues = prev.getValue();
-            synchronized (prevDocValues) {
-                return (int) prevDocValues.get(docId - prevDocBase);
-            }
-        }
+        int fiid = fiids[docId];
+        if (fromDocValues || fiid != UNKNOWN)
+            return fiid;
 
         // Not cached; find fiid by reading stored value from Document now
         try {
-            return (int)Long.parseLong(reader.document(docId).get(fiidFieldName));
+            fiid = (int)Long.parseLong(reader.document(docId).get(fiidFieldName));
         } catch (IOException e) {
             throw BlackLabRuntimeException.wrap(e);
         }
-
+        fiids[docId] = fiid; // (racy but harmless; other threads will just look it up again)
+        return fiid;
     }
 
     public boolean hasFiids(int numToCheck) {
@@ -113,7 +153,7 @@ public class FiidLookup {
         boolean allZeroes = true;
         for (int i = 0; i < numToCheck; i++) {
             // (NOTE: we don't check if document wasn't deleted, but that shouldn't matter here)
-            if (get(i) != 0) {
+            if (fiids[i] != 0) {
                 allZeroes = false;
                 break;
             }
@@ -126,7 +166,7 @@ public class FiidLookup {
             return null; // HitPoperty.needsContext() can return null
         List<FiidLookup> fiidLookups = new ArrayList<>();
         for (Annotation annotation: annotations) {
-            fiidLookups.add(annotation == null ? null : new FiidLookup(reader, annotation));
+            fiidLookups.add(annotation == null ? null : forReader(reader, annotation));
         }
         return fiidLookups;
     }
@@ -0,0 +1,118 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.nio.IntBuffer;
+
+/**
+ * Bit-packing of token ids in the tokens file.
+ *
+ * Each document is stored as a block of 32-bit words, in which every token
+ * takes the same number of bits (enough for the highest term id in the
+ * document). Bits are stored most significant first, so a block with 32 bits
+ * per token is identical to the unpacked format of older forward indexes.
+ *
+ * Because all tokens in a document have the same width, the position of any
+ * token can be calculated directly, so random access remains O(1).
+ */
+final class PackedTokens {
+
+    /** Bits per token in the unpacked (pre-version 6) format */
+    static final int UNPACKED_BITS = Integer.SIZE;
+
+    private PackedTokens() {
+    }
+
+    /**
+     * Determine how many bits we need per token.
+     *
+     * @param maxTermId highest term id to store
+     * @return number of bits per token (1-32)
+     */
+    static int bitsNeeded(int maxTermId) {
+        if (maxTermId <= 0)
+            return 1;
+        return Integer.SIZE - Integer.numberOfLeadingZeros(maxTermId);
+    }
+
+    /**
+     * Determine the number of words needed to store a number of tokens.
+     *
+     * @param numberOfTokens number of tokens to store
+     * @param bitsPerToken number of bits per token
+     * @return number of 32-bit words needed
+     */
+    static int numberOfWords(int numberOfTokens, int bitsPerToken) {
+        return (int) (((long) numberOfTokens * bitsPerToken + Integer.SIZE - 1) >>> 5);
+    }
+
+    /**
+     * Pack token ids into words.
+     *
+     * @param tokenIds token ids to pack (must all fit in bitsPerToken bits)
+     * @param bitsPerToken number of bits per token
+     * @return the packed words
+     */
+    static int[] pack(int[] tokenIds, int bitsPerToken) {
+        if (bitsPerToken == UNPACKED_BITS)
+            return tokenIds;
+        int[] words = new int[numberOfWords(tokenIds.length, bitsPerToken)];
+        long bitPos = 0;
+        for (int tokenId: tokenIds) {
+            int word = (int) (bitPos >>> 5);
+            int endBit = (int) (bitPos & 31) + bitsPerToken;
+            if (endBit <= Integer.SIZE) {
+                words[word] |= tokenId << (Integer.SIZE - endBit);
+            } else {
+                // Token straddles two words
+                words[word] |= tokenId >>> (endBit - Integer.SIZE);
+                words[word + 1] |= tokenId << (2 * Integer.SIZE - endBit);
+            }
+            bitPos += bitsPerToken;
+        }
+        return words;
+    }
+
+    /**
+     * Unpack a number of consecutive token ids.
+     *
+     * Only uses absolute gets, so the buffer may be shared between threads.
+     *
+     * @param words buffer containing the packed words
+     * @param firstBit bit position in the buffer of the first token to unpack
+     * @param bitsPerToken number of bits per token
+     * @param dest where to store the token ids (its length determines how many are read)
+     */
+    static void unpack(IntBuffer words, long firstBit, int bitsPerToken, int[] dest) {
+        if (bitsPerToken == UNPACKED_BITS) {
+            int word = (int) (firstBit >>> 5);
+            for (int i = 0; i < dest.length; i++) {
+                dest[i] = words.get(word + i);
+            }
+            return;
+        }
+        long bitPos = firstBit;
+        for (int i = 0; i < dest.length; i++) {
+            dest[i] = get(words, bitPos, bitsPerToken);
+            bitPos += bitsPerToken;
+        }
+    }
+
+    /**
+     * Unpack a single token id.
+     *
+     * @param words buffer containing the packed words
+     * @param bitPos bit position in the buffer of the token
+     * @param bitsPerToken number of bits per token
+     * @return the token id
+     */
+    static int get(IntBuffer words, long bitPos, int bitsPerToken) {
+        int word = (int) (bitPos >>> 5);
+        int endBit = (int) (bitPos & 31) + bitsPerToken;
+        if (endBit <= Integer.SIZE) {
+            int mask = bitsPerToken == UNPACKED_BITS ? -1 : (1 << bitsPerToken) - 1;
+            return (words.get(word) >>> (Integer.SIZE - endBit)) & mask;
+        }
+        // Token straddles two words
+        long twoWords = ((long) words.get(word) << Integer.SIZE) | (words.get(word + 1) & 0xFFFFFFFFL);
+        return (int) (twoWords >>> (2 * Integer.SIZE - endBit)) & ((1 << bitsPerToken) - 1);
+    }
+}
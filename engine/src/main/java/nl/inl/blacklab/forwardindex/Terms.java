@@ -9,6 +9,8 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
 import java.text.Collator;
+import java.util.BitSet;
+import java.util.function.Predicate;
 
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 
@@ -91,6 +93,29 @@ public abstract class Terms {
      */
     public abstract void indexOf(MutableIntSet results, String term, MatchSensitivity sensitivity);
 
+    /**
+     * Find the index numbers of all terms matching a predicate.
+     *
+     * This is used in search mode to resolve regex, wildcard and prefix patterns
+     * to a set of terms once, so matching a token is a simple bit test.
+     *
+     * Implementations may test only one term for each group of terms that
+     * desensitize to the same string, adding the whole group if it matches.
+     * (Terms the collator considers equal don't always desensitize to the same
+     * string, e.g. "strasse" and "straße", so these must be tested separately)
+     *
+     * @param results (out) index numbers of the matching terms
+     * @param matches predicate that tests a term string
+     * @param sensitivity sensitivity the predicate applies
+     */
+    public void indexOf(BitSet results, Predicate<String> matches, MatchSensitivity sensitivity) {
+        int n = numberOfTerms();
+        for (int termId = 0; termId < n; termId++) {
+            if (matches.test(get(termId)))
+                results.set(termId);
+        }
+    }
+
     /**
      * Clear the Terms object.
      */
@@ -6,6 +6,8 @@ import java.io.RandomAccessFile;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.text.Collator;
+import java.util.BitSet;
+import java.util.function.Predicate;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -40,6 +42,13 @@ public class TermsReader extends Terms {
      */
     private int[] groupId2TermIds;
 
+    /**
+     * Insensitive groups whose terms don't all desensitize to the same string
+     * (e.g. "strasse" and "straße"), so a pattern may match some of them but not
+     * others. Determined when first needed.
+     */
+    private volatile BitSet insensitiveGroupsWithDifferentForms;
+
     private byte[][] termCharData;
     /**
      * Lower 32 bits indicate the array, upper 32 bits indicate the index within the {@link #termCharData} array.
@@ -275,6 +284,64 @@ public class TermsReader extends Terms {
         }
     }
 
+    @Override
+    public void indexOf(BitSet results, Predicate<String> matches, MatchSensitivity sensitivity) {
+        if (sensitivity != MatchSensitivity.INSENSITIVE) {
+            super.indexOf(results, matches, sensitivity);
+            return;
+        }
+        // Only test the first term of each insensitive group; add the whole group if it matches.
+        // Groups whose terms desensitize to different strings are tested term by term.
+        final BitSet groupsWithDifferentForms = insensitiveGroupsWithDifferentForms();
+        for (int termId = 0; termId < numberOfTerms; termId++) {
+            final int groupId = this.insensitivePosition2GroupId[this.termId2InsensitivePosition[termId]];
+            if (groupsWithDifferentForms.get(groupId)) {
+                if (matches.test(get(termId)))
+                    results.set(termId);
+                continue;
+            }
+            if (this.groupId2TermIds[groupId + 1] != termId)
+                continue; // not the first term in its group; already tested
+            if (matches.test(get(termId))) {
+                final int groupSize = this.groupId2TermIds[groupId];
+                for (int i = 0; i < groupSize; ++i) {
+                    results.set(this.groupId2TermIds[groupId + 1 + i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the insensitive groups whose terms don't all desensitize to the same string.
+     *
+     * The insensitive collator considers more terms equal than desensitizing does,
+     * so a predicate on the desensitized string may give different answers for the
+     * terms in such a group.
+     *
+     * @return group ids of these groups
+     */
+    private BitSet insensitiveGroupsWithDifferentForms() {
+        BitSet result = insensitiveGroupsWithDifferentForms;
+        if (result == null) {
+            result = new BitSet();
+            for (int termId = 0; termId < numberOfTerms; termId++) {
+                final int groupId = this.insensitivePosition2GroupId[this.termId2InsensitivePosition[termId]];
+                final int groupSize = this.groupId2TermIds[groupId];
+                if (groupSize == 1 || this.groupId2TermIds[groupId + 1] != termId)
+                    continue; // nothing to compare, or not the first term in its group; already checked
+                final String desensitized = MatchSensitivity.INSENSITIVE.desensitize(get(termId));
+                for (int i = 1; i < groupSize; ++i) {
+                    if (!desensitized.equals(MatchSensitivity.INSENSITIVE.desensitize(get(this.groupId2TermIds[groupId + 1 + i])))) {
+                        result.set(groupId);
+                        break;
+                    }
+                }
+            }
+            insensitiveGroupsWithDifferentForms = result;
+        }
+        return result;
+    }
+
     @Override
     public int numberOfTerms() {
         return numberOfTerms;
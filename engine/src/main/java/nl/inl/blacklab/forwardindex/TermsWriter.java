@@ -10,16 +10,19 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.text.CollationKey;
+import java.text.Collator;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 
-import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 
@@ -31,9 +34,12 @@ import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
  * This version of the class stores the terms in a more efficient way so it
  * saves and loads faster, and includes the case-insensitive sorting order.
  *
- * This implementation is not thread-safe.
+ * indexOf() may be called from several indexing threads at once. Terms we've
+ * seen before are looked up in a concurrent hash map without locking or
+ * calculating collation keys; only new terms take a lock. Sorting the terms
+ * is done (in parallel) when writing the terms file.
  */
-@NotThreadSafe
+@ThreadSafe
 class TermsWriter extends Terms {
 
     protected static final Logger logger = LogManager.getLogger(TermsWriter.class);
@@ -48,11 +54,19 @@ class TermsWriter extends Terms {
     private static final int NUM_SORT_BUFFERS = 4;
 
     /**
-     * Mapping from term to its unique index number. We use a SortedMap because we
-     * wish to store the sorted index numbers later (to speed up sorting).
+     * Mapping from collation key to the term's unique index number. Terms that are
+     * equal according to the (sensitive) collator get the same index number.
+     * Must be synchronized on this object.
      */
     Map<CollationKey, Integer> termIndex;
 
+    /**
+     * Mapping from term string to its unique index number, so we don't have to
+     * calculate a collation key for every token. Every term string we've seen is
+     * added to this after it was assigned an index number in termIndex.
+     */
+    Map<String, Integer> termIndexByString;
+
     /**
      * The maximum block size to use while writing the terms file. Usually around
      * the limit of 2GB, but for testing, we can set this to a lower value.
@@ -63,9 +77,9 @@ class TermsWriter extends Terms {
         this.collator = collators.get(MatchSensitivity.SENSITIVE);
         this.collatorInsensitive = collators.get(MatchSensitivity.INSENSITIVE);
 
-        // Index mode: create a SortedMap based on the specified Collator.
-        // (used later to get the terms in sort order)
-        this.termIndex = new TreeMap<>();
+        // Index mode: terms are sorted only when we write the terms file
+        this.termIndex = new HashMap<>();
+        this.termIndexByString = new ConcurrentHashMap<>();
 
         if (termsFile != null && termsFile.exists())
             read(termsFile);
@@ -74,20 +88,26 @@ class TermsWriter extends Terms {
         // Build the case-sensitive term index.
         for (int i = 0; i < numberOfTerms; i++) {
             termIndex.put(collator.getCollationKey(terms[i]), i);
+            termIndexByString.put(terms[i], i);
         }
         terms = null; // useless in index mode because we can't add to it, and we don't need it anyway
     }
 
     @Override
     public int indexOf(String term) {
+        // Have we seen this exact string before? (most common case)
+        Integer index = termIndexByString.get(term);
+        if (index != null)
+            return index;
         synchronized (this) {
-            // Yes, use the available term index.
+            // New string, but it may be equal to a known term according to the collator
             CollationKey key = this.collator.getCollationKey(term);
-            Integer index = termIndex.get(key);
-            if (index != null)
-                return index;
-            index = termIndex.size();
-            termIndex.put(key, index);
+            index = termIndex.get(key);
+            if (index == null) {
+                index = termIndex.size();
+                termIndex.put(key, index);
+            }
+            termIndexByString.put(term, index);
             return index;
         }
     }
@@ -105,10 +125,12 @@ class TermsWriter extends Terms {
     @Override
     public synchronized void clear() {
         termIndex.clear();
+        termIndexByString.clear();
     }
 
     private synchronized void read(File termsFile) {
         termIndex.clear();
+        termIndexByString.clear();
         try {
             try (RandomAccessFile raf = new RandomAccessFile(termsFile, "r")) {
                 try (FileChannel fc = raf.getChannel()) {
@@ -129,14 +151,17 @@ class TermsWriter extends Terms {
                 try (FileChannel fc = raf.getChannel()) {
                     int n = termIndex.size();
 
-                    // Fill the terms[] array
+                    // Fill the terms[] array and sort the collation keys
                     terms = new String[n];
+                    CollationKey[] sortedKeys = new CollationKey[n];
                     long termStringsByteSize = 0;
                     for (Map.Entry<CollationKey, Integer> entry : termIndex.entrySet()) {
                         String term = entry.getKey().getSourceString();
+                        sortedKeys[entry.getValue()] = entry.getKey();
                         terms[entry.getValue()] = term;
                         termStringsByteSize += term.getBytes(DEFAULT_CHARSET).length;
                     }
+                    Arrays.parallelSort(sortedKeys);
 
                     // Calculate the file length and map the file
                     MappedByteBuffer buf;
@@ -232,34 +257,30 @@ class TermsWriter extends Terms {
                         fc.truncate(fileLength);
 
                     // Write the case-sensitive sort order
-                    // Because termIndex is a SortedMap, values are returned in key-sorted order.
-                    // In other words, the index numbers are in order of sorted terms, so the id
+                    // The index numbers are in order of sorted terms, so the id
                     // for 'aardvark' comes before the id for 'ape', etc.
-                    int i = 0;
                     int[] sortPositionPerId = new int[n];
                     Integer[] insensitive = new Integer[n];
-                    for (int id : termIndex.values()) {
+                    for (int i = 0; i < n; i++) {
+                        int id = termIndex.get(sortedKeys[i]);
                         sortPositionPerId[id] = i;
                         insensitive[i] = id; // fill this so we can re-sort later, faster b/c already partially sorted
-                        i++;
                     }
                     ib.put(new int[n]); // NOT USED ANYMORE, JUST FOR FILE COMPATIBILITY
                     ib.put(sortPositionPerId);
 
                     // Now, sort case-insensitively and write those arrays as well
-                    Arrays.sort(insensitive, new Comparator<Integer>() {
-                        @Override
-                        public int compare(Integer a, Integer b) {
-                            return collatorInsensitive.compare(terms[a], terms[b]);
-                        }
-                    });
+                    // (calculate the collation keys in parallel; Collator isn't thread-safe, so each thread uses a clone)
+                    ThreadLocal<Collator> threadCollator = ThreadLocal.withInitial(() -> (Collator) collatorInsensitive.clone());
+                    CollationKey[] insensitiveKeys = new CollationKey[n];
+                    IntStream.range(0, n).parallel().forEach(id -> insensitiveKeys[id] = threadCollator.get().getCollationKey(terms[id]));
+                    Arrays.parallelSort(insensitive, Comparator.comparing((Integer id) -> insensitiveKeys[id]));
                     // Copy into the sortPositionPerIdInsensitive array, making sure that
                     // identical values get identical sort positions!
                     int[] sortPositionPerIdInsensitive = new int[n];
                     int sortPos = 0;
-                    for (i = 0; i < n; i++) {
-                        if (i == 0
-                                || collatorInsensitive.compare(terms[insensitive[i - 1]], terms[insensitive[i]]) != 0) {
+                    for (int i = 0; i < n; i++) {
+                        if (i == 0 || insensitiveKeys[insensitive[i - 1]].compareTo(insensitiveKeys[insensitive[i]]) != 0) {
                             // Not identical to previous value: gets its own sort position.
                             // If a value is identical to the previous one, it gets the same sort position.
                             sortPos = i;
@@ -21,22 +21,40 @@ import java.util.Comparator;
 class TocEntry implements Comparable<TocEntry> {
     public static final Comparator<TocEntry> LENGTH_COMPARATOR = Comparator.comparingInt(o -> o.length);
 
-    /** token offset in tokens.dat */
+    /** word offset in tokens.dat */
     public long offset;
 
     /** Number of tokens in document.
      *  NOTE: this INCLUDES the extra closing token at the end.
+     *  NOTE2: for deleted entries, bitsPerToken is always 32, so this is the gap size in words.
      */
     public int length;
 
     /** was this entry deleted? (remove in next compacting run) */
     public boolean deleted;
 
+    /** number of bits each token takes in tokens.dat */
+    public int bitsPerToken;
+
     public TocEntry(long offset, int length, boolean deleted) {
+        this(offset, length, deleted, PackedTokens.UNPACKED_BITS);
+    }
+
+    public TocEntry(long offset, int length, boolean deleted, int bitsPerToken) {
         super();
         this.offset = offset;
         this.length = length;
         this.deleted = deleted;
+        this.bitsPerToken = bitsPerToken;
+    }
+
+    /**
+     * How many words does this entry take up in tokens.dat?
+     *
+     * @return number of words
+     */
+    public int storageLength() {
+        return PackedTokens.numberOfWords(length, bitsPerToken);
     }
 
     /**
@@ -54,6 +72,7 @@ class TocEntry implements Comparable<TocEntry> {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
+        result = prime * result + bitsPerToken;
         result = prime * result + (deleted ? 1231 : 1237);
         result = prime * result + length;
         result = prime * result + (int) (offset ^ (offset >>> 32));
@@ -69,7 +88,8 @@ class TocEntry implements Comparable<TocEntry> {
         if (getClass() != obj.getClass())
             return false;
         TocEntry other = (TocEntry) obj;
-        return deleted == other.deleted && length == other.length && offset == other.offset;
+        return deleted == other.deleted && length == other.length && offset == other.offset
+                && bitsPerToken == other.bitsPerToken;
     }
 
 }
@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 
 /**
@@ -52,6 +53,25 @@ public interface DocWriter {
      */
     int docsToDoLeft();
 
+    /**
+     * How many threads may be used for indexing?
+     *
+     * DocIndexers may use this to index parts of a large file in parallel.
+     *
+     * @return number of threads
+     */
+    int numberOfThreadsToUse();
+
+    /**
+     * Thread pool DocIndexers may use to index parts of a large file in parallel.
+     *
+     * The pool is shared by all files being indexed, so splitting several files
+     * at the same time doesn't multiply the number of threads.
+     *
+     * @return thread pool, or null if we're not indexing multithreaded
+     */
+    ExecutorService splitFileThreadPool();
+
     File linkedFile(String inputFile);
     
     FieldType metadataFieldType(boolean tokenized);
@@ -0,0 +1,172 @@
+package nl.inl.blacklab.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import net.jcip.annotations.ThreadSafe;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+
+/**
+ * Writes parsed documents to the index using separate threads.
+ *
+ * DocIndexers parse the input and build the Lucene document (including the
+ * values for its token streams). Writing the forward index and adding the
+ * document to Lucene (which analyzes and inverts the token streams) is handed
+ * to this pipeline, so the parsing threads can continue with the next document
+ * instead of waiting for the writes.
+ *
+ * The queue between parsing and writing is bounded, because every queued
+ * document is held in memory in its entirety; if the writers can't keep up,
+ * the parsing threads wait.
+ */
+@ThreadSafe
+class DocumentWritePipeline implements AutoCloseable {
+
+    /** Tells a writer thread to stop */
+    private static final Runnable STOP = () -> {};
+
+    /** Documents waiting to be written */
+    private final BlockingQueue<Runnable> queue;
+
+    /** Our writer threads */
+    private final List<Thread> threads = new ArrayList<>();
+
+    /** Where to report queue depth and write times */
+    private volatile IndexListener listener;
+
+    /** Number of documents queued or being written (guarded by this) */
+    private int pending = 0;
+
+    /** Unexpected error in a writer thread, if any (guarded by this) */
+    private Throwable error;
+
+    /**
+     * Start the writer threads.
+     *
+     * @param numberOfThreads number of threads writing documents
+     * @param listener where to report queue depth and write times
+     */
+    DocumentWritePipeline(int numberOfThreads, IndexListener listener) {
+        this.listener = listener;
+        queue = new ArrayBlockingQueue<>(numberOfThreads * 2);
+        for (int i = 0; i < numberOfThreads; i++) {
+            Thread thread = new Thread(this::writeDocuments, "DocumentWriter-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    /**
+     * Set where to report queue depth and write times.
+     *
+     * @param listener listener
+     */
+    void setListener(IndexListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queue a document for writing.
+     *
+     * Blocks if the queue is full.
+     *
+     * @param write task that writes the document; should report its own errors
+     */
+    void submit(Runnable write) {
+        synchronized (this) {
+            throwIfFailed();
+            pending++;
+        }
+        try {
+            queue.put(write);
+        } catch (InterruptedException e) {
+            documentFinished();
+            Thread.currentThread().interrupt();
+            throw new BlackLabRuntimeException("Interrupted while queueing document for writing", e);
+        }
+        listener.documentQueuedForWriting(queue.size());
+    }
+
+    /**
+     * How many documents are waiting to be written or being written?
+     *
+     * @return number of documents
+     */
+    synchronized int documentsPending() {
+        return pending;
+    }
+
+    /**
+     * Wait until all queued documents have been written.
+     */
+    synchronized void waitUntilWritten() {
+        try {
+            while (pending > 0)
+                wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlackLabRuntimeException("Interrupted while waiting for documents to be written", e);
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * Write all queued documents, then stop the writer threads.
+     */
+    @Override
+    public void close() {
+        try {
+            waitUntilWritten();
+        } finally {
+            // Don't interrupt the threads; that could interrupt Lucene in the middle of a write
+            try {
+                for (int i = 0; i < threads.size(); i++)
+                    queue.put(STOP);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            threads.clear();
+        }
+    }
+
+    private void throwIfFailed() {
+        if (error != null)
+            throw new BlackLabRuntimeException("Error while writing document", error);
+    }
+
+    private synchronized void documentFinished() {
+        pending--;
+        if (pending == 0)
+            notifyAll();
+    }
+
+    /** Take documents from the queue and write them until we're told to stop */
+    private void writeDocuments() {
+        while (true) {
+            Runnable write;
+            try {
+                write = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (write == STOP)
+                return;
+            long start = System.nanoTime();
+            try {
+                write.run();
+            } catch (Throwable e) {
+                synchronized (this) {
+                    if (error == null)
+                        error = e;
+                }
+            } finally {
+                listener.documentWritten(System.nanoTime() - start, queue.size());
+                documentFinished();
+            }
+        }
+    }
+
+}
@@ -55,6 +55,18 @@ public class IndexListener implements ErrorHandler {
 
     private int errors = 0;
 
+    /** How many documents are currently waiting to be written? */
+    private int writeQueueDepth = 0;
+
+    /** Most documents that were waiting to be written at any time */
+    private int maxWriteQueueDepth = 0;
+
+    /** How many documents have been written by the write stage? */
+    private long docsWritten = 0;
+
+    /** Total time spent writing documents, summed over the writer threads */
+    private long writeTimeNanos = 0;
+
     /**
      * Started processing a file.
      *
@@ -202,6 +214,70 @@ public class IndexListener implements ErrorHandler {
         tokensProcessed += n;
     }
 
+    /**
+     * A parsed document was queued to be written by a separate thread.
+     *
+     * Only called if a separate write stage is used (see
+     * {@link Indexer#setNumberOfWriteThreads(int)}).
+     *
+     * @param queueDepth number of documents waiting to be written
+     */
+    public synchronized void documentQueuedForWriting(int queueDepth) {
+        writeQueueDepth = queueDepth;
+        maxWriteQueueDepth = Math.max(maxWriteQueueDepth, queueDepth);
+    }
+
+    /**
+     * A queued document was written to the forward index and Lucene.
+     *
+     * @param durationNanos how long writing the document took
+     * @param queueDepth number of documents still waiting to be written
+     */
+    public synchronized void documentWritten(long durationNanos, int queueDepth) {
+        docsWritten++;
+        writeTimeNanos += durationNanos;
+        writeQueueDepth = queueDepth;
+    }
+
+    /**
+     * Get the number of documents waiting to be written.
+     *
+     * If this is often close to the maximum, the write stage is the bottleneck;
+     * if it's usually 0, parsing is.
+     *
+     * @return number of documents waiting to be written
+     */
+    public synchronized int getWriteQueueDepth() {
+        return writeQueueDepth;
+    }
+
+    /**
+     * Get the highest number of documents that were waiting to be written.
+     *
+     * @return maximum write queue depth so far
+     */
+    public synchronized int getMaxWriteQueueDepth() {
+        return maxWriteQueueDepth;
+    }
+
+    /**
+     * Get the number of documents written by the write stage so far.
+     *
+     * @return number of documents written
+     */
+    public synchronized long getDocsWritten() {
+        return docsWritten;
+    }
+
+    /**
+     * Get the total time spent writing documents, summed over the writer threads.
+     *
+     * @return write time in ms
+     */
+    public synchronized long getWriteTimeMs() {
+        return writeTimeNanos / 1_000_000;
+    }
+
     @Override
     public synchronized boolean errorOccurred(Throwable e, String path, File f) {
         errors++;
@@ -118,6 +118,36 @@ public abstract class IndexListenerDecorator extends IndexListener {
         subject.tokensDone(n);
     }
 
+    @Override
+    public void documentQueuedForWriting(int queueDepth) {
+        subject.documentQueuedForWriting(queueDepth);
+    }
+
+    @Override
+    public void documentWritten(long durationNanos, int queueDepth) {
+        subject.documentWritten(durationNanos, queueDepth);
+    }
+
+    @Override
+    public int getWriteQueueDepth() {
+        return subject.getWriteQueueDepth();
+    }
+
+    @Override
+    public int getMaxWriteQueueDepth() {
+        return subject.getMaxWriteQueueDepth();
+    }
+
+    @Override
+    public long getDocsWritten() {
+        return subject.getDocsWritten();
+    }
+
+    @Override
+    public long getWriteTimeMs() {
+        return subject.getWriteTimeMs();
+    }
+
     @Override
     public synchronized boolean errorOccurred(Throwable e, String path, File f) {
         return subject.errorOccurred(e, path, f);
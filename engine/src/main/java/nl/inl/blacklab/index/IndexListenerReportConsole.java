@@ -84,6 +84,13 @@ public class IndexListenerReportConsole extends IndexListener {
                             "currently %.1fk tok/s (%.1f MB/s); %s elapsed%n",
                             formatNumber(getDocsDone()), formatSizeBytes(totalCharsDone), formatNumber(totalTokensDone), overallTokenSpeed,
                             overallSpeed, curTokensSpeed, curSpeed, formatTimeMs(indexTimeSoFar));
+            long docsWritten = getDocsWritten();
+            if (docsWritten > 0) {
+                // Separate write stage: show whether it keeps up with parsing
+                System.out.printf("  write stage: %s docs written (avg. %.1f ms/doc); queue %d (max. %d)%n",
+                        formatNumber(docsWritten), (double) getWriteTimeMs() / docsWritten, getWriteQueueDepth(),
+                        getMaxWriteQueueDepth());
+            }
 
             prevCharsDoneReported = totalCharsDone;
             prevTokensDoneReported = totalTokensDone;
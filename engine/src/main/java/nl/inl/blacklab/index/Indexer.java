@@ -247,4 +247,19 @@ public interface Indexer {
 
     void setNumberOfThreadsToUse(int numberOfThreadsToUse);
 
+    /**
+     * Set the number of threads that write parsed documents to the index.
+     *
+     * If this is 0 (the default), the threads that parse the input also write
+     * each document to the forward index and Lucene when they're done parsing it.
+     * Otherwise, parsed documents are queued and written by this many separate
+     * threads, so parsing and writing (including Lucene's analysis of the token
+     * streams) overlap. Progress of the write stage is reported to the
+     * IndexListener.
+     *
+     * @param numberOfWriteThreads number of threads writing documents, or 0 to write
+     *     in the parsing threads
+     */
+    void setNumberOfWriteThreads(int numberOfWriteThreads);
+
 }
@@ -21,10 +21,15 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import org.apache.commons.io.IOUtils;
@@ -95,6 +100,19 @@ class IndexerImpl implements DocWriter, Indexer {
 
         @Override
         public void file(String path, InputStream is, File file) throws IOException, MalformedInputFile, PluginException {
+            if (file != null && path.equals(file.getAbsolutePath())) {
+                // A large file streamed to us. Let the DocIndexer open the file itself, so it knows the file size
+                // (and can decide to split the file into documents while reading it)
+                Charset cs;
+                try (UnicodeStream inputStream = new UnicodeStream(is, DEFAULT_INPUT_ENCODING)) {
+                    cs = inputStream.getEncoding();
+                }
+                try (DocIndexer docIndexer = DocumentFormats.get(IndexerImpl.this.formatIdentifier, IndexerImpl.this,
+                        path, file, cs)) {
+                    impl(docIndexer, path);
+                }
+                return;
+            }
             // Attempt to detect the encoding of our inputStream, falling back to DEFAULT_INPUT_ENCODING if the stream
             // doesn't contain a a BOM This doesn't do any character parsing/decoding itself, it just detects and skips
             // the BOM (if present) and exposes the correct character set for this stream (if present)
@@ -151,7 +169,7 @@ class IndexerImpl implements DocWriter, Indexer {
     private int maxNumberOfDocsToIndex = -1;
 
     /** Should we terminate indexing? (e.g. because of an error) */
-    private boolean terminateIndexing = false;
+    private volatile boolean terminateIndexing = false;
 
     /**
      * Where to report indexing progress.
@@ -204,6 +222,28 @@ class IndexerImpl implements DocWriter, Indexer {
     /** Index using multiple threads or just one? */
     private int numberOfThreadsToUse = 1;
 
+    /**
+     * Threads for indexing the documents of large files that are split while
+     * reading them, or null if we're not indexing multithreaded.
+     */
+    private ExecutorService splitFileThreadPool = null;
+
+    /**
+     * Writes parsed documents to the forward index and Lucene in separate threads,
+     * or null if the parsing threads write them.
+     */
+    private DocumentWritePipeline writePipeline = null;
+
+    /**
+     * Forward index writes for documents that are still being parsed, to be done
+     * by the write stage before adding the document to Lucene.
+     *
+     * Only used if we have a writePipeline. Keyed by identity, because a linked
+     * document may add to the forward index for its parent's Lucene document.
+     */
+    private final Map<Document, List<Runnable>> pendingForwardIndexWrites =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
     // TODO this is a workaround for a bug where indexMetadata is always written, even when an indexing task was
     // rollbacked on an empty index. Result of this is that the index can never be opened again (the forwardindex
     // is missing files that the indexMetadata.yaml says must exist?) so record rollbacks and then don't write
@@ -434,6 +474,8 @@ class IndexerImpl implements DocWriter, Indexer {
     @Override
     public synchronized void setListener(IndexListener listener) {
         this.listener = listener;
+        if (writePipeline != null)
+            writePipeline.setListener(listener);
         listener(); // report creation and start of indexing, if it hadn't been reported yet
     }
 
@@ -467,6 +509,7 @@ class IndexerImpl implements DocWriter, Indexer {
 
     @Override
     public void rollback() {
+        waitForWrites();
         listener().rollbackStart();
         indexWriter.rollback();
         listener().rollbackEnd();
@@ -479,6 +522,11 @@ class IndexerImpl implements DocWriter, Indexer {
 
         // Signal to the listener that we're done indexing and closing the index (which might take a
         // while)
+        if (writePipeline != null) {
+            writePipeline.close();
+            writePipeline = null;
+        }
+        shutdownSplitFileThreadPool();
         listener().indexEnd();
         listener().closeStart();
 
@@ -508,16 +556,66 @@ class IndexerImpl implements DocWriter, Indexer {
      */
     @Override
     public void add(Document document) throws IOException {
+        if (writePipeline != null) {
+            queueWrite(null, document);
+            return;
+        }
         indexWriter.writer().addDocument(document);
         listener().luceneDocumentAdded();
     }
 
     @Override
     public void update(Term term, Document document) throws IOException {
+        if (writePipeline != null) {
+            queueWrite(term, document);
+            return;
+        }
         indexWriter.writer().updateDocument(term, document);
         listener().luceneDocumentAdded();
     }
 
+    /**
+     * Queue a parsed document to be written by the write stage.
+     *
+     * The write stage first performs any pending forward index writes for the
+     * document (which add the forward index ids to it), then adds it to Lucene.
+     *
+     * @param term if not null, replace the document(s) matching this term
+     * @param document the document to write
+     */
+    private void queueWrite(Term term, Document document) {
+        List<Runnable> forwardIndexWrites = pendingForwardIndexWrites.remove(document);
+        // (don't call listener() from the write stage; close() holds our lock while waiting for it)
+        IndexListener listener = listener();
+        writePipeline.submit(() -> {
+            try {
+                if (forwardIndexWrites != null)
+                    forwardIndexWrites.forEach(Runnable::run);
+                if (term == null)
+                    indexWriter.writer().addDocument(document);
+                else
+                    indexWriter.writer().updateDocument(term, document);
+                listener.luceneDocumentAdded();
+            } catch (IOException | RuntimeException e) {
+                // Report the error like the FileProcessor would if this happened while parsing
+                if (!listener.errorOccurred(e, document.get("fromInputFile"), null))
+                    terminateIndexing = true;
+            }
+        });
+    }
+
+    /**
+     * Wait until all documents queued for writing have been written.
+     */
+    private void waitForWrites() {
+        if (writePipeline != null) {
+            writePipeline.waitUntilWritten();
+            // Any forward index writes left belong to documents that failed while
+            // parsing; they will never be added.
+            pendingForwardIndexWrites.clear();
+        }
+    }
+
     @Override
     public void addToForwardIndex(AnnotatedFieldWriter fieldWriter, Document currentLuceneDoc) {
         Map<Annotation, List<String>> annotations = new HashMap<>();
@@ -529,6 +627,13 @@ class IndexerImpl implements DocWriter, Indexer {
                 posIncr.put(annotation, annotationWriter.positionIncrements());
             }
         }
+        if (writePipeline != null) {
+            // Leave this to the write stage. This is safe because the annotation writers
+            // don't reuse these lists for the next document.
+            pendingForwardIndexWrites.computeIfAbsent(currentLuceneDoc, k -> new ArrayList<>())
+                    .add(() -> indexWriter().forwardIndex(fieldWriter.field()).addDocument(annotations, posIncr, currentLuceneDoc));
+            return;
+        }
         indexWriter().forwardIndex(fieldWriter.field()).addDocument(annotations, posIncr, currentLuceneDoc);
     }
 
@@ -555,6 +660,8 @@ class IndexerImpl implements DocWriter, Indexer {
             proc.setFileHandler(docIndexerWrapper);
             proc.setErrorHandler(listener());
             proc.processInputStream(fileName, input, null);
+        } finally {
+            waitForWrites();
         }
     }
 
@@ -570,7 +677,10 @@ class IndexerImpl implements DocWriter, Indexer {
             proc.setFileNameGlob(optGlob.orElse("*"));
             proc.setFileHandler(docIndexerWrapper);
             proc.setErrorHandler(listener());
+            proc.setStreamFilesLargerThan(splitFilesLargerThan());
             proc.processFile(file);
+        } finally {
+            waitForWrites();
         }
     }
     
@@ -582,9 +692,22 @@ class IndexerImpl implements DocWriter, Indexer {
             proc.setFileHandler(docIndexerWrapper);
             proc.setErrorHandler(listener());
             proc.processFile(fileName, contents, null);
+        } finally {
+            waitForWrites();
         }
     }
     
+    /**
+     * Files larger than this will be split into documents while reading them, so
+     * they don't need to be read into memory first.
+     *
+     * @return size in bytes, or -1 if our format doesn't split files
+     */
+    private long splitFilesLargerThan() {
+        Format format = DocumentFormats.getFormat(formatIdentifier);
+        return format != null && format.isConfigurationBased() ? format.getConfig().getSplitFilesLargerThan() : -1;
+    }
+
     /**
      * Should we continue indexing or stop?
      *
@@ -615,9 +738,21 @@ class IndexerImpl implements DocWriter, Indexer {
         if (maxNumberOfDocsToIndex < 0)
             return maxNumberOfDocsToIndex;
         int docsDone = indexWriter.writer().numDocs();
+        if (writePipeline != null)
+            docsDone += writePipeline.documentsPending(); // will be added soon
         return Math.max(0, maxNumberOfDocsToIndex - docsDone);
     }
 
+    @Override
+    public int numberOfThreadsToUse() {
+        return numberOfThreadsToUse;
+    }
+
+    @Override
+    public ExecutorService splitFileThreadPool() {
+        return splitFileThreadPool;
+    }
+
     /*
      * BlackLab index version history:
      * 1. Initial version
@@ -722,5 +857,33 @@ class IndexerImpl implements DocWriter, Indexer {
             logger.info("Threaded indexing is disabled for format " + formatIdentifier);
             this.numberOfThreadsToUse = 1;
         }
+
+        // (threads are only started when a file is actually split)
+        shutdownSplitFileThreadPool();
+        if (this.numberOfThreadsToUse > 1) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            splitFileThreadPool = Executors.newFixedThreadPool(this.numberOfThreadsToUse, r -> {
+                Thread thread = new Thread(r, "SplitFileIndexer-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void shutdownSplitFileThreadPool() {
+        if (splitFileThreadPool != null) {
+            splitFileThreadPool.shutdown();
+            splitFileThreadPool = null;
+        }
+    }
+
+    @Override
+    public void setNumberOfWriteThreads(int numberOfWriteThreads) {
+        if (writePipeline != null) {
+            writePipeline.close();
+            writePipeline = null;
+        }
+        if (numberOfWriteThreads > 0)
+            writePipeline = new DocumentWritePipeline(numberOfWriteThreads, listener());
     }
 }
@@ -515,6 +515,28 @@ public class ConfigInputFormat {
                 && fileTypeOptions.get("resolveNamedEntityReferences").equalsIgnoreCase("true");
     }
 
+    /**
+     * Size above which XML files are split into separate documents while reading
+     * them, instead of being parsed as a whole.
+     *
+     * Set using the splitFilesLargerThanMB file type option. Only files where
+     * the documentPath is a simple list of element names can be split, and the
+     * XPaths used while indexing a document must not refer to anything outside
+     * the document (except its ancestor elements).
+     *
+     * @return size in bytes, or -1 if files should never be split
+     */
+    public long getSplitFilesLargerThan() {
+        String value = fileTypeOptions.get("splitFilesLargerThanMB");
+        if (fileType != FileType.XML || value == null)
+            return -1;
+        try {
+            return Long.parseLong(value.trim()) * 1_000_000L;
+        } catch (NumberFormatException e) {
+            throw new InvalidInputFormatConfig("splitFilesLargerThanMB should be a number (megabytes), not " + value);
+        }
+    }
+
     public String getHelpUrl() {
         return helpUrl;
     }
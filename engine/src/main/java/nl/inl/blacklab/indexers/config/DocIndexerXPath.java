@@ -3,6 +3,7 @@ package nl.inl.blacklab.indexers.config;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -20,6 +21,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
 import org.apache.commons.io.FileUtils;
@@ -62,6 +68,21 @@ public class DocIndexerXPath extends DocIndexerConfig {
     /** Our input document */
     private byte[] inputDocument;
 
+    /**
+     * Input to split into documents while reading it, or null if we're not
+     * splitting it (see {@link ConfigInputFormat#getSplitFilesLargerThan()})
+     */
+    private InputStream inputToSplit;
+
+    /** May we split our input? (not if we're helping to index a split file) */
+    private boolean maySplit = true;
+
+    /** Documents indexed by helper indexers while splitting our input */
+    private int splitDocsDone = 0;
+
+    /** Tokens indexed by helper indexers while splitting our input */
+    private long splitTokensDone = 0;
+
     /** What was the byte offset of the last char position we determined? */
     private int lastCharPositionByteOffset;
 
@@ -91,11 +112,45 @@ public class DocIndexerXPath extends DocIndexerConfig {
 
     @Override
     public void close() {
-        // NOP, we already closed our input after we read it
+        // We already closed our input after we read it, unless we never got around to splitting it
+        if (inputToSplit != null) {
+            try {
+                inputToSplit.close();
+            } catch (IOException e) {
+                throw BlackLabRuntimeException.wrap(e);
+            }
+            inputToSplit = null;
+        }
+    }
+
+    /**
+     * Should we split input of this size into documents while reading it?
+     *
+     * We only split input that we know is larger than the threshold.
+     *
+     * @param size size of the input in bytes, or -1 if unknown
+     * @return true if we should split it
+     */
+    private boolean shouldSplit(long size) {
+        long splitFilesLargerThan = config.getSplitFilesLargerThan();
+        if (!maySplit || splitFilesLargerThan < 0 || size <= splitFilesLargerThan)
+            return false;
+        // Named entity declarations can't be resolved per document
+        return !config.shouldResolveNamedEntityReferences()
+                && XmlDocumentSplitter.canSplit(config.getDocumentPath(), xpathNamespaces());
+    }
+
+    /** Namespaces declared for our XPaths, or null if we're not namespace-aware */
+    private Map<String, String> xpathNamespaces() {
+        return config.isNamespaceAware() ? config.getNamespaces() : null;
     }
 
     @Override
     public void setDocument(File file, Charset defaultCharset) throws FileNotFoundException {
+        if (shouldSplit(file.length())) {
+            inputToSplit = new FileInputStream(file);
+            return;
+        }
         try {
             setDocument(FileUtils.readFileToByteArray(file), defaultCharset);
         } catch (IOException e) {
@@ -105,6 +160,11 @@ public class DocIndexerXPath extends DocIndexerConfig {
 
     @Override
     public void setDocument(byte[] contents, Charset defaultCharset) {
+        if (shouldSplit(contents.length)) {
+            // Avoids building a VTD index for the whole file, and lets us use multiple threads
+            inputToSplit = new ByteArrayInputStream(contents);
+            return;
+        }
         if (config.shouldResolveNamedEntityReferences()) {
             // Document contains old DTD-style named entity declarations. Resolve them because VTD-XML can't deal with these.
             String doc = XmlUtil.readXmlAndResolveReferences(
@@ -116,6 +176,7 @@ public class DocIndexerXPath extends DocIndexerConfig {
 
     @Override
     public void setDocument(InputStream is, Charset defaultCharset) {
+        // We don't know the size, so we can't decide to split yet (setDocument(byte[]) will)
         try {
             setDocument(IOUtils.toByteArray(is), defaultCharset);
             is.close();
@@ -182,6 +243,18 @@ public class DocIndexerXPath extends DocIndexerConfig {
     public void index() throws MalformedInputFile, PluginException, IOException {
         super.index();
 
+        if (inputToSplit != null)
+            indexSplit();
+        else
+            indexInputDocument();
+    }
+
+    /**
+     * Parse our input document and index the documents in it.
+     *
+     * @throws MalformedInputFile if the input is not well-formed
+     */
+    private void indexInputDocument() throws MalformedInputFile {
         if (inputDocument.length > 0) { // VTD doesn't like empty documents
             // Parse use VTD-XML
             vg = new VTDGen();
@@ -196,6 +269,10 @@ public class DocIndexerXPath extends DocIndexerConfig {
 
                 nav = vg.getNav();
 
+                // Reuse the XPaths we compiled for a previous (split off) document
+                for (AutoPilot ap : compiledXPaths.values())
+                    ap.bind(nav);
+
                 // Find all documents
                 AutoPilot documents = acquireAutoPilot(config.getDocumentPath());
                 while (documents.evalXPath() != -1) {
@@ -208,6 +285,139 @@ public class DocIndexerXPath extends DocIndexerConfig {
         }
     }
 
+    /**
+     * Split our input into documents while reading it, and parse and index each
+     * document separately.
+     *
+     * This way, we only need to keep the documents we're indexing in memory, not
+     * the whole file. If we may use multiple threads, helper indexers index the
+     * documents while we read the next ones.
+     *
+     * @throws IOException on read error
+     */
+    private void indexSplit() throws IOException {
+        try (XmlDocumentSplitter splitter = new XmlDocumentSplitter(inputToSplit, config.getDocumentPath(),
+                xpathNamespaces())) {
+            inputToSplit = null;
+            ExecutorService threadPool = docWriter == null ? null : docWriter.splitFileThreadPool();
+            if (threadPool != null) {
+                indexSplitInParallel(splitter, threadPool, docWriter.numberOfThreadsToUse());
+            } else {
+                while ((inputDocument = splitter.nextDocument()) != null)
+                    indexInputDocument();
+            }
+        }
+    }
+
+    /**
+     * Index the documents we split off using helper indexers in a thread pool.
+     *
+     * The thread pool is shared by all files being indexed, so the number of
+     * documents being parsed at the same time is bounded by its size, however
+     * many files are split simultaneously.
+     *
+     * @param splitter splits our input into documents
+     * @param threadPool where to index the documents
+     * @param maxHelpers maximum number of our documents to parse or queue at the same time
+     * @throws IOException on read error
+     */
+    private void indexSplitInParallel(XmlDocumentSplitter splitter, ExecutorService threadPool, int maxHelpers)
+            throws IOException {
+        BlockingQueue<DocIndexerXPath> idleHelpers = new ArrayBlockingQueue<>(maxHelpers);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<DocIndexerXPath> helpers = new ArrayList<>();
+        try {
+            byte[] document;
+            while (error.get() == null && (document = splitter.nextDocument()) != null) {
+                // Wait for a helper to become available (so we don't read too far ahead)
+                DocIndexerXPath helper = idleHelpers.poll();
+                if (helper == null && helpers.size() < maxHelpers) {
+                    helper = createSplitHelper();
+                    helpers.add(helper);
+                } else if (helper == null) {
+                    helper = idleHelpers.take();
+                }
+                DocIndexerXPath finalHelper = helper;
+                byte[] finalDocument = document;
+                try {
+                    threadPool.execute(() -> {
+                        finalHelper.indexSplitDocument(finalDocument, error);
+                        idleHelpers.add(finalHelper);
+                    });
+                } catch (RejectedExecutionException e) {
+                    idleHelpers.add(helper);
+                    throw new BlackLabRuntimeException("Could not index split file " + documentName, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlackLabRuntimeException("Interrupted while splitting file " + documentName, e);
+        } finally {
+            // Let the helpers finish their documents (they don't block on errors, so this can't hang)
+            try {
+                for (int i = 0; i < helpers.size(); i++)
+                    idleHelpers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (DocIndexerXPath helper : helpers) {
+                splitDocsDone += helper.numberOfDocsDone();
+                splitTokensDone += helper.numberOfTokensDone();
+            }
+        }
+        Throwable e = error.get();
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e; // e.g. MalformedInputFile, MaxDocsReached
+        if (e != null)
+            throw BlackLabRuntimeException.wrap(e);
+    }
+
+    /**
+     * Create an indexer to help index the documents we split off.
+     *
+     * @return the helper
+     */
+    private DocIndexerXPath createSplitHelper() {
+        DocIndexerXPath helper = new DocIndexerXPath();
+        helper.maySplit = false;
+        helper.setConfigInputFormat(config);
+        helper.setDocWriter(docWriter);
+        helper.setDocumentName(documentName);
+        helper.init();
+        return helper;
+    }
+
+    /**
+     * Index a document we split off.
+     *
+     * Called in a thread pool thread while splitting a file.
+     *
+     * @param document document to index
+     * @param error where to report the first error (after which remaining documents are skipped)
+     */
+    private void indexSplitDocument(byte[] document, AtomicReference<Throwable> error) {
+        if (error.get() != null)
+            return;
+        try {
+            inputDocument = document;
+            indexInputDocument();
+        } catch (Throwable e) {
+            error.compareAndSet(null, e);
+        } finally {
+            inputDocument = null;
+        }
+    }
+
+    @Override
+    public int numberOfDocsDone() {
+        return super.numberOfDocsDone() + splitDocsDone;
+    }
+
+    @Override
+    public long numberOfTokensDone() {
+        return super.numberOfTokensDone() + splitTokensDone;
+    }
+
     /**
      * Index document from the current node.
      *
@@ -763,6 +973,13 @@ public class DocIndexerXPath extends DocIndexerConfig {
         super.indexSpecificDocument(documentXPath);
 
         try {
+            if (inputToSplit != null) {
+                // We need the whole file to find the document
+                try (InputStream is = inputToSplit) {
+                    inputToSplit = null;
+                    inputDocument = IOUtils.toByteArray(is);
+                }
+            }
             // Parse use VTD-XML
             vg = new VTDGen();
             vg.setDoc(inputDocument);
@@ -0,0 +1,572 @@
+package nl.inl.blacklab.indexers.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+
+import nl.inl.blacklab.exceptions.MalformedInputFile;
+
+/**
+ * Splits a (possibly huge) XML file into the documents it contains, while
+ * reading it.
+ *
+ * Only the document currently being read is kept in memory, so each document
+ * can be parsed separately instead of building a VTD index for the whole file.
+ *
+ * Each document is returned as a small well-formed XML file: the XML
+ * declaration of the input file (if any), the start tags of the document's
+ * ancestors (so namespace declarations and absolute document paths still
+ * work), the document element itself, and end tags for the ancestors. The
+ * document bytes are copied unchanged, so offsets within the document are the
+ * same as in the original file.
+ *
+ * Only simple document paths are supported, i.e. a list of element names,
+ * optionally preceded by a double slash (e.g. <code>//tei:TEI</code> or
+ * <code>/root/doc</code>); use {@link #canSplit(String, Map)} to check this.
+ * If the input file is not in an ASCII-compatible encoding (e.g. UTF-16), it is
+ * not split; it is returned as a single "document" instead.
+ *
+ * This is not a validating parser; it only looks at tags, comments, CDATA
+ * sections, processing instructions and DOCTYPE declarations to find the
+ * documents. Checking the documents themselves is left to the actual parser.
+ */
+class XmlDocumentSplitter implements Closeable {
+
+    /** Simple element name (optionally with a namespace prefix) */
+    private static final Pattern PATT_QNAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.\\-]*(:[A-Za-z_][A-Za-z0-9_.\\-]*)?");
+
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Can we split files using this document path?
+     *
+     * @param documentPath XPath to the document elements
+     * @param namespaces namespaces (prefix to URI) declared for XPaths, or null if
+     *            we're not namespace-aware
+     * @return true if the path is simple enough to split files using it
+     */
+    static boolean canSplit(String documentPath, Map<String, String> namespaces) {
+        return parseSteps(documentPath, namespaces) != null;
+    }
+
+    /** One step of the document path, or one element in the element stack */
+    private static class Name {
+        /** Namespace URI, or null if we're not namespace-aware */
+        final String namespace;
+
+        /** Local name, or qualified name if we're not namespace-aware */
+        final String name;
+
+        Name(String namespace, String name) {
+            this.namespace = namespace;
+            this.name = name;
+        }
+
+        boolean matches(Name other) {
+            return name.equals(other.name) && (namespace == null || namespace.equals(other.namespace));
+        }
+    }
+
+    /**
+     * Parse a simple document path into steps.
+     *
+     * @param documentPath XPath to the document elements
+     * @param namespaces declared namespaces, or null if we're not namespace-aware
+     * @return the steps, or null if the path is not simple enough
+     */
+    private static List<Name> parseSteps(String documentPath, Map<String, String> namespaces) {
+        String path = documentPath.trim();
+        if (!path.startsWith("/"))
+            return null;
+        path = path.startsWith("//") ? path.substring(2) : path.substring(1);
+        List<Name> steps = new ArrayList<>();
+        for (String step : path.split("/", -1)) {
+            if (!PATT_QNAME.matcher(step).matches())
+                return null;
+            if (namespaces == null) {
+                steps.add(new Name(null, step));
+            } else {
+                int colon = step.indexOf(':');
+                String prefix = colon < 0 ? "" : step.substring(0, colon);
+                String uri = namespaces.get(prefix);
+                if (uri == null) {
+                    if (colon >= 0)
+                        return null; // undeclared prefix; let the real XPath engine complain
+                    uri = "";
+                }
+                steps.add(new Name(uri, step.substring(colon + 1)));
+            }
+        }
+        return steps;
+    }
+
+    /** An open element */
+    private static class Element {
+        /** Qualified name as it appears in the tag */
+        final String qName;
+
+        /** Resolved name, for matching against the document path */
+        Name name;
+
+        /** Namespaces declared on this element, or null if none */
+        final Map<String, String> namespaces;
+
+        /** Start tag as it appeared in the input, or null if inside a document */
+        final byte[] startTag;
+
+        Element(String qName, Map<String, String> namespaces, byte[] startTag) {
+            this.qName = qName;
+            this.namespaces = namespaces;
+            this.startTag = startTag;
+        }
+    }
+
+    /** A growable byte array */
+    private static class ByteBuffer {
+        byte[] bytes;
+
+        int length;
+
+        ByteBuffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void append(int b) {
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            bytes[length++] = (byte) b;
+        }
+
+        void append(byte[] b, int offset, int n) {
+            if (length + n > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + n));
+            System.arraycopy(b, offset, bytes, length, n);
+            length += n;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /** Where we read the XML from */
+    private final InputStream input;
+
+    /** Steps in the document path */
+    private final List<Name> steps;
+
+    /** Does the document path start with a double slash? */
+    private final boolean anyDepth;
+
+    /** Are we namespace-aware? */
+    private final boolean namespaceAware;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int bufferPos = 0;
+
+    private int bufferLength = 0;
+
+    /** XML declaration from the start of the input, if any */
+    private byte[] xmlDeclaration = new byte[0];
+
+    /** Have we seen anything that may not precede the XML declaration? */
+    private boolean pastProlog = false;
+
+    /** Currently open elements */
+    private final List<Element> openElements = new ArrayList<>();
+
+    /** Tag (or comment, etc.) we're reading */
+    private final ByteBuffer tag = new ByteBuffer(256);
+
+    /** Document we're reading, or null if we're not inside a document */
+    private ByteBuffer document;
+
+    /** Depth of the current document element */
+    private int documentDepth;
+
+    /** If the input couldn't be split, the whole input (returned once) */
+    private byte[] unsplittable;
+
+    /**
+     * Construct a splitter.
+     *
+     * @param input where to read the XML from
+     * @param documentPath XPath to the document elements (see
+     *            {@link #canSplit(String, Map)})
+     * @param namespaces namespaces (prefix to URI) declared for XPaths, or null if
+     *            we're not namespace-aware
+     * @throws IOException on read error
+     */
+    XmlDocumentSplitter(InputStream input, String documentPath, Map<String, String> namespaces) throws IOException {
+        this.input = input;
+        steps = parseSteps(documentPath, namespaces);
+        if (steps == null)
+            throw new IllegalArgumentException("Document path too complex to split files: " + documentPath);
+        anyDepth = documentPath.trim().startsWith("//");
+        namespaceAware = namespaces != null;
+        checkEncoding();
+    }
+
+    /**
+     * Make sure we can scan the input byte by byte.
+     *
+     * If the input is UTF-16 or UTF-32, read it all, so we can return it unsplit.
+     * Skip a UTF-8 byte order mark.
+     */
+    private void checkEncoding() throws IOException {
+        fill();
+        if (bufferLength >= 2) {
+            int b0 = buffer[0] & 0xFF, b1 = buffer[1] & 0xFF;
+            if (b0 == 0xFE && b1 == 0xFF || b0 == 0xFF && b1 == 0xFE || b0 == 0 || b1 == 0) {
+                byte[] rest = IOUtils.toByteArray(input);
+                unsplittable = new byte[bufferLength + rest.length];
+                System.arraycopy(buffer, 0, unsplittable, 0, bufferLength);
+                System.arraycopy(rest, 0, unsplittable, bufferLength, rest.length);
+                bufferLength = 0;
+                return;
+            }
+        }
+        if (bufferLength >= 3 && (buffer[0] & 0xFF) == 0xEF && (buffer[1] & 0xFF) == 0xBB && (buffer[2] & 0xFF) == 0xBF)
+            bufferPos = 3;
+    }
+
+    private void fill() throws IOException {
+        bufferPos = 0;
+        bufferLength = 0;
+        while (bufferLength == 0) {
+            int n = input.read(buffer);
+            if (n < 0)
+                return;
+            bufferLength = n;
+        }
+    }
+
+    /**
+     * Read the next byte, adding it to the current document (if any).
+     *
+     * @return the byte, or -1 at the end of the input
+     */
+    private int read() throws IOException {
+        if (bufferPos == bufferLength) {
+            fill();
+            if (bufferLength == 0)
+                return -1;
+        }
+        int b = buffer[bufferPos++] & 0xFF;
+        if (document != null)
+            document.append(b);
+        return b;
+    }
+
+    /**
+     * Read the next byte, adding it to the current tag as well.
+     *
+     * @return the byte
+     */
+    private int readTag() throws IOException {
+        int b = read();
+        if (b < 0)
+            throw new MalformedInputFile("Unexpected end of file inside tag");
+        tag.append(b);
+        return b;
+    }
+
+    /**
+     * Read the next document from the input.
+     *
+     * @return the document, or null if there are no more documents
+     * @throws IOException on read error
+     */
+    byte[] nextDocument() throws IOException {
+        if (unsplittable != null) {
+            byte[] result = unsplittable;
+            unsplittable = null;
+            return result;
+        }
+        while (true) {
+            // Skip (or copy) text until the next tag
+            int i = bufferPos;
+            while (i < bufferLength && buffer[i] != '<')
+                i++;
+            if (document != null)
+                document.append(buffer, bufferPos, i - bufferPos);
+            else if (i > bufferPos && !pastProlog && !isWhitespace(buffer, bufferPos, i))
+                pastProlog = true;
+            bufferPos = i;
+            int b = read();
+            if (b < 0) {
+                if (document != null)
+                    throw new MalformedInputFile("Unexpected end of file inside document");
+                return null;
+            }
+            if (b != '<') {
+                pastProlog = true;
+                continue;
+            }
+            tag.length = 0;
+            tag.append(b);
+            b = readTag();
+            if (b == '!') {
+                skipDeclaration();
+            } else if (b == '?') {
+                readProcessingInstruction();
+            } else if (b == '/') {
+                byte[] result = readEndTag();
+                if (result != null)
+                    return result;
+            } else {
+                byte[] result = readStartTag();
+                if (result != null)
+                    return result;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t' && bytes[i] != '\r' && bytes[i] != '\n')
+                return false;
+        }
+        return true;
+    }
+
+    /** Skip a comment, CDATA section or DOCTYPE declaration (we've read "&lt;!") */
+    private void skipDeclaration() throws IOException {
+        pastProlog = true;
+        int b = readTag();
+        if (b == '-') {
+            readTag(); // second '-'
+            skipUntil("-->");
+        } else if (b == '[') {
+            skipUntil("]]>");
+        } else {
+            // DOCTYPE (possibly with an internal subset), or some other declaration
+            int bracketDepth = 0;
+            int quote = 0;
+            while (true) {
+                if (b == quote)
+                    quote = 0;
+                else if (quote == 0 && (b == '"' || b == '\''))
+                    quote = b;
+                else if (quote == 0 && b == '[')
+                    bracketDepth++;
+                else if (quote == 0 && b == ']')
+                    bracketDepth--;
+                else if (quote == 0 && b == '>' && bracketDepth <= 0)
+                    return;
+                b = read();
+                if (b < 0)
+                    throw new MalformedInputFile("Unexpected end of file inside declaration");
+            }
+        }
+    }
+
+    /** Skip until we've read the end string (either "--&gt;" or "]]&gt;") */
+    private void skipUntil(String end) throws IOException {
+        int matched = 0;
+        while (matched < end.length()) {
+            int b = read();
+            if (b < 0)
+                throw new MalformedInputFile("Unexpected end of file, expected " + end);
+            if (b == end.charAt(matched))
+                matched++;
+            else if (b != end.charAt(0))
+                matched = 0;
+            // (otherwise, b repeats the first char; for "-->" and "]]>" we've still matched the same prefix)
+        }
+    }
+
+    /** Read a processing instruction (we've read "&lt;?"); remember the XML declaration */
+    private void readProcessingInstruction() throws IOException {
+        int prev = 0;
+        while (true) {
+            int b = readTag();
+            if (b == '>' && prev == '?')
+                break;
+            prev = b;
+        }
+        if (!pastProlog && tag.length > 6 && new String(tag.bytes, 0, 5, StandardCharsets.US_ASCII).equals("<?xml")
+                && isWhitespace(tag.bytes, 5, 6)) {
+            xmlDeclaration = tag.toByteArray();
+        }
+        pastProlog = true;
+    }
+
+    /**
+     * Read an end tag (we've read "&lt;/").
+     *
+     * @return the document if this ended one, otherwise null
+     */
+    private byte[] readEndTag() throws IOException {
+        while (readTag() != '>') {
+            // (keep reading)
+        }
+        if (openElements.isEmpty())
+            throw new MalformedInputFile("Unexpected end tag");
+        openElements.remove(openElements.size() - 1);
+        if (document != null && openElements.size() < documentDepth)
+            return finishDocument();
+        return null;
+    }
+
+    /**
+     * Read a start tag (we've read "&lt;" and the first byte of the name).
+     *
+     * @return the document if this is an empty document element, otherwise null
+     */
+    private byte[] readStartTag() throws IOException {
+        pastProlog = true;
+        int quote = 0;
+        int prev = 0;
+        while (true) {
+            int b = readTag();
+            if (b == quote)
+                quote = 0;
+            else if (quote == 0 && (b == '"' || b == '\''))
+                quote = b;
+            else if (quote == 0 && b == '>')
+                break;
+            prev = b;
+        }
+        boolean empty = prev == '/';
+
+        // Find the element name and namespace declarations
+        int nameEnd = 1;
+        while (nameEnd < tag.length && !isNameEnd(tag.bytes[nameEnd]))
+            nameEnd++;
+        String qName = new String(tag.bytes, 1, nameEnd - 1, StandardCharsets.UTF_8);
+        Map<String, String> namespaces = namespaceAware && document == null ? findNamespaceDeclarations(nameEnd) : null;
+        Element element = new Element(qName, namespaces, document == null ? tag.toByteArray() : null);
+        openElements.add(element);
+
+        byte[] result = null;
+        if (document == null && isDocumentElement(element)) {
+            // Start of a new document
+            document = new ByteBuffer(Math.max(BUFFER_SIZE, tag.length * 2));
+            document.append(tag.bytes, 0, tag.length);
+            documentDepth = openElements.size();
+            if (empty)
+                result = finishDocument();
+        }
+        if (empty)
+            openElements.remove(openElements.size() - 1);
+        return result;
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '/' || b == '>';
+    }
+
+    /**
+     * Find the namespace declarations in the current tag.
+     *
+     * @param start where to start looking (after the element name)
+     * @return declared namespaces (prefix to URI; default namespace has prefix ""),
+     *         or null if there are none
+     */
+    private Map<String, String> findNamespaceDeclarations(int start) {
+        Map<String, String> result = null;
+        String attributes = new String(tag.bytes, start, tag.length - start, StandardCharsets.UTF_8);
+        int i = attributes.indexOf("xmlns");
+        while (i >= 0) {
+            // Make sure this is an attribute name and find the prefix (if any)
+            int nameEnd = attributes.indexOf('=', i);
+            if (nameEnd < 0)
+                break;
+            String name = attributes.substring(i, nameEnd).trim();
+            boolean isAttributeName = i > 0 && Character.isWhitespace(attributes.charAt(i - 1));
+            if (isAttributeName && (name.equals("xmlns") || name.startsWith("xmlns:"))) {
+                int valueStart = nameEnd + 1;
+                while (valueStart < attributes.length() && Character.isWhitespace(attributes.charAt(valueStart)))
+                    valueStart++;
+                if (valueStart >= attributes.length())
+                    break;
+                char quote = attributes.charAt(valueStart);
+                int valueEnd = attributes.indexOf(quote, valueStart + 1);
+                if (valueEnd < 0)
+                    break;
+                if (result == null)
+                    result = new HashMap<>();
+                String prefix = name.equals("xmlns") ? "" : name.substring(6);
+                result.put(prefix, attributes.substring(valueStart + 1, valueEnd));
+                i = attributes.indexOf("xmlns", valueEnd + 1);
+            } else {
+                i = attributes.indexOf("xmlns", i + 5);
+            }
+        }
+        return result;
+    }
+
+    /** Resolve a namespace prefix using the currently open elements */
+    private String resolvePrefix(String prefix) {
+        if (prefix.equals("xml"))
+            return XML_NAMESPACE;
+        for (int i = openElements.size() - 1; i >= 0; i--) {
+            Map<String, String> namespaces = openElements.get(i).namespaces;
+            if (namespaces != null && namespaces.containsKey(prefix))
+                return namespaces.get(prefix);
+        }
+        return prefix.isEmpty() ? "" : null;
+    }
+
+    /** Does the (just opened) element match the document path? */
+    private boolean isDocumentElement(Element element) {
+        int depth = openElements.size();
+        if (anyDepth ? depth < steps.size() : depth != steps.size())
+            return false;
+        for (int i = 0; i < steps.size(); i++) {
+            Element e = openElements.get(depth - steps.size() + i);
+            if (!steps.get(i).matches(name(e)))
+                return false;
+        }
+        return true;
+    }
+
+    /** Get the (resolved) name for an open element */
+    private Name name(Element element) {
+        if (element.name == null) {
+            if (namespaceAware) {
+                int colon = element.qName.indexOf(':');
+                String prefix = colon < 0 ? "" : element.qName.substring(0, colon);
+                String uri = resolvePrefix(prefix);
+                element.name = new Name(uri == null ? "" : uri, element.qName.substring(colon + 1));
+            } else {
+                element.name = new Name(null, element.qName);
+            }
+        }
+        return element.name;
+    }
+
+    /** Wrap the document we've just read in its ancestors and return it */
+    private byte[] finishDocument() {
+        ByteBuffer result = new ByteBuffer(xmlDeclaration.length + document.length + 1024);
+        result.append(xmlDeclaration, 0, xmlDeclaration.length);
+        List<Element> ancestors = openElements.subList(0, documentDepth - 1);
+        for (Element ancestor : ancestors)
+            result.append(ancestor.startTag, 0, ancestor.startTag.length);
+        result.append(document.bytes, 0, document.length);
+        for (int i = ancestors.size() - 1; i >= 0; i--) {
+            byte[] endTag = ("</" + ancestors.get(i).qName + ">").getBytes(StandardCharsets.UTF_8);
+            result.append(endTag, 0, endTag.length);
+        }
+        document = null;
+        return result.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -47,6 +47,10 @@ public class DocPropertyDecade extends DocProperty {
         docPropStoredField = new DocPropertyStoredField(index, fieldName);
     }
 
+    DocPropertyStoredField docPropStoredField() {
+        return docPropStoredField;
+    }
+
     /** Parses the value, UNKNOWN_VALUE is returned if the string is unparseable */
     public int parse(String strYear) {
         int year;
@@ -122,6 +122,11 @@ public class DocPropertyStoredField extends DocProperty {
         }
     }
 
+    /** Lucene field name */
+    public String fieldName() {
+        return fieldName;
+    }
+
     /**
      * Get the raw values straight from lucene.
      * The returned array is in whichever order the values were originally added to the document.
@@ -19,6 +19,8 @@ import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntComparator;
@@ -31,6 +33,7 @@ import nl.inl.blacklab.search.results.ContextSize;
 import nl.inl.blacklab.search.results.Contexts;
 import nl.inl.blacklab.search.results.Hit;
 import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
 import nl.inl.blacklab.search.results.Results;
 
 /**
@@ -40,6 +43,9 @@ import nl.inl.blacklab.search.results.Results;
 public abstract class HitProperty implements ResultProperty<Hit>, IntComparator {
     protected static final Logger logger = LogManager.getLogger(HitProperty.class);
 
+    /** Returned by {@link #groupKey(int)} if a value cannot be represented by a group key. */
+    public static final long NO_GROUP_KEY = Long.MIN_VALUE;
+
     public static HitProperty deserialize(Results<Hit, HitProperty> hits, String serialized) {
         return deserialize(hits.index(), hits.field(), serialized);
     }
@@ -160,7 +166,7 @@ public abstract class HitProperty implements ResultProperty<Hit>, IntComparator
         this.reverse = prop.reverse;
         if (invert)
             this.reverse = !this.reverse;
-        this.setContexts(contexts); // this will initialize contextIndices to default value...
+        this.setContexts(contexts == null ? prop.contexts : contexts); // this will initialize contextIndices to default value...
         if (prop.contextIndices != null)
             this.contextIndices = prop.contextIndices; // ...but if we already had different values, use those
     }
@@ -231,6 +237,46 @@ public abstract class HitProperty implements ResultProperty<Hit>, IntComparator
 //    @Override
 //    public abstract int compare(int a, int b);
 
+    /**
+     * Get a primitive key that identifies the value of this property for a hit.
+     *
+     * Used to group many hits without creating a PropertyValue for each hit: two
+     * hits get the same key if and only if get() returns equal values for them.
+     * Should be thread-safe.
+     *
+     * The default implementation returns NO_GROUP_KEY, meaning we have to use get()
+     * instead. Subclasses may also return NO_GROUP_KEY for some values (e.g. if a
+     * value is too long to fit in a key), as long as whether a value has a key
+     * only depends on the value itself.
+     *
+     * @param hitIndex hit index
+     * @return group key, or NO_GROUP_KEY if we don't have one for this value
+     */
+    public long groupKey(int hitIndex) {
+        return NO_GROUP_KEY;
+    }
+
+    /**
+     * Get the distinct document ids in our hits.
+     *
+     * Used by document properties to determine a sort key for each document once,
+     * so comparing two hits doesn't require looking up and comparing metadata values.
+     *
+     * @return distinct document ids, in order of first occurrence
+     */
+    protected int[] distinctDocsInHits() {
+        HitsArrays ha = hits.hitsArrays();
+        int n = ha.size();
+        MutableIntSet seen = new IntHashSet();
+        IntArrayList docs = new IntArrayList();
+        for (int i = 0; i < n; i++) {
+            int doc = ha.doc(i);
+            if (seen.add(doc))
+                docs.add(doc);
+        }
+        return docs.toIntArray();
+    }
+
     /**
      * Retrieve context from which field(s) prior to sorting/grouping on this
      * property?
@@ -67,6 +67,9 @@ public abstract class HitPropertyContextBase extends HitProperty {
 
     protected BlackLabIndex index;
 
+    /** Number of bits needed per word in a group key (0 if not determined yet) */
+    private int groupKeyBitsPerWord;
+
     public HitPropertyContextBase(HitPropertyContextBase prop, Hits hits, Contexts contexts, boolean invert) {
         super(prop, hits, contexts, invert);
         this.terms = prop.terms;
@@ -95,6 +98,35 @@ public abstract class HitPropertyContextBase extends HitProperty {
 //        this.contextSize = contextSize == null ? index.defaultContextSize() : contextSize;
     }
 
+    /**
+     * Determine the group key for a sequence of words from a context.
+     *
+     * The words' sort positions (which determine equality of the values) are
+     * packed into a long, together with the number of words. If they don't fit,
+     * NO_GROUP_KEY is returned.
+     *
+     * @param context context array
+     * @param firstIndex index in the context array of the first word
+     * @param direction 1 to read words forward, -1 to read them backward
+     * @param n number of words
+     * @return group key, or NO_GROUP_KEY
+     */
+    protected long groupKeyForWords(int[] context, int firstIndex, int direction, int n) {
+        if (groupKeyBitsPerWord == 0)
+            groupKeyBitsPerWord = 32 - Integer.numberOfLeadingZeros(terms.numberOfTerms() + 1);
+        int bits = groupKeyBitsPerWord;
+        if (n > 15 || 4 + n * bits > 63)
+            return NO_GROUP_KEY;
+        long key = n; // length in the lowest 4 bits
+        for (int i = 0; i < n; i++) {
+            int termId = context[firstIndex + i * direction];
+            if (termId < 0)
+                return NO_GROUP_KEY;
+            key |= (long) (terms.idToSortPosition(termId, sensitivity) + 1) << (4 + i * bits);
+        }
+        return key;
+    }
+
     @Override
     public List<Annotation> needsContext() {
         return Arrays.asList(annotation);
@@ -197,6 +197,8 @@ public class HitPropertyContextWords extends HitProperty {
 
     int totalWords;
 
+    private Terms terms;
+
     HitPropertyContextWords(HitPropertyContextWords prop, Hits hits, Contexts contexts, boolean invert) {
         super(prop, hits, contexts, invert);
         this.annotation = prop.annotation;
@@ -209,6 +211,7 @@ public class HitPropertyContextWords extends HitProperty {
         this.index = hits.index();
         this.words = prop.words;
         this.totalWords = prop.totalWords;
+        this.terms = prop.terms;
     }
 
     public HitPropertyContextWords(BlackLabIndex index, Annotation annotation, MatchSensitivity sensitivity, String wordSpec) {
@@ -227,6 +230,7 @@ public class HitPropertyContextWords extends HitProperty {
         } else {
             this.annotation = annotation;
         }
+        this.terms = index.annotationForwardIndex(this.annotation).terms();
         this.sensitivity = sensitivity;
         this.words = words;
         if (words == null) {
@@ -271,67 +275,87 @@ public class HitPropertyContextWords extends HitProperty {
         return new HitPropertyContextWords(this, newHits, contexts, invert);
     }
 
+    /**
+     * Determine which words from a hit's context make up a part.
+     *
+     * The words are found at the returned first index, then every
+     * part.absoluteDirection() positions from there.
+     *
+     * @param part part of the context we want
+     * @param contextHitStart index of the first hit word in the context
+     * @param contextRightStart index of the first word after the hit in the context
+     * @param contextLength length of the context
+     * @return index of the first word (relative to the start of the words) in the
+     *         upper 32 bits, number of words available in the lower 32 bits
+     */
+    private static long partRange(ContextPart part, int contextHitStart, int contextRightStart, int contextLength) {
+
+        // Determine anchor position, direction to move in, and edge of part (left/hit/right)
+        int srcStartIndex, srcDirection, firstInvalidSrcIndex;
+        srcDirection = part.absoluteDirection();
+        int firstWordSrcIndex;
+        switch (part.startFrom) {
+        case LEFT_OF_HIT:
+            srcStartIndex = contextHitStart - 1; // first word before hit
+            firstWordSrcIndex = srcStartIndex - part.firstWord;
+            firstInvalidSrcIndex = srcDirection < 0 ? -1 : contextHitStart; // end/start of left context
+            break;
+        case RIGHT_OF_HIT:
+            srcStartIndex = contextRightStart; // first word after hit
+            firstWordSrcIndex = srcStartIndex + part.firstWord;
+            firstInvalidSrcIndex = srcDirection > 0 ? contextLength : contextRightStart - 1; // end/start of right context
+            break;
+        case HIT_TEXT_FROM_END:
+            srcStartIndex = contextRightStart - 1; // last hit word
+            firstWordSrcIndex = srcStartIndex - part.firstWord;
+            firstInvalidSrcIndex = srcDirection < 0 ? contextHitStart : contextRightStart - 1; // first/last hit word
+            break;
+        case HIT_TEXT_FROM_START:
+        default:
+            srcStartIndex = contextHitStart; // first hit word
+            firstWordSrcIndex = srcStartIndex + part.firstWord;
+            firstInvalidSrcIndex = srcDirection > 0 ? contextRightStart : contextHitStart - 1; // last/first hit word
+            break;
+        }
+        // Determine start position, stop position
+        int numberOfWords;
+        if (srcDirection > 0) {
+            firstInvalidSrcIndex = Math.min(firstInvalidSrcIndex,
+                    srcStartIndex + part.firstWord + part.maxLength);
+            numberOfWords = firstInvalidSrcIndex - firstWordSrcIndex;
+        } else {
+            firstInvalidSrcIndex = Math.max(firstInvalidSrcIndex,
+                    srcStartIndex - part.firstWord - part.maxLength);
+            numberOfWords = firstWordSrcIndex - firstInvalidSrcIndex;
+        }
+        numberOfWords = Math.max(0, Math.min(numberOfWords, part.maxLength));
+        return ((long) firstWordSrcIndex << 32) | numberOfWords;
+    }
+
     @Override
     public PropertyValueContextWords get(int hitIndex) {
-        int[] context = contexts.get(hitIndex);
-        int contextHitStart = context[Contexts.HIT_START_INDEX];
-        int contextRightStart = context[Contexts.RIGHT_START_INDEX];
-        int contextLength = context[Contexts.LENGTH_INDEX];
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextStartIndex = contexts.wordsStart(hitIndex);
+        int contextHitStart = contexts.hitStart(hitIndex);
+        int contextRightStart = contexts.rightStart(hitIndex);
+        int contextLength = contexts.length(hitIndex);
 
         int[] dest = new int[totalWords];
         int destIndex = 0;
         boolean allPartsReversed = true;
         for (ContextPart ctxPart : words) {
-            // Determine anchor position, direction to move in, and edge of part (left/hit/right)
-            int srcStartIndex, srcDirection, firstInvalidSrcIndex;
-            srcDirection = ctxPart.absoluteDirection();
-            int firstWordSrcIndex;
-            switch (ctxPart.startFrom) {
-            case LEFT_OF_HIT:
-                srcStartIndex = contextHitStart - 1; // first word before hit
-                firstWordSrcIndex = srcStartIndex - ctxPart.firstWord;
-                firstInvalidSrcIndex = srcDirection < 0 ? -1 : contextHitStart; // end/start of left context
-                break;
-            case RIGHT_OF_HIT:
-                srcStartIndex = contextRightStart; // first word after hit
-                firstWordSrcIndex = srcStartIndex + ctxPart.firstWord;
-                firstInvalidSrcIndex = srcDirection > 0 ? contextLength : contextRightStart - 1; // end/start of right context
-                break;
-            case HIT_TEXT_FROM_END:
-                srcStartIndex = contextRightStart - 1; // last hit word
-                firstWordSrcIndex = srcStartIndex - ctxPart.firstWord;
-                firstInvalidSrcIndex = srcDirection < 0 ? contextHitStart : contextRightStart - 1; // first/last hit word
-                break;
-            case HIT_TEXT_FROM_START:
-            default:
-                srcStartIndex = contextHitStart; // first hit word
-                firstWordSrcIndex = srcStartIndex + ctxPart.firstWord;
-                firstInvalidSrcIndex = srcDirection > 0 ? contextRightStart : contextHitStart - 1; // last/first hit word
-                break;
-            }
-            // Determine start position, stop position
-            boolean valuesToCopy = true;
-            if (srcDirection > 0) {
+            int srcDirection = ctxPart.absoluteDirection();
+            if (srcDirection > 0)
                 allPartsReversed = false;
-                firstInvalidSrcIndex = Math.min(firstInvalidSrcIndex,
-                        srcStartIndex + ctxPart.firstWord + ctxPart.maxLength);
-                if (firstWordSrcIndex >= firstInvalidSrcIndex)
-                    valuesToCopy = false; // there are no values to copy
-            } else {
-                firstInvalidSrcIndex = Math.max(firstInvalidSrcIndex,
-                        srcStartIndex - ctxPart.firstWord - ctxPart.maxLength);
-                if (firstWordSrcIndex <= firstInvalidSrcIndex)
-                    valuesToCopy = false; // there are no values to copy
-            }
+            long range = partRange(ctxPart, contextHitStart, contextRightStart, contextLength);
+            int srcIndex = (int) (range >> 32);
+            int numberOfWords = (int) range;
             // Copy the words we want to our dest array
             int valuesCopied = 0;
-            int contextStartIndex = contextLength * contextIndices.getInt(0) + Contexts.NUMBER_OF_BOOKKEEPING_INTS;
-            if (valuesToCopy) {
-                for (int srcIndex = firstWordSrcIndex; srcIndex != firstInvalidSrcIndex; srcIndex += srcDirection) {
-                    dest[destIndex] = context[contextStartIndex + srcIndex];
-                    destIndex++;
-                    valuesCopied++;
-                }
+            for (; valuesCopied < numberOfWords; valuesCopied++) {
+                dest[destIndex] = context[contextStartIndex + srcIndex];
+                destIndex++;
+                srcIndex += srcDirection;
             }
             // If we don't have enough (e.g. because the hit is shorter), add dummy values
             for (; valuesCopied < ctxPart.maxLength; valuesCopied++) {
@@ -342,7 +366,34 @@ public class HitPropertyContextWords extends HitProperty {
         return new PropertyValueContextWords(index, annotation, sensitivity, dest, allPartsReversed);
     }
 
-    // OPT: provide specific compare() method that compares contexts in-place
+    @Override
+    public int compare(int indexA, int indexB) {
+        int contextIndex = contextIndices.getInt(0);
+        int[] ca = contexts.words(indexA, contextIndex);
+        int[] cb = contexts.words(indexB, contextIndex);
+        int caStart = contexts.wordsStart(indexA);
+        int cbStart = contexts.wordsStart(indexB);
+        int caHitStart = contexts.hitStart(indexA), caRightStart = contexts.rightStart(indexA), caLength = contexts.length(indexA);
+        int cbHitStart = contexts.hitStart(indexB), cbRightStart = contexts.rightStart(indexB), cbLength = contexts.length(indexB);
+
+        // Compare the words in place, in the same order get() would copy them
+        for (int i = 0; i < words.size(); i++) {
+            ContextPart ctxPart = words.get(i);
+            int srcDirection = ctxPart.absoluteDirection();
+            long rangeA = partRange(ctxPart, caHitStart, caRightStart, caLength);
+            long rangeB = partRange(ctxPart, cbHitStart, cbRightStart, cbLength);
+            int ai = (int) (rangeA >> 32), an = (int) rangeA;
+            int bi = (int) (rangeB >> 32), bn = (int) rangeB;
+            for (int j = 0; j < ctxPart.maxLength; j++) {
+                int termA = j < an ? ca[caStart + ai + j * srcDirection] : Terms.NO_TERM;
+                int termB = j < bn ? cb[cbStart + bi + j * srcDirection] : Terms.NO_TERM;
+                int cmp = terms.compareSortPosition(termA, termB, sensitivity);
+                if (cmp != 0)
+                    return reverse ? -cmp : cmp;
+            }
+        }
+        return 0;
+    }
 
     @Override
     public List<Annotation> needsContext() {
@@ -431,7 +482,17 @@ public class HitPropertyContextWords extends HitProperty {
     
     @Override
     public ContextSize needsContextSize(BlackLabIndex index) {
+        // Only fetch as many words left and right of the hit as our parts can use
         int maxContextSize = index.defaultContextSize().left();
-        return this.words.stream().map(w -> ContextSize.get(Math.min(w.maxLength, maxContextSize))).reduce(ContextSize::union).orElse(null);
+        int left = 0, right = 0;
+        for (ContextPart part: words) {
+            // Parts read away from the hit by default; if reversed, they read towards it
+            int wordsNeeded = part.maxLength == 0 ? 0 : part.firstWord + (part.direction > 0 ? part.maxLength : 1);
+            if (part.startFrom == ContextStart.LEFT_OF_HIT)
+                left = Math.max(left, Math.min(wordsNeeded, maxContextSize));
+            else if (part.startFrom == ContextStart.RIGHT_OF_HIT)
+                right = Math.max(right, Math.min(wordsNeeded, maxContextSize));
+        }
+        return ContextSize.get(left, right, true);
     }
 }
@@ -52,6 +52,11 @@ public class HitPropertyDoc extends HitProperty {
         return new PropertyValueDoc(index.doc(hits.hitsArrays().doc(hitIndex)));
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        return hits.hitsArrays().doc(hitIndex);
+    }
+
     @Override
     public String name() {
         return "document";
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package nl.inl.blacklab.resultproperty;
 
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.indexmetadata.MetadataField;
 import nl.inl.blacklab.search.results.ContextSize;
@@ -43,6 +45,9 @@ public class HitPropertyDocumentDecade extends HitProperty {
 
     private DocPropertyDecade docPropertyDocumentDecade;
 
+    /** Decade to sort on for each document in our hits (determined on first compare) */
+    private volatile IntIntHashMap docSortYears;
+
     HitPropertyDocumentDecade(HitPropertyDocumentDecade prop, Hits hits, boolean invert) {
         super(prop, hits, null, invert);
         this.index = prop.index;
@@ -69,12 +74,58 @@ public class HitPropertyDocumentDecade extends HitProperty {
         return docPropertyDocumentDecade.get(hits.hitsArrays().doc(hitIndex));
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        int doc = hits.hitsArrays().doc(hitIndex);
+        IntIntHashMap years = docSortYears();
+        if (!years.containsKey(doc))
+            return docPropertyDocumentDecade.getRaw(doc); // not in our hits; shouldn't happen
+        int year = years.get(doc);
+        return year == Integer.MAX_VALUE ? UNKNOWN_VALUE : year; // (empty values are sorted last)
+    }
+
     @Override
     public int compare(int indexA, int indexB) {
-        return docPropertyDocumentDecade.compare(
-            hits.hitsArrays().doc(indexA),
-            hits.hitsArrays().doc(indexB)
-        ) * (reverse ? -1 : 1);
+        final int docA = hits.hitsArrays().doc(indexA);
+        final int docB = hits.hitsArrays().doc(indexB);
+        if (docA == docB)
+            return 0;
+        IntIntHashMap years = docSortYears();
+        if (!years.containsKey(docA) || !years.containsKey(docB)) {
+            // Not in our hits; shouldn't happen
+            return docPropertyDocumentDecade.compare(docA, docB) * (reverse ? -1 : 1);
+        }
+        int result = Integer.compare(years.get(docA), years.get(docB));
+        return reverse ? -result : result;
+    }
+
+    /**
+     * Get the decade to sort on for each document in our hits.
+     *
+     * Determined once, so compare() doesn't have to fetch and parse the year for
+     * every comparison. Documents without a year get Integer.MAX_VALUE, so they
+     * sort at the end, just like DocPropertyDecade.compare() does.
+     *
+     * @return decade per document id
+     */
+    private IntIntHashMap docSortYears() {
+        IntIntHashMap years = docSortYears;
+        if (years == null) {
+            synchronized (this) {
+                years = docSortYears;
+                if (years == null) {
+                    int[] docs = distinctDocsInHits();
+                    years = new IntIntHashMap(docs.length);
+                    DocPropertyStoredField storedField = docPropertyDocumentDecade.docPropStoredField();
+                    for (int doc: docs) {
+                        String strYear = storedField.getFirstValue(doc);
+                        years.put(doc, strYear.length() == 0 ? Integer.MAX_VALUE : docPropertyDocumentDecade.parse(strYear));
+                    }
+                    docSortYears = years;
+                }
+            }
+        }
+        return years;
     }
 
     @Override
@@ -50,6 +50,11 @@ public class HitPropertyDocumentId extends HitProperty {
         return new PropertyValueInt(hits.hitsArrays().doc(hitIndex));
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        return hits.hitsArrays().doc(hitIndex);
+    }
+
     @Override
     public String name() {
         return "document: id";
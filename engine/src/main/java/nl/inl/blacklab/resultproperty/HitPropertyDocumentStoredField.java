@@ -15,6 +15,12 @@
  *******************************************************************************/
 package nl.inl.blacklab.resultproperty;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.results.ContextSize;
 import nl.inl.blacklab.search.results.Contexts;
@@ -34,6 +40,12 @@ public class HitPropertyDocumentStoredField extends HitProperty {
 
     final private DocPropertyStoredField docPropStoredField;
 
+    /** Sort rank of the value for each document in our hits (determined on first compare) */
+    private volatile IntIntHashMap docSortRanks;
+
+    /** Ordinal of the (exact) value for each document in our hits, for grouping; determined when first needed. */
+    private volatile IntIntHashMap docValueOrdinals;
+
     HitPropertyDocumentStoredField(HitPropertyDocumentStoredField prop, Hits hits, boolean invert) {
         super(prop, hits, null, invert);
         this.fieldName = prop.fieldName;
@@ -64,10 +76,95 @@ public class HitPropertyDocumentStoredField extends HitProperty {
     public int compare(int a, int b) {
         final int docA = hits.hitsArrays().doc(a);
         final int docB = hits.hitsArrays().doc(b);
-        int result = docPropStoredField.compare(docA, docB);
+        if (docA == docB)
+            return 0;
+        IntIntHashMap ranks = docSortRanks();
+        int rankA = ranks.getIfAbsent(docA, -1);
+        int rankB = ranks.getIfAbsent(docB, -1);
+        int result;
+        if (rankA >= 0 && rankB >= 0)
+            result = Integer.compare(rankA, rankB);
+        else
+            result = docPropStoredField.compare(docA, docB); // not in our hits; shouldn't happen
         return reverse ? -result : result;
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        int ordinal = docValueOrdinals().getIfAbsent(hits.hitsArrays().doc(hitIndex), -1);
+        return ordinal < 0 ? NO_GROUP_KEY : ordinal; // (not in our hits; shouldn't happen)
+    }
+
+    /**
+     * Number the distinct values for the documents in our hits.
+     *
+     * Unlike the sort ranks, which are based on collation, documents only get the
+     * same ordinal if their values are exactly equal, just like the values get()
+     * returns.
+     *
+     * @return value ordinal per document id
+     */
+    private IntIntHashMap docValueOrdinals() {
+        IntIntHashMap ordinals = docValueOrdinals;
+        if (ordinals == null) {
+            synchronized (this) {
+                ordinals = docValueOrdinals;
+                if (ordinals == null) {
+                    int[] docs = distinctDocsInHits();
+                    Map<PropertyValueString, Integer> valueOrdinals = new HashMap<>();
+                    ordinals = new IntIntHashMap(docs.length);
+                    for (int doc: docs) {
+                        PropertyValueString value = DocPropertyStoredField.fromArray(docPropStoredField.get(doc));
+                        Integer ordinal = valueOrdinals.get(value);
+                        if (ordinal == null) {
+                            ordinal = valueOrdinals.size();
+                            valueOrdinals.put(value, ordinal);
+                        }
+                        ordinals.put(doc, ordinal);
+                    }
+                    docValueOrdinals = ordinals;
+                }
+            }
+        }
+        return ordinals;
+    }
+
+    /**
+     * Get the sort rank of the value for each document in our hits.
+     *
+     * Determined once, so compare() doesn't have to fetch and collate the values
+     * for every comparison. Documents with equal values have the same rank.
+     *
+     * @return sort rank per document id
+     */
+    private IntIntHashMap docSortRanks() {
+        IntIntHashMap ranks = docSortRanks;
+        if (ranks == null) {
+            synchronized (this) {
+                ranks = docSortRanks;
+                if (ranks == null) {
+                    int[] docs = distinctDocsInHits();
+                    PropertyValueString[] values = new PropertyValueString[docs.length];
+                    int[] order = new int[docs.length];
+                    for (int i = 0; i < docs.length; i++) {
+                        values[i] = DocPropertyStoredField.fromArray(docPropStoredField.get(docs[i]));
+                        order[i] = i;
+                    }
+                    IntArrays.quickSort(order, (i, j) -> values[i].compareTo(values[j]));
+                    ranks = new IntIntHashMap(docs.length);
+                    int rank = 0;
+                    for (int i = 0; i < order.length; i++) {
+                        if (i > 0 && values[order[i]].compareTo(values[order[i - 1]]) != 0)
+                            rank = i;
+                        ranks.put(docs[order[i]], rank);
+                    }
+                    docSortRanks = ranks;
+                }
+            }
+        }
+        return ranks;
+    }
+
     @Override
     public String name() {
         return "document: " + docPropStoredField.name();
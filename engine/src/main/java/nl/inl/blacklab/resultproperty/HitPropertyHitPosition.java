@@ -49,6 +49,11 @@ public class HitPropertyHitPosition extends HitProperty {
         return new PropertyValueInt(hits.hitsArrays().start(hitIndex));
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        return hits.hitsArrays().start(hitIndex);
+    }
+
     @Override
     public String name() {
         return "hit: position";
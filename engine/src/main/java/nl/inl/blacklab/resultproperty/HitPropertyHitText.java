@@ -66,40 +66,49 @@ public class HitPropertyHitText extends HitPropertyContextBase {
 
     @Override
     public PropertyValueContextWords get(int hitIndex) {
-        int[] context = contexts.get(hitIndex);
-        int contextHitStart = context[Contexts.HIT_START_INDEX];
-        int contextRightStart = context[Contexts.RIGHT_START_INDEX];
-        int contextLength = context[Contexts.LENGTH_INDEX];
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextHitStart = contexts.hitStart(hitIndex);
+        int contextRightStart = contexts.rightStart(hitIndex);
 
         // Copy the desired part of the context
         int n = contextRightStart - contextHitStart;
         if (n <= 0)
             return new PropertyValueContextWords(index, annotation, sensitivity, new int[0], false);
         int[] dest = new int[n];
-        int contextStart = contextLength * contextIndices.getInt(0) + Contexts.NUMBER_OF_BOOKKEEPING_INTS;
+        int contextStart = contexts.wordsStart(hitIndex);
         System.arraycopy(context, contextStart + contextHitStart, dest, 0, n);
         return new PropertyValueContextWords(index, annotation, sensitivity, dest, false);
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextHitStart = contexts.hitStart(hitIndex);
+        int contextRightStart = contexts.rightStart(hitIndex);
+        int n = Math.max(0, contextRightStart - contextHitStart);
+        int contextStart = contexts.wordsStart(hitIndex);
+        return groupKeyForWords(context, contextStart + contextHitStart, 1, n);
+    }
+
     @Override
     public int compare(int indexA, int indexB) {
-        int[] ca = contexts.get(indexA);
-        int caHitStart = ca[Contexts.HIT_START_INDEX];
-        int caRightStart = ca[Contexts.RIGHT_START_INDEX];
-        int caLength = ca[Contexts.LENGTH_INDEX];
-        int[] cb = contexts.get(indexB);
-        int cbHitStart = cb[Contexts.HIT_START_INDEX];
-        int cbRightStart = cb[Contexts.RIGHT_START_INDEX];
-        int cbLength = cb[Contexts.LENGTH_INDEX];
+        int contextIndex = contextIndices.getInt(0);
+        int[] ca = contexts.words(indexA, contextIndex);
+        int caStart = contexts.wordsStart(indexA);
+        int caHitStart = contexts.hitStart(indexA);
+        int caRightStart = contexts.rightStart(indexA);
+        int caLength = contexts.length(indexA);
+        int[] cb = contexts.words(indexB, contextIndex);
+        int cbStart = contexts.wordsStart(indexB);
+        int cbHitStart = contexts.hitStart(indexB);
+        int cbRightStart = contexts.rightStart(indexB);
+        int cbLength = contexts.length(indexB);
 
         // Compare the hit context for these two hits
-        int contextIndex = contextIndices.getInt(0);
         int ai = caHitStart;
         int bi = cbHitStart;
         while (ai < caRightStart && bi < cbRightStart) {
-            int cmp = terms.compareSortPosition(
-                    ca[contextIndex * caLength + ai + Contexts.NUMBER_OF_BOOKKEEPING_INTS],
-                    cb[contextIndex * cbLength + bi + Contexts.NUMBER_OF_BOOKKEEPING_INTS], sensitivity);
+            int cmp = terms.compareSortPosition(ca[caStart + ai], cb[cbStart + bi], sensitivity);
             if (cmp != 0)
                 return reverse ? -cmp : cmp;
             ai++;
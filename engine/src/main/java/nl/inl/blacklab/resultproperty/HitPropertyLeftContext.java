@@ -64,17 +64,15 @@ public class HitPropertyLeftContext extends HitPropertyContextBase {
 
     @Override
     public PropertyValueContextWords get(int hitIndex) {
-        int[] context = contexts.get(hitIndex);
-        int contextHitStart = context[Contexts.HIT_START_INDEX];
-        //int contextRightStart = context[Contexts.CONTEXTS_RIGHT_START_INDEX];
-        int contextLength = context[Contexts.LENGTH_INDEX];
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextHitStart = contexts.hitStart(hitIndex);
 
         // Copy the desired part of the context
         int n = contextHitStart;
         if (n <= 0)
             return new PropertyValueContextWords(index, annotation, sensitivity, new int[0], true);
         int[] dest = new int[n];
-        int contextStart = contextLength * contextIndices.getInt(0) + Contexts.NUMBER_OF_BOOKKEEPING_INTS;
+        int contextStart = contexts.wordsStart(hitIndex);
         System.arraycopy(context, contextStart, dest, 0, n);
 
         // Reverse the order of the array, because we want to sort from right to left
@@ -88,23 +86,31 @@ public class HitPropertyLeftContext extends HitPropertyContextBase {
         return new PropertyValueContextWords(index, annotation, sensitivity, dest, true);
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextHitStart = contexts.hitStart(hitIndex);
+        int n = Math.max(0, contextHitStart);
+        int contextStart = contexts.wordsStart(hitIndex);
+        // Words are read from right to left, just like in get()
+        return groupKeyForWords(context, contextStart + n - 1, -1, n);
+    }
+
     @Override
     public int compare(int indexA, int indexB) {
-        int[] ca = contexts.get(indexA);
-        int caHitStart = ca[Contexts.HIT_START_INDEX];
-        int caLength = ca[Contexts.LENGTH_INDEX];
-        int[] cb = contexts.get(indexB);
-        int cbHitStart = cb[Contexts.HIT_START_INDEX];
-        int cbLength = cb[Contexts.LENGTH_INDEX];
+        int contextIndex = contextIndices.getInt(0);
+        int[] ca = contexts.words(indexA, contextIndex);
+        int caStart = contexts.wordsStart(indexA);
+        int caHitStart = contexts.hitStart(indexA);
+        int[] cb = contexts.words(indexB, contextIndex);
+        int cbStart = contexts.wordsStart(indexB);
+        int cbHitStart = contexts.hitStart(indexB);
 
         // Compare the left context for these two hits, starting at the end
-        int contextIndex = contextIndices.getInt(0);
         int ai = caHitStart - 1;
         int bi = cbHitStart - 1;
         while (ai >= 0 && bi >= 0) {
-            int cmp = terms.compareSortPosition(
-                    ca[contextIndex * caLength + ai + Contexts.NUMBER_OF_BOOKKEEPING_INTS],
-                    cb[contextIndex * cbLength + bi + Contexts.NUMBER_OF_BOOKKEEPING_INTS], sensitivity);
+            int cmp = terms.compareSortPosition(ca[caStart + ai], cb[cbStart + bi], sensitivity);
             if (cmp != 0)
                 return reverse ? -cmp : cmp;
             ai--;
@@ -133,6 +139,7 @@ public class HitPropertyLeftContext extends HitPropertyContextBase {
     
     @Override
     public ContextSize needsContextSize(BlackLabIndex index) {
-        return contextSize;
+        // We only need the left context
+        return ContextSize.get(contextSize.left(), 0, true);
     }
 }
@@ -62,7 +62,7 @@ public class HitPropertyMultiple extends HitProperty implements Iterable<HitProp
     Map<HitProperty, IntArrayList> contextIndicesPerProperty;
     
     HitPropertyMultiple(HitPropertyMultiple mprop, Hits newHits, Contexts contexts, boolean invert) {
-        super(mprop, null, null, invert);
+        super(mprop, newHits, contexts, invert);
         int n = mprop.properties.size();
         this.contextNeeded = mprop.contextNeeded;
         this.sensitivities = mprop.sensitivities;
@@ -217,9 +217,25 @@ public class HitPropertyMultiple extends HitProperty implements Iterable<HitProp
         return new PropertyValueMultiple(rv);
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        if (properties.size() == 1)
+            return properties.get(0).groupKey(hitIndex);
+        if (properties.size() == 2) {
+            // Combine two keys if they're both small enough
+            long a = properties.get(0).groupKey(hitIndex);
+            long b = properties.get(1).groupKey(hitIndex);
+            if (a >= 0 && a <= Integer.MAX_VALUE && b >= 0 && b <= Integer.MAX_VALUE)
+                return a << 32 | b;
+        }
+        return NO_GROUP_KEY;
+    }
+
     @Override
     public int compare(int indexA, int indexB) {
-        for (HitProperty crit: properties) {
+        // (indexed loop, so we don't allocate an iterator for every comparison)
+        for (int i = 0; i < properties.size(); i++) {
+            HitProperty crit = properties.get(i);
             int cmp = reverse ? crit.compare(indexB, indexA) : crit.compare(indexA, indexB);
             if (cmp != 0)
                 return cmp;
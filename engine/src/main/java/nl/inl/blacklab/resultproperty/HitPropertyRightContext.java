@@ -69,38 +69,47 @@ public class HitPropertyRightContext extends HitPropertyContextBase {
 
     @Override
     public PropertyValueContextWords get(int hitIndex) {
-        int[] context = contexts.get(hitIndex);
-        //int contextHitStart = context[Contexts.CONTEXTS_HIT_START_INDEX];
-        int contextRightStart = context[Contexts.RIGHT_START_INDEX];
-        int contextLength = context[Contexts.LENGTH_INDEX];
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextRightStart = contexts.rightStart(hitIndex);
+        int contextLength = contexts.length(hitIndex);
 
         // Copy the desired part of the context
         int n = contextLength - contextRightStart;
         if (n <= 0)
             return new PropertyValueContextWords(index, annotation, sensitivity, new int[0], false);
         int[] dest = new int[n];
-        int contextStart = contextLength * contextIndices.getInt(0) + Contexts.NUMBER_OF_BOOKKEEPING_INTS;
+        int contextStart = contexts.wordsStart(hitIndex);
         System.arraycopy(context, contextStart + contextRightStart, dest, 0, n);
         return new PropertyValueContextWords(index, annotation, sensitivity, dest, false);
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextRightStart = contexts.rightStart(hitIndex);
+        int contextLength = contexts.length(hitIndex);
+        int n = Math.max(0, contextLength - contextRightStart);
+        int contextStart = contexts.wordsStart(hitIndex);
+        return groupKeyForWords(context, contextStart + contextRightStart, 1, n);
+    }
+
     @Override
     public int compare(int indexA, int indexB) {
-        int[] ca = contexts.get(indexA);
-        int caRightStart = ca[Contexts.RIGHT_START_INDEX];
-        int caLength = ca[Contexts.LENGTH_INDEX];
-        int[] cb = contexts.get(indexB);
-        int cbRightStart = cb[Contexts.RIGHT_START_INDEX];
-        int cbLength = cb[Contexts.LENGTH_INDEX];
+        int contextIndex = contextIndices.getInt(0);
+        int[] ca = contexts.words(indexA, contextIndex);
+        int caStart = contexts.wordsStart(indexA);
+        int caRightStart = contexts.rightStart(indexA);
+        int caLength = contexts.length(indexA);
+        int[] cb = contexts.words(indexB, contextIndex);
+        int cbStart = contexts.wordsStart(indexB);
+        int cbRightStart = contexts.rightStart(indexB);
+        int cbLength = contexts.length(indexB);
 
         // Compare the right context for these two hits
-        int contextIndex = contextIndices.getInt(0);
         int ai = caRightStart;
         int bi = cbRightStart;
         while (ai < caLength && bi < cbLength) {
-            int cmp = terms.compareSortPosition(
-                    ca[contextIndex * caLength + ai + Contexts.NUMBER_OF_BOOKKEEPING_INTS],
-                    cb[contextIndex * cbLength + bi + Contexts.NUMBER_OF_BOOKKEEPING_INTS], sensitivity);
+            int cmp = terms.compareSortPosition(ca[caStart + ai], cb[cbStart + bi], sensitivity);
             if (cmp != 0)
                 return reverse ? -cmp : cmp;
             ai++;
@@ -129,6 +138,7 @@ public class HitPropertyRightContext extends HitPropertyContextBase {
     
     @Override
     public ContextSize needsContextSize(BlackLabIndex index) {
-        return contextSize;
+        // We only need the right context
+        return ContextSize.get(0, contextSize.right(), true);
     }
 }
@@ -63,38 +63,43 @@ public class HitPropertyWordLeft extends HitPropertyContextBase {
 
     @Override
     public PropertyValueContextWord get(int hitIndex) {
-        int[] context = contexts.get(hitIndex);
-        int contextHitStart = context[Contexts.HIT_START_INDEX];
-        //int contextRightStart = context[Contexts.CONTEXTS_RIGHT_START_INDEX];
-        int contextLength = context[Contexts.LENGTH_INDEX];
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextHitStart = contexts.hitStart(hitIndex);
 
         if (contextHitStart <= 0)
             return new PropertyValueContextWord(index, annotation, sensitivity, Terms.NO_TERM);
-        int contextStart = contextLength * contextIndices.getInt(0) + Contexts.NUMBER_OF_BOOKKEEPING_INTS;
+        int contextStart = contexts.wordsStart(hitIndex);
         return new PropertyValueContextWord(index, annotation, sensitivity, context[contextStart
                         + contextHitStart - 1]);
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextHitStart = contexts.hitStart(hitIndex);
+        if (contextHitStart <= 0)
+            return Terms.NO_TERM;
+        int contextStart = contexts.wordsStart(hitIndex);
+        int termId = context[contextStart + contextHitStart - 1];
+        return termId < 0 ? termId : terms.idToSortPosition(termId, sensitivity);
+    }
+
     @Override
     public int compare(int indexA, int indexB) {
-        int[] ca = contexts.get(indexA);
-        int caHitStart = ca[Contexts.HIT_START_INDEX];
-        int caLength = ca[Contexts.LENGTH_INDEX];
-        int[] cb = contexts.get(indexB);
-        int cbHitStart = cb[Contexts.HIT_START_INDEX];
-        int cbLength = cb[Contexts.LENGTH_INDEX];
+        int contextIndex = contextIndices.getInt(0);
+        int[] ca = contexts.words(indexA, contextIndex);
+        int caStart = contexts.wordsStart(indexA);
+        int caHitStart = contexts.hitStart(indexA);
+        int[] cb = contexts.words(indexB, contextIndex);
+        int cbStart = contexts.wordsStart(indexB);
+        int cbHitStart = contexts.hitStart(indexB);
 
         if (caHitStart <= 0)
             return cbHitStart <= 0 ? 0 : (reverse ? 1 : -1);
         if (cbHitStart <= 0)
             return reverse ? -1 : 1;
         // Compare one word to the left of the hit
-        int contextIndex = contextIndices.getInt(0);
-
-        int cmp = terms.compareSortPosition(
-                ca[contextIndex * caLength + caHitStart - 1 + Contexts.NUMBER_OF_BOOKKEEPING_INTS],
-                cb[contextIndex * cbLength + cbHitStart - 1 + Contexts.NUMBER_OF_BOOKKEEPING_INTS],
-                sensitivity);
+        int cmp = terms.compareSortPosition(ca[caStart + caHitStart - 1], cb[cbStart + cbHitStart - 1], sensitivity);
         return reverse ? -cmp : cmp;
     }
 
@@ -58,35 +58,46 @@ public class HitPropertyWordRight extends HitPropertyContextBase {
 
     @Override
     public PropertyValueContextWord get(int hitIndex) {
-        int[] context = contexts.get(hitIndex);
-        int contextRightStart = context[Contexts.RIGHT_START_INDEX];
-        int contextLength = context[Contexts.LENGTH_INDEX];
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextRightStart = contexts.rightStart(hitIndex);
+        int contextLength = contexts.length(hitIndex);
 
         if (contextLength <= contextRightStart)
             return new PropertyValueContextWord(index, annotation, sensitivity, Terms.NO_TERM);
-        int contextStart = contextLength * contextIndices.getInt(0) + Contexts.NUMBER_OF_BOOKKEEPING_INTS;
+        int contextStart = contexts.wordsStart(hitIndex);
         return new PropertyValueContextWord(index, annotation, sensitivity, context[contextStart + contextRightStart]);
     }
 
+    @Override
+    public long groupKey(int hitIndex) {
+        int[] context = contexts.words(hitIndex, contextIndices.getInt(0));
+        int contextRightStart = contexts.rightStart(hitIndex);
+        int contextLength = contexts.length(hitIndex);
+        if (contextLength <= contextRightStart)
+            return Terms.NO_TERM;
+        int contextStart = contexts.wordsStart(hitIndex);
+        int termId = context[contextStart + contextRightStart];
+        return termId < 0 ? termId : terms.idToSortPosition(termId, sensitivity);
+    }
+
     @Override
     public int compare(int indexA, int indexB) {
-        int[] ca = contexts.get(indexA);
-        int caRightStart = ca[Contexts.RIGHT_START_INDEX];
-        int caLength = ca[Contexts.LENGTH_INDEX];
-        int[] cb = contexts.get(indexB);
-        int cbRightStart = cb[Contexts.RIGHT_START_INDEX];
-        int cbLength = cb[Contexts.LENGTH_INDEX];
+        int contextIndex = contextIndices.getInt(0);
+        int[] ca = contexts.words(indexA, contextIndex);
+        int caStart = contexts.wordsStart(indexA);
+        int caRightStart = contexts.rightStart(indexA);
+        int caLength = contexts.length(indexA);
+        int[] cb = contexts.words(indexB, contextIndex);
+        int cbStart = contexts.wordsStart(indexB);
+        int cbRightStart = contexts.rightStart(indexB);
+        int cbLength = contexts.length(indexB);
 
         if (caLength <= caRightStart)
             return cbLength <= cbRightStart ? 0 : (reverse ? 1 : -1);
         if (cbLength <= cbRightStart)
             return reverse ? -1 : 1;
         // Compare one word to the right of the hit
-        int contextIndex = contextIndices.getInt(0);
-        int cmp = terms.compareSortPosition(
-                ca[contextIndex * caLength + caRightStart + Contexts.NUMBER_OF_BOOKKEEPING_INTS],
-                cb[contextIndex * cbLength + cbRightStart + Contexts.NUMBER_OF_BOOKKEEPING_INTS],
-                sensitivity);
+        int cmp = terms.compareSortPosition(ca[caStart + caRightStart], cb[cbStart + cbRightStart], sensitivity);
         return reverse ? -cmp : cmp;
     }
 
@@ -0,0 +1,74 @@
+package nl.inl.blacklab.search;
+
+/**
+ * Measures of association between a collocate and the hits it occurs around.
+ *
+ * All measures compare how often the collocate was observed in the contexts
+ * of the hits (O) with how often it would be expected there if it were
+ * distributed evenly over the corpus (E = collocate frequency * context tokens /
+ * corpus size).
+ */
+public enum AssociationMeasure {
+
+    /** Mutual information: log2(O / E). Favours rare collocates. */
+    MI {
+        @Override
+        double score(double observed, double expected, long collocateFrequency, long contextTokens, long corpusSize) {
+            return Math.log(observed / expected) / Math.log(2);
+        }
+    },
+
+    /** t-score: (O - E) / sqrt(O). Favours frequent collocates. */
+    T_SCORE {
+        @Override
+        double score(double observed, double expected, long collocateFrequency, long contextTokens, long corpusSize) {
+            return (observed - expected) / Math.sqrt(observed);
+        }
+    },
+
+    /** Log-likelihood (Dunning's G2) over the 2x2 contingency table of context/rest of corpus and collocate/other. */
+    LOG_LIKELIHOOD {
+        @Override
+        double score(double observed, double expected, long collocateFrequency, long contextTokens, long corpusSize) {
+            double o11 = observed;
+            double o12 = Math.max(0, contextTokens - observed);
+            double o21 = Math.max(0, collocateFrequency - observed);
+            double o22 = Math.max(0, corpusSize - contextTokens - o21);
+            double n = corpusSize;
+            return 2 * (term(o11, contextTokens * (double) collocateFrequency / n)
+                    + term(o12, contextTokens * (n - collocateFrequency) / n)
+                    + term(o21, (n - contextTokens) * collocateFrequency / n)
+                    + term(o22, (n - contextTokens) * (n - collocateFrequency) / n));
+        }
+
+        private double term(double o, double e) {
+            return o == 0 || e == 0 ? 0 : o * Math.log(o / e);
+        }
+    };
+
+    /**
+     * Calculate the association score.
+     *
+     * @param observed how often the collocate occurs in the contexts of the hits
+     * @param collocateFrequency how often the collocate occurs in the corpus
+     * @param contextTokens total number of tokens in the contexts of the hits
+     * @param corpusSize total number of tokens in the corpus
+     * @return association score, or NaN if it cannot be calculated
+     */
+    public double score(long observed, long collocateFrequency, long contextTokens, long corpusSize) {
+        if (observed <= 0 || collocateFrequency <= 0 || contextTokens <= 0 || corpusSize <= 0)
+            return Double.NaN;
+        double expected = (double) collocateFrequency * contextTokens / corpusSize;
+        return score(observed, expected, collocateFrequency, contextTokens, corpusSize);
+    }
+
+    abstract double score(double observed, double expected, long collocateFrequency, long contextTokens, long corpusSize);
+
+    public static AssociationMeasure fromStringValue(String value) {
+        return valueOf(value.toUpperCase().replace('-', '_'));
+    }
+
+    public String stringValue() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -94,6 +94,17 @@ public interface BlackLabIndex extends Closeable {
     @Override
     void close();
 
+    /**
+     * Open all forward indexes and content stores and read their tables of contents.
+     *
+     * Normally this happens lazily or in the background. After this method returns,
+     * this object no longer reads any index files that an Indexer adding documents
+     * to the same directory would modify, so it can keep being searched as a snapshot
+     * of the index as it was when it was opened. New documents only become visible
+     * when the index is opened again after the Indexer has been closed.
+     */
+    void initializeSnapshot();
+
     /**
      * Is this a newly created, empty index?
      * 
@@ -364,6 +375,12 @@ public interface BlackLabIndex extends Closeable {
      */
     ContextSize defaultContextSize();
 
+    /**
+     * Get the minimum number of results for which we sort in parallel.
+     * @return minimum number of results
+     */
+    int parallelSortThreshold();
+
     /**
      * Are we running in index mode?
      * @return true if we are, false if not
@@ -408,6 +425,12 @@ public interface BlackLabIndex extends Closeable {
      */
     void setDefaultContextSize(ContextSize size);
 
+    /**
+     * Set the minimum number of results for which we sort in parallel.
+     * @param threshold minimum number of results
+     */
+    void setParallelSortThreshold(int threshold);
+
     /**
      * Set the object BlackLab should use as cache.
      * 
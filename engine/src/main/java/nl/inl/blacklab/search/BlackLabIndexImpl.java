@@ -296,6 +296,9 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
 
     private ContextSize defaultContextSize = DEFAULT_CONTEXT_SIZE;
 
+    /** Minimum number of results for which we sort in parallel */
+    private int parallelSortThreshold = ParallelSort.DEFAULT_THRESHOLD;
+
     /** Search cache to use */
     private SearchCache cache = new SearchCacheDummy();
 
@@ -671,6 +674,19 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
         }
     }
 
+    @Override
+    public void initializeSnapshot() {
+        for (AnnotatedField field: annotatedFields()) {
+            for (Annotation annotation: field.annotations()) {
+                if (annotation.hasForwardIndex())
+                    annotationForwardIndex(annotation).initialize();
+            }
+        }
+        synchronized (contentStores) {
+            contentStores.initialize();
+        }
+    }
+
     @Override
     public boolean isEmpty() {
         return isEmptyIndex;
@@ -754,7 +770,9 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
 
     protected ContentStore openContentStore(Field field) throws ErrorOpeningIndex {
         File contentStoreDir = new File(indexLocation, "cs_" + field.name());
-        ContentStore contentStore = ContentStore.open(contentStoreDir, indexMode, isEmptyIndex);
+        // (the codec is only used when creating a content store; it's recorded in the version file)
+        String codec = BlackLab.config().getIndexing().getContentStoreCodec();
+        ContentStore contentStore = ContentStore.open(contentStoreDir, indexMode, isEmptyIndex, codec);
         registerContentStore(field, contentStore);
         return contentStore;
     }
@@ -948,6 +966,16 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
         return defaultContextSize;
     }
 
+    @Override
+    public void setParallelSortThreshold(int parallelSortThreshold) {
+        this.parallelSortThreshold = parallelSortThreshold;
+    }
+
+    @Override
+    public int parallelSortThreshold() {
+        return parallelSortThreshold;
+    }
+
     @Override
     public boolean indexMode() {
         return indexMode;
@@ -955,6 +983,10 @@ public class BlackLabIndexImpl implements BlackLabIndexWriter {
 
     @Override
     public TermFrequencyList termFrequencies(AnnotationSensitivity annotSensitivity, Query filterQuery, Set<String> terms) {
+        if (filterQuery != null && TermFrequenciesFromForwardIndex.canCount(annotSensitivity)) {
+            // Much faster than getting the term vector for each matching document
+            return TermFrequenciesFromForwardIndex.count(this, annotSensitivity, filterQuery, terms);
+        }
         Map<String, Integer> freq = LuceneUtil.termFrequencies(searcher(), filterQuery, annotSensitivity, terms);
         return new TermFrequencyList(QueryInfo.create(this, annotSensitivity.annotation().field()), freq, true);
     }
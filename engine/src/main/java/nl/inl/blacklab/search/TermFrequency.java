@@ -13,6 +13,9 @@ public class TermFrequency implements Result<TermFrequency> {
     /** How many times the token occurs in the context */
     public long frequency;
 
+    /** Association score of the token with the hits, if calculated (see {@link AssociationMeasure}); NaN otherwise */
+    public double score = Double.NaN;
+
     /**
      * Construct a collocation
      * 
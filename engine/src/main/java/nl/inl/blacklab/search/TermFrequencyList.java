@@ -9,8 +9,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.eclipse.collections.api.map.primitive.MutableIntIntMap;
-import org.eclipse.collections.api.tuple.primitive.IntIntPair;
-import org.eclipse.collections.impl.factory.primitive.IntIntMaps;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
 
 import nl.inl.blacklab.forwardindex.FiidLookup;
 import nl.inl.blacklab.forwardindex.Terms;
@@ -25,6 +24,7 @@ import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.ResultGroups;
 import nl.inl.blacklab.search.results.ResultsList;
 import nl.inl.blacklab.search.results.SampleParameters;
+import nl.inl.util.LuceneUtil;
 import nl.inl.util.StringUtil;
 
 /**
@@ -46,7 +46,30 @@ public class TermFrequencyList extends ResultsList<TermFrequency, ResultProperty
      *
      * @return the frequency of each occurring token
      */
-    public synchronized static TermFrequencyList collocations(Hits hits, Annotation annotation, ContextSize contextSize, MatchSensitivity sensitivity, boolean sort) {
+    public static TermFrequencyList collocations(Hits hits, Annotation annotation, ContextSize contextSize, MatchSensitivity sensitivity, boolean sort) {
+        return collocations(hits, annotation, contextSize, sensitivity, sort, null);
+    }
+
+    /**
+     * Count occurrences of context words around hit, optionally scoring them.
+     *
+     * If an association measure is given, each collocate's score is calculated
+     * from its frequency in the corpus (see {@link TermFrequency#score}), and
+     * sorting is by descending score instead of frequency. Scores can only be
+     * calculated if the annotation was indexed with the requested sensitivity;
+     * otherwise they are NaN.
+     *
+     * @param hits hits to get collocations for
+     * @param annotation annotation to use for the collocations, or null if default
+     * @param contextSize how many words around hits to use
+     * @param sensitivity what sensitivity to use
+     * @param sort whether or not to sort the list by descending frequency (or score)
+     * @param measure association measure to score collocates with, or null for none
+     *
+     * @return the frequency of each occurring token
+     */
+    public static TermFrequencyList collocations(Hits hits, Annotation annotation, ContextSize contextSize,
+            MatchSensitivity sensitivity, boolean sort, AssociationMeasure measure) {
         BlackLabIndex index = hits.index();
         if (annotation == null)
             annotation = index.mainAnnotatedField().mainAnnotation();
@@ -58,51 +81,56 @@ public class TermFrequencyList extends ResultsList<TermFrequency, ResultProperty
         List<Annotation> annotations = Arrays.asList(annotation);
         List<FiidLookup> fiidLookups = FiidLookup.getList(annotations, hits.queryInfo().index().reader());
         Contexts contexts = new Contexts(hits, annotations, contextSize, fiidLookups);
-        MutableIntIntMap countPerWord = IntIntMaps.mutable.empty();
-        for (int[] context: contexts) {
-            // Count words
-            int contextHitStart = context[Contexts.HIT_START_INDEX];
-            int contextRightStart = context[Contexts.RIGHT_START_INDEX];
-            int contextLength = context[Contexts.LENGTH_INDEX];
-            int indexInContent = Contexts.NUMBER_OF_BOOKKEEPING_INTS;
-            for (int i = 0; i < contextLength; i++, indexInContent++) {
-                if (i >= contextHitStart && i < contextRightStart)
-                    continue; // don't count words in hit itself, just around [option..?]
-                int wordId = context[indexInContent];
-                int count;
-                if (!countPerWord.containsKey(wordId))
-                    count = 1;
-                else
-                    count = countPerWord.get(wordId) + 1;
-                countPerWord.put(wordId, count);
-            }
+        MutableIntIntMap countPerWord = contexts.countContextWords(0, index.blackLab());
+
+        // Merge the counts for terms that are equal according to the sensitivity.
+        // For insensitive matching, the terms index tells us which terms are equal;
+        // otherwise, we use the term id and merge by string below.
+        Terms terms = index.annotationForwardIndex(annotation).terms();
+        boolean useInsensitiveGroups = sensitivity == MatchSensitivity.INSENSITIVE;
+        MutableIntIntMap countPerGroup = useInsensitiveGroups ? new IntIntHashMap() : countPerWord;
+        MutableIntIntMap groupToTermId = new IntIntHashMap();
+        if (useInsensitiveGroups) {
+            countPerWord.forEachKeyValue((termId, count) -> {
+                int group = terms.idToSortPosition(termId, MatchSensitivity.INSENSITIVE);
+                countPerGroup.addToValue(group, count);
+                groupToTermId.getIfAbsentPut(group, termId);
+            });
         }
 
-        // Get the actual words from the sort positions
-        Terms terms = index.annotationForwardIndex(contexts.annotations().get(0)).terms();
+        // Get the actual words from the term ids
         Map<String, Integer> wordFreq = new HashMap<>();
-        for (IntIntPair e : countPerWord.keyValuesView()) {
-            int wordId = e.getOne();
-            int count = e.getTwo();
-            String word = terms.get(wordId);
-            if (!sensitivity.isDiacriticsSensitive()) {
+        MatchSensitivity sens = sensitivity;
+        countPerGroup.forEachKeyValue((group, count) -> {
+            String word = terms.get(useInsensitiveGroups ? groupToTermId.get(group) : group);
+            if (!sens.isDiacriticsSensitive()) {
                 word = StringUtil.stripAccents(word);
             }
-            if (!sensitivity.isCaseSensitive()) {
+            if (!sens.isCaseSensitive()) {
                 word = word.toLowerCase();
             }
-            // Note that multiple ids may map to the same word (because of sensitivity settings)
-            // Here, those groups are merged.
-            Integer mergedCount = wordFreq.get(word);
-            if (mergedCount == null) {
-                mergedCount = 0;
-            }
-            mergedCount += count;
-            wordFreq.put(word, mergedCount);
-        }
+            // Note that multiple groups may still map to the same word; merge them
+            wordFreq.merge(word, count, Integer::sum);
+        });
 
         // Transfer from map to list
-        return new TermFrequencyList(hits.queryInfo(), wordFreq, sort);
+        if (measure == null)
+            return new TermFrequencyList(hits.queryInfo(), wordFreq, sort);
+        TermFrequencyList result = new TermFrequencyList(hits.queryInfo(), wordFreq, false);
+        if (annotation.hasSensitivity(sensitivity)) {
+            Map<String, Integer> corpusFreq = LuceneUtil.termFrequencies(index.searcher(), null,
+                    annotation.sensitivity(sensitivity), wordFreq.keySet());
+            long contextTokens = 0;
+            for (int count: wordFreq.values())
+                contextTokens += count;
+            long corpusSize = index.metadata().tokenCount();
+            for (TermFrequency tf: result.list) {
+                tf.score = measure.score(tf.frequency, corpusFreq.getOrDefault(tf.term, 0), contextTokens, corpusSize);
+            }
+        }
+        if (sort)
+            result.list.sort(Comparator.comparingDouble((TermFrequency tf) -> Double.isNaN(tf.score) ? Double.NEGATIVE_INFINITY : tf.score).reversed());
+        return result;
     }
 
     List<TermFrequency> list;
@@ -119,6 +147,21 @@ public class TermFrequencyList extends ResultsList<TermFrequency, ResultProperty
             list.sort(Comparator.naturalOrder());
     }
 
+    /**
+     * Create a term frequency list from a list with a known total frequency.
+     *
+     * The list is not iterated, so it may create its entries on demand.
+     *
+     * @param queryInfo query info
+     * @param list term frequencies
+     * @param totalFrequency total of all frequencies in the list
+     */
+    public TermFrequencyList(QueryInfo queryInfo, List<TermFrequency> list, long totalFrequency) {
+        super(queryInfo);
+        this.list = list;
+        this.totalFrequency = totalFrequency;
+    }
+
     TermFrequencyList(QueryInfo queryInfo, List<TermFrequency> list) {
         super(queryInfo);
         this.list = list;
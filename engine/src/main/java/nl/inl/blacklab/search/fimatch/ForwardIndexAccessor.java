@@ -1,5 +1,8 @@
 package nl.inl.blacklab.search.fimatch;
 
+import java.util.BitSet;
+import java.util.function.Predicate;
+
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.util.Bits;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
@@ -47,6 +50,17 @@ public abstract class ForwardIndexAccessor {
     public abstract void getTermNumbers(MutableIntSet results, int annotationNumber, String annotationValue,
             MatchSensitivity sensitivity);
 
+    /**
+     * Get the term numbers for all terms matching a predicate.
+     *
+     * @param results (out) term numbers of the matching terms in this annotation
+     * @param annotationNumber which annotation to get term numbers for
+     * @param matches predicate that tests a term string
+     * @param sensitivity sensitivity the predicate applies
+     */
+    public abstract void getTermNumbers(BitSet results, int annotationNumber, Predicate<String> matches,
+            MatchSensitivity sensitivity);
+
     /**
      * Get the number of annotations
      * 
@@ -1,9 +1,11 @@
 package nl.inl.blacklab.search.fimatch;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import org.apache.lucene.index.LeafReader;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
@@ -79,6 +81,11 @@ class ForwardIndexAccessorImpl extends ForwardIndexAccessor {
         terms.get(annotationNumber).indexOf(results, annotationValue, sensitivity);
     }
 
+    @Override
+    public void getTermNumbers(BitSet results, int annotationNumber, Predicate<String> matches, MatchSensitivity sensitivity) {
+        terms.get(annotationNumber).indexOf(results, matches, sensitivity);
+    }
+
     public int getTermAtPosition(int fiid, int annotationNumber, int pos) {
         return fis.get(annotationNumber).getToken(fiid, pos);
     }
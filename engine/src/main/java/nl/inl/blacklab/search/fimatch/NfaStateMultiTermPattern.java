@@ -5,6 +5,7 @@ import nl.inl.blacklab.search.indexmetadata.AnnotatedFieldNameUtil;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 import nl.inl.util.StringUtil;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -32,6 +33,14 @@ public abstract class NfaStateMultiTermPattern extends NfaState {
     /** Match case-/diacritics-sensitively? */
     private MatchSensitivity sensitivity;
 
+    /**
+     * Ids of the terms matching our pattern. Resolved once, in
+     * lookupAnnotationNumbers() (i.e. when the weight is created), so matching a
+     * token is a simple bit test. Shared between copies of this state; never
+     * modified after it has been set.
+     */
+    private BitSet matchingTermIds;
+
     public NfaStateMultiTermPattern(String luceneField, String pattern, NfaState nextState) {
         this.luceneField = luceneField;
         this.sensitivity = AnnotatedFieldNameUtil.sensitivity(luceneField);
@@ -52,15 +61,24 @@ public abstract class NfaStateMultiTermPattern extends NfaState {
     public boolean findMatchesInternal(ForwardIndexDocument fiDoc, int pos, int direction, Set<Integer> matchEnds) {
         // Token state. Check if it matches token from token source, and if so, continue.
         int actualToken = fiDoc.getToken(propertyNumber, pos);
-        if (actualToken >= 0) {
-            String tokenString = fiDoc.getTermString(propertyNumber, actualToken);
-            if (matchesPattern(desensitize(tokenString))) {
-                return nextState.findMatchesInternal(fiDoc, pos + direction, direction, matchEnds);
-            }
+        if (actualToken >= 0 && matchingTermIds.get(actualToken)) {
+            return nextState.findMatchesInternal(fiDoc, pos + direction, direction, matchEnds);
         }
         return false;
     }
 
+    /**
+     * Does the specified term match our pattern?
+     *
+     * Takes our match sensitivity into account.
+     *
+     * @param term term string
+     * @return true if the term matches
+     */
+    public boolean matchesTerm(String term) {
+        return matchesPattern(desensitize(term));
+    }
+
     private String desensitize(String tokenString) {
         if (!sensitivity.isCaseSensitive())
             tokenString = tokenString.toLowerCase();
@@ -80,6 +98,7 @@ public abstract class NfaStateMultiTermPattern extends NfaState {
     @Override
     NfaStateMultiTermPattern copyInternal(Collection<NfaState> dangling, Map<NfaState, NfaState> copiesMade) {
         NfaStateMultiTermPattern copy = copyNoNextState();
+        copy.matchingTermIds = matchingTermIds;
         copiesMade.put(this, copy);
         NfaState nextStateCopy = nextState == null ? null : nextState.copy(dangling, copiesMade);
         copy.nextState = nextStateCopy;
@@ -140,6 +159,11 @@ public abstract class NfaStateMultiTermPattern extends NfaState {
         String[] comp = AnnotatedFieldNameUtil.getNameComponents(luceneField);
         String annotationName = comp[1];
         propertyNumber = fiAccessor.getAnnotationNumber(annotationName);
+        if (matchingTermIds == null) {
+            BitSet termIds = new BitSet();
+            fiAccessor.getTermNumbers(termIds, propertyNumber, this::matchesTerm, sensitivity);
+            matchingTermIds = termIds;
+        }
         if (nextState != null)
             nextState.lookupAnnotationNumbers(fiAccessor, statesVisited);
     }
@@ -143,6 +143,7 @@ public class BLSpanMultiTermQueryWrapper<Q extends MultiTermQuery>
 
     @Override
     public Nfa getNfa(ForwardIndexAccessor fiAccessor, int direction) {
+        // (the terms matching our pattern are resolved when the NFA looks up its annotation numbers)
         NfaState state = NfaState.regex(getRealField(), getRegex(), null);
         return new Nfa(state, Arrays.asList(state));
     }
@@ -170,21 +171,29 @@ public class BLSpanMultiTermQueryWrapper<Q extends MultiTermQuery>
         return !term.text().contains(AnnotatedFieldNameUtil.SUBANNOTATION_SEPARATOR);
     }
 
-    @Override
-    public long reverseMatchingCost(IndexReader reader) {
+    /**
+     * Count the literal characters in our pattern.
+     *
+     * The more literal characters, the fewer terms will likely match.
+     *
+     * @return number of literal characters in the pattern
+     */
+    private int countLiteralCharacters() {
         String pattern = term.text();
         Query wrapped = query.getWrappedQuery();
-        int numberOfChars;
-        if (wrapped instanceof RegexpQuery) {
-            numberOfChars = countRegexWordCharacters(pattern);
-        } else if (wrapped instanceof WildcardQuery) {
-            numberOfChars = pattern.replaceAll("[\\*\\?]", "").length();
-        } else if (wrapped instanceof PrefixQuery) {
-            numberOfChars = pattern.length();
-        } else {
-            // Don't know; just use reverse matching
-            numberOfChars = 5;
-        }
+        if (wrapped instanceof RegexpQuery)
+            return countRegexWordCharacters(pattern);
+        if (wrapped instanceof WildcardQuery)
+            return pattern.replaceAll("[\\*\\?]", "").length();
+        if (wrapped instanceof PrefixQuery)
+            return pattern.length();
+        // Don't know; just use reverse matching
+        return 5;
+    }
+
+    @Override
+    public long reverseMatchingCost(IndexReader reader) {
+        int numberOfChars = countLiteralCharacters();
         long n;
         try {
             n = reader.getSumTotalTermFreq(term.field()); // total terms in field
@@ -233,7 +242,13 @@ public class BLSpanMultiTermQueryWrapper<Q extends MultiTermQuery>
 
     @Override
     public int forwardMatchingCost() {
-        return BLSpanTermQuery.FIXED_FORWARD_MATCHING_COST * 3 / 2; // more expensive than a single term, because we have to do FI lookup and regex matching
+        // Matching a token is a bit test, just like a single term (the matching terms are resolved
+        // once, when the NFA is built), but the more terms match, the more often we'll have to
+        // continue matching. We don't want to resolve the pattern here just to estimate that, so
+        // guess from the number of literal characters in the pattern.
+        int numberOfChars = Math.max(1, countLiteralCharacters());
+        return BLSpanTermQuery.FIXED_FORWARD_MATCHING_COST
+                + BLSpanTermQuery.FIXED_FORWARD_MATCHING_COST / 2 / numberOfChars;
     }
 
     @Override
@@ -3,8 +3,7 @@ package nl.inl.blacklab.search.results;
 /**
  * Represents the size of the context around a hit.
  * 
- * WARNING: right now, only left() is used (for both left and right context size)!
- * The other functionality will be added in the future.
+ * NOTE: includeHit() is not used yet; the hit is always included.
  */
 public class ContextSize {
     
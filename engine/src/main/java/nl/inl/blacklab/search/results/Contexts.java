@@ -5,14 +5,19 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.collections.api.map.primitive.MutableIntIntMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
 
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.InterruptedSearch;
 import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
 import nl.inl.blacklab.forwardindex.FiidLookup;
 import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.search.BlackLabEngine;
 import nl.inl.blacklab.search.Kwic;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
@@ -38,6 +43,9 @@ public class Contexts implements Iterable<int[]> {
     /** In context arrays, what index indicates the length of the context? */
     public final static int LENGTH_INDEX = 2;
 
+    /** How many hits to retrieve contexts for in one forward index call */
+    private final static int CONTEXT_BATCH_SIZE = 1000;
+
     // Instance variables
     //------------------------------------------------------------------------------
 
@@ -70,7 +78,7 @@ public class Contexts implements Iterable<int[]> {
         // Get punctuation context
         int[][] punctContext = null;
         if (punctForwardIndex != null) {
-            punctContext = getContextWordsSingleDocument(hits.getHitsArrays(), 0, hits.size(), wordsAroundHit, Arrays.asList(punctForwardIndex), Arrays.asList(fiidLookups.get(punctForwardIndex.annotation())));
+            punctContext = getContextWords(hits.getHitsArrays(), 0, hits.size(), wordsAroundHit, Arrays.asList(punctForwardIndex), Arrays.asList(fiidLookups.get(punctForwardIndex.annotation())));
         }
         Terms punctTerms = punctForwardIndex == null ? null : punctForwardIndex.terms();
 
@@ -89,13 +97,13 @@ public class Contexts implements Iterable<int[]> {
                 attrName[i] = e.getKey();
                 attrFI[i] = e.getValue();
                 attrTerms[i] = attrFI[i].terms();
-                attrContext[i] = getContextWordsSingleDocument(hits.getHitsArrays(), 0, hits.size(), wordsAroundHit, Arrays.asList(attrFI[i]), Arrays.asList(fiidLookups.get(attrName[i])));
+                attrContext[i] = getContextWords(hits.getHitsArrays(), 0, hits.size(), wordsAroundHit, Arrays.asList(attrFI[i]), Arrays.asList(fiidLookups.get(attrName[i])));
                 i++;
             }
         }
 
         // Get word context
-        int[][] wordContext = getContextWordsSingleDocument(hits.getHitsArrays(), 0, hits.size(), wordsAroundHit, Arrays.asList(forwardIndex), Arrays.asList(fiidLookups.get(forwardIndex.annotation())));
+        int[][] wordContext = getContextWords(hits.getHitsArrays(), 0, hits.size(), wordsAroundHit, Arrays.asList(forwardIndex), Arrays.asList(fiidLookups.get(forwardIndex.annotation())));
         Terms terms = forwardIndex.terms();
 
         // Make the concordances from the context
@@ -149,6 +157,9 @@ public class Contexts implements Iterable<int[]> {
     /**
      * Get context words from the forward index.
      *
+     * The hits may be from different documents; the contexts for all of them are
+     * retrieved with one call per forward index.
+     *
      * @param hits the hits
      * @param start first hit to get context words for
      * @param end first hit NOT to get context for (hit after the last to get context for)
@@ -156,7 +167,7 @@ public class Contexts implements Iterable<int[]> {
      * @param contextSources forward indices to get context from
      * @param fiidLookups how to find the forward index ids of documents
      */
-    private static int[][] getContextWordsSingleDocument(HitsArrays hits, int start, int end, ContextSize contextSize,
+    private static int[][] getContextWords(HitsArrays hits, int start, int end, ContextSize contextSize,
             List<AnnotationForwardIndex> contextSources, List<FiidLookup> fiidLookups) {
         final int n = end - start;
         if (n == 0)
@@ -172,22 +183,29 @@ public class Contexts implements Iterable<int[]> {
         }
 
         int fiNumber = 0;
-        int doc = hits.doc(start);
         int[][] contexts = new int[n][];
+        int[] fiids = new int[n];
         for (AnnotationForwardIndex forwardIndex: contextSources) {
             FiidLookup fiidLookup = fiidLookups.get(fiNumber);
             // Get all the words from the forward index
             List<int[]> words;
             if (forwardIndex != null) {
                 // We have a forward index for this field. Use it.
-                int fiid = fiidLookup.get(doc);
-                words = forwardIndex.retrievePartsInt(fiid, startsOfSnippets, endsOfSnippets);
+                int prevDoc = -1, prevFiid = -1;
+                for (int i = 0; i < n; ++i) {
+                    int doc = hits.doc(start + i);
+                    if (doc != prevDoc) {
+                        prevFiid = fiidLookup.get(doc);
+                        prevDoc = doc;
+                    }
+                    fiids[i] = prevFiid;
+                }
+                words = forwardIndex.retrievePartsInt(fiids, startsOfSnippets, endsOfSnippets);
             } else {
                 throw new BlackLabRuntimeException("Cannot get context without a forward index");
             }
 
             // Build the actual concordances
-//            int hitNum = 0;
             for (int i = 0; i < n; ++i) {
                 int hitIndex = start + i;
                 int[] theseWords = words.get(i);
@@ -213,25 +231,42 @@ public class Contexts implements Iterable<int[]> {
         return contexts;
     }
 
+    /** log2 of the number of hits per block of context words */
+    private static final int BLOCK_BITS = 14;
+
+    /** Number of hits per block of context words */
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+    /** Number of hits */
+    private final int size;
+
+    /** Per hit: index of the first hit word in the context (i.e. length of the left context) */
+    private final int[] hitStarts;
+
+    /** Per hit: index of the first word after the hit in the context */
+    private final int[] rightStarts;
+
+    /** Per hit: context length */
+    private final int[] lengths;
+
+    /** Per hit: where the context words start in its block */
+    private final int[] offsets;
+
     /**
-     * The hit contexts.
-     *
-     * There may be multiple contexts for each hit. Each
-     * int array starts with three bookkeeping integers, followed by the contexts
-     * information. The bookkeeping integers are:
-     * 0 = hit start, index of the hit word (and length of the left context), counted from the start the context
-     * 1 = right start, start of the right context, counted from the start the context
-     * 2 = context length, length of 1 context. As stated above, there may be multiple contexts.
+     * The context words, per annotation and per block of hits.
      *
-     * The first context therefore starts at index 3.
+     * The context words for hit i and annotation a can be found in
+     * words[a][i >> BLOCK_BITS], from offsets[i] to offsets[i] + lengths[i].
+     * Storing them like this instead of in an array per hit saves a lot of memory
+     * and garbage collection for large numbers of hits.
      */
-    private List<int[]> contexts;
+    private final int[][][] words;
 
     /**
      * If we have context information, this specifies the annotation(s) (i.e. word,
      * lemma, pos) the context came from. Otherwise, it is null.
      */
-    private List<Annotation> annotations;
+    private final List<Annotation> annotations;
 
     // Methods that read data
     //------------------------------------------------------------------------------
@@ -244,41 +279,27 @@ public class Contexts implements Iterable<int[]> {
      */
     @SuppressWarnings("unused")
     private Contexts(Contexts source, List<Annotation> annotations) {
-        // Determine which contexts we want
-        List<Integer> contextsToSelect = new ArrayList<>();
-        for (int i = 0; i < source.annotations.size(); i++) {
-            if (annotations.contains(source.annotations.get(i)))
-                contextsToSelect.add(i);
+        size = source.size;
+        hitStarts = source.hitStarts;
+        rightStarts = source.rightStarts;
+        lengths = source.lengths;
+        offsets = source.offsets;
+        words = new int[annotations.size()][][];
+        for (int i = 0; i < annotations.size(); i++) {
+            int sourceIndex = source.annotations.indexOf(annotations.get(i));
+            if (sourceIndex < 0)
+                throw new BlackLabRuntimeException("Not all requested contexts were present");
+            words[i] = source.words[sourceIndex];
         }
-        if (contextsToSelect.size() < annotations.size())
-            throw new BlackLabRuntimeException("Not all requested contexts were present");
-
-        // Copy only the requested contexts
-        int numberOfHits = source.contexts.size();
-        contexts = new ArrayList<>(numberOfHits);
-
-        for (int i = 0; i < source.contexts.size(); ++i) {
-            int[] context = source.contexts.get(i);
-            int hitContextLength = (context.length - NUMBER_OF_BOOKKEEPING_INTS)
-                    / source.annotations.size();
-            int[] result = new int[NUMBER_OF_BOOKKEEPING_INTS + hitContextLength * annotations.size()];
-            System.arraycopy(context, 0, result, 0, NUMBER_OF_BOOKKEEPING_INTS);
-            int resultContextNumber = 0;
-            for (Integer sourceContextNumber: contextsToSelect) {
-                System.arraycopy(context,
-                        NUMBER_OF_BOOKKEEPING_INTS + sourceContextNumber * hitContextLength, result,
-                        NUMBER_OF_BOOKKEEPING_INTS + resultContextNumber * hitContextLength,
-                        NUMBER_OF_BOOKKEEPING_INTS);
-                resultContextNumber++;
-            }
-            contexts.add(result);
-        }
-        this.annotations = annotations;
+        this.annotations = new ArrayList<>(annotations);
     }
 
     /**
      * Retrieve context words for the hits.
      *
+     * For large numbers of hits, the contexts are retrieved in parallel on the
+     * search executor service.
+     *
      * @param hits hits to find contexts for
      * @param annotations the field and annotations to use for the context
      * @param contextSize how large the contexts need to be
@@ -294,37 +315,143 @@ public class Contexts implements Iterable<int[]> {
             fis.add(hits.index().annotationForwardIndex(annotation));
         }
 
-        // Get the context
-        // Group hits per document
-
-        // setup first iteration
         HitsArrays ha = hits.getHitsArrays();
-        final int size = ha.size(); // TODO ugly, might be slow because of required locking
-        int prevDoc = size == 0 ? -1 : ha.doc(0);
-        int firstHitInCurrentDoc = 0;
-        contexts = new ArrayList<>(hits.size());
-
-        if (size > 0) {
-            for (int i = 1; i < size; ++i) { // start at 1: variables already have correct values for primed for hit 0
-                final int curDoc = ha.doc(i);
-                if (curDoc != prevDoc) {
-                    try { hits.threadAborter().checkAbort(); } catch (InterruptedException e) { throw new InterruptedSearch(e); }
-                    // process hits in this document:
-                    int[][] docContextArray = getContextWordsSingleDocument(ha, firstHitInCurrentDoc, i, contextSize, fis, fiidLookups);
-                    for (int[] contextForHit : docContextArray) { contexts.add(contextForHit); }
-                    // start a new document
-                    prevDoc = curDoc;
-                    firstHitInCurrentDoc = i;
-                }
+        size = ha.size();
+        hitStarts = new int[size];
+        rightStarts = new int[size];
+        lengths = new int[size];
+        offsets = new int[size];
+        int numberOfBlocks = (size + BLOCK_SIZE - 1) >> BLOCK_BITS;
+        words = new int[annotations.size()][numberOfBlocks][];
+
+        // Get the context, a block of hits at a time (in parallel if there are many blocks)
+        BlackLabEngine engine = hits.index().blackLab();
+        ExecutorService executorService = engine.searchExecutorService();
+        int numberOfTasks = Math.min(engine.maxThreadsPerSearch(), numberOfBlocks);
+        if (numberOfTasks <= 1 || executorService == null) {
+            for (int block = 0; block < numberOfBlocks; block++)
+                retrieveBlock(hits, ha, block, contextSize, fis, fiidLookups);
+        } else {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < numberOfTasks; i++) {
+                int firstBlock = (int) ((long) numberOfBlocks * i / numberOfTasks);
+                int lastBlock = (int) ((long) numberOfBlocks * (i + 1) / numberOfTasks);
+                tasks.add(() -> {
+                    for (int block = firstBlock; block < lastBlock; block++)
+                        retrieveBlock(hits, ha, block, contextSize, fis, fiidLookups);
+                });
             }
-            // Process trailing hits
-            int[][] docContextArray = getContextWordsSingleDocument(ha, firstHitInCurrentDoc, hits.size(), contextSize, fis, fiidLookups);
-            for (int[] contextForHit : docContextArray) { contexts.add(contextForHit); }
+            ParallelSort.runAll(executorService, tasks);
         }
 
         this.annotations = new ArrayList<>(annotations);
     }
 
+    /**
+     * Retrieve the context words for a block of hits.
+     *
+     * @param hits hits we're retrieving contexts for (for the thread aborter)
+     * @param ha the hits arrays
+     * @param block block number
+     * @param contextSize how many words of context we want
+     * @param contextSources forward indices to get context from
+     * @param fiidLookups how to find the forward index ids of documents
+     */
+    private void retrieveBlock(Hits hits, HitsArrays ha, int block, ContextSize contextSize,
+            List<AnnotationForwardIndex> contextSources, List<FiidLookup> fiidLookups) {
+        int blockStart = block << BLOCK_BITS;
+        int blockEnd = Math.min(size, blockStart + BLOCK_SIZE);
+        int numberOfAnnotations = contextSources.size();
+        @SuppressWarnings("unchecked")
+        List<int[]>[] parts = new List[numberOfAnnotations];
+        for (int a = 0; a < numberOfAnnotations; a++)
+            parts[a] = new ArrayList<>(blockEnd - blockStart);
+
+        // Retrieve the words in batches
+        int[] startsOfSnippets = new int[CONTEXT_BATCH_SIZE];
+        int[] endsOfSnippets = new int[CONTEXT_BATCH_SIZE];
+        int[] fiids = new int[CONTEXT_BATCH_SIZE];
+        for (int batchStart = blockStart; batchStart < blockEnd; batchStart += CONTEXT_BATCH_SIZE) {
+            try { hits.threadAborter().checkAbort(); } catch (InterruptedException e) { throw new InterruptedSearch(e); }
+            int n = Math.min(blockEnd, batchStart + CONTEXT_BATCH_SIZE) - batchStart;
+            if (n < CONTEXT_BATCH_SIZE) {
+                startsOfSnippets = Arrays.copyOf(startsOfSnippets, n);
+                endsOfSnippets = Arrays.copyOf(endsOfSnippets, n);
+                fiids = Arrays.copyOf(fiids, n);
+            }
+            for (int i = 0; i < n; i++) {
+                int hitIndex = batchStart + i;
+                startsOfSnippets[i] = Math.max(0, ha.start(hitIndex) - contextSize.left());
+                endsOfSnippets[i] = ha.end(hitIndex) + contextSize.right();
+            }
+            for (int a = 0; a < numberOfAnnotations; a++) {
+                AnnotationForwardIndex forwardIndex = contextSources.get(a);
+                if (forwardIndex == null)
+                    throw new BlackLabRuntimeException("Cannot get context without a forward index");
+                FiidLookup fiidLookup = fiidLookups.get(a);
+                int prevDoc = -1, prevFiid = -1;
+                for (int i = 0; i < n; ++i) {
+                    int doc = ha.doc(batchStart + i);
+                    if (doc != prevDoc) {
+                        prevFiid = fiidLookup.get(doc);
+                        prevDoc = doc;
+                    }
+                    fiids[i] = prevFiid;
+                }
+                parts[a].addAll(forwardIndex.retrievePartsInt(fiids, startsOfSnippets, endsOfSnippets));
+            }
+            // Determine the bookkeeping values (based on the first annotation's words)
+            for (int i = 0; i < n; i++) {
+                int hitIndex = batchStart + i;
+                int[] theseWords = parts[0].get(hitIndex - blockStart);
+                if (theseWords == null) {
+                    // Deleted document; no context
+                    continue;
+                }
+                hitStarts[hitIndex] = ha.start(hitIndex) - startsOfSnippets[i];
+                rightStarts[hitIndex] = ha.end(hitIndex) - startsOfSnippets[i];
+                lengths[hitIndex] = theseWords.length;
+            }
+        }
+
+        // Copy the words to one array per annotation
+        long total = 0;
+        for (int i = blockStart; i < blockEnd; i++) {
+            offsets[i] = (int) total;
+            total += lengths[i];
+        }
+        if (total > Integer.MAX_VALUE - 8)
+            throw new BlackLabRuntimeException("Contexts too large: " + total + " words in a block");
+        for (int a = 0; a < numberOfAnnotations; a++) {
+            int[] blockWords = new int[(int) total];
+            for (int i = blockStart; i < blockEnd; i++) {
+                int[] theseWords = parts[a].get(i - blockStart);
+                if (theseWords != null)
+                    System.arraycopy(theseWords, 0, blockWords, offsets[i], Math.min(lengths[i], theseWords.length));
+            }
+            words[a][block] = blockWords;
+            parts[a] = null; // allow GC
+        }
+    }
+
+    /**
+     * Get the number of ints these contexts store (bookkeeping and words).
+     *
+     * Useful to estimate how much memory the contexts use.
+     *
+     * @return number of ints stored
+     */
+    public long numberOfInts() {
+        long n = (long) size * 4; // hitStarts, rightStarts, lengths, offsets
+        for (int[][] annotationWords: words) {
+            for (int[] blockWords: annotationWords) {
+                if (blockWords != null)
+                    n += blockWords.length;
+            }
+        }
+        return n;
+    }
+
     /**
      * Get the field our current concordances were retrieved from
      *
@@ -334,18 +461,137 @@ public class Contexts implements Iterable<int[]> {
         return annotations;
     }
 
+    /**
+     * Get the index of the first hit word in a hit's context.
+     *
+     * This is also the length of the left context.
+     *
+     * @param hitIndex hit index
+     * @return index of the first hit word
+     */
+    public int hitStart(int hitIndex) {
+        return hitStarts[hitIndex];
+    }
+
+    /**
+     * Get the index of the first word after the hit in a hit's context.
+     *
+     * @param hitIndex hit index
+     * @return index of the first word of the right context
+     */
+    public int rightStart(int hitIndex) {
+        return rightStarts[hitIndex];
+    }
+
+    /**
+     * Get the length of a hit's context.
+     *
+     * @param hitIndex hit index
+     * @return context length
+     */
+    public int length(int hitIndex) {
+        return lengths[hitIndex];
+    }
+
+    /**
+     * Get the array containing a hit's context words for an annotation.
+     *
+     * The array is shared with other hits; the hit's words start at
+     * {@link #wordsStart(int)} and there are {@link #length(int)} of them.
+     *
+     * @param hitIndex hit index
+     * @param annotationIndex index of the annotation in {@link #annotations()}
+     * @return array containing the context words
+     */
+    public int[] words(int hitIndex, int annotationIndex) {
+        return words[annotationIndex][hitIndex >> BLOCK_BITS];
+    }
+
+    /**
+     * Get where a hit's context words start in the array returned by
+     * {@link #words(int, int)}.
+     *
+     * @param hitIndex hit index
+     * @return start of the hit's context words
+     */
+    public int wordsStart(int hitIndex) {
+        return offsets[hitIndex];
+    }
+
+    /**
+     * Count how often each term occurs in the contexts, not counting the hits
+     * themselves.
+     *
+     * For large numbers of hits, ranges of hits are counted in parallel on the
+     * search executor service and the counts are merged at the end.
+     *
+     * @param annotationIndex index of the annotation in {@link #annotations()}
+     * @param engine engine, for the search executor service and number of threads to use
+     * @return number of occurrences per term id
+     */
+    public MutableIntIntMap countContextWords(int annotationIndex, BlackLabEngine engine) {
+        int numberOfBlocks = (size + BLOCK_SIZE - 1) >> BLOCK_BITS;
+        ExecutorService executorService = engine.searchExecutorService();
+        int numberOfTasks = Math.min(engine.maxThreadsPerSearch(), numberOfBlocks);
+        if (numberOfTasks <= 1 || executorService == null)
+            return countContextWords(annotationIndex, 0, size);
+
+        MutableIntIntMap[] counts = new MutableIntIntMap[numberOfTasks];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < numberOfTasks; i++) {
+            int taskIndex = i;
+            int from = (int) ((long) numberOfBlocks * i / numberOfTasks) << BLOCK_BITS;
+            int to = Math.min(size, (int) ((long) numberOfBlocks * (i + 1) / numberOfTasks) << BLOCK_BITS);
+            tasks.add(() -> counts[taskIndex] = countContextWords(annotationIndex, from, to));
+        }
+        ParallelSort.runAll(executorService, tasks);
+        MutableIntIntMap result = counts[0];
+        for (int i = 1; i < numberOfTasks; i++) {
+            counts[i].forEachKeyValue(result::addToValue);
+        }
+        return result;
+    }
+
+    private MutableIntIntMap countContextWords(int annotationIndex, int from, int to) {
+        MutableIntIntMap countPerWord = new IntIntHashMap();
+        for (int hitIndex = from; hitIndex < to; hitIndex++) {
+            int[] contextWords = words(hitIndex, annotationIndex);
+            int start = offsets[hitIndex];
+            int end = start + lengths[hitIndex];
+            int hitStart = Math.min(end, start + hitStarts[hitIndex]);
+            int rightStart = Math.min(end, start + rightStarts[hitIndex]);
+            for (int i = start; i < hitStart; i++)
+                countPerWord.addToValue(contextWords[i], 1);
+            for (int i = rightStart; i < end; i++)
+                countPerWord.addToValue(contextWords[i], 1);
+        }
+        return countPerWord;
+    }
+
     /**
      * Return the context(s) for the specified hit number
      *
+     * The context(s) are copied to a new array with the bookkeeping ints
+     * (see NUMBER_OF_BOOKKEEPING_INTS) at the start, followed by the context for
+     * each annotation. Prefer the other accessor methods, which don't allocate.
+     *
      * @param index which hit we want the context(s) for
      * @return the context(s)
      */
     public int[] get(int index) {
-        return contexts.get(index);
+        int length = lengths[index];
+        int[] context = new int[NUMBER_OF_BOOKKEEPING_INTS + length * annotations.size()];
+        context[HIT_START_INDEX] = hitStarts[index];
+        context[RIGHT_START_INDEX] = rightStarts[index];
+        context[LENGTH_INDEX] = length;
+        for (int a = 0; a < annotations.size(); a++) {
+            System.arraycopy(words(index, a), offsets[index], context, NUMBER_OF_BOOKKEEPING_INTS + a * length, length);
+        }
+        return context;
     }
 
     public int size() {
-        return contexts.size();
+        return size;
     }
 
     /**
@@ -357,7 +603,21 @@ public class Contexts implements Iterable<int[]> {
      */
     @Override
     public Iterator<int[]> iterator() {
-        return contexts.iterator();
+        return new Iterator<int[]>() {
+            int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public int[] next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return get(index++);
+            }
+        };
     }
 
     @Override
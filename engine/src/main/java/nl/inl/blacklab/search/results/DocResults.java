@@ -17,6 +17,7 @@ package nl.inl.blacklab.search.results;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -45,6 +46,7 @@ import nl.inl.blacklab.resultproperty.HitPropertyDoc;
 import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.resultproperty.PropertyValueDoc;
 import nl.inl.blacklab.resultproperty.PropertyValueInt;
+import nl.inl.blacklab.search.BlackLabEngine;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.results.Hits.EphemeralHit;
 import nl.inl.blacklab.search.results.Hits.HitsArrays;
@@ -251,8 +253,18 @@ public class DocResults extends ResultsList<DocResult, DocProperty> implements R
     @Override
     public DocResults sort(DocProperty sortProp) {
         ensureAllResultsRead();
-        List<DocResult> sorted = new ArrayList<DocResult>(this.getResults());
-        sorted.sort(sortProp);
+        List<DocResult> results = this.getResults();
+        List<DocResult> sorted;
+        BlackLabEngine engine = index().blackLab();
+        int maxThreads = engine.maxThreadsPerSearch();
+        if (engine.searchExecutorService() != null && ParallelSort.shouldSortInParallel(results.size(), index().parallelSortThreshold(), maxThreads)) {
+            DocResult[] array = results.toArray(new DocResult[0]);
+            ParallelSort.sort(array, sortProp, engine.searchExecutorService(), maxThreads);
+            sorted = new ArrayList<DocResult>(Arrays.asList(array));
+        } else {
+            sorted = new ArrayList<DocResult>(results);
+            sorted.sort(sortProp);
+        }
         return DocResults.fromList(queryInfo(), sorted, (SampleParameters)null, (WindowStats)null);
     }
 
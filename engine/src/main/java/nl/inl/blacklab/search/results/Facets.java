@@ -1,5 +1,6 @@
 package nl.inl.blacklab.search.results;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,11 +18,20 @@ public class Facets implements SearchResult {
     public Facets(DocResults source, List<DocProperty> facets) {
         this.facets = facets;
         counts = new HashMap<>();
+
+        // Count all facets we can using DocValues ordinals in a single pass;
+        // group by the others one at a time.
+        List<DocProperty> fromDocValues = new ArrayList<>();
         for (DocProperty facetBy : facets) {
-            DocGroups groups = source.group(facetBy, 0);
-            counts.put(facetBy, groups);
-            resultObjects += groups.size();
+            if (FacetsFromDocValues.canCount(source.queryInfo().index(), facetBy))
+                fromDocValues.add(facetBy);
+            else
+                counts.put(facetBy, source.group(facetBy, 0));
         }
+        if (!fromDocValues.isEmpty())
+            counts.putAll(FacetsFromDocValues.count(source, fromDocValues));
+        for (DocGroups groups : counts.values())
+            resultObjects += groups.size();
     }
 
     public List<DocProperty> facets() {
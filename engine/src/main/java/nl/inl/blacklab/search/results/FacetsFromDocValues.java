@@ -0,0 +1,263 @@
+package nl.inl.blacklab.search.results;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.BytesRef;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.resultproperty.DocProperty;
+import nl.inl.blacklab.resultproperty.DocPropertyAnnotatedFieldLength;
+import nl.inl.blacklab.resultproperty.DocPropertyStoredField;
+import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.resultproperty.PropertyValueString;
+import nl.inl.blacklab.search.BlackLabEngine;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.indexmetadata.FieldType;
+import nl.inl.blacklab.search.indexmetadata.MetadataField;
+
+/**
+ * Counts the values of several metadata fields in a set of documents at once.
+ *
+ * Grouping the documents by each facet separately means walking all documents
+ * and looking up a value per document once for every facet. Instead, we visit
+ * each document once (in parallel per index segment) and, for every facet,
+ * increment a counter for the document's SortedSetDocValues ordinal. Ordinals
+ * are only translated to strings once per segment, for the values that
+ * actually occurred.
+ *
+ * The resulting groups are the same as those produced by
+ * {@link DocResults#group(DocProperty, int)} with no stored results; documents
+ * with multiple values for a field are counted under the combination of their
+ * values, as there.
+ */
+final class FacetsFromDocValues {
+
+    /** Counts for a group: number of documents and number of tokens */
+    private static final class Count {
+        int docs;
+        long tokens;
+
+        void add(int docs, long tokens) {
+            this.docs += docs;
+            this.tokens += tokens;
+        }
+    }
+
+    private FacetsFromDocValues() {
+    }
+
+    /**
+     * Can we count this facet using DocValues ordinals?
+     *
+     * This is the case for (non-numeric) stored fields that have DocValues.
+     *
+     * @param index index
+     * @param facet facet
+     * @return true if we can
+     */
+    static boolean canCount(BlackLabIndex index, DocProperty facet) {
+        if (!(facet instanceof DocPropertyStoredField) || index.reader() == null)
+            return false;
+        String fieldName = ((DocPropertyStoredField) facet).fieldName();
+        MetadataField metadataField = index.metadataFields().exists(fieldName) ? index.metadataField(fieldName) : null;
+        if (metadataField == null || metadataField.type() == FieldType.NUMERIC)
+            return false;
+        try {
+            for (LeafReaderContext rc: index.reader().leaves()) {
+                if (docValues(rc.reader(), fieldName) != null)
+                    return true;
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        return false;
+    }
+
+    /**
+     * Count the values of several facets in one pass over the documents.
+     *
+     * @param source documents to count
+     * @param facets facets to count; all must satisfy {@link #canCount(BlackLabIndex, DocProperty)}
+     * @return groups per facet
+     */
+    static Map<DocProperty, DocGroups> count(DocResults source, List<DocProperty> facets) {
+        QueryInfo queryInfo = source.queryInfo();
+        BlackLabIndex index = queryInfo.index();
+        source.ensureAllResultsRead();
+        int[] docIds = new int[source.size()];
+        int n = 0;
+        for (DocResult r: source)
+            docIds[n++] = r.identity().id();
+        Arrays.sort(docIds);
+
+        String[] fieldNames = new String[facets.size()];
+        for (int i = 0; i < fieldNames.length; i++)
+            fieldNames[i] = ((DocPropertyStoredField) facets.get(i)).fieldName();
+        String tokenLengthFieldName = index.mainAnnotatedField().tokenLengthField();
+        DocPropertyAnnotatedFieldLength fieldLengthProp = new DocPropertyAnnotatedFieldLength(index, tokenLengthFieldName);
+
+        // Find the range of (sorted) doc ids in each segment
+        List<LeafReaderContext> leaves = index.reader().leaves();
+        int[] leafStart = new int[leaves.size() + 1];
+        for (int i = 0, leaf = 0; i <= docIds.length; i++) {
+            int leafOfDoc = i == docIds.length ? leaves.size() : ReaderUtil.subIndex(docIds[i], leaves);
+            while (leaf < leafOfDoc)
+                leafStart[++leaf] = i;
+        }
+
+        // Count each segment, distributing the segments over the tasks
+        BlackLabEngine engine = index.blackLab();
+        ExecutorService executorService = engine.searchExecutorService();
+        int numberOfTasks = executorService == null ? 1 : Math.max(1, Math.min(engine.maxThreadsPerSearch(), leaves.size()));
+        List<List<Map<String, Count>>> countsPerTask = new ArrayList<>();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < numberOfTasks; i++) {
+            List<Map<String, Count>> counts = new ArrayList<>();
+            for (int j = 0; j < fieldNames.length; j++)
+                counts.add(new HashMap<>());
+            countsPerTask.add(counts);
+            int taskIndex = i;
+            int step = numberOfTasks;
+            tasks.add(() -> {
+                for (int leaf = taskIndex; leaf < leaves.size(); leaf += step) {
+                    if (leafStart[leaf] < leafStart[leaf + 1]) {
+                        countSegment(leaves.get(leaf), docIds, leafStart[leaf], leafStart[leaf + 1], fieldNames,
+                                fieldLengthProp, counts);
+                    }
+                }
+            });
+        }
+        if (numberOfTasks == 1)
+            tasks.get(0).run();
+        else
+            ParallelSort.runAll(executorService, tasks);
+
+        // Merge the counts from the tasks and create the groups
+        Map<DocProperty, DocGroups> result = new HashMap<>();
+        for (int i = 0; i < fieldNames.length; i++) {
+            Map<String, Count> merged = countsPerTask.get(0).get(i);
+            for (int task = 1; task < numberOfTasks; task++) {
+                for (Map.Entry<String, Count> e: countsPerTask.get(task).get(i).entrySet())
+                    merged.computeIfAbsent(e.getKey(), k -> new Count()).add(e.getValue().docs, e.getValue().tokens);
+            }
+            List<DocGroup> groups = new ArrayList<>(merged.size());
+            for (Map.Entry<String, Count> e: merged.entrySet()) {
+                PropertyValue identity = new PropertyValueString(e.getKey());
+                groups.add(DocGroup.fromList(queryInfo, identity, new ArrayList<>(), e.getValue().docs, e.getValue().tokens));
+            }
+            result.put(facets.get(i), DocGroups.fromList(queryInfo, groups, facets.get(i), (SampleParameters)null, (WindowStats)null));
+        }
+        return result;
+    }
+
+    /**
+     * Count the facet values for the documents in a segment.
+     *
+     * @param leaf segment
+     * @param docIds sorted global doc ids
+     * @param from first index in docIds in this segment
+     * @param to index in docIds after the last doc in this segment
+     * @param fieldNames fields to count
+     * @param fieldLengthProp document length, for the number of tokens per group
+     * @param counts (out) counts per facet, keyed by value
+     */
+    private static void countSegment(LeafReaderContext leaf, int[] docIds, int from, int to, String[] fieldNames,
+            DocPropertyAnnotatedFieldLength fieldLengthProp, List<Map<String, Count>> counts) {
+        try {
+            LeafReader reader = leaf.reader();
+            int numberOfFacets = fieldNames.length;
+            SortedSetDocValues[] docValues = new SortedSetDocValues[numberOfFacets];
+            int[][] docsPerOrd = new int[numberOfFacets][];
+            long[][] tokensPerOrd = new long[numberOfFacets][];
+            for (int i = 0; i < numberOfFacets; i++) {
+                docValues[i] = docValues(reader, fieldNames[i]);
+                if (docValues[i] != null) {
+                    int valueCount = (int) docValues[i].getValueCount();
+                    docsPerOrd[i] = new int[valueCount];
+                    tokensPerOrd[i] = new long[valueCount];
+                }
+            }
+
+            List<String> values = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                if (Thread.interrupted())
+                    throw new InterruptedSearch();
+                int docId = docIds[i];
+                int segmentDocId = docId - leaf.docBase;
+                long docLengthTokens = fieldLengthProp.get(docId) - BlackLabIndex.IGNORE_EXTRA_CLOSING_TOKEN;
+                for (int facet = 0; facet < numberOfFacets; facet++) {
+                    SortedSetDocValues dv = docValues[facet];
+                    if (dv == null) {
+                        // No values for this field in this segment
+                        counts.get(facet).computeIfAbsent("", k -> new Count()).add(1, docLengthTokens);
+                        continue;
+                    }
+                    dv.setDocument(segmentDocId);
+                    long ord = dv.nextOrd();
+                    long secondOrd = ord == SortedSetDocValues.NO_MORE_ORDS ? ord : dv.nextOrd();
+                    if (ord != SortedSetDocValues.NO_MORE_ORDS && secondOrd == SortedSetDocValues.NO_MORE_ORDS) {
+                        // Single value (the common case): just count the ordinal
+                        docsPerOrd[facet][(int) ord]++;
+                        tokensPerOrd[facet][(int) ord] += docLengthTokens;
+                    } else {
+                        // No value or multiple values: count the combination
+                        values.clear();
+                        if (ord != SortedSetDocValues.NO_MORE_ORDS) {
+                            values.add(dv.lookupOrd(ord).utf8ToString());
+                            for (ord = secondOrd; ord != SortedSetDocValues.NO_MORE_ORDS; ord = dv.nextOrd())
+                                values.add(dv.lookupOrd(ord).utf8ToString());
+                        }
+                        String key = DocPropertyStoredField.fromArray(values.toArray(new String[0])).value();
+                        counts.get(facet).computeIfAbsent(key, k -> new Count()).add(1, docLengthTokens);
+                    }
+                }
+            }
+
+            // Translate the ordinals that occurred to strings
+            for (int facet = 0; facet < numberOfFacets; facet++) {
+                int[] docs = docsPerOrd[facet];
+                if (docs == null)
+                    continue;
+                for (int ord = 0; ord < docs.length; ord++) {
+                    if (docs[ord] > 0) {
+                        BytesRef value = docValues[facet].lookupOrd(ord);
+                        counts.get(facet).computeIfAbsent(value.utf8ToString(), k -> new Count())
+                                .add(docs[ord], tokensPerOrd[facet][ord]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    /**
+     * Get the DocValues for a field in a segment as SortedSetDocValues.
+     *
+     * New indexes have SortedSetDocValues, but very old indexes may have
+     * SortedDocValues (see DocPropertyStoredField).
+     *
+     * @param reader segment reader
+     * @param fieldName field
+     * @return DocValues, or null if the field has none in this segment
+     */
+    private static SortedSetDocValues docValues(LeafReader reader, String fieldName) throws IOException {
+        SortedDocValues sortedDocValues = reader.getSortedDocValues(fieldName);
+        if (sortedDocValues != null)
+            return DocValues.singleton(sortedDocValues);
+        return reader.getSortedSetDocValues(fieldName);
+    }
+}
@@ -115,37 +115,16 @@ public class HitGroups extends ResultsList<HitGroup, GroupProperty<Hit, HitGroup
         List<FiidLookup> fiidLookups = FiidLookup.getList(requiredContext, hits.queryInfo().index().reader());
         criteria = criteria.copyWith(hits, requiredContext == null ? null : new Contexts(hits, requiredContext, criteria.needsContextSize(hits.index()), fiidLookups));
         
-        //Thread currentThread = Thread.currentThread();
-        Map<PropertyValue, HitsArrays> groupLists = new HashMap<>();
-        Map<PropertyValue, Integer> groupSizes = new HashMap<>();
+        hits.size(); // make sure all hits have been read
+        HitGroupsBuilder builder = new HitGroupsBuilder(hits.getHitsArrays(), criteria, maxResultsToStorePerGroup);
         resultObjects = 0;
-        int i = 0;
-        for (Hit hit: hits) {
-            PropertyValue identity = criteria.get(i);
-            HitsArrays group = groupLists.get(identity);
-            if (group == null) {
-                group = new HitsArrays();
-                groupLists.put(identity, group);
-            }
-            if (maxResultsToStorePerGroup < 0 || group.size() < maxResultsToStorePerGroup) {
-                group.add(hit);
-                resultObjects++;
-            }
-            Integer groupSize = groupSizes.get(identity);
-            if (groupSize == null)
-                groupSize = 1;
-            else
-                groupSize++;
+        for (HitGroupsBuilder.Group g: builder.group(hits.index().blackLab())) {
+            PropertyValue groupId = g.identity();
+            HitsArrays hitList = g.storedHits();
+            int groupSize = g.size();
             if (groupSize > largestGroupSize)
                 largestGroupSize = groupSize;
-            groupSizes.put(identity, groupSize);
-            ++i;
-        }
-        resultObjects += groupLists.size();
-        for (Map.Entry<PropertyValue, HitsArrays> e : groupLists.entrySet()) {
-            PropertyValue groupId = e.getKey();
-            HitsArrays hitList = e.getValue();
-            Integer groupSize = groupSizes.get(groupId);
+            resultObjects += hitList.size() + 1;
             HitGroup group = HitGroup.fromList(queryInfo(), groupId, hitList, hits.capturedGroups(), groupSize);
             groups.put(groupId, group);
             getResults().add(group);
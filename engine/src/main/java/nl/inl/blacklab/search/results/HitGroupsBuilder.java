@@ -0,0 +1,235 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.search.BlackLabEngine;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+
+/**
+ * Groups hits, using multiple threads for large result sets.
+ *
+ * Where possible, hits are grouped on the primitive key returned by
+ * {@link HitProperty#groupKey(int)} instead of on a PropertyValue, so we don't
+ * have to create a PropertyValue for each hit; one is only created for each
+ * distinct group at the end. Values without a key are grouped on their
+ * PropertyValue as before.
+ *
+ * The hits are divided into ranges that are grouped in parallel on the search
+ * executor service; the results for the ranges are then merged in order, so the
+ * hits in each group (and the groups themselves) stay in the order they occur.
+ * Because {@link HitProperty#get(int)} is not guaranteed to be thread-safe, we
+ * only group in parallel as long as all hits have a group key; as soon as a range
+ * finds a hit without one, we group all hits on this thread instead.
+ */
+final class HitGroupsBuilder {
+
+    /** Don't group ranges smaller than this in parallel; not worth the overhead */
+    static final int DEFAULT_MIN_HITS_PER_RANGE = 100_000;
+
+    /** A group being built */
+    static final class Group {
+
+        /** Group key, or NO_GROUP_KEY if grouped on identity */
+        private final long key;
+
+        /** Group identity (determined at the end for keyed groups) */
+        private PropertyValue identity;
+
+        /** Index of the first hit in this group */
+        private final int firstHit;
+
+        /** Number of hits in this group */
+        private int size;
+
+        /** The hits we store for this group */
+        private final HitsArrays storedHits = new HitsArrays();
+
+        Group(long key, PropertyValue identity, int firstHit) {
+            this.key = key;
+            this.identity = identity;
+            this.firstHit = firstHit;
+        }
+
+        public PropertyValue identity() {
+            return identity;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public HitsArrays storedHits() {
+            return storedHits;
+        }
+    }
+
+    /** Groups found in (a range of) the hits, in order of first occurrence. */
+    private static final class RangeGroups {
+
+        final LongIntHashMap keyToGroup = new LongIntHashMap();
+
+        final Map<PropertyValue, Integer> identityToGroup = new HashMap<>();
+
+        final List<Group> groups = new ArrayList<>();
+    }
+
+    private final HitsArrays hits;
+
+    private final HitProperty criteria;
+
+    private final int maxResultsToStorePerGroup;
+
+    /** Don't group ranges smaller than this in parallel */
+    private final int minHitsPerRange;
+
+    /**
+     * Prepare to group hits.
+     *
+     * @param hits hits to group (must all have been read)
+     * @param criteria what to group on (must use these hits)
+     * @param maxResultsToStorePerGroup how many hits to store per group at most, or -1 for all
+     */
+    HitGroupsBuilder(HitsArrays hits, HitProperty criteria, int maxResultsToStorePerGroup) {
+        this(hits, criteria, maxResultsToStorePerGroup, DEFAULT_MIN_HITS_PER_RANGE);
+    }
+
+    /**
+     * Prepare to group hits.
+     *
+     * @param hits hits to group (must all have been read)
+     * @param criteria what to group on (must use these hits)
+     * @param maxResultsToStorePerGroup how many hits to store per group at most, or -1 for all
+     * @param minHitsPerRange don't group ranges smaller than this in parallel
+     */
+    HitGroupsBuilder(HitsArrays hits, HitProperty criteria, int maxResultsToStorePerGroup, int minHitsPerRange) {
+        this.hits = hits;
+        this.criteria = criteria;
+        this.maxResultsToStorePerGroup = maxResultsToStorePerGroup;
+        this.minHitsPerRange = Math.max(1, minHitsPerRange);
+    }
+
+    /**
+     * Group the hits.
+     *
+     * @param engine engine, for the search executor service and number of threads to use
+     * @return the groups, in order of first occurrence
+     */
+    List<Group> group(BlackLabEngine engine) {
+        return group(engine.searchExecutorService(), engine.maxThreadsPerSearch());
+    }
+
+    /**
+     * Group the hits.
+     *
+     * @param executorService where to run grouping tasks, or null to group on this thread
+     * @param maxThreads maximum number of threads to use
+     * @return the groups, in order of first occurrence
+     */
+    List<Group> group(ExecutorService executorService, int maxThreads) {
+        int n = hits.size();
+        int numberOfRanges = Math.max(1, Math.min(maxThreads, n / minHitsPerRange));
+        if (numberOfRanges == 1 || executorService == null || criteria.groupKey(0) == HitProperty.NO_GROUP_KEY) {
+            return resolveIdentities(groupRange(0, n, false).groups);
+        }
+
+        RangeGroups[] ranges = new RangeGroups[numberOfRanges];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < numberOfRanges; i++) {
+            int rangeIndex = i;
+            int from = (int) ((long) n * i / numberOfRanges);
+            int to = (int) ((long) n * (i + 1) / numberOfRanges);
+            tasks.add(() -> ranges[rangeIndex] = groupRange(from, to, true));
+        }
+        ParallelSort.runAll(executorService, tasks);
+        for (RangeGroups range: ranges) {
+            if (range == null) {
+                // A hit without a group key; we can't call get() from multiple threads
+                return resolveIdentities(groupRange(0, n, false).groups);
+            }
+        }
+
+        // Merge the ranges, in order
+        RangeGroups result = ranges[0];
+        for (int i = 1; i < numberOfRanges; i++) {
+            for (Group group: ranges[i].groups) {
+                int groupIndex = group.key == HitProperty.NO_GROUP_KEY ?
+                        result.identityToGroup.getOrDefault(group.identity, -1) :
+                        result.keyToGroup.getIfAbsent(group.key, -1);
+                if (groupIndex < 0) {
+                    add(result, group);
+                } else {
+                    Group target = result.groups.get(groupIndex);
+                    target.size += group.size;
+                    HitsArrays hitsToAdd = group.storedHits;
+                    for (int j = 0; j < hitsToAdd.size() && canStoreHit(target); j++) {
+                        target.storedHits.add(hitsToAdd.doc(j), hitsToAdd.start(j), hitsToAdd.end(j),
+                                hitsToAdd.indexInResultSet(j));
+                    }
+                }
+            }
+        }
+        return resolveIdentities(result.groups);
+    }
+
+    /**
+     * Group a range of the hits.
+     *
+     * @param from first hit index
+     * @param to hit index after the last one
+     * @param keysOnly if true, give up when we find a hit without a group key
+     *     (because we're running in parallel and mustn't call get())
+     * @return the groups, or null if we gave up
+     */
+    private RangeGroups groupRange(int from, int to, boolean keysOnly) {
+        RangeGroups result = new RangeGroups();
+        for (int i = from; i < to; i++) {
+            long key = criteria.groupKey(i);
+            Group group;
+            if (key == HitProperty.NO_GROUP_KEY) {
+                if (keysOnly)
+                    return null;
+                PropertyValue identity = criteria.get(i);
+                Integer groupIndex = result.identityToGroup.get(identity);
+                group = groupIndex == null ? add(result, new Group(key, identity, i)) : result.groups.get(groupIndex);
+            } else {
+                int groupIndex = result.keyToGroup.getIfAbsent(key, -1);
+                group = groupIndex < 0 ? add(result, new Group(key, null, i)) : result.groups.get(groupIndex);
+            }
+            group.size++;
+            if (canStoreHit(group))
+                group.storedHits.add(hits.doc(i), hits.start(i), hits.end(i), hits.indexInResultSet(i));
+        }
+        return result;
+    }
+
+    private boolean canStoreHit(Group group) {
+        return maxResultsToStorePerGroup < 0 || group.storedHits.size() < maxResultsToStorePerGroup;
+    }
+
+    private static Group add(RangeGroups rangeGroups, Group group) {
+        int groupIndex = rangeGroups.groups.size();
+        if (group.key == HitProperty.NO_GROUP_KEY)
+            rangeGroups.identityToGroup.put(group.identity, groupIndex);
+        else
+            rangeGroups.keyToGroup.put(group.key, groupIndex);
+        rangeGroups.groups.add(group);
+        return group;
+    }
+
+    /** Create the identities for keyed groups (one for each group, instead of each hit). */
+    private List<Group> resolveIdentities(List<Group> groups) {
+        for (Group group: groups) {
+            if (group.identity == null)
+                group.identity = criteria.get(group.firstHit);
+        }
+        return groups;
+    }
+}
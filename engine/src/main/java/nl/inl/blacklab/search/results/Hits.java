@@ -1,13 +1,16 @@
 package nl.inl.blacklab.search.results;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.mutable.MutableInt;
@@ -21,6 +24,8 @@ import nl.inl.blacklab.exceptions.WildcardTermTooBroad;
 import nl.inl.blacklab.forwardindex.FiidLookup;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.search.AssociationMeasure;
+import nl.inl.blacklab.search.BlackLabEngine;
 import nl.inl.blacklab.search.ConcordanceType;
 import nl.inl.blacklab.search.TermFrequencyList;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
@@ -71,6 +76,23 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         }
     }
 
+    /**
+     * The docs, starts, ends and indices of a list of hits.
+     *
+     * Hits are stored in append-only chunks of primitive arrays. The first chunk is
+     * small and each following chunk is twice as large as the previous one, so small
+     * lists (e.g. a group) don't waste memory and large lists never have to be copied
+     * while growing.
+     *
+     * Reading is lock-free: hits below {@link #size()} have been completely written
+     * and never change (except by the deprecated {@link #sortInPlace(HitProperty)} and
+     * by {@link #clear()}). Writers reserve a range of hits using a CAS on the
+     * reserved count, fill it in, and then publish it by advancing the size. Ranges
+     * are published in the order they were reserved, so a batch of hits added in one
+     * call stays contiguous. If a writer fails to fill its range, the range is
+     * abandoned: it and any ranges after it are never published, and writers
+     * waiting to publish those get an exception instead of waiting forever.
+     */
     public static class HitsArrays implements Iterable<EphemeralHit> {
         @FunctionalInterface
         public static interface HitConsumer {
@@ -88,16 +110,12 @@ public abstract class Hits extends Results<Hit, HitProperty> {
 
             @Override
             public boolean hasNext() {
-                // Since this iteration method is not thread-safe anyway, use the direct array to prevent repeatedly acquiring the read lock
-                return this.hits.docs.size() > this.pos;
+                return this.hits.size() > this.pos;
             }
 
             @Override
             public EphemeralHit next() {
-                this.hit.doc = this.hits.docs.get(pos);
-                this.hit.start = this.hits.starts.get(pos);
-                this.hit.end = this.hits.ends.get(pos);
-                this.hit.index = this.hits.indicesFromResultSet.get(pos);
+                this.hits.getEphemeral(pos, this.hit);
                 ++this.pos;
                 return this.hit;
             }
@@ -115,25 +133,50 @@ public abstract class Hits extends Results<Hit, HitProperty> {
             }
         }
 
-        private ReadWriteLock lock = new ReentrantReadWriteLock();
+        /** Number of bits needed to address a hit in the first chunk */
+        private static final int FIRST_CHUNK_BITS = 4;
+
+        /** Size of the first chunk; each following chunk is twice as large */
+        private static final int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_BITS;
+
+        /** A chunk of hits. */
+        private static final class Chunk {
+            final int[] docs;
+            final int[] starts;
+            final int[] ends;
+            final int[] indices;
+
+            Chunk(int size) {
+                docs = new int[size];
+                starts = new int[size];
+                ends = new int[size];
+                indices = new int[size];
+            }
+        }
+
+        /** Our chunks. Replaced by a copy with an extra chunk when we need more room. */
+        private volatile Chunk[] chunks = new Chunk[0];
+
+        /** Number of hits that writers have reserved room for. */
+        private final AtomicInteger reserved = new AtomicInteger();
+
+        /** Number of hits that have been completely written and may be read. */
+        private final AtomicInteger size = new AtomicInteger();
+
+        /** Start of the first range a writer failed to fill, or Integer.MAX_VALUE if none. */
+        private final AtomicInteger abandonedAt = new AtomicInteger(Integer.MAX_VALUE);
+
+        /** How many times to spin while waiting to publish, before we start parking. */
+        private static final int PUBLISH_MAX_SPINS = 1000;
 
-        private final IntArrayList docs;
-        private final IntArrayList starts;
-        private final IntArrayList ends;
-        private final IntArrayList indicesFromResultSet;
+        /** Maximum time to park at a time while waiting to publish. */
+        private static final long PUBLISH_MAX_PARK_NANOS = 1_000_000;
 
         public HitsArrays() {
-            this.docs = new IntArrayList();
-            this.starts = new IntArrayList();
-            this.ends = new IntArrayList();
-            this.indicesFromResultSet = new IntArrayList();
         }
 
         public HitsArrays(HitsArrays toCopy) {
-            this.docs = new IntArrayList(toCopy.docs.toArray());
-            this.starts = new IntArrayList(toCopy.starts.toArray());
-            this.ends = new IntArrayList(toCopy.ends.toArray());
-            this.indicesFromResultSet = new IntArrayList(toCopy.indicesFromResultSet.toArray());
+            addAll(toCopy);
         }
 
         public HitsArrays(IntArrayList docs, IntArrayList starts, IntArrayList ends, IntArrayList indicesFromResultSet) {
@@ -141,96 +184,251 @@ public abstract class Hits extends Results<Hit, HitProperty> {
                 throw new NullPointerException();
             if (docs.size() != starts.size() || docs.size() != ends.size())
                 throw new IllegalArgumentException("Passed differently sized hit component arrays to Hits object");
+            addAll(docs, starts, ends, indicesFromResultSet);
+        }
+
+        /** Which chunk is the specified hit in? */
+        private static int chunkIndex(int index) {
+            return 31 - Integer.numberOfLeadingZeros((index >> FIRST_CHUNK_BITS) + 1);
+        }
 
-            this.docs = docs;
-            this.starts = starts;
-            this.ends = ends;
-            this.indicesFromResultSet = indicesFromResultSet;
+        /** Index of the first hit in the specified chunk. */
+        private static int chunkStart(int chunkIndex) {
+            return (FIRST_CHUNK_SIZE << chunkIndex) - FIRST_CHUNK_SIZE;
+        }
+
+        /**
+         * Reserve room for a number of hits.
+         *
+         * Must be followed by {@link #publish(int, int)} when the hits have been
+         * written, or by {@link #abandon(int)} if they couldn't be.
+         *
+         * @param number number of hits to reserve room for
+         * @return index of the first reserved hit
+         */
+        private int reserve(int number) {
+            int first;
+            do {
+                first = reserved.get();
+                if (number > Integer.MAX_VALUE - first)
+                    throw new BlackLabRuntimeException("Too many hits");
+                if (abandonedAt.get() <= first)
+                    throw new BlackLabRuntimeException("Cannot add hits; adding earlier hits failed");
+            } while (!reserved.compareAndSet(first, first + number));
+            if (number > 0 && chunkIndex(first + number - 1) >= chunks.length) {
+                try {
+                    addChunks(first + number - 1);
+                } catch (RuntimeException | Error e) {
+                    abandon(first);
+                    throw e;
+                }
+            }
+            return first;
+        }
+
+        /**
+         * Make sure we have chunks up to and including the one containing the specified hit.
+         *
+         * @param lastIndex index of the last hit we need room for
+         */
+        private synchronized void addChunks(int lastIndex) {
+            int needed = chunkIndex(lastIndex) + 1;
+            Chunk[] c = chunks;
+            if (c.length >= needed)
+                return;
+            Chunk[] newChunks = Arrays.copyOf(c, needed);
+            for (int i = c.length; i < needed; i++) {
+                long length = Math.min((long) FIRST_CHUNK_SIZE << i, (long) Integer.MAX_VALUE - chunkStart(i) + 1);
+                newChunks[i] = new Chunk((int) length);
+            }
+            chunks = newChunks;
+        }
+
+        /**
+         * Publish reserved hits that have been written, so they can be read.
+         *
+         * Ranges are published in the order they were reserved, so we wait until any
+         * ranges reserved before ours have been published. Usually that's very soon,
+         * so we spin for a while before we start parking.
+         *
+         * @param first index of the first hit
+         * @param number number of hits
+         */
+        private void publish(int first, int number) {
+            int spins = 0;
+            long parkNanos = 1000;
+            while (!size.compareAndSet(first, first + number)) {
+                if (abandonedAt.get() < first) {
+                    // An earlier range will never be published, so ours can't be either
+                    throw new BlackLabRuntimeException("Cannot add hits; adding earlier hits failed");
+                }
+                if (spins < PUBLISH_MAX_SPINS) {
+                    spins++;
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(parkNanos);
+                    parkNanos = Math.min(parkNanos * 2, PUBLISH_MAX_PARK_NANOS);
+                }
+            }
+        }
+
+        /**
+         * Give up on a reserved range that couldn't be written.
+         *
+         * Hits before the range can still be read, but the range and any ranges
+         * reserved after it will never be published.
+         *
+         * @param first index of the first hit in the range
+         */
+        private void abandon(int first) {
+            abandonedAt.accumulateAndGet(first, Math::min);
+        }
+
+        /** Write a hit to a position we've reserved. */
+        private void set(int index, int doc, int start, int end, int indexInResultSet) {
+            int chunkIndex = chunkIndex(index);
+            Chunk chunk = chunks[chunkIndex];
+            int i = index - chunkStart(chunkIndex);
+            chunk.docs[i] = doc;
+            chunk.starts[i] = start;
+            chunk.ends[i] = end;
+            chunk.indices[i] = indexInResultSet;
         }
 
         public void add(int doc, int start, int end, int index) {
-            this.lock.writeLock().lock();
-            docs.add(doc);
-            starts.add(start);
-            ends.add(end);
-            indicesFromResultSet.add(index);
-            this.lock.writeLock().unlock();
+            int i = reserve(1);
+            try {
+                set(i, doc, start, end, index);
+            } catch (RuntimeException | Error e) {
+                abandon(i);
+                throw e;
+            }
+            publish(i, 1);
         }
 
         public void addAll(IntArrayList docs, IntArrayList starts, IntArrayList ends, IntArrayList indices) {
-            this.lock.writeLock().lock();
-            this.docs.addAll(docs);
-            this.starts.addAll(starts);
-            this.ends.addAll(ends);
-            this.indicesFromResultSet.addAll(indices);
-            this.lock.writeLock().unlock();
+            int n = docs.size();
+            int first = reserve(n);
+            try {
+                for (int i = 0; i < n; i++) {
+                    set(first + i, docs.get(i), starts.get(i), ends.get(i), indices == null ? i : indices.get(i));
+                }
+            } catch (RuntimeException | Error e) {
+                abandon(first);
+                throw e;
+            }
+            publish(first, n);
         }
 
         /** Add the hit to the end of this list, copying the values. The hit object itself is not retained. */
         public void add(EphemeralHit hit) {
-            this.lock.writeLock().lock();
-            docs.add(hit.doc);
-            starts.add(hit.start);
-            ends.add(hit.end);
-            indicesFromResultSet.add(hit.index);
-            this.lock.writeLock().unlock();
+            add(hit.doc, hit.start, hit.end, hit.index);
         }
 
         /** Add the hit to the end of this list, copying the values. The hit object itself is not retained. */
         public void add(Hit hit) {
-            this.lock.writeLock().lock();
-            docs.add(hit.doc());
-            starts.add(hit.start());
-            ends.add(hit.end());
-            indicesFromResultSet.add(hit.index());
-            this.lock.writeLock().unlock();
+            add(hit.doc(), hit.start(), hit.end(), hit.index());
         }
 
         public void addAll(List<Hit> hits) {
-            this.lock.writeLock().lock();
-            for (Hit hit : hits) {
-                docs.add(hit.doc());
-                starts.add(hit.start());
-                ends.add(hit.end());
-                indicesFromResultSet.add(hit.index());
+            int n = hits.size();
+            int first = reserve(n);
+            try {
+                int i = first;
+                for (Hit hit : hits) {
+                    set(i, hit.doc(), hit.start(), hit.end(), hit.index());
+                    i++;
+                }
+            } catch (RuntimeException | Error e) {
+                abandon(first);
+                throw e;
             }
-            this.lock.writeLock().unlock();
+            publish(first, n);
         }
 
         public void addAll(HitsArrays hits) {
-            this.lock.writeLock().lock();
-            hits.lock.readLock().lock();
-            docs.addAll(hits.docs());
-            starts.addAll(hits.starts());
-            ends.addAll(hits.ends());
-            indicesFromResultSet.addAll(hits.indices());
-            hits.lock.readLock().unlock();
-            this.lock.writeLock().unlock();
+            int n = hits.size();
+            int first = reserve(n);
+            try {
+                // Copy as much as we can at once (until the end of either chunk)
+                int srcIndex = 0, destIndex = first;
+                while (srcIndex < n) {
+                    int srcChunkIndex = chunkIndex(srcIndex);
+                    int destChunkIndex = chunkIndex(destIndex);
+                    Chunk src = hits.chunks[srcChunkIndex];
+                    Chunk dest = chunks[destChunkIndex];
+                    int srcOffset = srcIndex - chunkStart(srcChunkIndex);
+                    int destOffset = destIndex - chunkStart(destChunkIndex);
+                    int length = Math.min(n - srcIndex,
+                            Math.min(src.docs.length - srcOffset, dest.docs.length - destOffset));
+                    System.arraycopy(src.docs, srcOffset, dest.docs, destOffset, length);
+                    System.arraycopy(src.starts, srcOffset, dest.starts, destOffset, length);
+                    System.arraycopy(src.ends, srcOffset, dest.ends, destOffset, length);
+                    System.arraycopy(src.indices, srcOffset, dest.indices, destOffset, length);
+                    srcIndex += length;
+                    destIndex += length;
+                }
+            } catch (RuntimeException | Error e) {
+                abandon(first);
+                throw e;
+            }
+            publish(first, n);
         }
 
+        /**
+         * Remove all hits.
+         *
+         * Only use this for a list that no other thread reads, such as a private
+         * buffer of hits that is reused: readers are not protected against the hits
+         * being overwritten. Hits may be added concurrently; they will end up after
+         * the clear. Clearing while hits are still being added is not allowed.
+         *
+         * @throws IllegalStateException if hits are still being added
+         */
+        public void clear() {
+            int n = size.get();
+            // Only succeeds if all reserved ranges have been published
+            if (!reserved.compareAndSet(n, 0))
+                throw new IllegalStateException("Cannot clear hits while hits are being added");
+            size.set(0);
+        }
+
+        /**
+         * Perform an operation on these hits.
+         *
+         * Reading hits doesn't require locking anymore, so this just calls the consumer.
+         *
+         * @param cons operation to perform
+         */
         public void withReadLock(Consumer<HitsArrays> cons) {
-            lock.readLock().lock();
             cons.accept(this);
-            lock.readLock().unlock();
         }
 
-        public void withWriteLock(Consumer<HitsArrays> cons) {
-            lock.writeLock().lock();
+        /**
+         * Perform an operation on these hits while no chunks are being added.
+         *
+         * @param cons operation to perform
+         * @deprecated writers don't need to lock anymore, so this doesn't make much sense
+         */
+        @Deprecated
+        public synchronized void withWriteLock(Consumer<HitsArrays> cons) {
             cons.accept(this);
-            lock.writeLock().unlock();
         }
 
         public void use(int index, HitConsumer cons) {
-            lock.readLock().lock();
-            cons.consume(docs.get(index), starts.get(index), ends.get(index));
-            lock.readLock().unlock();
+            int chunkIndex = chunkIndex(index);
+            Chunk chunk = chunks[chunkIndex];
+            int i = index - chunkStart(chunkIndex);
+            cons.consume(chunk.docs[i], chunk.starts[i], chunk.ends[i]);
         }
 
         public HitImpl get(int index) {
-            lock.readLock().lock();
-            HitImpl h = new HitImpl(docs.get(index), starts.get(index), ends.get(index), indicesFromResultSet.get(index));
-            lock.readLock().unlock();
-            return h;
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Hit index " + index + " out of range (size " + size() + ")");
+            int chunkIndex = chunkIndex(index);
+            Chunk chunk = chunks[chunkIndex];
+            int i = index - chunkStart(chunkIndex);
+            return new HitImpl(chunk.docs[i], chunk.starts[i], chunk.ends[i], chunk.indices[i]);
         }
 
         /**
@@ -248,86 +446,104 @@ public abstract class Hits extends Results<Hit, HitProperty> {
          * </pre>
          */
         public void getEphemeral(int index, EphemeralHit h) {
-            lock.readLock().lock();
-            h.doc = docs.get(index);
-            h.start = starts.get(index);
-            h.end = ends.get(index);
-            h.index = indicesFromResultSet.get(index);
-            lock.readLock().unlock();
+            int chunkIndex = chunkIndex(index);
+            Chunk chunk = chunks[chunkIndex];
+            int i = index - chunkStart(chunkIndex);
+            h.doc = chunk.docs[i];
+            h.start = chunk.starts[i];
+            h.end = chunk.ends[i];
+            h.index = chunk.indices[i];
         }
 
         public int doc(int index) {
-            lock.readLock().lock();
-            int doc = this.docs.get(index);
-            lock.readLock().unlock();
-            return doc;
+            int chunkIndex = chunkIndex(index);
+            return chunks[chunkIndex].docs[index - chunkStart(chunkIndex)];
         }
 
         public int start(int index) {
-            lock.readLock().lock();
-            int start = this.starts.get(index);
-            lock.readLock().unlock();
-            return start;
+            int chunkIndex = chunkIndex(index);
+            return chunks[chunkIndex].starts[index - chunkStart(chunkIndex)];
         }
 
         public int end(int index) {
-            lock.readLock().lock();
-            int end = this.ends.get(index);
-            lock.readLock().unlock();
-            return end;
+            int chunkIndex = chunkIndex(index);
+            return chunks[chunkIndex].ends[index - chunkStart(chunkIndex)];
+        }
+
+        /**
+         * Get the index of a hit in the original result set.
+         *
+         * @param index hit index
+         * @return index in the original result set
+         */
+        public int indexInResultSet(int index) {
+            int chunkIndex = chunkIndex(index);
+            return chunks[chunkIndex].indices[index - chunkStart(chunkIndex)];
         }
 
         public int size() {
-            lock.readLock().lock();
-            int size = docs.size();
-            lock.readLock().unlock();
-            return size;
+            return size.get();
+        }
+
+        /** Copy one of the hit components to an IntArrayList. */
+        private IntArrayList copyToList(Function<Chunk, int[]> component) {
+            int n = size();
+            Chunk[] c = chunks;
+            IntArrayList result = new IntArrayList(n);
+            for (int i = 0; i < c.length && chunkStart(i) < n; i++) {
+                int[] values = component.apply(c[i]);
+                int length = Math.min(values.length, n - chunkStart(i));
+                for (int j = 0; j < length; j++)
+                    result.add(values[j]);
+            }
+            return result;
         }
 
         /**
-         * Expert use: get the internal docs array.
-         * The array is not locked, so care should be taken when reading it.
-         * Best to wrap usage of this function and the returned in a withReadLock call.
+         * Get a copy of the docs.
          *
-         * @return
+         * @return doc ids of the hits
+         * @deprecated hits are no longer stored in an IntArrayList, so this makes a copy; use {@link #doc(int)}
          */
+        @Deprecated
         public IntArrayList docs() {
-            return docs;
+            return copyToList(c -> c.docs);
         }
 
         /**
-         * Expert use: get the internal starts array.
-         * The array is not locked, so care should be taken when reading it.
-         * Best to wrap usage of this function and the returned in a withReadLock call.
+         * Get a copy of the starts.
          *
-         * @return
+         * @return starts of the hits
+         * @deprecated hits are no longer stored in an IntArrayList, so this makes a copy; use {@link #start(int)}
          */
+        @Deprecated
         public IntArrayList starts() {
-            return starts;
+            return copyToList(c -> c.starts);
         }
 
         /**
-         * Expert use: get the internal ends array.
-         * The array is not locked, so care should be taken when reading it.
-         * Best to wrap usage of this function and the returned in a withReadLock call.
+         * Get a copy of the ends.
          *
-         * @return
+         * @return ends of the hits
+         * @deprecated hits are no longer stored in an IntArrayList, so this makes a copy; use {@link #end(int)}
          */
+        @Deprecated
         public IntArrayList ends() {
-            return ends;
+            return copyToList(c -> c.ends);
         }
 
-
         /**
-         * Expert use: get the internal indices on the original result set
-         * The array is not locked, so care should be taken when reading it.
-         * Best to wrap usage of this function and the returned in a withReadLock call.
+         * Get a copy of the indices on the original result set.
          *
-         * @return
+         * @return indices of the hits in the original result set
+         * @deprecated hits are no longer stored in an IntArrayList, so this makes a copy; use {@link #indexInResultSet(int)}
          */
-        public IntArrayList indices() { return indicesFromResultSet;}
+        @Deprecated
+        public IntArrayList indices() {
+            return copyToList(c -> c.indices);
+        }
 
-        /** Note: iterating does not lock the arrays, to do that, it should be performed in a {@link #withReadLock} callback. */
+        /** Iterates over the hits that were added when iteration reaches them. */
         @Override
         public HitIterator iterator() {
             return new HitIterator(this);
@@ -343,21 +559,15 @@ public abstract class Hits extends Results<Hit, HitProperty> {
          */
         @Deprecated
         public void sortInPlace(HitProperty p) {
-            this.lock.writeLock().lock();
-
-            final EphemeralHit tmp = new EphemeralHit();
+            final EphemeralHit tmpA = new EphemeralHit();
+            final EphemeralHit tmpB = new EphemeralHit();
             Sort.sort(new Sortable() {
                 @Override
                 public void swap(int a, int b) {
-                    getEphemeral(a, tmp);
-
-                    docs.set(a, docs.get(b));
-                    starts.set(a, starts.get(b));
-                    ends.set(a, ends.get(b));
-
-                    docs.set(b, tmp.doc);
-                    starts.set(b, tmp.start);
-                    ends.set(b, tmp.end);
+                    getEphemeral(a, tmpA);
+                    getEphemeral(b, tmpB);
+                    set(a, tmpB.doc, tmpB.start, tmpB.end, tmpB.index);
+                    set(b, tmpA.doc, tmpA.start, tmpA.end, tmpA.index);
                 }
 
                 @Override
@@ -368,22 +578,42 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         }
 
         public HitsArrays sort(HitProperty p) {
-            this.lock.readLock().lock();
+            return sort(p, null, 1, 0);
+        }
 
-            int[] indices = new int[this.size()];
-            for (int i = 0; i < indices.length; ++i)
+        /**
+         * Sort the hits, possibly using multiple threads.
+         *
+         * If there are enough hits (see {@link ParallelSort}), the sort is divided
+         * over at most maxThreads threads of the executor service.
+         *
+         * @param p property to sort by
+         * @param executorService where to run sort tasks, or null to sort on this thread
+         * @param maxThreads maximum number of threads to use
+         * @param parallelThreshold minimum number of hits for which we sort in parallel
+         * @return the sorted hits
+         */
+        public HitsArrays sort(HitProperty p, ExecutorService executorService, int maxThreads, int parallelThreshold) {
+            int n = size();
+            int[] indices = new int[n];
+            for (int i = 0; i < n; ++i)
                 indices[i] = i;
 
-            IntArrays.quickSort(indices, p::compare);
+            if (executorService != null && ParallelSort.shouldSortInParallel(n, parallelThreshold, maxThreads))
+                ParallelSort.sort(indices, p::compare, executorService, maxThreads);
+            else
+                IntArrays.quickSort(indices, p::compare);
 
-            HitsArrays r = new HitsArrays();
-            EphemeralHit eph = new EphemeralHit();
-            for (int i = 0; i < indices.length; ++i) {
-                getEphemeral(indices[i], eph);
-                r.add(eph);
+            // Fill the new chunks directly instead of adding hits one by one
+            HitsArrays sorted = new HitsArrays();
+            int first = sorted.reserve(n);
+            EphemeralHit hit = new EphemeralHit();
+            for (int i = 0; i < n; ++i) {
+                getEphemeral(indices[i], hit);
+                sorted.set(first + i, hit.doc, hit.start, hit.end, hit.index);
             }
-            this.lock.readLock().unlock();
-            return r;
+            sorted.publish(first, n);
+            return sorted;
         }
     }
 
@@ -430,6 +660,25 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         }
     }
 
+    /**
+     * Execute a query, keeping only a random sample of a fixed number of hits.
+     *
+     * Unlike sampling the result of {@link #fromSpanQuery(QueryInfo, BLSpanQuery, SearchSettings)},
+     * this doesn't store all hits first, so memory use is proportional to the
+     * sample size. The sample is deterministic for a given seed (but differs from
+     * the one {@link #sample(SampleParameters)} would choose).
+     *
+     * @param queryInfo query info
+     * @param query query to execute
+     * @param searchSettings search settings
+     * @param sampleParameters sample parameters; must be a fixed number of hits, not a percentage
+     * @return the sample
+     */
+    public static Hits sampleFromSpanQuery(QueryInfo queryInfo, BLSpanQuery query, SearchSettings searchSettings,
+            SampleParameters sampleParameters) {
+        return HitsFromQuerySampled.sample(queryInfo, query, searchSettings, sampleParameters);
+    }
+
     /**
      * Make a wrapper Hits object for a list of Hit objects.
      *
@@ -746,16 +995,13 @@ public abstract class Hits extends Results<Hit, HitProperty> {
      */
     @Override
     public Hits sort(HitProperty sortProp) {
-        // We need a HitProperty with the correct Hits object
-        // If we need context, make sure we have it.
-        List<Annotation> requiredContext = sortProp.needsContext();
-        List<FiidLookup> fiidLookups = FiidLookup.getList(requiredContext, queryInfo().index().reader());
-        sortProp = sortProp.copyWith(this,
-            requiredContext == null ? null : new Contexts(this, requiredContext, sortProp.needsContextSize(index()), fiidLookups));
+        sortProp = sortPropertyFor(sortProp);
 
         // Perform the actual sort.
         this.ensureAllResultsRead();
-        HitsArrays sorted = this.getHitsArrays().sort(sortProp); // TODO use wrapper objects
+        BlackLabEngine engine = index().blackLab();
+        HitsArrays sorted = this.getHitsArrays().sort(sortProp, engine.searchExecutorService(),
+                engine.maxThreadsPerSearch(), index().parallelSortThreshold()); // TODO use wrapper objects
 
         CapturedGroups capturedGroups = capturedGroups();
         int hitsCounted = hitsCountedSoFar();
@@ -764,6 +1010,49 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         return Hits.fromList(queryInfo(), sorted, null, null, hitsCounted, docsRetrieved, docsCounted, capturedGroups);
     }
 
+    /**
+     * Return a new Hits object with these hits sorted by the given property,
+     * sorting only as far as needed.
+     *
+     * Unlike {@link #sort(HitProperty)}, this doesn't sort all hits right away. Only
+     * when hits are requested (e.g. a window at the start of the results) are those
+     * hits put in order; later requests for hits beyond that extend the sorted part.
+     * Useful if you're only going to look at a window of the sorted hits.
+     *
+     * @param sortProp the hit property to sort on
+     * @return a new Hits object with the same hits, sorted lazily in the specified way
+     */
+    public Hits sortLazily(HitProperty sortProp) {
+        this.ensureAllResultsRead();
+        Contexts contexts = contextsForSorting(sortProp);
+        return new HitsSorted(this, sortProp.copyWith(this, contexts), contexts);
+    }
+
+    /**
+     * Get a copy of a sort property that uses these hits, with context if needed.
+     *
+     * @param sortProp the hit property to sort on
+     * @return the hit property to use for sorting these hits
+     */
+    private HitProperty sortPropertyFor(HitProperty sortProp) {
+        // We need a HitProperty with the correct Hits object
+        return sortProp.copyWith(this, contextsForSorting(sortProp));
+    }
+
+    /**
+     * Get the contexts a sort property needs for these hits.
+     *
+     * @param sortProp the hit property to sort on
+     * @return the contexts, or null if the property doesn't need any
+     */
+    private Contexts contextsForSorting(HitProperty sortProp) {
+        List<Annotation> requiredContext = sortProp.needsContext();
+        if (requiredContext == null)
+            return null;
+        List<FiidLookup> fiidLookups = FiidLookup.getList(requiredContext, queryInfo().index().reader());
+        return new Contexts(this, requiredContext, sortProp.needsContextSize(index()), fiidLookups);
+    }
+
     @Override
     public HitGroups group(HitProperty criteria, int maxResultsToStorePerGroup) {
         ensureAllResultsRead();
@@ -870,6 +1159,21 @@ public abstract class Hits extends Results<Hit, HitProperty> {
         return TermFrequencyList.collocations(this, annotation, contextSize, sensitivity, sort);
     }
 
+    /**
+     * Count occurrences of context words around hit and score them.
+     *
+     * @param annotation what annotation to get collocations for
+     * @param contextSize how many words around the hits to use
+     * @param sensitivity what sensitivity to use
+     * @param sort sort the resulting collocations by descending score?
+     * @param measure association measure to score the collocations with
+     *
+     * @return the frequency and score of each occurring token
+     */
+    public TermFrequencyList collocations(Annotation annotation, ContextSize contextSize, MatchSensitivity sensitivity, boolean sort, AssociationMeasure measure) {
+        return TermFrequencyList.collocations(this, annotation, contextSize, sensitivity, sort, measure);
+    }
+
     /**
      * Count occurrences of context words around hit.
      *
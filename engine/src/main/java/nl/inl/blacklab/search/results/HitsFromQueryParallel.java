@@ -6,6 +6,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -13,6 +16,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
@@ -36,8 +40,215 @@ import nl.inl.util.ThreadAborter;
 
 public class HitsFromQueryParallel extends Hits {
 
-    /** If another thread is busy fetching hits and we're monitoring it, how often should we check? */
-    private static final int HIT_POLLING_TIME_MS = 50;
+    /** Default for the minimum number of documents per range */
+    static final int DEFAULT_MIN_DOCS_PER_RANGE = 10_000;
+
+    /** How many document ranges to aim for per thread, so threads that finish early can take over work */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /**
+     * Adds the hits found by the SpansReaders to the global results, in (segment, range) order.
+     *
+     * SpansReaders run in parallel, but only the first one that isn't finished yet (the head) adds its hits to the
+     * global results directly. The others keep their hits pending until all SpansReaders before them are finished.
+     * So the hits end up in the same order as if we'd read all segments one after the other.
+     *
+     * Hits are processed (i.e. stored) when they're added to the global results, so the processed hits are always the
+     * first ones in index order, no matter how fast each SpansReader was.
+     */
+    private static class HitsPublisher {
+
+        /** All SpansReaders, in (segment, range) order */
+        private final List<SpansReader> spansReaders = new ArrayList<>();
+
+        /** Index of the first SpansReader that isn't finished yet */
+        private int head = 0;
+
+        /** Master list of hits */
+        private final HitsArrays globalResults;
+
+        /** Master list of capturedGroups (only set if any groups to capture) */
+        private CapturedGroups globalCapturedGroups;
+
+        private final AtomicInteger globalDocsProcessed;
+
+        private final AtomicInteger globalHitsProcessed;
+
+        /** Target number of hits to store in the global results */
+        private final AtomicInteger globalHitsToProcess;
+
+        /** Upper limit of globalHitsToProcess */
+        private final int maxHitsToProcess;
+
+        /** Last doc we added hits for (to count processed docs) */
+        private int lastDoc = -1;
+
+        /** Called after hits have been added to the global results, to wake up threads waiting for them */
+        private final Runnable signalProgress;
+
+        HitsPublisher(HitsArrays globalResults, AtomicInteger globalDocsProcessed, AtomicInteger globalHitsProcessed,
+                AtomicInteger globalHitsToProcess, int maxHitsToProcess, Runnable signalProgress) {
+            this.globalResults = globalResults;
+            this.globalDocsProcessed = globalDocsProcessed;
+            this.globalHitsProcessed = globalHitsProcessed;
+            this.globalHitsToProcess = globalHitsToProcess;
+            this.maxHitsToProcess = maxHitsToProcess;
+            this.signalProgress = signalProgress;
+        }
+
+        synchronized void add(SpansReader spansReader) {
+            spansReaders.add(spansReader);
+        }
+
+        synchronized void setCapturedGroups(CapturedGroups capturedGroups) {
+            globalCapturedGroups = capturedGroups;
+        }
+
+        /**
+         * Might this hit, if it was found now, be one of the hits we process?
+         *
+         * @param spansReader the SpansReader that found the hit
+         * @param hitsNotYetPending number of hits found earlier by this SpansReader that aren't pending yet
+         * @return true if the hit might be processed, false if it definitely won't be (with the current target)
+         */
+        boolean mightProcess(SpansReader spansReader, int hitsNotYetPending) {
+            // All hits added so far and our own hits come before this hit
+            return globalHitsProcessed.get() + spansReader.numberPending + hitsNotYetPending < globalHitsToProcess.get();
+        }
+
+        /**
+         * Can we still raise the number of hits to process?
+         *
+         * If so, hits that we won't process now might have to be processed later.
+         *
+         * @return true if the target is lower than the maximum
+         */
+        boolean mayProcessMoreLater() {
+            return globalHitsToProcess.get() < maxHitsToProcess;
+        }
+
+        /**
+         * Add a SpansReader's hits to its pending hits, then add all the pending hits we can to the global results.
+         *
+         * @param spansReader SpansReader that found the hits
+         * @param hits hits found (will be cleared)
+         * @param capturedGroups captured groups for these hits (will be cleared), or null if none
+         */
+        void publish(SpansReader spansReader, HitsArrays hits, List<Span[]> capturedGroups) {
+            boolean added;
+            synchronized (this) {
+                spansReader.pending.addAll(hits);
+                if (capturedGroups != null)
+                    spansReader.pendingCapturedGroups.addAll(capturedGroups);
+                spansReader.numberPending = spansReader.pending.size();
+                added = publishInOrder();
+            }
+            hits.clear();
+            if (capturedGroups != null)
+                capturedGroups.clear();
+            if (added)
+                signalProgress.run();
+        }
+
+        /**
+         * A SpansReader may have finished, so check if we can add more pending hits to the global results.
+         */
+        void publish() {
+            boolean added;
+            synchronized (this) {
+                added = publishInOrder();
+            }
+            if (added)
+                signalProgress.run();
+        }
+
+        /**
+         * Is this SpansReader finished and have all its hits been dealt with?
+         *
+         * @param spansReader SpansReader
+         * @return true if we don't need it anymore
+         */
+        synchronized boolean isFinished(SpansReader spansReader) {
+            return spansReader.isDone && spansReader.numberPending == 0;
+        }
+
+        /**
+         * Add the pending hits of the head to the global results; if it's finished, move on to the next one.
+         *
+         * @return true if any hits were added
+         */
+        private boolean publishInOrder() {
+            boolean added = false;
+            while (head < spansReaders.size()) {
+                SpansReader spansReader = spansReaders.get(head);
+                added |= publishPending(spansReader);
+                if (spansReader.numberPending > 0 || !spansReader.isDone)
+                    break; // we can't add hits from the next SpansReader yet
+                head++;
+            }
+            return added;
+        }
+
+        /**
+         * Add as many of a SpansReader's pending hits to the global results as we're allowed to process.
+         *
+         * @return true if any hits were added
+         */
+        private boolean publishPending(SpansReader spansReader) {
+            HitsArrays pending = spansReader.pending;
+            int numberPending = pending.size();
+            if (numberPending == 0)
+                return false;
+            int n = Math.min(numberPending, Math.max(0, globalHitsToProcess.get() - globalHitsProcessed.get()));
+            HitsArrays toAdd;
+            List<Span[]> capturedGroupsToAdd = spansReader.pendingCapturedGroups;
+            if (n == numberPending) {
+                toAdd = pending;
+                spansReader.pending = new HitsArrays();
+                spansReader.pendingCapturedGroups = new ArrayList<>();
+            } else {
+                // We can't add all of them (now)
+                toAdd = new HitsArrays();
+                HitsArrays stillPending = new HitsArrays();
+                for (int i = 0; i < numberPending; i++) {
+                    (i < n ? toAdd : stillPending).add(pending.doc(i), pending.start(i), pending.end(i), pending.indexInResultSet(i));
+                }
+                if (!mayProcessMoreLater()) {
+                    // We'll never process the rest; they've been counted already
+                    stillPending = new HitsArrays();
+                    spansReader.pendingCapturedGroups = new ArrayList<>();
+                } else if (globalCapturedGroups != null) {
+                    spansReader.pendingCapturedGroups = new ArrayList<>(capturedGroupsToAdd.subList(n, numberPending));
+                }
+                spansReader.pending = stillPending;
+            }
+            spansReader.numberPending = spansReader.pending.size();
+            if (n == 0)
+                return false;
+
+            globalResults.addAll(toAdd);
+            for (int i = 0; i < n; i++) {
+                int doc = toAdd.doc(i);
+                if (doc != lastDoc) {
+                    globalDocsProcessed.incrementAndGet();
+                    lastDoc = doc;
+                }
+            }
+            globalHitsProcessed.addAndGet(n);
+            if (globalCapturedGroups != null) {
+                synchronized (globalCapturedGroups) {
+                    HitIterator it = toAdd.iterator();
+                    int i = 0;
+                    while (it.hasNext()) {
+                        Hit h = it.next().toHit();
+                        globalCapturedGroups.put(h, capturedGroupsToAdd.get(i));
+                        ++i;
+                    }
+                }
+            }
+            return true;
+        }
+    }
 
     private static class SpansReader implements Runnable {
 
@@ -59,22 +270,31 @@ public class HitsFromQueryParallel extends Hits {
         // Used to check if doc has been removed from the index. Nulled after we're finished.
         LeafReaderContext leafReaderContext;
 
+        /** First (segment-local) doc id in the range of documents we read */
+        private final int startDoc;
+
+        /** Segment-local doc id after the last doc in the range of documents we read */
+        private final int endDoc;
+
         // Global counters, shared between instances of SpansReader in order to coordinate progress
-        final AtomicInteger globalDocsProcessed;
         final AtomicInteger globalDocsCounted;
-        final AtomicInteger globalHitsProcessed;
         final AtomicInteger globalHitsCounted;
-        /** Target number of hits to store in the {@link #globalResults} list */
-        final AtomicInteger globalHitsToProcess;
-        /** Target number of hits to count, must always be >= {@link #globalHitsToProcess} */
+        /** Target number of hits to count, must always be >= the target number of hits to process */
         final AtomicInteger globalHitsToCount;
-        /** Master list of hits, shared between SpansReaders, should always be locked before writing! */
-        private final HitsArrays globalResults;
-        /** Master list of capturedGroups (only set if any groups to capture. Should always be locked before writing! */
-        private CapturedGroups globalCapturedGroups;
+        /** Upper limit of globalHitsToCount */
+        final int maxHitsToCount;
+        /** Adds our hits to the global results, in order */
+        private final HitsPublisher publisher;
+
+        /** Hits we found that can't be added to the global results yet (guarded by publisher) */
+        HitsArrays pending = new HitsArrays();
+        /** Captured groups for the pending hits (guarded by publisher) */
+        List<Span[]> pendingCapturedGroups = new ArrayList<>();
+        /** Number of pending hits (only changed by publisher) */
+        volatile int numberPending;
 
         // Internal state
-        private boolean isDone = false;
+        volatile boolean isDone = false;
         private final ThreadAborter threadAborter = ThreadAborter.create();
         private boolean isInitialized;
         private final int docBase;
@@ -113,35 +333,32 @@ public class HitsFromQueryParallel extends Hits {
          *
          * Hence the explicit initialization of the first SpansReader by HitsFromQueryParallel.
          *
-         * This will create one of the Spans objects so we can create and set the CapturedGroups object in this
-         * first SpansReader. Then the rest of the SpansReaders receive the same CapturedGroups object and can
-         * lazy-initialize when needed.
+         * This will create one of the Spans objects so we can create and set the CapturedGroups object in the
+         * publisher. Then the rest of the SpansReaders can lazy-initialize when needed.
          *
          * @param weight                span weight we're querying
          * @param leafReaderContext     leaf reader we're running on
+         * @param startDoc              first (segment-local) doc id to read
+         * @param endDoc                (segment-local) doc id after the last doc to read
          * @param sourceHitQueryContext source HitQueryContext from HitsFromQueryParallel; we'll derive our own context from it
-         * @param globalResults         global results object (must be locked before writing)
-         * @param globalCapturedGroups  global captured groups object (must be locked before writing)
-         * @param globalDocsProcessed   global docs retrieved counter
+         * @param publisher             adds our hits to the global results
          * @param globalDocsCounted     global docs counter (includes ones that weren't retrieved because of max. settings)
-         * @param globalHitsProcessed   global hits retrieved counter
          * @param globalHitsCounted     global hits counter (includes ones that weren't retrieved because of max. settings)
-         * @param globalHitsToProcess   how many more hits to retrieve
          * @param globalHitsToCount     how many more hits to count
+         * @param maxHitsToCount        upper limit of globalHitsToCount
          */
         private SpansReader(
             BLSpanWeight weight,
             LeafReaderContext leafReaderContext,
+            int startDoc,
+            int endDoc,
             HitQueryContext sourceHitQueryContext,
 
-            HitsArrays globalResults,
-            CapturedGroups globalCapturedGroups,
-            AtomicInteger globalDocsProcessed,
+            HitsPublisher publisher,
             AtomicInteger globalDocsCounted,
-            AtomicInteger globalHitsProcessed,
             AtomicInteger globalHitsCounted,
-            AtomicInteger globalHitsToProcess,
-            AtomicInteger globalHitsToCount
+            AtomicInteger globalHitsToCount,
+            int maxHitsToCount
         ) {
             this.spans = null; // inverted for uninitialized version
             this.weight = weight;
@@ -150,15 +367,14 @@ public class HitsFromQueryParallel extends Hits {
             this.sourceHitQueryContext = sourceHitQueryContext;
 
             this.leafReaderContext = leafReaderContext;
+            this.startDoc = startDoc;
+            this.endDoc = endDoc;
 
-            this.globalResults = globalResults;
-            this.globalCapturedGroups = globalCapturedGroups;
-            this.globalDocsProcessed = globalDocsProcessed;
+            this.publisher = publisher;
             this.globalDocsCounted = globalDocsCounted;
-            this.globalHitsProcessed = globalHitsProcessed;
             this.globalHitsCounted = globalHitsCounted;
             this.globalHitsToCount = globalHitsToCount;
-            this.globalHitsToProcess = globalHitsToProcess;
+            this.maxHitsToCount = maxHitsToCount;
 
             this.docBase = leafReaderContext.docBase;
 
@@ -179,62 +395,60 @@ public class HitsFromQueryParallel extends Hits {
                 this.hitQueryContext = this.sourceHitQueryContext.copyWith(this.spans);
                 this.spans.setHitQueryContext(this.hitQueryContext);
                 this.sourceHitQueryContext = null;
+
+                // If we only read part of the segment, skip to the start of our range
+                if (startDoc > 0 && spans.advance(startDoc) >= endDoc) {
+                    this.isDone = true;
+                    this.spans = null;
+                }
             } catch (IOException e) {
                 throw BlackLabRuntimeException.wrap(e);
             }
         }
 
         /**
-         * Step through all hits in all documents in this spans object.
+         * Should we stop before counting the next hit?
+         *
+         * We stop if we can't process the hit now, but might have to later, or if we've counted enough hits.
          *
-         * @param spans
-         * @param liveDocs used to check if the document is still alive in the index.
-         * @return true if the spans has been advanced to the next hit, false if out of hits.
-         * @throws IOException
+         * @param hitsNotYetPending hits we found that haven't been passed to the publisher yet
+         * @return true if we should stop
          */
-        private static boolean advanceSpansToNextHit(BLSpans spans, Bits liveDocs) throws IOException {
-            if (spans.docID() == DocIdSetIterator.NO_MORE_DOCS && spans.startPosition() == Spans.NO_MORE_POSITIONS)
+        private boolean shouldPause(int hitsNotYetPending) {
+            if (publisher.mightProcess(this, hitsNotYetPending))
                 return false;
-
-            int doc = spans.docID();
-            if (doc == -1) // initial document
-                spans.nextDoc();
-
-            int start = spans.nextStartPosition();
-            while (start == Spans.NO_MORE_POSITIONS || (liveDocs != null && !liveDocs.get(spans.docID()))) {
-                doc = spans.nextDoc();
-                if (doc == DocIdSetIterator.NO_MORE_DOCS) {
-                    return false;
-                }
-                if (liveDocs != null && !liveDocs.get(doc))
-                    continue;
-                start = spans.nextStartPosition();
-            }
-            return true;
+            return publisher.mayProcessMoreLater() || globalHitsCounted.get() >= globalHitsToCount.get();
         }
 
         /**
          * Collect all hits from our spans object.
          * Updates the global counters, shared with other SpansReader objects operating on the same result set.
-         * Hits are periodically copied into the {@link SpansReader#globalResults} list when a large enough batch has been gathered.
+         * Hits are periodically passed to the publisher when a large enough batch has been gathered.
          *
          * Updating the maximums while this is running is allowed.
          */
         @Override
         public synchronized void run() {
+            if (isDone) {
+                publisher.publish(); // we may have been waiting for the SpansReaders before us
+                return;
+            }
+            if (shouldPause(0))
+                return; // nothing to do yet; don't initialize our spans needlessly
+
             if (!isInitialized)
                 this.initialize();
 
-            if (isDone) // NOTE: initialize() may instantly set isDone to true, so order is important here.
+            if (isDone) { // NOTE: initialize() may instantly set isDone to true, so order is important here.
+                publisher.publish();
                 return;
+            }
 
             final int numCaptureGroups = hitQueryContext.numberOfCapturedGroups();
             final ArrayList<Span[]> capturedGroups = numCaptureGroups > 0 ? new ArrayList<Span[]>() : null;
 
             final HitsArrays results = new HitsArrays();
             final Bits liveDocs = leafReaderContext.reader().getLiveDocs();
-            final IntUnaryOperator incrementCountUnlessAtMax = c -> c < this.globalHitsToCount.get() ? c + 1 : c; // only increment if doing so won't put us over the limit.
-            final IntUnaryOperator incrementProcessUnlessAtMax = c -> c < this.globalHitsToProcess.get() ? c + 1 : c; // only increment if doing so won't put us over the limit.
 
             try {
                 // Try to set the spans to a valid hit.
@@ -242,33 +456,31 @@ public class HitsFromQueryParallel extends Hits {
                 // Count and store the hit (if we're not at the limits yet)
 
                 if (!hasPrefetchedHit) {
-                    prevDoc = spans.docID();
-                    hasPrefetchedHit = advanceSpansToNextHit(spans, liveDocs);
+                    prevDoc = -1;
+                    hasPrefetchedHit = advanceSpansToNextHit(spans, liveDocs) && spans.docID() < endDoc;
                 }
 
                 while (hasPrefetchedHit) {
-                    // Only if previous value (which is returned) was not yet at the limit (and thus we actually incremented) do we count this hit.
-                    // Otherwise, don't store it either. We're done, just return.
-                    final boolean abortBeforeCounting = this.globalHitsCounted.getAndUpdate(incrementCountUnlessAtMax) >= this.globalHitsToCount.get();
-                    if (abortBeforeCounting)
+                    // Hits we might process are always counted (up to the maximum), so the processed hits are the
+                    // first ones in index order, no matter how many hits other SpansReaders have counted.
+                    // Hits we definitely won't process are only counted if we haven't counted enough yet.
+                    if (shouldPause(results.size()))
+                        return;
+                    final boolean storeThisHit = publisher.mightProcess(this, results.size());
+                    final int countLimit = storeThisHit ? maxHitsToCount : globalHitsToCount.get();
+                    final IntUnaryOperator incrementUnlessAtMax = c -> c < countLimit ? c + 1 : c; // only increment if doing so won't put us over the limit.
+                    final boolean counted = this.globalHitsCounted.getAndUpdate(incrementUnlessAtMax) < countLimit;
+                    if (!counted && !storeThisHit)
                         return;
-
-                    // only if previous value (which is returned) was not yet at the limit (and thus we actually incremented) do we store this hit.
-                    final boolean storeThisHit = this.globalHitsProcessed.getAndUpdate(incrementProcessUnlessAtMax) < this.globalHitsToProcess.get();
 
                     final int doc = spans.docID() + docBase;
                     if (doc != prevDoc) {
-                        globalDocsCounted.incrementAndGet();
-                        if (storeThisHit) {
-                            globalDocsProcessed.incrementAndGet();
-                        }
+                        if (counted)
+                            globalDocsCounted.incrementAndGet();
                         if (results.size() >= ADD_HITS_TO_GLOBAL_THRESHOLD) {
-                            // We've built up a batch of hits. Add them to the global results.
+                            // We've built up a batch of hits. Pass them to the publisher.
                             // We do this only once per doc, so hits from the same doc remain contiguous in the master list.
-                            // [NOTE JN: does this matter? and if so, doesn't it also matter that docId increases throughout the
-                            //           master list? Probably not, unless we wrap the Hits inside a Spans again, which generally
-                            //           require these properties to hold.]
-                            addToGlobalResults(results, capturedGroups);
+                            publisher.publish(this, results, capturedGroups);
                         }
                     }
 
@@ -283,7 +495,7 @@ public class HitsFromQueryParallel extends Hits {
                         }
                     }
 
-                    hasPrefetchedHit = advanceSpansToNextHit(spans, liveDocs);
+                    hasPrefetchedHit = advanceSpansToNextHit(spans, liveDocs) && spans.docID() < endDoc;
                     prevDoc = doc;
 
                     // Do this at the end so interruptions don't happen halfway through a loop and lead to invalid states
@@ -296,7 +508,7 @@ public class HitsFromQueryParallel extends Hits {
             } finally {
                 // write out leftover hits in last document/aborted document
                 if (results.size() > 0)
-                    addToGlobalResults(results, capturedGroups);
+                    publisher.publish(this, results, capturedGroups);
             }
 
             // If we're here, the loop reached its natural end - we're done.
@@ -305,39 +517,12 @@ public class HitsFromQueryParallel extends Hits {
             this.spans = null;
             this.hitQueryContext = null;
             this.leafReaderContext = null;
-        }
-
-        void addToGlobalResults(HitsArrays hits, List<Span[]> capturedGroups) {
-            globalResults.addAll(hits);
-
-            if (globalCapturedGroups != null) {
-                synchronized (globalCapturedGroups) {
-                    HitIterator it = hits.iterator();
-                    int i = 0;
-                    while (it.hasNext()) {
-                        Hit h = it.next().toHit();
-                        globalCapturedGroups.put(h, capturedGroups.get(i));
-                        ++i;
-                    }
-                    capturedGroups.clear();
-                }
-            }
-
-            hits.withWriteLock(__ -> {
-                hits.docs().clear();
-                hits.starts().clear();
-                hits.ends().clear();
-                hits.indices().clear();
-            });
+            publisher.publish(); // the SpansReaders after us may have hits waiting
         }
 
         public HitQueryContext getHitContext() {
             return hitQueryContext;
         }
-
-        public void setCapturedGroups(CapturedGroups capturedGroups) {
-            globalCapturedGroups = capturedGroups;
-        }
     }
 
     // hit count tracking
@@ -358,15 +543,29 @@ public class HitsFromQueryParallel extends Hits {
     // state
     protected final HitQueryContext hitQueryContext = new HitQueryContext();
     protected final Lock ensureHitsReadLock = new ReentrantLock();
+    /** Notified when hits have been added, or when the thread reading hits releases ensureHitsReadLock */
+    protected final Object progressMonitor = new Object();
     protected final List<SpansReader> spansReaders = new ArrayList<>();
-    protected boolean allSourceSpansFullyRead = false;
+    protected volatile boolean allSourceSpansFullyRead = false;
+    private final HitsPublisher publisher;
 
     protected HitsFromQueryParallel(QueryInfo queryInfo, BLSpanQuery sourceQuery, SearchSettings searchSettings) {
+        this(queryInfo, sourceQuery, searchSettings, DEFAULT_MIN_DOCS_PER_RANGE);
+    }
+
+    /**
+     * Execute a query, reading its hits in parallel.
+     *
+     * @param queryInfo query info
+     * @param sourceQuery query to execute
+     * @param searchSettings search settings
+     * @param minDocsPerRange don't split segments into ranges of fewer documents than this
+     */
+    protected HitsFromQueryParallel(QueryInfo queryInfo, BLSpanQuery sourceQuery, SearchSettings searchSettings,
+            int minDocsPerRange) {
         super(queryInfo, new HitsArrays()); // explicitly construct HitsArrays so they're writeable
         this.searchSettings = searchSettings;
-        final BlackLabIndex index = queryInfo.index();
-        final IndexReader reader = index.reader();
-        BLSpanQuery optimizedQuery;
+        final IndexReader reader = queryInfo.index().reader();
 
         // Ensure maxcount >= maxprocess >= 0
         // After this both will be above 0 and process will never exceed count
@@ -378,75 +577,58 @@ public class HitsFromQueryParallel extends Hits {
             configuredMaxHitsToProcess = configuredMaxHitsToCount;
         this.maxHitsToProcess = configuredMaxHitsToProcess;
         this.maxHitsToCount = configuredMaxHitsToCount;
+        this.publisher = new HitsPublisher(this.getHitsArrays(), this.globalDocsProcessed, this.globalHitsProcessed,
+                this.requestedHitsToProcess, this.maxHitsToProcess, this::signalProgress);
 
         try {
-            // Override FI match threshold? (debug use only!)
-            synchronized (ClauseCombinerNfa.class) {
-                long oldFiMatchValue = ClauseCombinerNfa.getNfaThreshold();
-                if (searchSettings.fiMatchFactor() != -1) {
-                    logger.debug("setting NFA threshold for this query to " + searchSettings.fiMatchFactor());
-                    ClauseCombinerNfa.setNfaThreshold(searchSettings.fiMatchFactor());
-                }
-
-                sourceQuery.setQueryInfo(queryInfo);
-                if (BlackLabIndexImpl.traceOptimization())
-                    logger.debug("Query before optimize()/rewrite(): " + sourceQuery);
-
-                optimizedQuery = sourceQuery.optimize(reader);
-                if (BlackLabIndexImpl.traceOptimization())
-                    logger.debug("Query after optimize(): " + optimizedQuery);
-
-                optimizedQuery = optimizedQuery.rewrite(reader);
-                if (BlackLabIndexImpl.traceOptimization())
-                    logger.debug("Query after rewrite(): " + optimizedQuery);
-
-                optimizedQuery = BLSpanQuery.ensureSortedUnique(optimizedQuery);
-
-                // Restore previous FI match threshold
-                if (searchSettings.fiMatchFactor() != -1) {
-                    ClauseCombinerNfa.setNfaThreshold(oldFiMatchValue);
-                }
-            }
-
             // This call can take a long time
-            BLSpanWeight weight = optimizedQuery.createWeight(index.searcher(), false);
+            BLSpanWeight weight = createWeight(queryInfo, sourceQuery, searchSettings);
+
+            // Split large segments into ranges of documents, each read by its own SpansReader,
+            // so we can use all our threads even if there's only one or a few (large) segments.
+            final int numThreads = Math.max(queryInfo.index().blackLab().maxThreadsPerSearch(), 1);
+            final int docsPerRange = Math.max(minDocsPerRange,
+                    (int) Math.ceil((double) reader.maxDoc() / (numThreads * RANGES_PER_THREAD)));
 
             boolean hasInitialized = false;
             for (LeafReaderContext leafReaderContext : reader.leaves()) {
-                SpansReader spansReader = new SpansReader(
-                    weight,
-                    leafReaderContext,
-                    this.hitQueryContext,
-                    this.getHitsArrays(),
-                    this.capturedGroups,
-                    this.globalDocsProcessed,
-                    this.globalDocsCounted,
-                    this.globalHitsProcessed,
-                    this.globalHitsCounted,
-                    this.requestedHitsToProcess,
-                    this.requestedHitsToCount
-                );
-                spansReaders.add(spansReader);
-
-                if (!hasInitialized) {
-                    // We haven't initialized the HitQueryContext and CapturedGroups yet,
-                    // because this is the first SpansReader (or at least the first one that
-                    // contains at least one hit). Initialize them now.
-
-                    // NOTE: this will initialize our HitQueryContext with any capture group names!
-                    spansReader.initialize();
-                    if (spansReader.isDone)
-                        continue;
-                    HitQueryContext hitQueryContextForThisSpans = spansReader.getHitContext();
-
-                    // Now figure out if we have capture groups
-                    // Needs to be null if unused!
-                    if (hitQueryContextForThisSpans.getCaptureRegisterNumber() > 0) {
-                        capturedGroups = new CapturedGroupsImpl(hitQueryContextForThisSpans.getCapturedGroupNames());
-                        spansReader.setCapturedGroups(capturedGroups);
-                    }
+                int[] rangeStarts = splitSegment(leafReaderContext.reader().maxDoc(), docsPerRange);
+                for (int range = 0; range < rangeStarts.length - 1; range++) {
+                    SpansReader spansReader = new SpansReader(
+                        weight,
+                        leafReaderContext,
+                        rangeStarts[range],
+                        rangeStarts[range + 1],
+                        this.hitQueryContext,
+                        this.publisher,
+                        this.globalDocsCounted,
+                        this.globalHitsCounted,
+                        this.requestedHitsToCount,
+                        this.maxHitsToCount
+                    );
+                    spansReaders.add(spansReader);
+                    publisher.add(spansReader);
+
+                    if (!hasInitialized) {
+                        // We haven't initialized the HitQueryContext and CapturedGroups yet,
+                        // because this is the first SpansReader (or at least the first one that
+                        // contains at least one hit). Initialize them now.
+
+                        // NOTE: this will initialize our HitQueryContext with any capture group names!
+                        spansReader.initialize();
+                        if (spansReader.isDone)
+                            continue;
+                        HitQueryContext hitQueryContextForThisSpans = spansReader.getHitContext();
+
+                        // Now figure out if we have capture groups
+                        // Needs to be null if unused!
+                        if (hitQueryContextForThisSpans.getCaptureRegisterNumber() > 0) {
+                            capturedGroups = new CapturedGroupsImpl(hitQueryContextForThisSpans.getCapturedGroupNames());
+                            publisher.setCapturedGroups(capturedGroups);
+                        }
 
-                    hasInitialized = true;
+                        hasInitialized = true;
+                    }
                 }
             }
 
@@ -457,6 +639,94 @@ public class HitsFromQueryParallel extends Hits {
         }
     }
 
+    /**
+     * Divide the documents in a segment into ranges of roughly equal size.
+     *
+     * @param maxDoc number of documents in the segment
+     * @param docsPerRange desired number of documents per range
+     * @return start of each range, followed by maxDoc (so range i is [starts[i], starts[i + 1]) )
+     */
+    static int[] splitSegment(int maxDoc, int docsPerRange) {
+        int numberOfRanges = Math.max(1, Math.round((float) maxDoc / docsPerRange));
+        int[] rangeStarts = new int[numberOfRanges + 1];
+        for (int i = 0; i <= numberOfRanges; i++)
+            rangeStarts[i] = (int) ((long) maxDoc * i / numberOfRanges);
+        return rangeStarts;
+    }
+
+    /**
+     * Step through all hits in all documents in this spans object.
+     *
+     * @param spans
+     * @param liveDocs used to check if the document is still alive in the index.
+     * @return true if the spans has been advanced to the next hit, false if out of hits.
+     * @throws IOException
+     */
+    static boolean advanceSpansToNextHit(BLSpans spans, Bits liveDocs) throws IOException {
+        if (spans.docID() == DocIdSetIterator.NO_MORE_DOCS && spans.startPosition() == Spans.NO_MORE_POSITIONS)
+            return false;
+
+        int doc = spans.docID();
+        if (doc == -1) // initial document
+            spans.nextDoc();
+
+        int start = spans.nextStartPosition();
+        while (start == Spans.NO_MORE_POSITIONS || (liveDocs != null && !liveDocs.get(spans.docID()))) {
+            doc = spans.nextDoc();
+            if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+                return false;
+            }
+            if (liveDocs != null && !liveDocs.get(doc))
+                continue;
+            start = spans.nextStartPosition();
+        }
+        return true;
+    }
+
+    /**
+     * Optimize and rewrite a query and create its weight.
+     *
+     * @param queryInfo query info
+     * @param sourceQuery query to execute
+     * @param searchSettings search settings
+     * @return weight to get the spans from
+     * @throws IOException on error
+     */
+    static BLSpanWeight createWeight(QueryInfo queryInfo, BLSpanQuery sourceQuery, SearchSettings searchSettings) throws IOException {
+        final BlackLabIndex index = queryInfo.index();
+        final IndexReader reader = index.reader();
+        BLSpanQuery optimizedQuery;
+        // Override FI match threshold? (debug use only!)
+        synchronized (ClauseCombinerNfa.class) {
+            long oldFiMatchValue = ClauseCombinerNfa.getNfaThreshold();
+            if (searchSettings.fiMatchFactor() != -1) {
+                logger.debug("setting NFA threshold for this query to " + searchSettings.fiMatchFactor());
+                ClauseCombinerNfa.setNfaThreshold(searchSettings.fiMatchFactor());
+            }
+
+            sourceQuery.setQueryInfo(queryInfo);
+            if (BlackLabIndexImpl.traceOptimization())
+                logger.debug("Query before optimize()/rewrite(): " + sourceQuery);
+
+            optimizedQuery = sourceQuery.optimize(reader);
+            if (BlackLabIndexImpl.traceOptimization())
+                logger.debug("Query after optimize(): " + optimizedQuery);
+
+            optimizedQuery = optimizedQuery.rewrite(reader);
+            if (BlackLabIndexImpl.traceOptimization())
+                logger.debug("Query after rewrite(): " + optimizedQuery);
+
+            optimizedQuery = BLSpanQuery.ensureSortedUnique(optimizedQuery);
+
+            // Restore previous FI match threshold
+            if (searchSettings.fiMatchFactor() != -1) {
+                ClauseCombinerNfa.setNfaThreshold(oldFiMatchValue);
+            }
+        }
+
+        return optimizedQuery.createWeight(index.searcher(), false);
+    }
+
     @Override
     protected void ensureResultsRead(int number) {
         final int clampedNumber = number = number < 0 ? maxHitsToCount : Math.min(number, maxHitsToCount);
@@ -474,46 +744,57 @@ public class HitsFromQueryParallel extends Hits {
             /*
              * Another thread is already working on hits, we don't want to straight up block until it's done
              * as it might be counting/retrieving all results, while we might only want trying to retrieve a small fraction
-             * So instead poll our own state, then if we're still missing results after that just count them ourselves
+             * So instead wait until hits are added (or that thread is done), then if we're still missing results after
+             * that just count them ourselves.
+             * (hits being added and the lock being released are both signalled on progressMonitor, and we check
+             * for both while holding it, so we can't miss either)
              */
-            while (!ensureHitsReadLock.tryLock()) {
-                if (allSourceSpansFullyRead || (getHitsArrays().size() >= clampedNumber)) {
-                    return;
+            synchronized (progressMonitor) {
+                while (!ensureHitsReadLock.tryLock()) {
+                    if (allSourceSpansFullyRead || (getHitsArrays().size() >= clampedNumber)) {
+                        return;
+                    }
+                    progressMonitor.wait();
                 }
-
-                Thread.sleep(HIT_POLLING_TIME_MS);
             }
             hasLock = true;
             // This is the blocking portion, retrieve all hits from the other threads.
             try {
+                // Hits left pending by the previous target may be published now. We must do this here:
+                // a SpansReader with that many pending hits won't run, so it won't publish them.
+                publisher.publish();
+
                 final ExecutorService executorService = queryInfo().index().blackLab().searchExecutorService();
 
-                final AtomicInteger i = new AtomicInteger();
-                final int numThreads = Math.max(queryInfo().index().blackLab().maxThreadsPerSearch(), 1);
-                List<Future<?>> pendingResults = spansReaders
-                    .stream()
-                    .collect(Collectors.groupingBy(sr -> i.getAndIncrement() % numThreads)) // subdivide the list, one sublist per thread to use.
-                    .values()
-                    .stream()
-                    .map(list -> executorService.submit(() -> list.forEach(SpansReader::run))) // now submit one task per sublist
+                // Each thread takes the next SpansReader from the queue until there are none left,
+                // so threads that are done with their (small) segment or range help with the rest.
+                // (SpansReaders are queued in index order, so earlier hits are generally found first)
+                final Queue<SpansReader> queue = new ConcurrentLinkedQueue<>(spansReaders);
+                final int numThreads = Math.min(Math.max(queryInfo().index().blackLab().maxThreadsPerSearch(), 1), spansReaders.size());
+                List<Future<?>> pendingResults = IntStream.range(0, numThreads)
+                    .mapToObj(t -> executorService.submit(() -> {
+                        SpansReader spansReader;
+                        while ((spansReader = queue.poll()) != null)
+                            spansReader.run();
+                    }))
                     .collect(Collectors.toList()); // gather the futures
 
                 // Wait for workers to complete.
                 try {
-                    while (!pendingResults.stream().allMatch(f -> f.isCancelled() || f.isDone())) {
-                        Thread.sleep(HIT_POLLING_TIME_MS);
+                    for (Future<?> pendingResult: pendingResults) {
+                        pendingResult.get();
                         threadAborter.checkAbort();
                     }
-                } catch (InterruptedException e) {
+                } catch (InterruptedException | ExecutionException e) {
                     // Interrupt our worker threads as well
                     pendingResults.forEach(f -> f.cancel(true));
                     throw e;
                 }
 
-                // Remove all SpansReaders that have finished.
+                // Remove all SpansReaders that have finished (and have no pending hits left).
                 Iterator<SpansReader> it = spansReaders.iterator();
                 while (it.hasNext()) {
-                    if (it.next().isDone)
+                    if (publisher.isFinished(it.next()))
                         it.remove();
                 }
                 this.allSourceSpansFullyRead = spansReaders.isEmpty();
@@ -533,8 +814,19 @@ public class HitsFromQueryParallel extends Hits {
         } catch (Throwable e) {
             throw BlackLabRuntimeException.wrap(e);
         } finally {
-            if (hasLock)
+            if (hasLock) {
                 ensureHitsReadLock.unlock();
+                signalProgress();
+            }
+        }
+    }
+
+    /**
+     * Wake up any threads waiting for hits to be added or for ensureHitsReadLock to be released.
+     */
+    private void signalProgress() {
+        synchronized (progressMonitor) {
+            progressMonitor.notifyAll();
         }
     }
 
@@ -545,7 +837,8 @@ public class HitsFromQueryParallel extends Hits {
 
     @Override
     public boolean doneProcessingAndCounting() {
-        return allSourceSpansFullyRead || (maxStats().hitsCountedExceededMaximum() && maxStats().hitsProcessedExceededMaximum());
+        // (hits we process are added in order, so we're not done processing until we've added them all)
+        return allSourceSpansFullyRead || (maxStats().hitsCountedExceededMaximum() && globalHitsProcessed.get() >= maxHitsToProcess);
     }
 
     @Override
@@ -0,0 +1,267 @@
+package nl.inl.blacklab.search.results;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.spans.SpanWeight.Postings;
+import org.apache.lucene.util.Bits;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.search.BlackLabEngine;
+import nl.inl.blacklab.search.Span;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.BLSpanWeight;
+import nl.inl.blacklab.search.lucene.BLSpans;
+import nl.inl.blacklab.search.lucene.HitQueryContext;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+import nl.inl.util.ThreadAborter;
+
+/**
+ * Takes a random sample of a fixed number of hits while executing a query.
+ *
+ * Instead of storing all hits and then choosing from them, each hit is given a
+ * pseudorandom key, derived from the seed and the hit itself, and only the hits
+ * with the lowest keys are kept (a reservoir per segment, segments being
+ * processed in parallel). The reservoirs are merged at the end by again taking
+ * the hits with the lowest keys. Because the keys don't depend on the order in
+ * which hits are found, the sample is the same for the same seed, regardless of
+ * how the segments were divided over threads. If maxHitsToProcess is set, only
+ * the first hits in (segment, doc) order are sampled from, for the same reason.
+ *
+ * So memory use is proportional to the sample size (per segment), not the
+ * number of hits.
+ */
+final class HitsFromQuerySampled {
+
+    /** A hit in a reservoir */
+    private static final class SampledHit {
+        final long key;
+        final int doc;
+        final int start;
+        final int end;
+        final Span[] capturedGroups;
+
+        SampledHit(long key, int doc, int start, int end, Span[] capturedGroups) {
+            this.key = key;
+            this.doc = doc;
+            this.start = start;
+            this.end = end;
+            this.capturedGroups = capturedGroups;
+        }
+    }
+
+    /** Orders hits by key (then by position, so ties are resolved deterministically) */
+    private static final Comparator<SampledHit> BY_KEY = Comparator.<SampledHit>comparingLong(h -> h.key)
+            .thenComparingInt(h -> h.doc).thenComparingInt(h -> h.start).thenComparingInt(h -> h.end);
+
+    private HitsFromQuerySampled() {
+    }
+
+    /**
+     * Execute a query, keeping only a random sample of the hits.
+     *
+     * @param queryInfo query info
+     * @param query query to execute
+     * @param searchSettings search settings (maxHitsToProcess limits the hits we sample from)
+     * @param sampleParameters sample parameters; must be a fixed number of hits
+     * @return the sample
+     */
+    static Hits sample(QueryInfo queryInfo, BLSpanQuery query, SearchSettings searchSettings,
+            SampleParameters sampleParameters) {
+        if (sampleParameters.isPercentage())
+            throw new IllegalArgumentException("Can only sample a fixed number of hits while executing query");
+        int sampleSize = sampleParameters.numberOfHitsSet();
+        int maxHitsToProcess = searchSettings.maxHitsToProcess() < 0 ? Integer.MAX_VALUE : searchSettings.maxHitsToProcess();
+        long seed = sampleParameters.seed();
+        List<LeafReaderContext> leaves = queryInfo.index().reader().leaves();
+        if (sampleSize <= 0)
+            return Hits.fromList(queryInfo, new HitsArrays(), null, sampleParameters, 0, 0, 0, null);
+        try {
+            BLSpanWeight weight = HitsFromQueryParallel.createWeight(queryInfo, query, searchSettings);
+
+            // Get the spans for the first segment that has any, to find out about captured groups
+            // (see HitsFromQueryParallel.SpansReader for why this is needed)
+            HitQueryContext rootContext = new HitQueryContext();
+            BLSpans firstSpans = null;
+            int firstLeaf;
+            for (firstLeaf = 0; firstLeaf < leaves.size(); firstLeaf++) {
+                firstSpans = weight.getSpans(leaves.get(firstLeaf), Postings.OFFSETS);
+                if (firstSpans != null)
+                    break;
+            }
+            if (firstSpans == null)
+                return Hits.fromList(queryInfo, new HitsArrays(), null, sampleParameters, 0, 0, 0, null);
+            HitQueryContext firstContext = rootContext.copyWith(firstSpans);
+            firstSpans.setHitQueryContext(firstContext);
+            CapturedGroups capturedGroups = firstContext.getCaptureRegisterNumber() > 0 ?
+                    new CapturedGroupsImpl(firstContext.getCapturedGroupNames()) : null;
+
+            // Sample each segment (at most maxHitsToProcess hits per segment; we don't know
+            // yet how many hits earlier segments have)
+            int numberOfLeaves = leaves.size() - firstLeaf;
+            List<PriorityQueue<SampledHit>> reservoirs = new ArrayList<>(Collections.nCopies(numberOfLeaves, null));
+            int[] hitsInLeaf = new int[numberOfLeaves];
+            BLSpans spansForFirstLeaf = firstSpans;
+            HitQueryContext contextForFirstLeaf = firstContext;
+            BlackLabEngine engine = queryInfo.index().blackLab();
+            ExecutorService executorService = engine.searchExecutorService();
+            int numberOfTasks = executorService == null ? 1 :
+                    Math.max(1, Math.min(engine.maxThreadsPerSearch(), numberOfLeaves));
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < numberOfTasks; i++) {
+                int taskIndex = i;
+                int first = firstLeaf;
+                tasks.add(() -> {
+                    ThreadAborter threadAborter = ThreadAborter.create();
+                    for (int leaf = taskIndex; leaf < numberOfLeaves; leaf += numberOfTasks) {
+                        PriorityQueue<SampledHit> reservoir = newReservoir(sampleSize);
+                        if (leaf == 0) {
+                            hitsInLeaf[leaf] = sampleSegment(spansForFirstLeaf, contextForFirstLeaf, leaves.get(first),
+                                    seed, sampleSize, maxHitsToProcess, reservoir, threadAborter);
+                        } else {
+                            hitsInLeaf[leaf] = sampleSegment(weight, rootContext, leaves.get(first + leaf), seed,
+                                    sampleSize, maxHitsToProcess, reservoir, threadAborter);
+                        }
+                        reservoirs.set(leaf, reservoir);
+                    }
+                });
+            }
+            if (numberOfTasks == 1)
+                tasks.get(0).run();
+            else
+                ParallelSort.runAll(executorService, tasks);
+
+            // Only use the first maxHitsToProcess hits, in (segment, doc) order, so the sample
+            // doesn't depend on how fast each segment was processed. If the cut is in the middle
+            // of a segment, its reservoir may have dropped hits before the cut in favour of hits
+            // after it, so we sample that segment again, up to the cut.
+            List<SampledHit> sample = new ArrayList<>();
+            int hitsLeft = maxHitsToProcess;
+            for (int leaf = 0; leaf < numberOfLeaves && hitsLeft > 0; leaf++) {
+                PriorityQueue<SampledHit> reservoir = reservoirs.get(leaf);
+                if (hitsInLeaf[leaf] > hitsLeft) {
+                    reservoir = newReservoir(sampleSize);
+                    sampleSegment(weight, rootContext, leaves.get(firstLeaf + leaf), seed, sampleSize, hitsLeft,
+                            reservoir, ThreadAborter.create());
+                }
+                sample.addAll(reservoir);
+                hitsLeft -= Math.min(hitsLeft, hitsInLeaf[leaf]);
+            }
+
+            // Merge the reservoirs and put the sample in index order
+            sample.sort(BY_KEY);
+            if (sample.size() > sampleSize)
+                sample = sample.subList(0, sampleSize);
+            sample.sort(Comparator.<SampledHit>comparingInt(h -> h.doc).thenComparingInt(h -> h.start).thenComparingInt(h -> h.end));
+            HitsArrays hits = new HitsArrays();
+            int docsInSample = 0;
+            int previousDoc = -1;
+            for (SampledHit hit: sample) {
+                if (hit.doc != previousDoc) {
+                    docsInSample++;
+                    previousDoc = hit.doc;
+                }
+                int index = hits.size();
+                hits.add(hit.doc, hit.start, hit.end, index);
+                if (capturedGroups != null)
+                    capturedGroups.put(Hit.create(hit.doc, hit.start, hit.end, index), hit.capturedGroups);
+            }
+            return Hits.fromList(queryInfo, hits, null, sampleParameters, hits.size(), docsInSample, docsInSample, capturedGroups);
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    /** Create a reservoir, keeping the hit with the highest key on top. */
+    private static PriorityQueue<SampledHit> newReservoir(int sampleSize) {
+        return new PriorityQueue<>(Math.min(sampleSize, 1024) + 1, BY_KEY.reversed());
+    }
+
+    /**
+     * Add the hits in a segment to a reservoir.
+     *
+     * @return number of hits processed
+     */
+    private static int sampleSegment(BLSpanWeight weight, HitQueryContext rootContext,
+            LeafReaderContext leafReaderContext, long seed, int sampleSize, int maxHitsToProcess,
+            PriorityQueue<SampledHit> reservoir, ThreadAborter threadAborter) {
+        BLSpans spans;
+        try {
+            spans = weight.getSpans(leafReaderContext, Postings.OFFSETS);
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        if (spans == null)
+            return 0;
+        HitQueryContext context = rootContext.copyWith(spans);
+        spans.setHitQueryContext(context);
+        return sampleSegment(spans, context, leafReaderContext, seed, sampleSize, maxHitsToProcess, reservoir,
+                threadAborter);
+    }
+
+    /**
+     * Add the hits in a segment to a reservoir.
+     *
+     * @return number of hits processed
+     */
+    private static int sampleSegment(BLSpans spans, HitQueryContext context, LeafReaderContext leafReaderContext,
+            long seed, int sampleSize, int maxHitsToProcess, PriorityQueue<SampledHit> reservoir,
+            ThreadAborter threadAborter) {
+        int numCaptureGroups = context.numberOfCapturedGroups();
+        Bits liveDocs = leafReaderContext.reader().getLiveDocs();
+        int docBase = leafReaderContext.docBase;
+        int hitsProcessed = 0;
+        try {
+            while (hitsProcessed < maxHitsToProcess && HitsFromQueryParallel.advanceSpansToNextHit(spans, liveDocs)) {
+                hitsProcessed++;
+                int doc = spans.docID() + docBase;
+                int start = spans.startPosition();
+                int end = spans.endPosition();
+                long key = key(seed, doc, start, end);
+                if (reservoir.size() < sampleSize || key < reservoir.peek().key) {
+                    Span[] groups = null;
+                    if (numCaptureGroups > 0) {
+                        groups = new Span[numCaptureGroups];
+                        context.getCapturedGroups(groups);
+                    }
+                    reservoir.add(new SampledHit(key, doc, start, end, groups));
+                    if (reservoir.size() > sampleSize)
+                        reservoir.poll();
+                }
+                threadAborter.checkAbort();
+            }
+            return hitsProcessed;
+        } catch (InterruptedException e) {
+            throw new InterruptedSearch(e);
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    /**
+     * Pseudorandom key for a hit, so each hit has the same chance of being among
+     * the lowest keys.
+     */
+    static long key(long seed, int doc, int start, int end) {
+        long h = seed ^ mix(((long) doc << 32) | (start & 0xFFFFFFFFL));
+        h = mix(h ^ end);
+        return h >>> 1; // non-negative, so keys compare as unsigned
+    }
+
+    /** Finalization step of MurmurHash3 (64-bit): scrambles the bits of a long. */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,7 +1,5 @@
 package nl.inl.blacklab.search.results;
 
-import org.eclipse.collections.api.iterator.MutableIntIterator;
-
 /**
  * A basic Hits object implemented with a list.
  */
@@ -27,9 +25,10 @@ public class HitsList extends Hits {
 
         setHitsCounted(this.getHitsArrays().size());
         int prevDoc = -1;
-        MutableIntIterator it = this.getHitsArrays().docs().intIterator();
-        while (it.hasNext()) {
-            int docId = it.next();
+        HitsArrays hitsArrays = this.getHitsArrays();
+        int n = hitsArrays.size();
+        for (int i = 0; i < n; i++) {
+            int docId = hitsArrays.doc(i);
             if (docId != prevDoc) {
                 setDocsRetrieved(getDocsRetrieved() + 1);
                 setDocsCounted(getDocsCounted() + 1);
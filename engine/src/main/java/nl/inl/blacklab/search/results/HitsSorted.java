@@ -0,0 +1,258 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.Arrays;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.search.BlackLabEngine;
+
+/**
+ * A Hits object that sorts another, but only as far as needed.
+ *
+ * Hits are put in order when they are requested. E.g. if only the first page of
+ * hits is requested, we only select and sort the first hits (plus a few more, so
+ * the next page can be served without doing this again), which is much faster
+ * than sorting all hits. The remaining hits are partitioned so that a request
+ * for a later page only has to look at the hits that haven't been sorted yet.
+ *
+ * Once (almost) all hits are needed, the rest are sorted in one go.
+ */
+public class HitsSorted extends Hits {
+
+    /** When we have to sort more hits, sort at least this many. */
+    private static final int MIN_HITS_TO_SORT = 1000;
+
+    /** If we'd have to sort more than 1/n of the remaining hits, sort them all. */
+    private static final int PARTIAL_SORT_MAX_FRACTION = 8;
+
+    /** Below this size, we sort a range instead of partitioning it further. */
+    private static final int SELECT_SORT_THRESHOLD = 16;
+
+    /** Hits we're sorting (null when done) */
+    private Hits source;
+
+    /** How to compare hits in source (by index) (null when done) */
+    private IntComparator comparator;
+
+    /** Indices into source; the ones we've sorted so far are in order, the rest all come after those. (null when done) */
+    private int[] indices;
+
+    /** Contexts our sort property uses, if any (null when done) */
+    private Contexts contexts;
+
+    /** Have we sorted all hits? */
+    private volatile boolean doneSorting;
+
+    /** Our source's max stats */
+    private final MaxStats maxStats;
+
+    /**
+     * Sort hits lazily.
+     *
+     * @param source hits to sort (must have all been read)
+     * @param sortProp property to sort on (must use the source hits)
+     * @param contexts contexts the sort property uses, or null if none
+     */
+    protected HitsSorted(Hits source, HitProperty sortProp, Contexts contexts) {
+        super(source.queryInfo(), false);
+        this.source = source;
+        this.comparator = sortProp::compare;
+        this.contexts = contexts;
+        this.capturedGroups = source.capturedGroups();
+        setHitsCounted(source.hitsCountedSoFar());
+        setDocsRetrieved(source.docsProcessedSoFar());
+        setDocsCounted(source.docsCountedSoFar());
+        maxStats = source.maxStats();
+
+        int n = source.getHitsArrays().size();
+        indices = new int[n];
+        for (int i = 0; i < n; i++)
+            indices[i] = i;
+        doneSorting = n == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "HitsSorted#" + hitsObjId;
+    }
+
+    /**
+     * Ensure that we have sorted at least as many hits as specified in the parameter.
+     *
+     * @param number the minimum number of hits that will have been sorted when this
+     *            method returns (unless there are fewer hits than this); if
+     *            negative, sorts all hits
+     */
+    @Override
+    protected void ensureResultsRead(int number) {
+        // Prevent locking when not required
+        if (doneSorting || number >= 0 && getHitsArrays().size() >= number)
+            return;
+        synchronized (this) {
+            int sortedSoFar = getHitsArrays().size();
+            if (doneSorting || number >= 0 && sortedSoFar >= number)
+                return;
+
+            int n = indices.length;
+            int target = number < 0 ? n : Math.min(n, Math.max(number, Math.max(sortedSoFar * 2, MIN_HITS_TO_SORT)));
+            if (target - sortedSoFar > (n - sortedSoFar) / PARTIAL_SORT_MAX_FRACTION) {
+                // Not worth it to partition; just sort the rest
+                target = n;
+                sortRest(sortedSoFar);
+            } else {
+                // Select the next hits and sort only those
+                select(indices, sortedSoFar, target, n, comparator);
+                IntArrays.quickSort(indices, sortedSoFar, target, comparator);
+            }
+            try {
+                threadAborter.checkAbort();
+            } catch (InterruptedException e) {
+                throw new InterruptedSearch(e);
+            }
+
+            // Add the newly sorted hits
+            HitsArrays sourceHits = source.getHitsArrays();
+            int end = target;
+            int count = end - sortedSoFar;
+            IntArrayList docs = new IntArrayList(count);
+            IntArrayList starts = new IntArrayList(count);
+            IntArrayList ends = new IntArrayList(count);
+            IntArrayList indicesFromResultSet = new IntArrayList(count);
+            for (int i = sortedSoFar; i < end; i++) {
+                int j = indices[i];
+                docs.add(sourceHits.doc(j));
+                starts.add(sourceHits.start(j));
+                ends.add(sourceHits.end(j));
+                indicesFromResultSet.add(sourceHits.indexInResultSet(j));
+            }
+            getHitsArrays().addAll(docs, starts, ends, indicesFromResultSet);
+
+            if (end == n) {
+                // Done; allow source, contexts, etc. to be GC'ed
+                doneSorting = true;
+                source = null;
+                comparator = null;
+                indices = null;
+                contexts = null;
+            }
+        }
+    }
+
+    /**
+     * How much memory do we hold on to until all hits have been sorted?
+     *
+     * Until then, we keep the source hits, our index array and the contexts the
+     * sort property uses. These are released when sorting is done.
+     *
+     * @return number of ints retained for sorting (0 when done sorting)
+     */
+    public long numberOfIntsRetainedForSorting() {
+        if (doneSorting)
+            return 0;
+        // (may race with the sort finishing, so read each field once)
+        Hits sourceHits = source;
+        int[] sortIndices = indices;
+        Contexts sortContexts = contexts;
+        long n = 0;
+        if (sourceHits != null)
+            n += (long) sourceHits.getHitsArrays().size() * 4; // doc, start, end, index
+        if (sortIndices != null)
+            n += sortIndices.length;
+        if (sortContexts != null)
+            n += sortContexts.numberOfInts();
+        return n;
+    }
+
+    /**
+     * Sort the hits that haven't been sorted yet.
+     *
+     * @param from first index that hasn't been sorted yet
+     */
+    private void sortRest(int from) {
+        int n = indices.length;
+        BlackLabEngine engine = index().blackLab();
+        int maxThreads = engine.maxThreadsPerSearch();
+        if (engine.searchExecutorService() != null && ParallelSort.shouldSortInParallel(n - from, index().parallelSortThreshold(), maxThreads)) {
+            int[] rest = Arrays.copyOfRange(indices, from, n);
+            ParallelSort.sort(rest, comparator, engine.searchExecutorService(), maxThreads);
+            System.arraycopy(rest, 0, indices, from, rest.length);
+        } else {
+            IntArrays.quickSort(indices, from, n, comparator);
+        }
+    }
+
+    /**
+     * Partition a range of an array so that a[from..k) contains the smallest
+     * elements in that range (in no particular order), and a[k..to) the rest.
+     *
+     * Uses quickselect with three-way partitioning, so many equal elements (common
+     * when sorting by e.g. document metadata) don't hurt performance.
+     *
+     * @param a array to partition
+     * @param from start of range
+     * @param k where the partition should be
+     * @param to end of range
+     * @param c how to compare elements
+     */
+    static void select(int[] a, int from, int k, int to, IntComparator c) {
+        while (to - from > SELECT_SORT_THRESHOLD) {
+            int pivot = a[median3(a, from, from + (to - from) / 2, to - 1, c)];
+            // Partition into [from, lt) < pivot, [lt, gt) == pivot, [gt, to) > pivot
+            int lt = from, i = from, gt = to;
+            while (i < gt) {
+                int cmp = c.compare(a[i], pivot);
+                if (cmp < 0)
+                    swap(a, lt++, i++);
+                else if (cmp > 0)
+                    swap(a, i, --gt);
+                else
+                    i++;
+            }
+            if (k < lt)
+                to = lt;
+            else if (k > gt)
+                from = gt;
+            else
+                return; // k falls in (or at the edge of) the range of elements equal to pivot
+        }
+        if (to - from > 1)
+            IntArrays.quickSort(a, from, to, c);
+    }
+
+    private static int median3(int[] a, int i, int j, int k, IntComparator c) {
+        int ij = c.compare(a[i], a[j]), ik = c.compare(a[i], a[k]), jk = c.compare(a[j], a[k]);
+        return ij < 0 ? (jk < 0 ? j : (ik < 0 ? k : i)) : (jk > 0 ? j : (ik > 0 ? k : i));
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    @Override
+    protected boolean hitsProcessedAtLeast(int lowerBound) {
+        ensureResultsRead(lowerBound);
+        return super.hitsProcessedAtLeast(lowerBound);
+    }
+
+    @Override
+    protected boolean resultsProcessedAtLeast(int lowerBound) {
+        ensureResultsRead(lowerBound);
+        return super.resultsProcessedAtLeast(lowerBound);
+    }
+
+    @Override
+    public boolean doneProcessingAndCounting() {
+        return doneSorting;
+    }
+
+    @Override
+    public MaxStats maxStats() {
+        return maxStats;
+    }
+}
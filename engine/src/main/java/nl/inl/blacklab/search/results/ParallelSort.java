@@ -0,0 +1,214 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.search.BlackLabIndex;
+
+/**
+ * Sorts large result sets using multiple threads.
+ *
+ * The array is divided into runs, one per thread, which are sorted in parallel
+ * on the search executor service. The sorted runs are then merged pairwise (also
+ * in parallel) until a single sorted run remains.
+ *
+ * Used by {@link Hits#sort(nl.inl.blacklab.resultproperty.HitProperty)} and
+ * {@link DocResults#sort(nl.inl.blacklab.resultproperty.DocProperty)} for
+ * result sets of at least {@link BlackLabIndex#parallelSortThreshold()} results.
+ */
+public final class ParallelSort {
+
+    /** Default minimum number of results for which we sort in parallel */
+    public static final int DEFAULT_THRESHOLD = 500_000;
+
+    /** Don't make runs smaller than this; not worth the overhead */
+    private static final int MIN_RUN_LENGTH = 10_000;
+
+    private ParallelSort() {
+    }
+
+    /**
+     * Should we sort a number of results in parallel?
+     *
+     * @param numberOfResults number of results to sort
+     * @param threshold minimum number of results for which we sort in parallel
+     * @param maxThreads maximum number of threads we may use
+     * @return true if we should sort in parallel
+     */
+    public static boolean shouldSortInParallel(int numberOfResults, int threshold, int maxThreads) {
+        return maxThreads > 1 && numberOfResults >= threshold && numberOfResults >= 2 * MIN_RUN_LENGTH;
+    }
+
+    /**
+     * Sort an int array using multiple threads.
+     *
+     * Like IntArrays.quickSort(), this sort is not stable.
+     *
+     * @param a array to sort
+     * @param comparator how to compare elements; must be thread-safe
+     * @param executorService where to run our tasks
+     * @param maxThreads maximum number of threads to use
+     */
+    public static void sort(int[] a, IntComparator comparator, ExecutorService executorService, int maxThreads) {
+        int[] bounds = runBounds(a.length, maxThreads);
+        int numberOfRuns = bounds.length - 1;
+        if (numberOfRuns <= 1 || executorService == null) {
+            IntArrays.quickSort(a, comparator);
+            return;
+        }
+
+        // Sort each run
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < numberOfRuns; i++) {
+            int from = bounds[i], to = bounds[i + 1];
+            tasks.add(() -> IntArrays.quickSort(a, from, to, comparator));
+        }
+        runAll(executorService, tasks);
+
+        // Merge runs pairwise until we have one run left
+        int[] src = a, dest = new int[a.length];
+        while (bounds.length > 2) {
+            int[] newBounds = new int[bounds.length / 2 + 1];
+            tasks.clear();
+            final int[] s = src, d = dest;
+            for (int i = 0; i < bounds.length - 1; i += 2) {
+                int from = bounds[i], mid = bounds[i + 1];
+                int to = i + 2 < bounds.length ? bounds[i + 2] : mid;
+                newBounds[i / 2] = from;
+                tasks.add(() -> merge(s, d, from, mid, to, comparator));
+            }
+            newBounds[newBounds.length - 1] = a.length;
+            runAll(executorService, tasks);
+            bounds = newBounds;
+            src = dest;
+            dest = s;
+        }
+        if (src != a)
+            System.arraycopy(src, 0, a, 0, a.length);
+    }
+
+    /**
+     * Sort an object array using multiple threads.
+     *
+     * Like Arrays.sort(), this sort is stable.
+     *
+     * @param <T> element type
+     * @param a array to sort
+     * @param comparator how to compare elements; must be thread-safe
+     * @param executorService where to run our tasks
+     * @param maxThreads maximum number of threads to use
+     */
+    public static <T> void sort(T[] a, Comparator<? super T> comparator, ExecutorService executorService, int maxThreads) {
+        int[] bounds = runBounds(a.length, maxThreads);
+        int numberOfRuns = bounds.length - 1;
+        if (numberOfRuns <= 1 || executorService == null) {
+            Arrays.sort(a, comparator);
+            return;
+        }
+
+        // Sort each run
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < numberOfRuns; i++) {
+            int from = bounds[i], to = bounds[i + 1];
+            tasks.add(() -> Arrays.sort(a, from, to, comparator));
+        }
+        runAll(executorService, tasks);
+
+        // Merge runs pairwise until we have one run left
+        T[] src = a, dest = a.clone();
+        while (bounds.length > 2) {
+            int[] newBounds = new int[bounds.length / 2 + 1];
+            tasks.clear();
+            final T[] s = src, d = dest;
+            for (int i = 0; i < bounds.length - 1; i += 2) {
+                int from = bounds[i], mid = bounds[i + 1];
+                int to = i + 2 < bounds.length ? bounds[i + 2] : mid;
+                newBounds[i / 2] = from;
+                tasks.add(() -> merge(s, d, from, mid, to, comparator));
+            }
+            newBounds[newBounds.length - 1] = a.length;
+            runAll(executorService, tasks);
+            bounds = newBounds;
+            src = dest;
+            dest = s;
+        }
+        if (src != a)
+            System.arraycopy(src, 0, a, 0, a.length);
+    }
+
+    /**
+     * Divide an array into runs to sort in parallel.
+     *
+     * @param length array length
+     * @param maxThreads maximum number of threads to use
+     * @return the run boundaries (first element 0, last element length)
+     */
+    private static int[] runBounds(int length, int maxThreads) {
+        int numberOfRuns = Math.max(1, Math.min(maxThreads, length / MIN_RUN_LENGTH));
+        int[] bounds = new int[numberOfRuns + 1];
+        for (int i = 0; i <= numberOfRuns; i++) {
+            bounds[i] = (int) ((long) length * i / numberOfRuns);
+        }
+        return bounds;
+    }
+
+    private static void merge(int[] src, int[] dest, int from, int mid, int to, IntComparator comparator) {
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            // Take from the left run if equal, to keep the merge stable
+            dest[k++] = comparator.compare(src[j], src[i]) < 0 ? src[j++] : src[i++];
+        }
+        System.arraycopy(src, i, dest, k, mid - i);
+        System.arraycopy(src, j, dest, k + mid - i, to - j);
+    }
+
+    private static <T> void merge(T[] src, T[] dest, int from, int mid, int to, Comparator<? super T> comparator) {
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            // Take from the left run if equal, to keep the merge stable
+            dest[k++] = comparator.compare(src[j], src[i]) < 0 ? src[j++] : src[i++];
+        }
+        System.arraycopy(src, i, dest, k, mid - i);
+        System.arraycopy(src, j, dest, k + mid - i, to - j);
+    }
+
+    /**
+     * Run tasks on the executor service and wait for them to finish.
+     *
+     * The last task is run on the calling thread.
+     *
+     * @param executorService where to run the tasks
+     * @param tasks tasks to run
+     */
+    static void runAll(ExecutorService executorService, List<Runnable> tasks) {
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < tasks.size() - 1; i++) {
+                futures.add(executorService.submit(tasks.get(i)));
+            }
+            tasks.get(tasks.size() - 1).run();
+            for (Future<?> future: futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedSearch(e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw BlackLabRuntimeException.wrap(e.getCause());
+        } catch (RuntimeException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e;
+        }
+    }
+}
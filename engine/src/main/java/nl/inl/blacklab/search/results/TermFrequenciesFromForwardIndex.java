@@ -0,0 +1,234 @@
+package nl.inl.blacklab.search.results;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
+import nl.inl.blacklab.forwardindex.FiidLookup;
+import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.search.BlackLabEngine;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.TermFrequency;
+import nl.inl.blacklab.search.TermFrequencyList;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.indexmetadata.AnnotationSensitivity;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+
+/**
+ * Determines term frequencies in a subset of documents using the forward index.
+ *
+ * The alternative, getting the term vector for each matching document from
+ * Lucene, is very slow for large subcorpora (and requires term vectors to have
+ * been stored). Instead, we read each matching document from the annotation's
+ * forward index and count its term ids in an array, in parallel over the index
+ * segments. Terms are merged according to the sensitivity using the terms
+ * index, and term strings are only decoded for the results that are actually
+ * retrieved from the resulting list.
+ */
+public final class TermFrequenciesFromForwardIndex {
+
+    private TermFrequenciesFromForwardIndex() {
+    }
+
+    /**
+     * Can we determine term frequencies for this annotation sensitivity this way?
+     *
+     * We need a forward index, and the sensitivity must be one the terms index
+     * can group by (fully sensitive or fully insensitive).
+     *
+     * @param annotSensitivity annotation and sensitivity
+     * @return true if we can
+     */
+    public static boolean canCount(AnnotationSensitivity annotSensitivity) {
+        MatchSensitivity sensitivity = annotSensitivity.sensitivity();
+        return annotSensitivity.annotation().hasForwardIndex() &&
+                (sensitivity == MatchSensitivity.SENSITIVE || sensitivity == MatchSensitivity.INSENSITIVE);
+    }
+
+    /**
+     * Determine the term frequencies in the documents matching a filter.
+     *
+     * @param index index
+     * @param annotSensitivity annotation and sensitivity to determine the term frequencies for
+     * @param filterQuery document filter
+     * @param searchTerms terms to get frequencies for, or null/empty for all terms
+     * @return term frequencies, sorted by descending frequency (if all terms were requested)
+     */
+    public static TermFrequencyList count(BlackLabIndex index, AnnotationSensitivity annotSensitivity,
+            Query filterQuery, Set<String> searchTerms) {
+        if (!canCount(annotSensitivity))
+            throw new IllegalArgumentException("Cannot determine term frequencies from forward index for " + annotSensitivity);
+        Annotation annotation = annotSensitivity.annotation();
+        MatchSensitivity sensitivity = annotSensitivity.sensitivity();
+        AnnotationForwardIndex forwardIndex = index.annotationForwardIndex(annotation);
+        Terms terms = forwardIndex.terms();
+        int[] countPerTermId = countTermIds(index, forwardIndex, filterQuery);
+        QueryInfo queryInfo = QueryInfo.create(index, annotation.field());
+
+        if (searchTerms != null && !searchTerms.isEmpty()) {
+            // Just look up the terms we were asked for
+            Map<String, Integer> freq = new HashMap<>();
+            MutableIntSet termIds = new IntHashSet();
+            for (String term: searchTerms) {
+                termIds.clear();
+                terms.indexOf(termIds, term, sensitivity);
+                int count = 0;
+                for (int termId: termIds.toArray()) {
+                    if (termId >= 0)
+                        count += countPerTermId[termId];
+                }
+                freq.put(term, count);
+            }
+            return new TermFrequencyList(queryInfo, freq, true);
+        }
+
+        // Merge counts for terms that are equal according to the sensitivity
+        int[] countPerGroup;
+        int[] groupToTermId;
+        if (sensitivity == MatchSensitivity.INSENSITIVE) {
+            countPerGroup = new int[countPerTermId.length];
+            groupToTermId = new int[countPerTermId.length];
+            Arrays.fill(groupToTermId, -1);
+            for (int termId = 0; termId < countPerTermId.length; termId++) {
+                if (countPerTermId[termId] == 0)
+                    continue;
+                int group = terms.idToSortPosition(termId, MatchSensitivity.INSENSITIVE);
+                countPerGroup[group] += countPerTermId[termId];
+                if (groupToTermId[group] < 0)
+                    groupToTermId[group] = termId;
+            }
+        } else {
+            countPerGroup = countPerTermId;
+            groupToTermId = null;
+        }
+
+        // Sort the groups by descending frequency, without decoding any terms
+        int numberOfGroups = 0;
+        for (int count: countPerGroup) {
+            if (count > 0)
+                numberOfGroups++;
+        }
+        long[] countAndGroup = new long[numberOfGroups];
+        long totalFrequency = 0;
+        int n = 0;
+        for (int group = 0; group < countPerGroup.length; group++) {
+            if (countPerGroup[group] > 0) {
+                countAndGroup[n] = ((long) countPerGroup[group] << 32) | group;
+                n++;
+                totalFrequency += countPerGroup[group];
+            }
+        }
+        Arrays.sort(countAndGroup);
+
+        // Create a list that decodes terms as they are retrieved
+        List<TermFrequency> list = new AbstractList<TermFrequency>() {
+            @Override
+            public TermFrequency get(int i) {
+                long value = countAndGroup[countAndGroup.length - 1 - i];
+                int group = (int) value;
+                int termId = groupToTermId == null ? group : groupToTermId[group];
+                return new TermFrequency(sensitivity.desensitize(terms.get(termId)), (int) (value >>> 32));
+            }
+
+            @Override
+            public int size() {
+                return countAndGroup.length;
+            }
+        };
+        return new TermFrequencyList(queryInfo, list, totalFrequency);
+    }
+
+    /**
+     * Count the term ids in all documents matching the filter.
+     *
+     * @param index index
+     * @param forwardIndex forward index to count terms in
+     * @param filterQuery document filter
+     * @return number of occurrences per term id
+     */
+    private static int[] countTermIds(BlackLabIndex index, AnnotationForwardIndex forwardIndex, Query filterQuery) {
+        int numberOfTerms = forwardIndex.terms().numberOfTerms();
+        FiidLookup fiidLookup = FiidLookup.forReader(index.reader(), forwardIndex.annotation());
+        Weight weight;
+        try {
+            weight = index.searcher().createNormalizedWeight(filterQuery, false);
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        List<LeafReaderContext> leaves = index.reader().leaves();
+        BlackLabEngine engine = index.blackLab();
+        ExecutorService executorService = engine.searchExecutorService();
+        int numberOfTasks = Math.max(1, Math.min(engine.maxThreadsPerSearch(), leaves.size()));
+        if (executorService == null)
+            numberOfTasks = 1;
+
+        // Each task counts a subset of the segments in its own array
+        int[][] counts = new int[numberOfTasks][];
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < numberOfTasks; i++) {
+            int taskIndex = i;
+            int step = numberOfTasks;
+            tasks.add(() -> {
+                int[] count = new int[numberOfTerms];
+                for (int leaf = taskIndex; leaf < leaves.size(); leaf += step) {
+                    countTermIds(leaves.get(leaf), weight, fiidLookup, forwardIndex, count);
+                }
+                counts[taskIndex] = count;
+            });
+        }
+        if (numberOfTasks == 1)
+            tasks.get(0).run();
+        else
+            ParallelSort.runAll(executorService, tasks);
+
+        int[] result = counts[0];
+        for (int i = 1; i < counts.length; i++) {
+            for (int termId = 0; termId < numberOfTerms; termId++)
+                result[termId] += counts[i][termId];
+        }
+        return result;
+    }
+
+    private static void countTermIds(LeafReaderContext leaf, Weight weight, FiidLookup fiidLookup,
+            AnnotationForwardIndex forwardIndex, int[] count) {
+        try {
+            Scorer scorer = weight.scorer(leaf);
+            if (scorer == null)
+                return; // no matching documents in this segment
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            DocIdSetIterator it = scorer.iterator();
+            int doc;
+            while ((doc = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (liveDocs != null && !liveDocs.get(doc))
+                    continue;
+                if (Thread.interrupted())
+                    throw new InterruptedSearch();
+                int[] tokens = forwardIndex.getDocument(fiidLookup.get(leaf.docBase + doc));
+                for (int termId: tokens) {
+                    if (termId >= 0)
+                        count[termId]++;
+                }
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+}
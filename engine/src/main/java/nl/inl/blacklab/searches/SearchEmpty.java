@@ -1,9 +1,12 @@
 package nl.inl.blacklab.searches;
 
+import java.util.Set;
+
 import nl.inl.blacklab.search.results.DocResults;
 import org.apache.lucene.search.Query;
 
 import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.search.indexmetadata.AnnotationSensitivity;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.SearchResult;
@@ -36,6 +39,10 @@ public class SearchEmpty extends AbstractSearch<SearchResult> {
         return new SearchDocsFromQuery(queryInfo(), documentQuery);
     }
     
+    public SearchTermFrequencies termFrequencies(AnnotationSensitivity annotSensitivity, Query filterQuery, Set<String> terms) {
+        return new SearchTermFrequencies(queryInfo(), annotSensitivity, filterQuery, terms);
+    }
+
     @Override
     public String toString() {
         return toString("empty");
@@ -5,9 +5,11 @@ import org.apache.lucene.search.Query;
 import nl.inl.blacklab.exceptions.InvalidQuery;
 import nl.inl.blacklab.exceptions.RegexpTooLarge;
 import nl.inl.blacklab.exceptions.WildcardTermTooBroad;
+import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.results.Hits;
 import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.SampleParameters;
 import nl.inl.blacklab.search.results.SearchSettings;
 
 /** A search that yields hits. */
@@ -37,6 +39,18 @@ public class SearchHitsFromBLSpanQuery extends SearchHits {
         return queryInfo().index().find(spanQuery, searchSettings);
     }
 
+    /**
+     * Execute the query, keeping only a sample of the hits.
+     *
+     * @param sampleParameters sample parameters (must be a fixed number of hits)
+     * @return the sample
+     */
+    Hits executeSample(SampleParameters sampleParameters) {
+        BlackLabIndex index = queryInfo().index();
+        return Hits.sampleFromSpanQuery(queryInfo(), spanQuery,
+                searchSettings == null ? index.searchSettings() : searchSettings, sampleParameters);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
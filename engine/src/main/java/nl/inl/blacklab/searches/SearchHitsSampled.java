@@ -20,6 +20,10 @@ public class SearchHitsSampled extends SearchHits {
 
     @Override
     public Hits executeInternal(Peekable<Hits> progressReporter) throws InvalidQuery {
+        if (source instanceof SearchHitsFromBLSpanQuery && !sampleParameters.isPercentage()) {
+            // Sample while executing the query, so we don't have to store all hits
+            return ((SearchHitsFromBLSpanQuery) source).executeSample(sampleParameters);
+        }
         return source.executeNoQueue().sample(sampleParameters);
     }
 
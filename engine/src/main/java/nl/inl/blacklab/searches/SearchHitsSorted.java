@@ -20,7 +20,20 @@ public class SearchHitsSorted extends SearchHits {
 
     @Override
     public Hits executeInternal(Peekable<Hits> progressReporter) throws InvalidQuery {
-        return source.executeNoQueue().sort(property);
+        // Sort lazily; often only the first page(s) of hits are requested
+        return source.executeNoQueue().sortLazily(property);
+    }
+
+    @Override
+    public SearchCount hitCount() {
+        // Sorting doesn't change the count; count the source so we don't have to sort all hits
+        return source.hitCount();
+    }
+
+    @Override
+    public SearchCount docCount() {
+        // Sorting doesn't change the count; count the source so we don't have to sort all hits
+        return source.docCount();
     }
 
     @Override
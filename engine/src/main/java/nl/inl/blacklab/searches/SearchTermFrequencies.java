@@ -0,0 +1,77 @@
+package nl.inl.blacklab.searches;
+
+import java.util.Set;
+
+import org.apache.lucene.search.Query;
+
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.search.TermFrequencyList;
+import nl.inl.blacklab.search.indexmetadata.AnnotationSensitivity;
+import nl.inl.blacklab.search.results.QueryInfo;
+
+/**
+ * Search operation that yields the term frequencies in (a subset of) the documents.
+ */
+public class SearchTermFrequencies extends AbstractSearch<TermFrequencyList> {
+
+    private AnnotationSensitivity annotSensitivity;
+
+    private Query filterQuery;
+
+    private Set<String> terms;
+
+    public SearchTermFrequencies(QueryInfo queryInfo, AnnotationSensitivity annotSensitivity, Query filterQuery, Set<String> terms) {
+        super(queryInfo);
+        this.annotSensitivity = annotSensitivity;
+        this.filterQuery = filterQuery;
+        this.terms = terms;
+    }
+
+    @Override
+    public TermFrequencyList executeInternal(Peekable<TermFrequencyList> progressReporter) throws InvalidQuery {
+        return queryInfo().index().termFrequencies(annotSensitivity, filterQuery, terms);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = super.hashCode();
+        result = prime * result + ((annotSensitivity == null) ? 0 : annotSensitivity.hashCode());
+        result = prime * result + ((filterQuery == null) ? 0 : filterQuery.hashCode());
+        result = prime * result + ((terms == null) ? 0 : terms.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!super.equals(obj))
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        SearchTermFrequencies other = (SearchTermFrequencies) obj;
+        if (annotSensitivity == null) {
+            if (other.annotSensitivity != null)
+                return false;
+        } else if (!annotSensitivity.equals(other.annotSensitivity))
+            return false;
+        if (filterQuery == null) {
+            if (other.filterQuery != null)
+                return false;
+        } else if (!filterQuery.equals(other.filterQuery))
+            return false;
+        if (terms == null) {
+            if (other.terms != null)
+                return false;
+        } else if (!terms.equals(other.terms))
+            return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return toString("termfreq", annotSensitivity, filterQuery, terms);
+    }
+
+}
@@ -0,0 +1,234 @@
+package nl.inl.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+
+/**
+ * Finds terms in a Lucene field by prefix, for autocomplete.
+ *
+ * All terms in the field are read once and kept in an array sorted by
+ * (desensitized) key, together with their frequency in the corpus. A prefix
+ * query is then a binary search for the range of matching keys, so we don't
+ * have to walk the term dictionary of each segment on every keystroke. Results
+ * can be ordered alphabetically or by frequency.
+ *
+ * Instances are cached per IndexReader, field and sensitivity; see
+ * {@link #forField(IndexReader, String, boolean)}. This class is thread-safe.
+ */
+public class TermPrefixIndex {
+
+    /** For prefixes matching more keys than this, we cache the most frequent results */
+    private static final int CACHE_RESULTS_FOR_RANGE_SIZE = 10_000;
+
+    /** How many results to cache for a prefix (larger requests aren't cached) */
+    private static final int MAX_CACHED_RESULTS = 100;
+
+    /** Cached prefix indexes per IndexReader */
+    private static final Map<IndexReader, Map<String, TermPrefixIndex>> cachePerReader =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Get the prefix index for a field.
+     *
+     * The index is built the first time it is requested for a reader, then shared
+     * by all callers using that reader.
+     *
+     * @param reader index reader
+     * @param luceneField Lucene field to find terms in
+     * @param sensitive match case- and diacritics-sensitively?
+     * @return prefix index
+     */
+    public static TermPrefixIndex forField(IndexReader reader, String luceneField, boolean sensitive) {
+        Map<String, TermPrefixIndex> indexes;
+        synchronized (cachePerReader) {
+            indexes = cachePerReader.get(reader);
+            if (indexes == null) {
+                indexes = new ConcurrentHashMap<>();
+                cachePerReader.put(reader, indexes);
+                reader.addReaderClosedListener(cachePerReader::remove);
+            }
+        }
+        String key = luceneField + (sensitive ? "/s" : "/i");
+        return indexes.computeIfAbsent(key, k -> new TermPrefixIndex(reader, luceneField, sensitive));
+    }
+
+    /** Match case- and diacritics-sensitively? */
+    private final boolean sensitive;
+
+    /** Distinct (desensitized) keys, sorted */
+    private final String[] keys;
+
+    /** Term to report for each key (the most frequent term with this key) */
+    private final String[] terms;
+
+    /** Corpus frequency for each key */
+    private final long[] frequencies;
+
+    /** Most frequent results for prefixes matching many keys (indexes into keys) */
+    private final Map<String, int[]> topResultsCache = new ConcurrentHashMap<>();
+
+    TermPrefixIndex(IndexReader reader, String luceneField, boolean sensitive) {
+        this.sensitive = sensitive;
+        List<String> fieldTerms = new ArrayList<>();
+        List<Long> fieldFrequencies = new ArrayList<>();
+        try {
+            Terms luceneTerms = MultiFields.getTerms(reader, luceneField);
+            if (luceneTerms != null) {
+                TermsEnum termsEnum = luceneTerms.iterator();
+                for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                    long freq = termsEnum.totalTermFreq();
+                    fieldTerms.add(term.utf8ToString());
+                    fieldFrequencies.add(freq < 0 ? termsEnum.docFreq() : freq); // -1 if freqs weren't indexed
+                }
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+
+        // Sort the terms by key and merge terms with the same key
+        int n = fieldTerms.size();
+        String[] termKeys = new String[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            termKeys[i] = desensitize(fieldTerms.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer i) -> termKeys[i]));
+        List<String> mergedKeys = new ArrayList<>();
+        List<String> mergedTerms = new ArrayList<>();
+        List<Long> mergedFrequencies = new ArrayList<>();
+        long bestFrequency = -1;
+        for (int i: order) {
+            String key = termKeys[i];
+            long freq = fieldFrequencies.get(i);
+            int last = mergedKeys.size() - 1;
+            if (last < 0 || !mergedKeys.get(last).equals(key)) {
+                mergedKeys.add(key);
+                mergedTerms.add(fieldTerms.get(i));
+                mergedFrequencies.add(freq);
+                bestFrequency = freq;
+            } else {
+                mergedFrequencies.set(last, mergedFrequencies.get(last) + freq);
+                if (freq > bestFrequency) {
+                    mergedTerms.set(last, fieldTerms.get(i));
+                    bestFrequency = freq;
+                }
+            }
+        }
+        keys = mergedKeys.toArray(new String[0]);
+        terms = mergedTerms.toArray(new String[0]);
+        frequencies = mergedFrequencies.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private String desensitize(String term) {
+        return sensitive ? term : StringUtil.stripAccents(term).toLowerCase();
+    }
+
+    /**
+     * Find terms starting with a prefix.
+     *
+     * @param prefix prefix to look for (null or empty for all terms)
+     * @param maxResults maximum number of results to return, or -1 for all
+     * @param byFrequency if true, return the most frequent terms first; otherwise, sort alphabetically
+     * @return matching terms
+     */
+    public List<String> find(String prefix, int maxResults, boolean byFrequency) {
+        int[] found = findIndexes(prefix, maxResults, byFrequency);
+        List<String> results = new ArrayList<>(found.length);
+        for (int i: found)
+            results.add(terms[i]);
+        return results;
+    }
+
+    /**
+     * Get the corpus frequency of a term.
+     *
+     * @param term term (desensitized according to this index's sensitivity)
+     * @return frequency, or 0 if not found
+     */
+    public long frequency(String term) {
+        int i = Arrays.binarySearch(keys, desensitize(term));
+        return i < 0 ? 0 : frequencies[i];
+    }
+
+    private int[] findIndexes(String prefix, int maxResults, boolean byFrequency) {
+        String key = prefix == null ? "" : desensitize(prefix);
+        int start = lowerBound(key);
+        int end = key.isEmpty() ? keys.length : lowerBound(successor(key));
+        int rangeSize = end - start;
+        if (maxResults < 0 || maxResults > rangeSize)
+            maxResults = rangeSize;
+        if (!byFrequency || maxResults == rangeSize) {
+            int[] result = new int[maxResults];
+            for (int i = 0; i < maxResults; i++)
+                result[i] = start + i;
+            if (byFrequency)
+                sortByFrequency(result);
+            return result;
+        }
+        if (rangeSize < CACHE_RESULTS_FOR_RANGE_SIZE || maxResults > MAX_CACHED_RESULTS)
+            return mostFrequent(start, end, maxResults);
+        int[] cached = topResultsCache.computeIfAbsent(key, k -> mostFrequent(start, end, MAX_CACHED_RESULTS));
+        return Arrays.copyOf(cached, maxResults);
+    }
+
+    /** Find the most frequent keys in a range, most frequent first. */
+    private int[] mostFrequent(int start, int end, int number) {
+        PriorityQueue<Integer> heap = new PriorityQueue<>(number + 1, Comparator.comparingLong(i -> frequencies[i]));
+        for (int i = start; i < end; i++) {
+            if (heap.size() < number) {
+                heap.add(i);
+            } else if (frequencies[i] > frequencies[heap.peek()]) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        int[] result = new int[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--)
+            result[i] = heap.poll();
+        return result;
+    }
+
+    private void sortByFrequency(int[] result) {
+        Integer[] boxed = Arrays.stream(result).boxed().toArray(Integer[]::new);
+        Arrays.sort(boxed, Comparator.comparingLong((Integer i) -> frequencies[i]).reversed());
+        for (int i = 0; i < result.length; i++)
+            result[i] = boxed[i];
+    }
+
+    /** Index of the first key that is greater than or equal to the given string. */
+    private int lowerBound(String key) {
+        int i = Arrays.binarySearch(keys, key);
+        return i < 0 ? -i - 1 : i;
+    }
+
+    /** Smallest string greater than all strings starting with the given prefix. */
+    private static String successor(String prefix) {
+        int i = prefix.length() - 1;
+        while (i >= 0 && prefix.charAt(i) == Character.MAX_VALUE)
+            i--;
+        if (i < 0)
+            return prefix + Character.MAX_VALUE; // (can't happen in practice)
+        return prefix.substring(0, i) + (char) (prefix.charAt(i) + 1);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+}
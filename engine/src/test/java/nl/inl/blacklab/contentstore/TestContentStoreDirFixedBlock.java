@@ -23,15 +23,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
 import nl.inl.util.UtilsForTesting;
+import nl.inl.util.VersionFile;
 
 public class TestContentStoreDirFixedBlock {
 
@@ -111,6 +116,36 @@ public class TestContentStoreDirFixedBlock {
         Assert.assertEquals(doc[1].substring(15, 18), parts[1]);
     }
 
+    @Test
+    public void testRetrievePartsConcurrently() throws InterruptedException {
+        ensureMode(false);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Random random = new Random(t);
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        int key = random.nextInt(doc.length);
+                        int start = random.nextInt(doc[key].length() - 10);
+                        int end = start + 1 + random.nextInt(doc[key].length() - start - 1);
+                        Assert.assertEquals(doc[key].substring(start, end), store.retrievePart(key + 1, start, end));
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        Assert.assertEquals(new ArrayList<Throwable>(), errors);
+    }
+
     @Test
     public void testDelete() {
         store.delete(2);
@@ -221,12 +256,166 @@ public class TestContentStoreDirFixedBlock {
         }
     }
 
+    @Test
+    public void testStoreConcurrently() throws InterruptedException {
+        // Each thread stores every document a number of times; afterwards, check each id
+        int timesPerThread = 5;
+        Map<Integer, String> stored = new HashMap<>();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < timesPerThread * doc.length; i++) {
+                        String docContents = doc[i % doc.length];
+                        int key = store.store(docContents);
+                        synchronized (stored) {
+                            Assert.assertNull(stored.put(key, docContents));
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        Assert.assertEquals(new ArrayList<Throwable>(), errors);
+        ensureMode(false);
+        for (Map.Entry<Integer, String> e: stored.entrySet()) {
+            Assert.assertEquals(e.getValue(), store.retrieve(e.getKey()));
+        }
+    }
+
+    @Test
+    public void testCodec() throws ErrorOpeningIndex {
+        // Existing stores without a codec in the version file use the default
+        Assert.assertEquals(ContentStoreFixedBlock.DEFLATE, ((ContentStoreFixedBlock) store).codec());
+
+        File fastDir = UtilsForTesting.createBlackLabTestDir("ContentStoreDirFast");
+        ContentStore fast = ContentStore.open(fastDir, true, true, ContentStoreFixedBlock.DEFLATE_FAST.name());
+        try {
+            for (String d: doc)
+                fast.store(d);
+        } finally {
+            fast.close();
+        }
+        Assert.assertEquals(ContentStoreFixedBlock.DEFLATE_FAST.name(), VersionFile.read(fastDir, null, null).getCodec());
+
+        // Both the reader and the writer use the codec recorded in the version file
+        fast = ContentStore.open(fastDir, true, false);
+        try {
+            Assert.assertEquals(ContentStoreFixedBlock.DEFLATE_FAST, ((ContentStoreFixedBlock) fast).codec());
+            fast.store(doc[1]);
+        } finally {
+            fast.close();
+        }
+        fast = ContentStore.open(fastDir, false, false);
+        try {
+            Assert.assertEquals(ContentStoreFixedBlock.DEFLATE_FAST, ((ContentStoreFixedBlock) fast).codec());
+            for (int i = 0; i < doc.length; i++)
+                Assert.assertEquals(doc[i], fast.retrieve(i + 1));
+            Assert.assertEquals(doc[1], fast.retrieve(doc.length + 1));
+        } finally {
+            fast.close();
+        }
+    }
+
+    /** Deflate under another name, pretending older readers can't decode it */
+    private static final BlockCodec INCOMPATIBLE = new BlockCodec() {
+        @Override
+        public String name() {
+            return "test-incompatible";
+        }
+
+        @Override
+        public Encoder createEncoder() {
+            return ContentStoreFixedBlock.DEFLATE.createEncoder();
+        }
+
+        @Override
+        public Decoder createDecoder() {
+            return ContentStoreFixedBlock.DEFLATE.createDecoder();
+        }
+    };
+
+    @Test
+    public void testIncompatibleCodecVersion() throws ErrorOpeningIndex {
+        // Deflate-compatible stores keep the old version, so older readers can still open them
+        Assert.assertEquals(ContentStoreFixedBlock.DEFLATE_COMPATIBLE_VERSION, VersionFile.read(dir, null, null).getVersion());
+
+        ContentStoreFixedBlock.registerCodec(INCOMPATIBLE);
+        File incompatibleDir = UtilsForTesting.createBlackLabTestDir("ContentStoreDirIncompatible");
+        ContentStore incompatible = ContentStore.open(incompatibleDir, true, true, INCOMPATIBLE.name());
+        try {
+            incompatible.store(doc[0]);
+        } finally {
+            incompatible.close();
+        }
+        Assert.assertEquals(ContentStoreFixedBlock.CURRENT_VERSION, VersionFile.read(incompatibleDir, null, null).getVersion());
+        incompatible = ContentStore.open(incompatibleDir, false, false);
+        try {
+            Assert.assertEquals(doc[0], incompatible.retrieve(1));
+        } finally {
+            incompatible.close();
+        }
+
+        // A codec that isn't deflate-compatible under the old version means the version file is wrong
+        VersionFile.write(incompatibleDir, ContentStoreFixedBlock.CONTENT_STORE_TYPE_NAME,
+                ContentStoreFixedBlock.DEFLATE_COMPATIBLE_VERSION, INCOMPATIBLE.name());
+        try {
+            ContentStore.open(incompatibleDir, false, false);
+            Assert.fail("Expected ErrorOpeningIndex");
+        } catch (ErrorOpeningIndex e) {
+            // expected
+        }
+    }
+
+    @Test(expected = ErrorOpeningIndex.class)
+    public void testUnknownVersion() throws ErrorOpeningIndex {
+        store.close();
+        store = null;
+        VersionFile.write(dir, ContentStoreFixedBlock.CONTENT_STORE_TYPE_NAME, "999", null);
+        ContentStore.open(dir, false, false);
+    }
+
+    @Test(expected = ErrorOpeningIndex.class)
+    public void testUnknownCodec() throws ErrorOpeningIndex {
+        ContentStore.open(UtilsForTesting.createBlackLabTestDir("ContentStoreDirUnknown"), true, true, "unknown");
+    }
+
     @Test
     public void testCloseReopen() {
         ensureMode(false);
         Assert.assertEquals(doc[0], store.retrieve(1));
     }
 
+    @Test
+    public void testBlockCacheMetricsRemovedOnClose() throws ErrorOpeningIndex {
+        ensureMode(false);
+        store.retrieve(1);
+        Assert.assertFalse(blockCacheMeters().isEmpty());
+        int metersWhileOpen = blockCacheMeters().size();
+
+        // Reopening the store shouldn't add meters or keep the old ones around
+        store.close();
+        Assert.assertTrue(blockCacheMeters().isEmpty());
+        store = new ContentStoreFixedBlockReader(dir);
+        Assert.assertEquals(metersWhileOpen, blockCacheMeters().size());
+        Assert.assertEquals(doc[0], store.retrieve(1));
+    }
+
+    private List<Meter> blockCacheMeters() {
+        return Metrics.globalRegistry.getMeters().stream()
+                .filter(m -> dir.getPath().equals(m.getId().getTag("store")))
+                .collect(Collectors.toList());
+    }
+
     @Test
     public void testCloseReopenAppend() {
         Assert.assertEquals(5, store.store("test"));
@@ -45,7 +45,8 @@ public class TestForwardIndexDelete {
         // Create new test dir
         dir = UtilsForTesting.createBlackLabTestDir("ForwardIndexDelete");
 
-        fi = new AnnotationForwardIndexWriter(null, dir, Collators.defaultCollator(), true);
+        // (unpacked, so gap sizes in words equal document lengths in tokens)
+        fi = new AnnotationForwardIndexWriter(null, dir, Collators.defaultCollator(), true, false);
         // Store strings
         List<Integer> toDelete = new ArrayList<>();
         for (int j = 0; j < docLengths.length; j++) {
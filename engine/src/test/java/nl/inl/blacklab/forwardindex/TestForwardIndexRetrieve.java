@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2012 Institute for Dutch Lexicology
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package nl.inl.blacklab.forwardindex;
+
+import java.io.File;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.util.UtilsForTesting;
+
+public class TestForwardIndexRetrieve {
+    private AnnotationForwardIndex fi;
+
+    private int oldChunkSize;
+
+    // Lengths of documents to add to forward index
+    private final int[] docLengths = { 5, 9, 7, 10, 3, 8 };
+
+    @Before
+    public void setUpForwardIndex() {
+        // Use tiny chunks so the tokens file is mapped in several parts
+        oldChunkSize = AnnotationForwardIndex.preferredChunkSizeBytes;
+        AnnotationForwardIndex.preferredChunkSizeBytes = 16 * AnnotationForwardIndex.SIZEOF_INT;
+
+        // Remove any previously left over temp test dirs
+        UtilsForTesting.removeBlackLabTestDirs();
+
+        // Create new test dir
+        File dir = UtilsForTesting.createBlackLabTestDir("ForwardIndexRetrieve");
+
+        fi = AnnotationForwardIndex.open(dir, true, Collator.getInstance(), true, null, true);
+        try {
+            // Store documents: token i of document d is the term "d-i"
+            for (int d = 0; d < docLengths.length; d++) {
+                List<String> content = new ArrayList<>();
+                for (int i = 0; i < docLengths[d]; i++) {
+                    content.add(d + "-" + i);
+                }
+                Assert.assertEquals(d, fi.addDocument(content));
+            }
+        } finally {
+            fi.close(); // close so everything is guaranteed to be written
+        }
+        fi = AnnotationForwardIndex.open(dir, false, Collator.getInstance(), false, null, true);
+    }
+
+    @After
+    public void tearDown() {
+        AnnotationForwardIndex.preferredChunkSizeBytes = oldChunkSize;
+        if (fi != null)
+            fi.close();
+        // Try to remove (some files may be locked though)
+        UtilsForTesting.removeBlackLabTestDirs();
+    }
+
+    private void assertPart(int fiid, int start, int[] part) {
+        for (int i = 0; i < part.length; i++) {
+            Assert.assertEquals(fiid + "-" + (start + i), fi.terms().get(part[i]));
+        }
+    }
+
+    @Test
+    public void testRetrieveParts() {
+        for (int d = 0; d < docLengths.length; d++) {
+            List<int[]> parts = fi.retrievePartsInt(d, new int[] { -1, 1 }, new int[] { -1, 3 });
+            Assert.assertEquals(docLengths[d], parts.get(0).length);
+            assertPart(d, 0, parts.get(0));
+            Assert.assertEquals(2, parts.get(1).length);
+            assertPart(d, 1, parts.get(1));
+        }
+    }
+
+    @Test
+    public void testRetrievePartsMultipleDocs() {
+        int[] fiids = { 3, 0, 5, 3 };
+        int[] starts = { 2, 0, 4, 8 };
+        int[] ends = { 6, 2, 100, 10 };
+        List<int[]> parts = fi.retrievePartsInt(fiids, starts, ends);
+        Assert.assertEquals(fiids.length, parts.size());
+        for (int i = 0; i < fiids.length; i++) {
+            int expectedLength = Math.min(ends[i], docLengths[fiids[i]]) - starts[i];
+            Assert.assertEquals(expectedLength, parts.get(i).length);
+            assertPart(fiids[i], starts[i], parts.get(i));
+        }
+    }
+
+    @Test
+    public void testGetToken() {
+        for (int d = 0; d < docLengths.length; d++) {
+            for (int i = 0; i < docLengths[d]; i++) {
+                Assert.assertEquals(d + "-" + i, fi.terms().get(fi.getToken(d, i)));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPackedTokens {
+
+    @Test
+    public void testBitsNeeded() {
+        Assert.assertEquals(1, PackedTokens.bitsNeeded(0));
+        Assert.assertEquals(1, PackedTokens.bitsNeeded(1));
+        Assert.assertEquals(2, PackedTokens.bitsNeeded(2));
+        Assert.assertEquals(8, PackedTokens.bitsNeeded(255));
+        Assert.assertEquals(9, PackedTokens.bitsNeeded(256));
+        Assert.assertEquals(31, PackedTokens.bitsNeeded(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testPackUnpack() {
+        Random random = new Random(123);
+        for (int bits = 1; bits <= 32; bits++) {
+            int[] tokenIds = new int[101];
+            for (int i = 0; i < tokenIds.length; i++) {
+                tokenIds[i] = random.nextInt() >>> (32 - bits);
+            }
+            int[] words = PackedTokens.pack(tokenIds, bits);
+            Assert.assertEquals(PackedTokens.numberOfWords(tokenIds.length, bits), words.length);
+            IntBuffer ib = IntBuffer.wrap(words);
+
+            // Whole document
+            int[] unpacked = new int[tokenIds.length];
+            PackedTokens.unpack(ib, 0, bits, unpacked);
+            Assert.assertArrayEquals(tokenIds, unpacked);
+
+            // Part of the document, and single tokens
+            int[] part = new int[50];
+            PackedTokens.unpack(ib, 17L * bits, bits, part);
+            for (int i = 0; i < part.length; i++) {
+                Assert.assertEquals(tokenIds[17 + i], part[i]);
+                Assert.assertEquals(tokenIds[17 + i], PackedTokens.get(ib, (17L + i) * bits, bits));
+            }
+        }
+    }
+
+}
@@ -27,6 +27,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.text.Collator;
+import java.util.BitSet;
 import java.util.Locale;
 
 public class TestTerms {
@@ -138,4 +139,103 @@ public class TestTerms {
             Assert.assertEquals(expected[i], results.intIterator().next());
         }
     }
+
+    /**
+     * Test if the terms matching a predicate are found correctly.
+     */
+    @Test
+    public void testIndexOfMatching() {
+        BitSet expected = new BitSet();
+        expected.set(2); // brown
+        expected.set(3); // fox
+        expected.set(5); // over
+        expected.set(7); // dog
+        for (MatchSensitivity sensitivity: MatchSensitivity.values()) {
+            BitSet results = new BitSet();
+            t.indexOf(results, term -> term.contains("o"), sensitivity);
+            Assert.assertEquals(expected, results);
+        }
+    }
+
+    /**
+     * Test that terms the collator considers equal, but that desensitize
+     * differently, are each tested against the predicate.
+     */
+    @Test
+    public void testIndexOfMatchingDifferentForms() {
+        Collator coll = Collator.getInstance(new Locale("en", "GB"));
+        Collators colls = new Collators(coll, CollatorVersion.V2);
+        Terms terms = Terms.openForWriting(colls, null);
+        // The first-indexed term of each group doesn't match
+        String[] input = { "straße", "strasse", "æon", "aeon", "Straße" };
+        for (String term: input)
+            terms.indexOf(term);
+        File f = new File(dir, "terms-forms.dat");
+        terms.write(f);
+        terms = Terms.openForReading(colls, f, true);
+
+        // Make sure these terms really are in the same insensitive group
+        MutableIntSet group = new IntHashSet();
+        terms.indexOf(group, "strasse", MatchSensitivity.INSENSITIVE);
+        Assert.assertEquals(3, group.size());
+
+        BitSet expected = new BitSet();
+        expected.set(1); // strasse
+        expected.set(3); // aeon
+        BitSet results = new BitSet();
+        terms.indexOf(results, term -> MatchSensitivity.INSENSITIVE.desensitize(term).matches("stras+e|ae.*"),
+                MatchSensitivity.INSENSITIVE);
+        Assert.assertEquals(expected, results);
+
+        // Terms that desensitize to the same string still match as a group
+        expected.clear();
+        expected.set(0); // straße
+        expected.set(4); // Straße
+        results.clear();
+        terms.indexOf(results, term -> MatchSensitivity.INSENSITIVE.desensitize(term).equals("straße"),
+                MatchSensitivity.INSENSITIVE);
+        Assert.assertEquals(expected, results);
+    }
+
+    /**
+     * Test that terms get consistent ids when indexed from several threads.
+     */
+    @Test
+    public void testIndexOfConcurrent() throws InterruptedException {
+        Collators colls = new Collators(Collator.getInstance(new Locale("en", "GB")), CollatorVersion.V2);
+        Terms terms = Terms.openForWriting(colls, null);
+        int numberOfThreads = 4;
+        int[][] ids = new int[numberOfThreads][1000];
+        Thread[] threads = new Thread[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++) {
+            int[] threadIds = ids[i];
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < threadIds.length; j++)
+                    threadIds[j] = terms.indexOf("term" + j);
+            });
+            threads[i].start();
+        }
+        for (Thread thread: threads)
+            thread.join();
+        BitSet seen = new BitSet();
+        for (int j = 0; j < 1000; j++) {
+            for (int i = 1; i < numberOfThreads; i++)
+                Assert.assertEquals(ids[0][j], ids[i][j]);
+            seen.set(ids[0][j]);
+        }
+        Assert.assertEquals(1000, seen.cardinality());
+        Assert.assertEquals(1000, seen.length()); // ids 0-999
+    }
+
+    /**
+     * Test that terms that are equal according to the collator get the same id.
+     */
+    @Test
+    public void testIndexOfCollatorEqual() {
+        Collators colls = new Collators(Collator.getInstance(new Locale("en", "GB")), CollatorVersion.V2);
+        Terms terms = Terms.openForWriting(colls, null);
+        int id = terms.indexOf("fox");
+        Assert.assertEquals(id, terms.indexOf("fo\u200Bx")); // zero-width space is ignored by the collator
+        Assert.assertNotEquals(id, terms.indexOf("Fox"));
+    }
 }
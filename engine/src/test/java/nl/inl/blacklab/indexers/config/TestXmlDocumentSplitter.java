@@ -0,0 +1,104 @@
+package nl.inl.blacklab.indexers.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ximpleware.VTDGen;
+
+import nl.inl.blacklab.exceptions.MalformedInputFile;
+
+public class TestXmlDocumentSplitter {
+
+    private static List<String> split(String xml, String documentPath, Map<String, String> namespaces)
+            throws IOException {
+        List<String> result = new ArrayList<>();
+        byte[] input = xml.getBytes(StandardCharsets.UTF_8);
+        try (XmlDocumentSplitter splitter = new XmlDocumentSplitter(new ByteArrayInputStream(input), documentPath,
+                namespaces)) {
+            byte[] document;
+            while ((document = splitter.nextDocument()) != null) {
+                // Each part should be well-formed on its own
+                VTDGen vg = new VTDGen();
+                vg.setDoc(document);
+                try {
+                    vg.parse(namespaces != null);
+                } catch (Exception e) {
+                    Assert.fail("Not well-formed: " + new String(document, StandardCharsets.UTF_8));
+                }
+                result.add(new String(document, StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testCanSplit() {
+        Assert.assertTrue(XmlDocumentSplitter.canSplit("//doc", null));
+        Assert.assertTrue(XmlDocumentSplitter.canSplit("/corpus/doc", null));
+        Assert.assertTrue(XmlDocumentSplitter.canSplit("//tei:TEI", null));
+        Assert.assertTrue(XmlDocumentSplitter.canSplit("//tei:TEI", Collections.singletonMap("tei", "urn:tei")));
+        Assert.assertFalse(XmlDocumentSplitter.canSplit("//tei:TEI", Collections.singletonMap("x", "urn:x")));
+        Assert.assertFalse(XmlDocumentSplitter.canSplit("//doc[@id]", null));
+        Assert.assertFalse(XmlDocumentSplitter.canSplit("//*", null));
+        Assert.assertFalse(XmlDocumentSplitter.canSplit("/corpus//doc", null));
+        Assert.assertFalse(XmlDocumentSplitter.canSplit("doc", null));
+    }
+
+    @Test
+    public void testSplit() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                + "<!DOCTYPE corpus [ <!ELEMENT corpus ANY> ]>\n"
+                + "<corpus name='c'>\n"
+                + "  <!-- <doc>commented out</doc> -->\n"
+                + "  <doc id=\"1\"><w>a</w> <![CDATA[</doc> <doc>]]]]><![CDATA[>]]></doc>\n"
+                + "  <?pi <doc>?>\n"
+                + "  <doc id='2' note=\"a > b\"/>\n"
+                + "  <group><doc id='3'><doc id='nested'>x</doc></doc></group>\n"
+                + "</corpus>\n";
+        List<String> expected = Arrays.asList(
+                "<?xml version=\"1.0\" encoding=\"utf-8\"?><corpus name='c'><doc id=\"1\"><w>a</w> <![CDATA[</doc> <doc>]]]]><![CDATA[>]]></doc></corpus>",
+                "<?xml version=\"1.0\" encoding=\"utf-8\"?><corpus name='c'><doc id='2' note=\"a > b\"/></corpus>",
+                "<?xml version=\"1.0\" encoding=\"utf-8\"?><corpus name='c'><group><doc id='3'><doc id='nested'>x</doc></doc></group></corpus>");
+        Assert.assertEquals(expected, split(xml, "//doc", null));
+
+        // Absolute path only matches documents directly under corpus
+        Assert.assertEquals(expected.subList(0, 2), split(xml, "/corpus/doc", null));
+    }
+
+    @Test
+    public void testNamespaces() throws IOException {
+        String xml = "<teiCorpus xmlns='urn:tei' xmlns:o='urn:other'>"
+                + "<TEI n='1'/><o:TEI n='2'/><x:TEI xmlns:x='urn:tei' n='3'/>"
+                + "</teiCorpus>";
+        List<String> expected = Arrays.asList(
+                "<teiCorpus xmlns='urn:tei' xmlns:o='urn:other'><TEI n='1'/></teiCorpus>",
+                "<teiCorpus xmlns='urn:tei' xmlns:o='urn:other'><x:TEI xmlns:x='urn:tei' n='3'/></teiCorpus>");
+        Assert.assertEquals(expected, split(xml, "//tei:TEI", Collections.singletonMap("tei", "urn:tei")));
+
+        // Not namespace-aware: prefixes must match exactly
+        Assert.assertEquals(1, split(xml, "//o:TEI", null).size());
+    }
+
+    @Test
+    public void testUnsplittableEncoding() throws IOException {
+        byte[] input = "<corpus><doc/><doc/></corpus>".getBytes(StandardCharsets.UTF_16);
+        try (XmlDocumentSplitter splitter = new XmlDocumentSplitter(new ByteArrayInputStream(input), "//doc", null)) {
+            Assert.assertArrayEquals(input, splitter.nextDocument());
+            Assert.assertNull(splitter.nextDocument());
+        }
+    }
+
+    @Test(expected = MalformedInputFile.class)
+    public void testTruncated() throws IOException {
+        split("<corpus><doc><w>a</w>", "//doc", null);
+    }
+}
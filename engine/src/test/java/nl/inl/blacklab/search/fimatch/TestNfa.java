@@ -9,8 +9,10 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.function.Predicate;
 
 public class TestNfa {
 
@@ -30,6 +32,17 @@ public class TestNfa {
             results.add(annotValue.charAt(0));
         }
 
+        @Override
+        public void getTermNumbers(BitSet results, int annotNumber, Predicate<String> matches,
+                MatchSensitivity sensitivity) {
+            if (annotNumber != 0)
+                throw new BlackLabRuntimeException("only 0 is valid annotation");
+            for (char c = 'a'; c <= 'z'; c++) {
+                if (matches.test(Character.toString(c)))
+                    results.set(c);
+            }
+        }
+
         @Override
         public int getAnnotationNumber(String annotName) {
             if (!annotName.equals("word"))
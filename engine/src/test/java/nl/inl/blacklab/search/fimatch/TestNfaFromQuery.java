@@ -1,12 +1,14 @@
 package nl.inl.blacklab.search.fimatch;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.Predicate;
 
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.Term;
@@ -75,6 +77,17 @@ public class TestNfaFromQuery {
             }
         }
 
+        @Override
+        public void getTermNumbers(BitSet results, int annotNumber, Predicate<String> matches,
+                MatchSensitivity sensitivity) {
+            if (annotNumber != 0)
+                throw new IllegalArgumentException("Unknown annotation " + annotNumber);
+            for (Entry<String, Integer> e : terms.entrySet()) {
+                if (matches.test(e.getKey()))
+                    results.set(e.getValue());
+            }
+        }
+
         @Override
         public int numberOfAnnotations() {
             return 1;
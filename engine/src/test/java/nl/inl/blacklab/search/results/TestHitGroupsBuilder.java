@@ -0,0 +1,156 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.PropertyValueInt;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+
+public class TestHitGroupsBuilder {
+
+    private static final int NUMBER_OF_HITS = 1000;
+
+    private static ExecutorService executorService;
+
+    @BeforeClass
+    public static void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Groups hits on start position modulo a number.
+     *
+     * Has a group key for every value except one, and records which threads call get().
+     */
+    private static class HitPropertyStartModulo extends HitProperty {
+
+        private final HitsArrays hitsArrays;
+
+        private final int modulo;
+
+        private final int valueWithoutKey;
+
+        final Set<Thread> threadsCallingGet = ConcurrentHashMap.newKeySet();
+
+        HitPropertyStartModulo(HitsArrays hitsArrays, int modulo, int valueWithoutKey) {
+            this.hitsArrays = hitsArrays;
+            this.modulo = modulo;
+            this.valueWithoutKey = valueWithoutKey;
+        }
+
+        private int value(int hitIndex) {
+            return hitsArrays.start(hitIndex) % modulo;
+        }
+
+        @Override
+        public PropertyValueInt get(int hitIndex) {
+            threadsCallingGet.add(Thread.currentThread());
+            return new PropertyValueInt(value(hitIndex));
+        }
+
+        @Override
+        public long groupKey(int hitIndex) {
+            int value = value(hitIndex);
+            return value == valueWithoutKey ? NO_GROUP_KEY : value;
+        }
+
+        @Override
+        public int compare(int indexA, int indexB) {
+            return Integer.compare(value(indexA), value(indexB));
+        }
+
+        @Override
+        public HitProperty copyWith(Hits newHits, Contexts contexts, boolean invert) {
+            return this;
+        }
+
+        @Override
+        public ContextSize needsContextSize(BlackLabIndex index) {
+            return null;
+        }
+
+        @Override
+        public String name() {
+            return "start modulo " + modulo;
+        }
+
+        @Override
+        public String serialize() {
+            return "startmodulo" + modulo;
+        }
+
+        @Override
+        public boolean isDocPropOrHitText() {
+            return false;
+        }
+    }
+
+    private static HitsArrays hits() {
+        HitsArrays hits = new HitsArrays();
+        for (int i = 0; i < NUMBER_OF_HITS; i++)
+            hits.add(i / 10, i, i + 1, i);
+        return hits;
+    }
+
+    private static List<HitGroupsBuilder.Group> group(HitsArrays hits, HitProperty criteria, int maxThreads) {
+        // Use small ranges, so we actually group in parallel
+        return new HitGroupsBuilder(hits, criteria, 5, 10).group(executorService, maxThreads);
+    }
+
+    private static void assertSameGroups(List<HitGroupsBuilder.Group> expected, List<HitGroupsBuilder.Group> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            HitGroupsBuilder.Group e = expected.get(i), a = actual.get(i);
+            Assert.assertEquals(e.identity(), a.identity());
+            Assert.assertEquals(e.size(), a.size());
+            Assert.assertEquals(e.storedHits().size(), a.storedHits().size());
+            for (int j = 0; j < e.storedHits().size(); j++)
+                Assert.assertEquals(e.storedHits().start(j), a.storedHits().start(j));
+        }
+    }
+
+    @Test
+    public void testParallelSameAsSequential() {
+        HitsArrays hits = hits();
+        HitPropertyStartModulo criteria = new HitPropertyStartModulo(hits, 7, -1);
+        List<HitGroupsBuilder.Group> expected = group(hits, criteria, 1);
+        Assert.assertEquals(7, expected.size());
+        Assert.assertEquals(new PropertyValueInt(0), expected.get(0).identity());
+        Assert.assertEquals(143, expected.get(0).size());
+        Assert.assertEquals(5, expected.get(0).storedHits().size());
+        Assert.assertEquals(7, expected.get(0).storedHits().start(1));
+
+        criteria.threadsCallingGet.clear();
+        assertSameGroups(expected, group(hits, criteria, 4));
+        // Identities are only determined at the end, on this thread
+        Assert.assertEquals(Set.of(Thread.currentThread()), criteria.threadsCallingGet);
+    }
+
+    @Test
+    public void testFallBackWithoutGroupKey() {
+        HitsArrays hits = hits();
+        // The first hit has a group key, but later hits (value 5) don't
+        HitPropertyStartModulo criteria = new HitPropertyStartModulo(hits, 7, 5);
+        List<HitGroupsBuilder.Group> expected = group(hits, criteria, 1);
+
+        criteria.threadsCallingGet.clear();
+        assertSameGroups(expected, group(hits, criteria, 4));
+        // get() must never be called from multiple threads
+        Assert.assertEquals(Set.of(Thread.currentThread()), criteria.threadsCallingGet);
+    }
+}
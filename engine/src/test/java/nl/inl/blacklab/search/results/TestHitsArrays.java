@@ -0,0 +1,147 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.search.results.Hits.EphemeralHit;
+import nl.inl.blacklab.search.results.Hits.HitsArrays;
+
+public class TestHitsArrays {
+
+    @Test
+    public void testAddAndGet() {
+        HitsArrays hits = new HitsArrays();
+        int n = 10_000; // spans many chunks
+        for (int i = 0; i < n; i++)
+            hits.add(i, i + 1, i + 2, i + 3);
+        Assert.assertEquals(n, hits.size());
+        EphemeralHit hit = new EphemeralHit();
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(i, hits.doc(i));
+            Assert.assertEquals(i + 1, hits.start(i));
+            Assert.assertEquals(i + 2, hits.end(i));
+            Assert.assertEquals(i + 3, hits.indexInResultSet(i));
+            hits.getEphemeral(i, hit);
+            Assert.assertEquals(i, hit.doc);
+        }
+
+        // Copying crosses chunk boundaries at different offsets
+        HitsArrays copy = new HitsArrays();
+        copy.add(-1, -1, -1, -1);
+        copy.addAll(hits);
+        Assert.assertEquals(n + 1, copy.size());
+        for (int i = 0; i < n; i++)
+            Assert.assertEquals(i + 1, copy.start(i + 1));
+    }
+
+    @Test
+    public void testConcurrentAddAll() throws InterruptedException {
+        HitsArrays hits = new HitsArrays();
+        int threads = 4, batches = 200, batchSize = 37;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(new Thread(() -> {
+                HitsArrays batch = new HitsArrays();
+                for (int b = 0; b < batches; b++) {
+                    for (int i = 0; i < batchSize; i++)
+                        batch.add(thread, b, i, 0);
+                    hits.addAll(batch);
+                    batch.clear();
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer: writers)
+            writer.join();
+
+        // All hits are there, and each batch is contiguous
+        Assert.assertEquals(threads * batches * batchSize, hits.size());
+        for (int i = 0; i < hits.size(); i += batchSize) {
+            for (int j = 0; j < batchSize; j++) {
+                Assert.assertEquals(hits.doc(i), hits.doc(i + j));
+                Assert.assertEquals(hits.start(i), hits.start(i + j));
+                Assert.assertEquals(j, hits.end(i + j));
+            }
+        }
+    }
+
+    @Test
+    public void testFailedWrite() {
+        HitsArrays hits = new HitsArrays();
+        hits.add(1, 2, 3, 0);
+        try {
+            // (the null hit makes the write fail halfway)
+            hits.addAll(Arrays.asList(Hit.create(4, 5, 6, 1), null));
+            Assert.fail("Expected write to fail");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        try {
+            hits.add(7, 8, 9, 0);
+            Assert.fail("Expected adding after a failed write to fail");
+        } catch (BlackLabRuntimeException e) {
+            // expected
+        }
+        // Hits before the failed write are still there, the partially written ones aren't
+        Assert.assertEquals(1, hits.size());
+        Assert.assertEquals(2, hits.start(0));
+    }
+
+    @Test(timeout = 10_000)
+    public void testFailedWriteWhileOthersWait() throws InterruptedException {
+        HitsArrays hits = new HitsArrays();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        List<Hit> failingHits = new AbstractList<Hit>() {
+            @Override
+            public Hit get(int index) {
+                writing.countDown();
+                try {
+                    fail.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("write failed");
+            }
+
+            @Override
+            public int size() {
+                return 1;
+            }
+        };
+        Thread failingWriter = new Thread(() -> {
+            try {
+                hits.addAll(failingHits);
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        });
+        failingWriter.start();
+        writing.await();
+
+        // This writer reserves its range after the failing one, so has to wait for it
+        AtomicReference<Throwable> waitingWriterError = new AtomicReference<>();
+        Thread waitingWriter = new Thread(() -> {
+            try {
+                hits.add(1, 2, 3, 0);
+            } catch (Throwable e) {
+                waitingWriterError.set(e);
+            }
+        });
+        waitingWriter.start();
+        fail.countDown();
+        failingWriter.join();
+        waitingWriter.join();
+        Assert.assertTrue(waitingWriterError.get() instanceof BlackLabRuntimeException);
+        Assert.assertEquals(0, hits.size());
+    }
+}
@@ -0,0 +1,32 @@
+package nl.inl.blacklab.search.results;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHitsFromQueryParallel {
+
+    @Test
+    public void testSplitSmallSegment() {
+        Assert.assertArrayEquals(new int[] { 0, 100 }, HitsFromQueryParallel.splitSegment(100, 10_000));
+        Assert.assertArrayEquals(new int[] { 0, 0 }, HitsFromQueryParallel.splitSegment(0, 10_000));
+    }
+
+    @Test
+    public void testSplitLargeSegment() {
+        Assert.assertArrayEquals(new int[] { 0, 10_000, 20_000, 30_000 }, HitsFromQueryParallel.splitSegment(30_000, 10_000));
+        // Ranges are of (roughly) equal size, without a small leftover range at the end
+        Assert.assertArrayEquals(new int[] { 0, 10_500, 21_000 }, HitsFromQueryParallel.splitSegment(21_000, 10_000));
+    }
+
+    @Test
+    public void testSplitCoversSegment() {
+        int maxDoc = 1_234_567;
+        int[] starts = HitsFromQueryParallel.splitSegment(maxDoc, 10_000);
+        Assert.assertEquals(0, starts[0]);
+        Assert.assertEquals(maxDoc, starts[starts.length - 1]);
+        for (int i = 1; i < starts.length; i++) {
+            int size = starts[i] - starts[i - 1];
+            Assert.assertTrue(size >= 9_000 && size <= 11_000);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.ints.IntComparator;
+
+public class TestParallelSort {
+
+    private static ExecutorService executorService;
+
+    @BeforeClass
+    public static void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private static int[] randomValues(int n, int maxValue) {
+        Random random = new Random(n);
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++)
+            values[i] = random.nextInt(maxValue);
+        return values;
+    }
+
+    @Test
+    public void testSortInts() {
+        for (int threads: new int[] { 1, 2, 3, 4, 7 }) {
+            for (int n: new int[] { 0, 1, 1000, 20_000, 54_321, 100_000 }) {
+                int[] values = randomValues(n, 1000);
+                // Sort indices by descending value, like HitsArrays.sort() does
+                int[] indices = new int[n];
+                for (int i = 0; i < n; i++)
+                    indices[i] = i;
+                IntComparator comparator = (a, b) -> Integer.compare(values[b], values[a]);
+                ParallelSort.sort(indices, comparator, executorService, threads);
+                for (int i = 1; i < n; i++)
+                    Assert.assertTrue(values[indices[i - 1]] >= values[indices[i]]);
+                int[] check = indices.clone();
+                Arrays.sort(check);
+                for (int i = 0; i < n; i++)
+                    Assert.assertEquals(i, check[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testSortObjectsStable() {
+        int n = 75_000;
+        int[] values = randomValues(n, 100);
+        Integer[] indices = new Integer[n];
+        for (int i = 0; i < n; i++)
+            indices[i] = i;
+        Integer[] expected = indices.clone();
+        Comparator<Integer> comparator = Comparator.comparingInt(i -> values[i]);
+        Arrays.sort(expected, comparator);
+        ParallelSort.sort(indices, comparator, executorService, 4);
+        Assert.assertArrayEquals(expected, indices);
+    }
+
+    @Test
+    public void testShouldSortInParallel() {
+        int threshold = ParallelSort.DEFAULT_THRESHOLD;
+        Assert.assertFalse(ParallelSort.shouldSortInParallel(threshold - 1, threshold, 4));
+        Assert.assertFalse(ParallelSort.shouldSortInParallel(threshold, threshold, 1));
+        Assert.assertTrue(ParallelSort.shouldSortInParallel(threshold, threshold, 4));
+        // Never sort tiny result sets in parallel, even with a low threshold
+        Assert.assertFalse(ParallelSort.shouldSortInParallel(100, 0, 4));
+    }
+}
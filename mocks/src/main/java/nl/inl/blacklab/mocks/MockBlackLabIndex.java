@@ -60,6 +60,11 @@ public class MockBlackLabIndex implements BlackLabIndex {
         blackLab.removeSearcher(this);
     }
 
+    @Override
+    public void initializeSnapshot() {
+        // nothing to initialize
+    }
+
     @Override
     public boolean isEmpty() {
         return false;
@@ -203,6 +208,16 @@ public class MockBlackLabIndex implements BlackLabIndex {
         return ContextSize.get(5);
     }
 
+    @Override
+    public void setParallelSortThreshold(int threshold) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int parallelSortThreshold() {
+        return ParallelSort.DEFAULT_THRESHOLD;
+    }
+
     @Override
     public boolean indexMode() {
         return false;
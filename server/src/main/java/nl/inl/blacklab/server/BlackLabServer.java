@@ -20,6 +20,7 @@ import nl.inl.blacklab.server.requesthandlers.Response;
 import nl.inl.blacklab.server.requesthandlers.SearchParameters;
 import nl.inl.blacklab.server.search.SearchManager;
 import nl.inl.blacklab.server.util.ServletUtil;
+import nl.inl.blacklab.server.util.StreamingResponseWriter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -274,8 +275,13 @@ public class BlackLabServer extends HttpServlet {
         String rootEl = requestHandler.omitBlackLabResponseRootElement() ? null : BLACKLAB_RESPONSE_ROOT_ELEMENT;
 
         // === Handle the request
-        StringWriter buf = new StringWriter();
-        PrintWriter out = new PrintWriter(buf);
+        // (response is buffered at first, but streamed to the client once it gets large)
+        final boolean jsonp = isJsonp;
+        final DataFormat contentType = outputType;
+        StreamingResponseWriter responseWriter = new StreamingResponseWriter(request, responseObject, OUTPUT_ENCODING,
+                StreamingResponseWriter.DEFAULT_BUFFER_SIZE,
+                status -> writeResponseHeaders(responseObject, status, jsonp, contentType, cacheTime));
+        PrintWriter out = new PrintWriter(responseWriter);
         DataStream ds = DataStream.create(outputType, out, prettyPrint, callbackFunction);
         ds.setOmitEmptyAnnotations(searchManager.config().getProtocol().isOmitEmptyProperties());
         ds.startDocument(rootEl);
@@ -309,10 +315,50 @@ public class BlackLabServer extends HttpServlet {
             }
         }
         ds.endDocument(rootEl);
+        out.flush();
+        errorOut.flush();
+
+        // === Write the rest of the response (and the headers, if we haven't started streaming yet)
+        boolean errorOccurred = errorBuf.getBuffer().length() > errorBufLengthBefore;
+        if (responseWriter.isCommitted()) {
+            if (errorOccurred || httpCode != responseWriter.getStatus()) {
+                // We've already sent part of the response, with a different status.
+                // All we can do now is mark the response as failed.
+                logger.error("Error after response was partially sent; appending error marker (status " + httpCode
+                        + "): " + errorBuf.getBuffer().substring(errorBufLengthBefore));
+                try {
+                    responseWriter.writeErrorMarker(httpCode);
+                } catch (IOException e) {
+                    logger.debug("(couldn't send error marker, client probably cancelled the request)");
+                }
+            }
+        } else {
+            responseWriter.setStatus(httpCode);
+            if (errorOccurred) {
+                // Send the error response instead
+                responseWriter.discardBuffer();
+                out.print(errorBuf.getBuffer());
+            }
+        }
+        out.close();
+        if (out.checkError()) {
+            // Client cancelled the request midway through.
+            // This is okay, don't raise the alarm.
+            logger.debug("(couldn't send response, client probably cancelled the request)");
+        }
+    }
 
-        // === Write the response headers
-
-        // Write HTTP headers (status code, encoding, content type and cache)
+    /**
+     * Write HTTP headers (status code, encoding, content type and cache).
+     *
+     * @param responseObject response to write the headers to
+     * @param httpCode HTTP status code
+     * @param isJsonp is this a JSONP request?
+     * @param outputType output format
+     * @param cacheTime how long the client may cache the response
+     */
+    private void writeResponseHeaders(HttpServletResponse responseObject, int httpCode, boolean isJsonp,
+            DataFormat outputType, int cacheTime) {
         if (!isJsonp) // JSONP request always returns 200 OK because otherwise script doesn't load
             responseObject.setStatus(httpCode);
         responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
@@ -321,20 +367,6 @@ public class BlackLabServer extends HttpServlet {
         if (allowOrigin != null)
             responseObject.addHeader("Access-Control-Allow-Origin", allowOrigin);
         ServletUtil.writeCacheHeaders(responseObject, cacheTime);
-
-        // === Write the response that was captured in buf
-        try {
-            Writer realOut = new OutputStreamWriter(responseObject.getOutputStream(), OUTPUT_ENCODING);
-            boolean errorOccurred = errorBuf.getBuffer().length() > errorBufLengthBefore;
-            StringWriter writeWhat = errorOccurred ? errorBuf : buf;
-            realOut.write(writeWhat.toString());
-            realOut.flush();
-        } catch (IOException e) {
-            // Client cancelled the request midway through.
-            // This is okay, don't raise the alarm.
-            logger.debug("(couldn't send response, client probably cancelled the request)");
-            return;
-        }
     }
 
     @Override
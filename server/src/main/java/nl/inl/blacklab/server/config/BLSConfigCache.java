@@ -2,8 +2,11 @@ package nl.inl.blacklab.server.config;
 
 public class BLSConfigCache {
 
-    @Deprecated
-    int maxSizeMegs = 100;
+    /**
+     * Maximum (estimated) size of the cache, used by ResultsCache. 0 disables the
+     * cache (like BlsCache); -1 only limits the number of cached results.
+     */
+    int maxSizeMegs = 500;
 
     @Deprecated
     int maxNumberOfJobs = 100;
@@ -24,12 +27,10 @@ public class BLSConfigCache {
 
     private String implementation = "";
 
-    @Deprecated
     public int getMaxSizeMegs() {
         return maxSizeMegs;
     }
 
-    @Deprecated
     public void setMaxSizeMegs(int maxSizeMegs) {
         this.maxSizeMegs = maxSizeMegs;
     }
@@ -18,6 +18,18 @@ public class DataStreamPlain extends DataStream {
         super(out, prettyPrint);
     }
 
+    /**
+     * Get the writer we write to.
+     *
+     * Useful for writing large amounts of plain output (e.g. CSV) directly,
+     * without building it in memory first.
+     *
+     * @return our writer
+     */
+    public PrintWriter getWriter() {
+        return out;
+    }
+
     @Override
     public DataStream startDocument(String rootEl) {
         return this;
@@ -17,6 +17,7 @@ import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
 import nl.inl.blacklab.exceptions.IndexTooOld;
 import nl.inl.blacklab.index.IndexListener;
@@ -88,10 +89,14 @@ public class Index {
     private SearchManager searchMan;
 
     /**
-     * Only one of these can be set at a time. The index is closed and cleared
-     * when an indexer is requested. Running searches are cancelled when this
-     * happens. The Indexer is cleared the first time a search is started after it
-     * the Indexer has finished indexing (meaning close() has been called on it). In
+     * The index we search, and the Indexer adding data to it, if any.
+     *
+     * While an Indexer is running, searches use a snapshot of the index as it
+     * was when the Indexer was requested (index is opened and fully initialized
+     * before the Indexer is created). The Indexer is cleared the first time the
+     * index is requested after the Indexer has finished indexing (meaning close()
+     * has been called on it); at that point the index is reopened to publish the
+     * new data, and only cached searches on the old snapshot are removed. In
      * addition, while an index is still running, no new Indexers can be created.
      */
     private BlackLabIndex index;
@@ -184,12 +189,12 @@ public class Index {
     }
 
     /**
-     * Get the current BlackLabIndex backing this Index. This is not available while this
-     * index is indexing new data.
+     * Get the current BlackLabIndex backing this Index. While this index is indexing
+     * new data, this is a snapshot of the index from before indexing started.
      *
      * @return the currently opened BlackLabIndex
      * @throws InternalServerError when there was an error opening this index
-     * @throws ServiceUnavailable when the index is in use.
+     * @throws ServiceUnavailable when the index is being indexed and no snapshot is available
      */
     // TODO index should not have references to it held for longer times outside of this class
     // (references should ideally never leave a synchronized(Index) block... [this might not be possible due to simultaneous searches]
@@ -239,8 +244,9 @@ public class Index {
 
     /**
      * Attempt to open this index in search mode. If this Index currently has an
-     * open Indexer, checks whether the Indexer has finished (i.e. Indexer.close()
-     * has been called), and cleans it up if so.
+     * open Indexer, we keep using the snapshot opened before indexing started. If
+     * the Indexer has finished (i.e. Indexer.close() has been called), we clean it
+     * up and reopen the index so the new data becomes searchable.
      *
      * @throws ServiceUnavailable if the index could not be opened due to currently
      *             ongoing indexing
@@ -248,6 +254,9 @@ public class Index {
      * @throws IndexTooOld if the index was too old to open by this version of BlackLab
      */
     private synchronized void openForSearching() throws ServiceUnavailable, InternalServerError, IndexTooOld {
+        if (this.indexer != null && this.indexer.isOpen() && this.index != null)
+            return; // still indexing; search the snapshot from before indexing started
+
         cleanupClosedIndexerOrThrow();
 
         if (this.index != null)
@@ -271,8 +280,8 @@ public class Index {
      * be/has been cleaned up, ServiceUnavailable will be thrown. It is up to the
      * user to close the returned Indexer.
      *
-     * Note that this will lock this index for searching until the Indexer has been
-     * closed again.
+     * Searches on this index will use a snapshot of the index from before indexing
+     * started until the Indexer has been closed again.
      *
      * @return the indexer
      * @throws InternalServerError when the index cannot be opened for some reason
@@ -281,10 +290,18 @@ public class Index {
      */
     public synchronized Indexer getIndexer() throws InternalServerError, ServiceUnavailable {
         cleanupClosedIndexerOrThrow();
-        close(); // Close any BlackLabIndex that is still in search mode
+        try {
+            // Make sure we have a fully initialized snapshot to search while we're indexing
+            openForSearching();
+            this.index.initializeSnapshot();
+        } catch (IndexTooOld | InternalServerError | BlackLabRuntimeException e) {
+            // Can't search this index while indexing; that's okay, searches will have to wait
+            closeSearchIndex();
+        }
         try {
             this.indexer = Indexer.openIndex(searchMan.blackLabInstance().openForWriting(this.dir, false), null);
             indexer.setNumberOfThreadsToUse(BlackLab.config().getIndexing().getNumberOfThreads());
+            indexer.setNumberOfWriteThreads(BlackLab.config().getIndexing().getNumberOfWriteThreads());
         } catch (Exception e) {
             throw new InternalServerError("Could not open index '" + id + "'", "INTERR_OPENING_INDEXWRITER", e);
         }
@@ -312,13 +329,7 @@ public class Index {
      * Has no effect if the index was already closed.
      */
     public synchronized void close() {
-        if (this.index != null) {
-//          searchMan.getCache().clearCacheForIndex(this.id);
-            searchMan.getBlackLabCache().removeSearchesForIndex(this.index);
-
-            this.index.close();
-            this.index = null;
-        }
+        closeSearchIndex();
 
         // if we're currently indexing, force close the indexer
         if (this.indexer != null && this.indexer.isOpen()) {
@@ -328,12 +339,29 @@ public class Index {
         this.indexer = null;
     }
 
+    /**
+     * Close the BlackLabIndex we use for searching, if it's open, and remove its
+     * searches from the cache.
+     */
+    private synchronized void closeSearchIndex() {
+        if (this.index != null) {
+//          searchMan.getCache().clearCacheForIndex(this.id);
+            searchMan.getBlackLabCache().removeSearchesForIndex(this.index);
+
+            this.index.close();
+            this.index = null;
+        }
+    }
+
     /**
      * Clean up the current Indexer (if any), provided close() has been called on
      * the Indexer. NOTE: we do not close the indexer ourselves on purpose (except
      * when Index.close() is called), instead we just check if it's been closed when
      * a BlackLabIndex or Indexer is requested.
      *
+     * If we clean up an Indexer, we also close the snapshot we searched while it
+     * was running, so the index will be reopened with the new data.
+     *
      * @throws ServiceUnavailable when the current indexer is still indexing
      */
     private synchronized void cleanupClosedIndexerOrThrow() throws ServiceUnavailable {
@@ -345,6 +373,7 @@ public class Index {
 
         // close() was already called on the indexer externally
         this.indexer = null;
+        closeSearchIndex();
     }
 
     //---------------------
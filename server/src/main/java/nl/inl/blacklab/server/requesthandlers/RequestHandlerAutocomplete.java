@@ -7,7 +7,7 @@ import nl.inl.blacklab.server.datastream.DataStream;
 import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.jobs.User;
-import nl.inl.util.LuceneUtil;
+import nl.inl.util.TermPrefixIndex;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.index.IndexReader;
 
@@ -21,6 +21,9 @@ public class RequestHandlerAutocomplete extends RequestHandler {
 
     private static final int MAX_VALUES = 30;
 
+    /** Value for the sort parameter to get the most frequent terms first */
+    private static final String SORT_BY_FREQUENCY = "frequency";
+
     public RequestHandlerAutocomplete(BlackLabServer servlet, HttpServletRequest request, User user, String indexName,
             String urlResource, String urlPathPart) {
         super(servlet, request, user, indexName, urlResource, urlPathPart);
@@ -89,14 +92,30 @@ public class RequestHandlerAutocomplete extends RequestHandler {
             }
         }
 
-        autoComplete(ds, fieldName, term, blIndex.reader(), sensitiveMatching);
+        boolean byFrequency = searchParam.getString("sort").equals(SORT_BY_FREQUENCY);
+        autoComplete(ds, fieldName, term, blIndex.reader(), sensitiveMatching, byFrequency);
         return HTTP_OK;
     }
 
     public static void autoComplete(DataStream ds, String fieldName, String term, IndexReader reader,
             boolean sensitive) {
+        autoComplete(ds, fieldName, term, reader, sensitive, false);
+    }
+
+    /**
+     * Write autocomplete results.
+     *
+     * @param ds where to write the results
+     * @param fieldName Lucene field to find terms in
+     * @param term prefix to complete
+     * @param reader index reader
+     * @param sensitive match case- and diacritics-sensitively?
+     * @param byFrequency return most frequent terms first? (otherwise alphabetically)
+     */
+    public static void autoComplete(DataStream ds, String fieldName, String term, IndexReader reader,
+            boolean sensitive, boolean byFrequency) {
         ds.startList();
-        LuceneUtil.findTermsByPrefix(reader, fieldName, term, sensitive, MAX_VALUES).forEach((v) -> {
+        TermPrefixIndex.forField(reader, fieldName, sensitive).find(term, MAX_VALUES, byFrequency).forEach((v) -> {
             ds.item("term", v);
         });
         ds.endList();
@@ -147,10 +147,13 @@ public class RequestHandlerDocsCsv extends RequestHandler {
         return searchParam.getBoolean("csvsepline");
     }
 
-    private CSVPrinter createHeader(List<String> row) throws IOException {
+    private CSVPrinter createHeader(List<String> row, DataStreamPlain ds) throws IOException {
         // Create the header, then explicitly declare the separator, as excel normally uses a locale-dependent CSV-separator...
         CSVFormat format = CSVFormat.EXCEL.withHeader(row.toArray(new String[0]));
-        CSVPrinter printer = format.print(new StringBuilder(declareSeparator() ? "sep=,\r\n" : ""));
+        if (declareSeparator())
+            ds.plain("sep=,\r\n");
+        // Write directly to the response, so we don't have to keep the whole CSV in memory
+        CSVPrinter printer = format.print(ds.getWriter());
 
         return printer;
     }
@@ -170,7 +173,7 @@ public class RequestHandlerDocsCsv extends RequestHandler {
                 row.add("subcorpusSize.documents");
             }
 
-            CSVPrinter printer = createHeader(row);
+            CSVPrinter printer = createHeader(row, ds);
             if (includeSearchParameters()) {
                 addSummaryCsvDocs(printer, row.size(), inputDocsForGroups, groups, subcorpusResults.subcorpusSize());
             }
@@ -198,7 +201,6 @@ public class RequestHandlerDocsCsv extends RequestHandler {
             }
 
             printer.flush();
-            ds.plain(printer.getOut().toString());
         } catch (IOException e) {
             throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_DOCS_CSV1");
         }
@@ -225,7 +227,7 @@ public class RequestHandlerDocsCsv extends RequestHandler {
 
             row.addAll(metadataFieldIds); // NOTE: use the raw field IDs for headers, not the display names, CSVPrinter can't handle duplicate names
 
-            CSVPrinter printer = createHeader(row);
+            CSVPrinter printer = createHeader(row, ds);
             addSummaryCsvDocs(printer, row.size(), docs, fromGroups, globalSubcorpusSize.subcorpusSize());
 
             StringBuilder sb = new StringBuilder();
@@ -285,7 +287,6 @@ public class RequestHandlerDocsCsv extends RequestHandler {
             }
 
             printer.flush();
-            ds.plain(printer.getOut().toString());
         } catch (IOException e) {
             throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_DOCS_CSV2");
         }
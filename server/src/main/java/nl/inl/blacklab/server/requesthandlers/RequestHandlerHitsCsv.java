@@ -170,7 +170,7 @@ public class RequestHandlerHitsCsv extends RequestHandler {
                 row.add("subcorpusSize.tokens");
             }
 
-            CSVPrinter printer = createHeader(row);
+            CSVPrinter printer = createHeader(row, ds);
             if (this.includeSearchParameters()) {
                 addSummaryCsvHits(printer, row.size(), inputHitsForGroups, groups, subcorpusResults.subcorpusSize());
             }
@@ -196,16 +196,18 @@ public class RequestHandlerHitsCsv extends RequestHandler {
             }
 
             printer.flush();
-            ds.plain(printer.getOut().toString());
         } catch (IOException e) {
             throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_HITS_CSV1");
         }
     }
 
-    private CSVPrinter createHeader(List<String> row) throws IOException {
+    private CSVPrinter createHeader(List<String> row, DataStreamPlain ds) throws IOException {
         // Create the header, then explicitly declare the separator, as excel normally uses a locale-dependent CSV-separator...
         CSVFormat format = CSVFormat.EXCEL.withHeader(row.toArray(new String[0]));
-        CSVPrinter printer = format.print(new StringBuilder(declareSeparator() ? "sep=,\r\n" : ""));
+        if (declareSeparator())
+            ds.plain("sep=,\r\n");
+        // Write directly to the response, so we don't have to keep the whole CSV in memory
+        CSVPrinter printer = format.print(ds.getWriter());
         return printer;
     }
 
@@ -278,7 +280,7 @@ public class RequestHandlerHitsCsv extends RequestHandler {
                  row.add(f.name());
             }
 
-            CSVPrinter printer = createHeader(row);
+            CSVPrinter printer = createHeader(row, ds);
             if (includeSearchParameters()) {
                 hits.hitsStats().countedTotal(); // block for a bit
                 addSummaryCsvHits(printer, row.size(), hits, groups, subcorpusResults.subcorpusSize());
@@ -296,7 +298,6 @@ public class RequestHandlerHitsCsv extends RequestHandler {
                 printer.printRecord(row);
             }
             printer.flush();
-            ds.plain(printer.getOut().toString());
         } catch (IOException e) {
             throw new InternalServerError("Cannot write response: " + e.getMessage(), "INTERR_WRITING_HITS_CSV2");
         } catch (BlsException e) {
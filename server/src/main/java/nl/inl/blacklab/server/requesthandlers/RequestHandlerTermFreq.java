@@ -1,5 +1,6 @@
 package nl.inl.blacklab.server.requesthandlers;
 
+import nl.inl.blacklab.exceptions.InvalidQuery;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.TermFrequency;
 import nl.inl.blacklab.search.TermFrequencyList;
@@ -30,8 +31,7 @@ public class RequestHandlerTermFreq extends RequestHandler {
     }
 
     @Override
-    public int handle(DataStream ds) throws BlsException {
-        //TODO: use background job?
+    public int handle(DataStream ds) throws BlsException, InvalidQuery {
 
         BlackLabIndex blIndex = blIndex();
         AnnotatedField cfd = blIndex.mainAnnotatedField();
@@ -47,7 +47,9 @@ public class RequestHandlerTermFreq extends RequestHandler {
         // May also null/empty to retrieve all terms!
         Set<String> terms = searchParam.getString("terms") != null ? new HashSet<>(Arrays.asList(searchParam.getString("terms").trim().split("\\s*,\\s*"))) : null;
          
-        TermFrequencyList tfl = blIndex.termFrequencies(sensitivity, q, terms);
+        // (cached, so paging through the results doesn't recount everything)
+        TermFrequencyList tfl = blIndex.search(cfd, searchParam.getUseCache())
+                .termFrequencies(sensitivity, q, terms).execute();
 
         if (terms == null || terms.isEmpty()) { // apply pagination only when requesting all terms
             int first = searchParam.getInteger("first");
@@ -1,7 +1,9 @@
 package nl.inl.blacklab.server.search;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -9,6 +11,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,13 +20,16 @@ import org.apache.logging.log4j.ThreadContext;
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.Results;
 import nl.inl.blacklab.search.results.SearchResult;
 import nl.inl.blacklab.searches.Search;
 import nl.inl.blacklab.searches.SearchCache;
@@ -37,8 +43,46 @@ public class ResultsCache implements SearchCache {
     private final ExecutorService threadPool;
     private final Counter timedOutJobs = Metrics.globalRegistry.counter("timedout-search-jobs", Tags.empty());
     private final AsyncLoadingCache<SearchInfoWrapper, SearchResult> searchCache;
+    private final CacheLoader<SearchInfoWrapper, SearchResult> cacheLoader;
     private final ConcurrentHashMap<Search<? extends SearchResult>, Future<CacheEntryWithResults<? extends SearchResult>>> runningJobs = new ConcurrentHashMap<>();
 
+    /** How often to re-weigh results that were still growing when they were weighed */
+    private static final long REWEIGH_INTERVAL_MS = 1000;
+
+    /** How long to reuse our estimate of the memory used per result type (for metrics) */
+    private static final long CACHED_BYTES_REFRESH_MS = 10_000;
+
+    /** Is caching disabled? (searches are still run, but their results aren't kept) */
+    private final boolean cacheDisabled;
+
+    /** Do we evict based on (estimated) memory usage? */
+    private final boolean weighResults;
+
+    /** Maximum (estimated) size of the cached results (0: cache disabled, -1: no limit) */
+    private final int maxSizeMegs;
+
+    /** Maximum number of cached results (also enforced when evicting based on memory usage) */
+    private final int maxNumberOfJobs;
+
+    /** After how much time should a running search be aborted? */
+    private final int maxSearchTimeSec;
+
+    /**
+     * Results that were still being fetched when they were weighed (e.g. hits that are
+     * read lazily). Caffeine only weighs an entry when it is written, so we re-weigh
+     * these periodically until they're done.
+     */
+    private final Set<SearchInfoWrapper> growingResults = ConcurrentHashMap.newKeySet();
+
+    /** When did we last re-weigh growing results? */
+    private final AtomicLong lastReweighTime = new AtomicLong();
+
+    /** Estimated memory used per result type (for metrics) */
+    private long[] cachedBytesPerType;
+
+    /** When did we determine cachedBytesPerType? */
+    private long cachedBytesTime;
+
 
     public static class CacheEntryWithResults<T extends SearchResult> extends SearchCacheEntry<T> {
 
@@ -142,9 +186,9 @@ public class ResultsCache implements SearchCache {
 
     public ResultsCache(BLSConfig config, ExecutorService threadPool)  {
         this.threadPool = threadPool;
-        int maxSearchTimeSec = config.getCache().getMaxSearchTimeSec();
+        maxSearchTimeSec = config.getCache().getMaxSearchTimeSec();
 
-        CacheLoader<SearchInfoWrapper, SearchResult> cacheLoader = new CacheLoader<SearchInfoWrapper, SearchResult>() {
+        cacheLoader = new CacheLoader<SearchInfoWrapper, SearchResult>() {
             @Override
             public SearchResult load(final SearchInfoWrapper searchWrapper) throws Exception {
                 final String requestId = searchWrapper.getRequestId();
@@ -164,6 +208,8 @@ public class ResultsCache implements SearchCache {
                          searchResult = job.get();
                     }
                     logger.debug("Internal search time is: {}", searchResult.timeUserWaitedMs());
+                    if (weighResults && isGrowing(searchResult.getResults()))
+                        growingResults.add(searchWrapper);
                     return searchResult.getResults();
                 } catch (TimeoutException ex) {
                     logger.warn("Search took to long: {}", searchWrapper.search);
@@ -175,22 +221,162 @@ public class ResultsCache implements SearchCache {
             }
         };
 
-        int maxSize = config.getCache().getMaxNumberOfJobs();
-        logger.info("Creating cache with maxSize: {}", maxSize);
+        @SuppressWarnings("deprecation")
+        int maxJobs = config.getCache().getMaxNumberOfJobs();
+        int maxSizeMegs = config.getCache().getMaxSizeMegs();
+        this.maxSizeMegs = maxSizeMegs;
         logger.info("Creating cache with max search time: {} sec", maxSearchTimeSec);
-        searchCache = Caffeine.newBuilder()
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
             .recordStats()
-            .maximumSize(maxSize)
-            .initialCapacity(maxSize / 10)
-            .executor(this.threadPool)
-            .buildAsync(cacheLoader);
+            .initialCapacity(Math.max(16, maxJobs / 10))
+            .executor(this.threadPool);
+        cacheDisabled = maxSizeMegs == 0 || maxJobs == 0;
+        if (cacheDisabled) {
+            // Cache disabled (like BlsCache); getAsync() bypasses the cache
+            logger.info("Creating cache with caching disabled");
+            weighResults = false;
+            maxNumberOfJobs = 0;
+            searchCache = builder
+                .maximumSize(0)
+                .buildAsync(cacheLoader);
+        } else if (maxSizeMegs > 0) {
+            // Evict based on (estimated) memory usage, in kilobytes
+            // (Caffeine can't combine this with maximumSize, so we enforce maxNumberOfJobs ourselves)
+            logger.info("Creating cache with maxSizeMegs: {}, maxNumberOfJobs: {}", maxSizeMegs, maxJobs);
+            weighResults = true;
+            maxNumberOfJobs = maxJobs;
+            searchCache = builder
+                .maximumWeight(maxSizeMegs * 1024L)
+                .weigher(new ResultsCacheWeigher())
+                .buildAsync(cacheLoader);
+        } else {
+            logger.info("Creating cache with maxNumberOfJobs: {}", maxJobs);
+            weighResults = false;
+            maxNumberOfJobs = maxJobs;
+            searchCache = builder
+                .maximumSize(maxJobs)
+                .buildAsync(cacheLoader);
+        }
         CaffeineCacheMetrics.monitor(Metrics.globalRegistry, searchCache, CACHE_NAME_FOR_METRICS);
         Metrics.globalRegistry.gaugeMapSize("blacklab-job-queue", Tags.empty(), runningJobs);
+        for (ResultsCacheWeigher.ResultType type: ResultsCacheWeigher.ResultType.values()) {
+            Gauge.builder(CACHE_NAME_FOR_METRICS + "-bytes", this, c -> c.cachedBytes(type))
+                .description("Estimated memory used by cached results of this type")
+                .baseUnit("bytes")
+                .tag("type", type.tag())
+                .register(Metrics.globalRegistry);
+        }
     }
+
+    /**
+     * Estimate the memory used by the (finished) cached results of a type.
+     *
+     * Determining this means going through the whole cache, so we do this for all
+     * types at once and reuse the result for a while.
+     *
+     * @param type result type
+     * @return estimated size in bytes
+     */
+    private synchronized long cachedBytes(ResultsCacheWeigher.ResultType type) {
+        long now = System.currentTimeMillis();
+        if (cachedBytesPerType == null || now - cachedBytesTime >= CACHED_BYTES_REFRESH_MS) {
+            long[] bytes = new long[ResultsCacheWeigher.ResultType.values().length];
+            for (CompletableFuture<SearchResult> future: searchCache.asMap().values()) {
+                if (future.isDone() && !future.isCompletedExceptionally()) {
+                    SearchResult result = future.getNow(null);
+                    if (result != null)
+                        bytes[ResultsCacheWeigher.ResultType.of(result).ordinal()] += ResultsCacheWeigher.estimateSizeBytes(result);
+                }
+            }
+            cachedBytesPerType = bytes;
+            cachedBytesTime = now;
+        }
+        return cachedBytesPerType[type.ordinal()];
+    }
+
+    /**
+     * Is this result still growing, i.e. will its estimated size still change?
+     *
+     * @param result search result
+     * @return true if it's still being fetched
+     */
+    private static boolean isGrowing(SearchResult result) {
+        return result instanceof Results && !((Results<?, ?>) result).doneProcessingAndCounting();
+    }
+
+    /**
+     * Re-weigh results that were still growing when they were weighed.
+     *
+     * Caffeine only weighs an entry when it's written, so we replace the entry with
+     * an equivalent one if its weight changed. Results are re-weighed until they're
+     * done.
+     */
+    void reweighGrowingResults() {
+        if (!weighResults)
+            return;
+        Policy.Eviction<SearchInfoWrapper, SearchResult> eviction = searchCache.synchronous().policy().eviction().orElse(null);
+        ResultsCacheWeigher weigher = new ResultsCacheWeigher();
+        for (Iterator<SearchInfoWrapper> it = growingResults.iterator(); it.hasNext(); ) {
+            SearchInfoWrapper key = it.next();
+            CompletableFuture<SearchResult> future = searchCache.asMap().get(key);
+            if (future == null || future.isCompletedExceptionally()) {
+                // Evicted or failed
+                it.remove();
+                continue;
+            }
+            if (!future.isDone())
+                continue;
+            SearchResult result = future.getNow(null);
+            if (result == null) {
+                it.remove();
+                continue;
+            }
+            if (!isGrowing(result))
+                it.remove(); // done; this is the last time we need to weigh it
+            int weight = weigher.weigh(key, result);
+            if (eviction == null || eviction.weightOf(key).orElse(weight) != weight)
+                searchCache.asMap().replace(key, future, CompletableFuture.completedFuture(result));
+        }
+        enforceMaxNumberOfJobs();
+    }
+
+    /**
+     * Make sure we don't keep more than maxNumberOfJobs results.
+     *
+     * Caffeine can't limit both the weight and number of entries, so when evicting
+     * based on memory usage, we evict the coldest entries ourselves.
+     */
+    private void enforceMaxNumberOfJobs() {
+        if (!weighResults || maxNumberOfJobs <= 0)
+            return; // (Caffeine enforces maximumSize itself)
+        long excess = searchCache.synchronous().estimatedSize() - maxNumberOfJobs;
+        if (excess > 0) {
+            searchCache.synchronous().policy().eviction().ifPresent(eviction ->
+                    searchCache.synchronous().invalidateAll(eviction.coldest((int) excess).keySet()));
+        }
+    }
+
+    /** Do some maintenance: enforce maxNumberOfJobs and (at most every so often) re-weigh growing results. */
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        long last = lastReweighTime.get();
+        if (now - last >= REWEIGH_INTERVAL_MS && lastReweighTime.compareAndSet(last, now))
+            reweighGrowingResults();
+        else
+            enforceMaxNumberOfJobs();
+    }
+
     @Override
     public <T extends SearchResult> SearchCacheEntry<T> getAsync(final Search<T> search, final boolean allowQueue) {
         try {
-            CompletableFuture<SearchResult> resultsFuture = searchCache.get(new SearchInfoWrapper(search, ThreadContext.get("requestId")));
+            SearchInfoWrapper searchWrapper = new SearchInfoWrapper(search, ThreadContext.get("requestId"));
+            CompletableFuture<SearchResult> resultsFuture;
+            if (cacheDisabled) {
+                resultsFuture = cacheLoader.asyncLoad(searchWrapper, threadPool).thenApply(r -> r);
+            } else {
+                resultsFuture = searchCache.get(searchWrapper);
+                maintain();
+            }
             return new SearchCacheEntryFromFuture(resultsFuture, search);
         } catch (Exception ex) {
             throw BlackLabRuntimeException.wrap(ex);
@@ -225,7 +411,16 @@ public class ResultsCache implements SearchCache {
 
     @Override
     public Map<String, Object> getCacheStatus() {
-        return null;
+        searchCache.synchronous().cleanUp(); // perform pending evictions
+        long sizeBytes = weighResults ?
+                searchCache.synchronous().policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L) * 1024 : -1;
+        return Map.of(
+            "maxSizeMegs", maxSizeMegs,
+            "maxNumberOfJobs", maxNumberOfJobs,
+            "maxSearchTimeSec", maxSearchTimeSec,
+            "sizeBytes", sizeBytes,
+            "numberOfSearches", searchCache.synchronous().estimatedSize()
+        );
     }
 
     @Override
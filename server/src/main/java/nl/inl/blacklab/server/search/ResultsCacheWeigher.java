@@ -0,0 +1,144 @@
+package nl.inl.blacklab.server.search;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import nl.inl.blacklab.search.TermFrequencyList;
+import nl.inl.blacklab.search.results.CapturedGroups;
+import nl.inl.blacklab.search.results.DocGroups;
+import nl.inl.blacklab.search.results.DocResults;
+import nl.inl.blacklab.search.results.Facets;
+import nl.inl.blacklab.search.results.HitGroups;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.HitsSorted;
+import nl.inl.blacklab.search.results.ResultsStats;
+import nl.inl.blacklab.search.results.SearchResult;
+
+/**
+ * Estimates how much memory a search result uses, for the ResultsCache.
+ *
+ * Based on {@link SearchResult#numberOfResultObjects()}, with an estimate of
+ * the size of each type of result object (assuming a 64-bit JVM with compressed
+ * object pointers). Weights are expressed in kilobytes, so large result sets
+ * don't overflow the int weight.
+ */
+public class ResultsCacheWeigher implements Weigher<Object, SearchResult> {
+
+    /** Result types we keep track of (for metrics) */
+    public enum ResultType {
+        HITS,
+        DOCS,
+        HIT_GROUPS,
+        DOC_GROUPS,
+        FACETS,
+        TERM_FREQUENCIES,
+        COUNT,
+        OTHER;
+
+        public static ResultType of(SearchResult result) {
+            if (result instanceof Hits)
+                return HITS;
+            if (result instanceof DocResults)
+                return DOCS;
+            if (result instanceof HitGroups)
+                return HIT_GROUPS;
+            if (result instanceof DocGroups)
+                return DOC_GROUPS;
+            if (result instanceof Facets)
+                return FACETS;
+            if (result instanceof TermFrequencyList)
+                return TERM_FREQUENCIES;
+            if (result instanceof ResultsStats)
+                return COUNT;
+            return OTHER;
+        }
+
+        public String tag() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    /** Fixed overhead per cache entry: the entry, the Search object (the key) and the results object itself. */
+    static final int ENTRY_OVERHEAD_BYTES = 1024;
+
+    /**
+     * Size of a hit in a HitsArrays: doc, start, end and index (4 ints). The chunks
+     * the hits are stored in grow by doubling, so on average a quarter of the
+     * capacity is unused.
+     */
+    static final int HIT_BYTES = 4 * Integer.BYTES * 4 / 3;
+
+    /**
+     * Size of captured groups per hit, excluding the spans: HashMap node, Hit key
+     * and Span[] array header.
+     */
+    static final int CAPTURED_GROUPS_PER_HIT_BYTES = 32 + 24 + 16;
+
+    /** Size of a captured group: array element plus Span object. */
+    static final int CAPTURED_GROUP_BYTES = 4 + 24;
+
+    /** Size of a DocResult, excluding its stored hits: object, PropertyValueDoc and HitsList. */
+    static final int DOC_RESULT_BYTES = 32 + 16 + 96;
+
+    /** Size of a group, excluding its stored results: group object, identity, results list and map entry. */
+    static final int GROUP_BYTES = 32 + 64 + 96 + 32;
+
+    /** Size of a term frequency: TermFrequency object and term String. */
+    static final int TERM_FREQUENCY_BYTES = 24 + 64;
+
+    /**
+     * Estimate how many bytes a search result uses.
+     *
+     * @param result search result
+     * @return estimated size in bytes
+     */
+    public static long estimateSizeBytes(SearchResult result) {
+        long objects = Math.max(0, result.numberOfResultObjects());
+        long bytes;
+        switch (ResultType.of(result)) {
+        case HITS:
+            Hits hits = (Hits) result;
+            bytes = objects * HIT_BYTES;
+            CapturedGroups capturedGroups = hits.capturedGroups();
+            if (capturedGroups != null) {
+                int groupsPerHit = capturedGroups.names().size();
+                bytes += objects * (CAPTURED_GROUPS_PER_HIT_BYTES + (long) groupsPerHit * CAPTURED_GROUP_BYTES);
+            }
+            if (hits instanceof HitsSorted) {
+                // Lazily sorted hits keep their source hits, contexts, etc. until sorting is done
+                bytes += ((HitsSorted) hits).numberOfIntsRetainedForSorting() * Integer.BYTES;
+            }
+            break;
+        case DOCS:
+            // Result objects are the docs plus their stored hits
+            long docs = ((DocResults) result).resultsStats().processedSoFar();
+            bytes = docs * DOC_RESULT_BYTES + Math.max(0, objects - docs) * HIT_BYTES;
+            break;
+        case HIT_GROUPS:
+            // Result objects are the groups plus their stored hits
+            long hitGroups = ((HitGroups) result).size();
+            bytes = hitGroups * GROUP_BYTES + Math.max(0, objects - hitGroups) * HIT_BYTES;
+            break;
+        case DOC_GROUPS:
+            // Result objects are the groups plus their stored docs
+            long docGroups = ((DocGroups) result).size();
+            bytes = docGroups * GROUP_BYTES + Math.max(0, objects - docGroups) * DOC_RESULT_BYTES;
+            break;
+        case FACETS:
+            bytes = objects * GROUP_BYTES;
+            break;
+        case TERM_FREQUENCIES:
+            bytes = objects * TERM_FREQUENCY_BYTES;
+            break;
+        default:
+            bytes = 0;
+            break;
+        }
+        return ENTRY_OVERHEAD_BYTES + bytes;
+    }
+
+    @Override
+    public int weigh(Object key, SearchResult value) {
+        long kilobytes = (estimateSizeBytes(value) + 1023) / 1024;
+        return (int) Math.min(Integer.MAX_VALUE, kilobytes);
+    }
+}
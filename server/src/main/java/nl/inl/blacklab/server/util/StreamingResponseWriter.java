@@ -0,0 +1,216 @@
+package nl.inl.blacklab.server.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.function.IntConsumer;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Writes a response to the client, streaming it if it gets large.
+ *
+ * Output is kept in a buffer at first. As long as the response fits in the
+ * buffer, nothing has been sent yet, so the caller can still decide to send an
+ * error response (with a different HTTP status) instead; see
+ * {@link #discardBuffer()}.
+ *
+ * Once the buffer is full, the headers are written (with the status set so far)
+ * and the buffer and all further output are streamed to the client, so large
+ * responses (e.g. CSV exports) don't need to be kept in memory in their
+ * entirety. The status can't be changed after that. If an error occurs, all the
+ * caller can do is mark the response as failed; see {@link #writeErrorMarker(int)}.
+ *
+ * If the client accepts it, the response is gzipped (unless it is very small).
+ */
+public class StreamingResponseWriter extends Writer {
+
+    /**
+     * Start of the line that is appended to a partially sent response if an error
+     * occurs after we've started streaming it. The line ends with the HTTP status
+     * the response would have had, e.g. "#### BLACKLAB ERROR 500".
+     */
+    public static final String ERROR_MARKER = "#### BLACKLAB ERROR ";
+
+    /** Default number of characters to buffer before we start streaming */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** Don't bother gzipping responses smaller than this (in characters) */
+    private static final int GZIP_MIN_LENGTH = 1024;
+
+    private final HttpServletResponse response;
+
+    private final Charset encoding;
+
+    private final int bufferSize;
+
+    private final boolean clientAcceptsGzip;
+
+    /** Called to write the HTTP headers with the status to send, just before we start sending the body */
+    private final IntConsumer writeHeaders;
+
+    /** HTTP status to send if the headers haven't been written yet */
+    private int status = HttpServletResponse.SC_OK;
+
+    /** Output buffered so far (null once we've started streaming) */
+    private StringBuilder buffer = new StringBuilder();
+
+    /** Writer to the client (null until we start streaming) */
+    private Writer out;
+
+    /** Gzip stream, if we're gzipping */
+    private GZIPOutputStream gzipOut;
+
+    /**
+     * Create a writer for a response.
+     *
+     * @param request request we're responding to (to check if the client accepts gzip)
+     * @param response response to write to
+     * @param encoding character encoding to use
+     * @param bufferSize how many characters to buffer before starting to stream
+     * @param writeHeaders writes the HTTP headers for a given status
+     */
+    public StreamingResponseWriter(HttpServletRequest request, HttpServletResponse response, Charset encoding,
+            int bufferSize, IntConsumer writeHeaders) {
+        this.response = response;
+        this.encoding = encoding;
+        this.bufferSize = bufferSize;
+        this.writeHeaders = writeHeaders;
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        clientAcceptsGzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    /**
+     * Have we started sending the response?
+     *
+     * If so, the HTTP status can no longer be changed and the buffered output
+     * can no longer be discarded.
+     *
+     * @return true if the response has been committed
+     */
+    public boolean isCommitted() {
+        return out != null;
+    }
+
+    /**
+     * Get the HTTP status to send (or that was sent, if the response was committed).
+     *
+     * @return HTTP status
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Set the HTTP status to send.
+     *
+     * May only be called if the response hasn't been committed yet. If it has, use
+     * {@link #writeErrorMarker(int)} to signal that the response is not what was
+     * sent.
+     *
+     * @param status HTTP status
+     */
+    public void setStatus(int status) {
+        if (isCommitted())
+            throw new IllegalStateException("Response already committed with status " + this.status);
+        this.status = status;
+    }
+
+    /**
+     * Mark a committed response as failed.
+     *
+     * Appends a single line consisting of {@link #ERROR_MARKER} followed by the HTTP
+     * status the response should have had. The partial response before it is not
+     * valid, so clients that find this line should discard the response.
+     *
+     * May only be called if the response has been committed. If not, discard the
+     * buffer and send an error response instead.
+     *
+     * @param intendedStatus HTTP status we couldn't send
+     */
+    public void writeErrorMarker(int intendedStatus) throws IOException {
+        if (!isCommitted())
+            throw new IllegalStateException("Response not committed yet");
+        out.write("\n" + ERROR_MARKER + intendedStatus + "\n");
+    }
+
+    /**
+     * Discard the output buffered so far.
+     *
+     * May only be called if the response hasn't been committed yet.
+     */
+    public void discardBuffer() {
+        if (isCommitted())
+            throw new IllegalStateException("Response already committed");
+        buffer.setLength(0);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (out != null) {
+            out.write(cbuf, off, len);
+        } else {
+            buffer.append(cbuf, off, len);
+            if (buffer.length() >= bufferSize)
+                commit();
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (out != null) {
+            out.write(str, off, len);
+        } else {
+            buffer.append(str, off, off + len);
+            if (buffer.length() >= bufferSize)
+                commit();
+        }
+    }
+
+    /**
+     * Write the headers and the buffered output and switch to streaming.
+     */
+    private void commit() throws IOException {
+        boolean gzip = clientAcceptsGzip && buffer.length() >= GZIP_MIN_LENGTH;
+        writeHeaders.accept(status);
+        response.addHeader("Vary", "Accept-Encoding");
+        OutputStream stream = response.getOutputStream();
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            gzipOut = new GZIPOutputStream(stream, 8192);
+            stream = gzipOut;
+        }
+        out = new OutputStreamWriter(stream, encoding);
+        out.write(buffer.toString());
+        buffer = null;
+    }
+
+    /**
+     * Flush output to the client, but only if we're already streaming.
+     *
+     * (Flushing doesn't commit the response, so an error can still be sent instead
+     * of a short response)
+     */
+    @Override
+    public void flush() throws IOException {
+        if (out != null)
+            out.flush();
+    }
+
+    /**
+     * Send any buffered output and finish the response.
+     */
+    @Override
+    public void close() throws IOException {
+        if (out == null)
+            commit();
+        out.flush();
+        if (gzipOut != null)
+            gzipOut.finish();
+        out.flush();
+    }
+}
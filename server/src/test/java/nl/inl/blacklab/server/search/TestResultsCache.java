@@ -0,0 +1,158 @@
+package nl.inl.blacklab.server.search;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import nl.inl.blacklab.mocks.MockBlackLabIndex;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.searches.AbstractSearch;
+import nl.inl.blacklab.searches.Peekable;
+import nl.inl.blacklab.server.config.BLSConfig;
+
+public class TestResultsCache {
+
+    private static MockBlackLabIndex index;
+
+    private ExecutorService threadPool;
+
+    @BeforeClass
+    public static void setUpClass() {
+        index = new MockBlackLabIndex();
+        IndexSearcher indexSearcher = Mockito.mock(IndexSearcher.class);
+        Mockito.when(indexSearcher.getSimilarity(ArgumentMatchers.anyBoolean())).thenReturn(new BM25Similarity());
+        index.setIndexSearcher(indexSearcher);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        index.close();
+    }
+
+    @Before
+    public void setUp() {
+        threadPool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    /** A search that returns the hits it was given. */
+    private static class SearchFixedHits extends AbstractSearch<Hits> {
+
+        private final int id;
+
+        private final Hits hits;
+
+        final AtomicInteger timesExecuted = new AtomicInteger();
+
+        SearchFixedHits(int id, Hits hits) {
+            super(QueryInfo.create(index));
+            this.id = id;
+            this.hits = hits;
+        }
+
+        @Override
+        public Hits executeInternal(Peekable<Hits> progressReporter) {
+            timesExecuted.incrementAndGet();
+            return hits;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return super.equals(obj) && ((SearchFixedHits) obj).id == id;
+        }
+
+        @Override
+        public String toString() {
+            return toString("fixedhits", id);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private ResultsCache cache(int maxSizeMegs, int maxNumberOfJobs) {
+        BLSConfig config = new BLSConfig();
+        config.getCache().setMaxSizeMegs(maxSizeMegs);
+        config.getCache().setMaxNumberOfJobs(maxNumberOfJobs);
+        return new ResultsCache(config, threadPool);
+    }
+
+    private static Hits get(ResultsCache cache, SearchFixedHits search) throws ExecutionException, InterruptedException {
+        return cache.getAsync(search, false).get();
+    }
+
+    private static long sizeBytes(ResultsCache cache) {
+        return (Long) cache.getCacheStatus().get("sizeBytes");
+    }
+
+    private static long numberOfSearches(ResultsCache cache) {
+        return (Long) cache.getCacheStatus().get("numberOfSearches");
+    }
+
+    @Test
+    public void testEvictOnWeight() throws ExecutionException, InterruptedException {
+        // Each result is about 400K; only two fit in 1M
+        ResultsCache cache = cache(1, 100);
+        for (int i = 0; i < 5; i++)
+            get(cache, new SearchFixedHits(i, TestResultsCacheWeigher.hits(index, 20_000)));
+        Assert.assertEquals(2, numberOfSearches(cache));
+        Assert.assertTrue(sizeBytes(cache) <= 1024 * 1024);
+    }
+
+    @Test
+    public void testEvictOnNumberOfJobs() throws ExecutionException, InterruptedException {
+        // Plenty of room, but at most 3 results
+        ResultsCache cache = cache(100, 3);
+        for (int i = 0; i < 10; i++)
+            get(cache, new SearchFixedHits(i, TestResultsCacheWeigher.hits(index, 10)));
+        Assert.assertEquals(3, numberOfSearches(cache));
+    }
+
+    @Test
+    public void testCacheDisabled() throws ExecutionException, InterruptedException {
+        ResultsCache cache = cache(0, 100);
+        SearchFixedHits search = new SearchFixedHits(1, TestResultsCacheWeigher.hits(index, 10));
+        get(cache, search);
+        get(cache, search);
+        Assert.assertEquals(0, numberOfSearches(cache));
+        Assert.assertEquals(2, search.timesExecuted.get());
+    }
+
+    @Test
+    public void testReweighGrowingResults() throws ExecutionException, InterruptedException {
+        ResultsCache cache = cache(100, 100);
+        int n = 100_000;
+        Hits lazy = TestResultsCacheWeigher.hits(index, n).sortLazily(new HitPropertyDocumentId());
+        Hits result = get(cache, new SearchFixedHits(1, lazy));
+        long sizeWhileSorting = sizeBytes(cache);
+
+        // Sort all hits; the cache should notice when we re-weigh
+        result.get(n - 1);
+        cache.reweighGrowingResults();
+        long sizeWhenSorted = sizeBytes(cache);
+        Assert.assertNotEquals(sizeWhileSorting, sizeWhenSorted);
+        Hits sorted = TestResultsCacheWeigher.hits(index, n);
+        Assert.assertEquals(new ResultsCacheWeigher().weigh(null, sorted) * 1024L, sizeWhenSorted);
+    }
+}
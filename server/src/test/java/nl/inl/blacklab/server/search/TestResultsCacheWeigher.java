@@ -0,0 +1,70 @@
+package nl.inl.blacklab.server.search;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import nl.inl.blacklab.mocks.MockBlackLabIndex;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.QueryInfo;
+
+public class TestResultsCacheWeigher {
+
+    private static MockBlackLabIndex index;
+
+    @BeforeClass
+    public static void setUp() {
+        index = new MockBlackLabIndex();
+        IndexSearcher indexSearcher = Mockito.mock(IndexSearcher.class);
+        Mockito.when(indexSearcher.getSimilarity(ArgumentMatchers.anyBoolean())).thenReturn(new BM25Similarity());
+        index.setIndexSearcher(indexSearcher);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        index.close();
+    }
+
+    static Hits hits(MockBlackLabIndex index, int n) {
+        int[] docs = new int[n], starts = new int[n], ends = new int[n];
+        for (int i = 0; i < n; i++) {
+            docs[n - 1 - i] = i / 10; // descending, so sorting has to do something
+            starts[i] = i % 10;
+            ends[i] = i % 10 + 1;
+        }
+        return Hits.fromArrays(QueryInfo.create(index), docs, starts, ends);
+    }
+
+    private static int weigh(Hits hits) {
+        return new ResultsCacheWeigher().weigh(null, hits);
+    }
+
+    @Test
+    public void testWeighHits() {
+        // Weights are in kilobytes, rounded up; every entry has a fixed overhead
+        Assert.assertEquals(1, weigh(hits(index, 0)));
+        int n = 100_000;
+        long expectedBytes = ResultsCacheWeigher.ENTRY_OVERHEAD_BYTES + (long) n * ResultsCacheWeigher.HIT_BYTES;
+        Assert.assertEquals((expectedBytes + 1023) / 1024, weigh(hits(index, n)));
+        Assert.assertTrue(weigh(hits(index, 1000)) < weigh(hits(index, 10_000)));
+    }
+
+    @Test
+    public void testWeighLazilySortedHits() {
+        int n = 10_000;
+        Hits lazy = hits(index, n).sortLazily(new HitPropertyDocumentId());
+        // Nothing sorted yet, but we hold on to the source hits, indices, etc.
+        Assert.assertTrue(weigh(lazy) >= (long) n * 5 * Integer.BYTES / 1024);
+
+        // Once sorted, only the sorted hits remain
+        lazy.get(n - 1);
+        Assert.assertTrue(lazy.doneProcessingAndCounting());
+        Assert.assertEquals(weigh(hits(index, n)), weigh(lazy));
+    }
+}
@@ -0,0 +1,133 @@
+package nl.inl.blacklab.server.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestStreamingResponseWriter {
+
+    private static final int BUFFER_SIZE = 100;
+
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    /** Statuses passed to writeHeaders (should be at most one) */
+    private final List<Integer> statusesSent = new ArrayList<>();
+
+    private StreamingResponseWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                sent.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                // not used
+            }
+        });
+        writer = new StreamingResponseWriter(request, response, StandardCharsets.UTF_8, BUFFER_SIZE,
+                statusesSent::add);
+    }
+
+    private String sent() {
+        return new String(sent.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(char c, int n) {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void testSmallResponseIsBuffered() throws IOException {
+        writer.write("hello");
+        writer.flush();
+        Assert.assertFalse(writer.isCommitted());
+        Assert.assertEquals("", sent());
+
+        writer.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        writer.close();
+        Assert.assertEquals(List.of(HttpServletResponse.SC_NOT_FOUND), statusesSent);
+        Assert.assertEquals("hello", sent());
+    }
+
+    @Test
+    public void testDiscardBuffer() throws IOException {
+        writer.write("partial result");
+        writer.discardBuffer();
+        writer.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        writer.write("error");
+        writer.close();
+        Assert.assertEquals(List.of(HttpServletResponse.SC_INTERNAL_SERVER_ERROR), statusesSent);
+        Assert.assertEquals("error", sent());
+    }
+
+    @Test
+    public void testCommitWhenBufferFull() throws IOException {
+        writer.write(repeat('a', BUFFER_SIZE - 1));
+        Assert.assertFalse(writer.isCommitted());
+        writer.write("b");
+        Assert.assertTrue(writer.isCommitted());
+        Assert.assertEquals(List.of(HttpServletResponse.SC_OK), statusesSent);
+
+        // Further output is streamed
+        writer.write("c");
+        writer.flush();
+        Assert.assertEquals(repeat('a', BUFFER_SIZE - 1) + "bc", sent());
+        writer.close();
+        Assert.assertEquals(1, statusesSent.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSetStatusAfterCommit() throws IOException {
+        writer.write(repeat('a', BUFFER_SIZE));
+        writer.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDiscardBufferAfterCommit() throws IOException {
+        writer.write(repeat('a', BUFFER_SIZE));
+        writer.discardBuffer();
+    }
+
+    @Test
+    public void testErrorMarkerAfterCommit() throws IOException {
+        String partial = repeat('a', BUFFER_SIZE);
+        writer.write(partial);
+        writer.writeErrorMarker(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        writer.close();
+        Assert.assertEquals(List.of(HttpServletResponse.SC_OK), statusesSent);
+        // A single marker line, not a second document
+        Assert.assertEquals(partial + "\n" + StreamingResponseWriter.ERROR_MARKER + "503\n", sent());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testErrorMarkerBeforeCommit() throws IOException {
+        writer.write("hello");
+        writer.writeErrorMarker(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+}
@@ -74,6 +74,7 @@ public class IndexTool {
         boolean addingFiles = true;
         String deleteQuery = null;
         int numberOfThreadsToUse = BlackLab.config().getIndexing().getNumberOfThreads();
+        int numberOfWriteThreads = BlackLab.config().getIndexing().getNumberOfWriteThreads();
         List<File> linkedFileDirs = new ArrayList<>();
         for (int i = 0; i < args.length; i++) {
             String arg = args[i].trim();
@@ -104,6 +105,21 @@ public class IndexTool {
                 case "nothreads":
                     numberOfThreadsToUse = 1;
                     break;
+                case "write-threads":
+                    if (i + 1 == args.length) {
+                        System.err.println("--write-threads option needs argument");
+                        usage();
+                        return;
+                    }
+                    try {
+                        numberOfWriteThreads = Integer.parseInt(args[i + 1]);
+                        i++;
+                    } catch (NumberFormatException e) {
+                        System.err.println("--write-threads option needs integer argument");
+                        usage();
+                        return;
+                    }
+                    break;
                 case "linked-file-dir":
                     if (i + 1 == args.length) {
                         System.err.println("--linked-file-dir option needs argument");
@@ -281,6 +297,7 @@ public class IndexTool {
         try {
             indexer = Indexer.openIndex(indexDir, createNewIndex, docFormat, indexTemplateFile);
             indexer.setNumberOfThreadsToUse(numberOfThreadsToUse);
+            indexer.setNumberOfWriteThreads(numberOfWriteThreads);
         } catch (DocumentFormatNotFound e1) {
         	File docFormatFile = new File(docFormat);
             try {
@@ -290,6 +307,7 @@ public class IndexTool {
                     docFormat = format.getName();
                     indexer = Indexer.openIndex(indexDir, createNewIndex, docFormat, indexTemplateFile);
                     indexer.setNumberOfThreadsToUse(numberOfThreadsToUse);
+                    indexer.setNumberOfWriteThreads(numberOfWriteThreads);
                 }
             } catch(DocumentFormatNotFound|IOException e) {
                 // legit swallow this.
@@ -363,6 +381,8 @@ public class IndexTool {
                         + "  --maxdocs <n>          Stop after indexing <n> documents\n"
                         + "  --linked-file-dir <d>  Look in directory <d> for linked (e.g. metadata) files\n"
                         + "  --nothreads            Disable multithreaded indexing (enabled by default)\n"
+                        + "  --write-threads <n>    Write parsed documents to the index using <n> separate\n"
+                        + "                         threads (default: 0, parsing threads write them)\n"
                         + "\n"
                         + "Deprecated options (not needed anymore with .yaml format configs):\n"
                         + "  --indexparam <file>    Read properties file with parameters for DocIndexer\n"
@@ -2,6 +2,7 @@ package nl.inl.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -52,8 +53,9 @@ public class FileProcessor implements AutoCloseable {
          * Handle a file stream.
          * <p>
          * For effiency, the {@link FileHandler#file(String, byte[], File)} version will almost always be used.
-         * The sole exception is when the {@link FileProcessor#processInputStream(String, InputStream, File)} is called
-         * with a file that is not an archive. Files within archives are always returned as byte[].
+         * The exceptions are when the {@link FileProcessor#processInputStream(String, InputStream, File)} is called
+         * with a file that is not an archive, and regular files larger than
+         * {@link FileProcessor#setStreamFilesLargerThan(long)}. Files within archives are always returned as byte[].
          * <p>
          * This function may be called in multiple threads when FileProcessor was
          * created with thread support (see
@@ -216,6 +218,12 @@ public class FileProcessor implements AutoCloseable {
     /** Skip files like Thumbs.db (Windows) and .DS_Store (OSX)? */
     private boolean skipOsSpecialFiles = true;
 
+    /**
+     * Regular files larger than this are passed to the FileHandler as a stream
+     * instead of being read into memory first (-1 for never).
+     */
+    private long streamFilesLargerThan = -1;
+
     /** What to do with each file */
     private FileHandler fileHandler;
 
@@ -364,6 +372,22 @@ public class FileProcessor implements AutoCloseable {
         return skipOsSpecialFiles && (fileName.equals("Thumbs.db") || fileName.equals(".DS_Store"));
     }
 
+    public long getStreamFilesLargerThan() {
+        return streamFilesLargerThan;
+    }
+
+    /**
+     * Pass regular files larger than this to the FileHandler as a stream.
+     *
+     * Useful if the FileHandler can process a huge file without holding it in
+     * memory. Archives and gzipped files are processed as usual.
+     *
+     * @param streamFilesLargerThan size in bytes, or -1 to never stream files
+     */
+    public void setStreamFilesLargerThan(long streamFilesLargerThan) {
+        this.streamFilesLargerThan = streamFilesLargerThan;
+    }
+
     public synchronized void setErrorHandler(ErrorHandler errorHandler) {
         this.errorHandler = errorHandler;
     }
@@ -405,6 +429,13 @@ public class FileProcessor implements AutoCloseable {
                 if (recurseSubdirs || !childFile.isDirectory())
                     processFile(childFile);
             }
+        } else if (shouldStream(file)) {
+            String path = file.getAbsolutePath();
+            if (!skipFile(path) && getFileNamePattern().matcher(path).matches()) {
+                // Open the file in the handler thread, so we don't keep many files open while they're queued
+                CompletableFuture.runAsync(makeRunnable(() -> fileHandler.file(path, new FileInputStream(file), file)), executor)
+                        .exceptionally(e -> reportAndAbort(e, path, file));
+            }
         } else {
             try {
                 processFile(file.getAbsolutePath(), FileUtils.readFileToByteArray(file), file);
@@ -415,6 +446,12 @@ public class FileProcessor implements AutoCloseable {
         }
     }
 
+    private boolean shouldStream(File file) {
+        String name = file.getName();
+        boolean isArchive = name.endsWith(".gz") || name.endsWith(".tgz") || name.endsWith(".zip");
+        return streamFilesLargerThan >= 0 && !isArchive && file.length() > streamFilesLargerThan;
+    }
+
     /**
      * Process from an InputStream, which may be an archive or a regular file.
      *
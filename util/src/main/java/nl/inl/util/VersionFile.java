@@ -72,9 +72,23 @@ public class VersionFile {
      * @return the VersionFile object
      */
     public static VersionFile write(File dir, String type, String version) {
+        return write(dir, type, version, null);
+    }
+
+    /**
+     * Write version file to directory
+     *
+     * @param dir the directory to write the version file to
+     * @param type the type to write
+     * @param version the version to write
+     * @param codec the codec the contents were written with, or null if not applicable
+     * @return the VersionFile object
+     */
+    public static VersionFile write(File dir, String type, String version, String codec) {
         VersionFile f = new VersionFile(dir);
         f.setType(type);
         f.setVersion(version);
+        f.setCodec(codec);
         f.write();
         return f;
     }
@@ -112,6 +126,9 @@ public class VersionFile {
 
     private String version;
 
+    /** Codec the contents were written with (optional; null if not recorded) */
+    private String codec;
+
     public String getType() {
         return type;
     }
@@ -128,6 +145,14 @@ public class VersionFile {
         this.version = version;
     }
 
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
     public VersionFile(File dir) {
         file = new File(dir, "version.dat");
     }
@@ -153,6 +178,8 @@ public class VersionFile {
                 type = info[0];
                 if (info.length > 1)
                     version = info[1];
+                if (info.length > 2)
+                    codec = info[2];
             }
         } catch (IOException e) {
             throw new BlackLabRuntimeException(e);
@@ -161,7 +188,7 @@ public class VersionFile {
 
     void write() {
         try (PrintWriter w = FileUtil.openForWriting(file)) {
-            w.write(type + "||" + version + "\n");
+            w.write(type + "||" + version + (codec == null ? "" : "||" + codec) + "\n");
         } catch (FileNotFoundException e) {
             throw BlackLabRuntimeException.wrap(e);
         }
@@ -169,7 +196,7 @@ public class VersionFile {
 
     @Override
     public String toString() {
-        return "type = " + type + ", version = " + version;
+        return "type = " + type + ", version = " + version + (codec == null ? "" : ", codec = " + codec);
     }
 
     public static String report(File indexDir) {